@@ -26,8 +26,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Timer;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -123,7 +122,7 @@ public class Agent implements HandlerFactory, IAgentControl {
     boolean _reconnectAllowed = true;
     //For time sentitive task, e.g. PingTask
     private final ThreadPoolExecutor _ugentTaskPool;
-    ExecutorService _executor;
+    AgentRequestLanes _lanes;
 
     public Agent(final IAgentShell shell, final int localAgentId, final ServerResource resource) throws ConfigurationException {
         _shell = shell;
@@ -158,9 +157,7 @@ public class Agent implements HandlerFactory, IAgentControl {
                 new ThreadPoolExecutor(shell.getPingRetries(), 2 * shell.getPingRetries(), 10, TimeUnit.MINUTES, new SynchronousQueue<Runnable>(), new NamedThreadFactory(
                         "UgentTask"));
 
-        _executor =
-                new ThreadPoolExecutor(_shell.getWorkers(), 5 * _shell.getWorkers(), 1, TimeUnit.DAYS, new LinkedBlockingQueue<Runnable>(), new NamedThreadFactory(
-                        "agentRequest-Handler"));
+        _lanes = new AgentRequestLanes(_shell.getProperties(), _shell.getWorkers());
 
         s_logger.info("Agent [id = " + (_id != null ? _id : "new") + " : type = " + getResourceName() + " : zone = " + _shell.getZone() + " : pod = " + _shell.getPod() +
                 " : workers = " + _shell.getWorkers() + " : host = " + _shell.getHost() + " : port = " + _shell.getPort());
@@ -253,6 +250,7 @@ public class Agent implements HandlerFactory, IAgentControl {
         }
 
         _ugentTaskPool.shutdownNow();
+        _lanes.shutdown();
     }
 
     public Long getId() {
@@ -546,6 +544,24 @@ public class Agent implements HandlerFactory, IAgentControl {
         }
     }
 
+    /**
+     * Answers a request that could not be queued, so the management server does not have to wait
+     * for it to time out.
+     */
+    protected void rejectRequest(final Request request, final Link link) {
+        final Command[] cmds = request.getCommands();
+        final Answer[] answers = new Answer[cmds.length];
+        for (int i = 0; i < cmds.length; i++) {
+            answers[i] = new Answer(cmds[i], false, "Agent is too busy to accept " + cmds[i].getClass().getSimpleName() + ", its request lane is full");
+        }
+        final Response response = new Response(request, answers);
+        try {
+            link.send(response.toBytes());
+        } catch (final ClosedChannelException e) {
+            s_logger.warn("Unable to send response: " + response.toString());
+        }
+    }
+
     public void processResponse(final Response response, final Link link) {
         final Answer answer = response.getAnswer();
         if (s_logger.isDebugEnabled()) {
@@ -586,6 +602,7 @@ public class Agent implements HandlerFactory, IAgentControl {
             }
 
             final PingCommand ping = _resource.getCurrentStatus(getId());
+            ping.setRequestQueueDepths(_lanes.getQueueDepths());
             final Request request = new Request(_id, -1, ping, false);
             request.setSequence(getNextSequence());
             if (s_logger.isDebugEnabled()) {
@@ -841,7 +858,11 @@ public class Agent implements HandlerFactory, IAgentControl {
                     } else {
                         //put the requests from mgt server into another thread pool, as the request may take a longer time to finish. Don't block the NIO main thread pool
                         //processRequest(request, task.getLink());
-                        _executor.submit(new AgentRequestHandler(getType(), getLink(), request));
+                        try {
+                            _lanes.submit(request.getCommands(), new AgentRequestHandler(getType(), getLink(), request));
+                        } catch (final RejectedExecutionException e) {
+                            rejectRequest(request, task.getLink());
+                        }
                     }
                 } catch (final ClassNotFoundException e) {
                     s_logger.error("Unable to find this request ");
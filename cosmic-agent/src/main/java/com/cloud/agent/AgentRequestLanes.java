@@ -0,0 +1,218 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.agent;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.cloud.agent.api.AgentControlCommand;
+import com.cloud.agent.api.CancelCommand;
+import com.cloud.agent.api.CheckHealthCommand;
+import com.cloud.agent.api.CheckNetworkCommand;
+import com.cloud.agent.api.CheckOnHostCommand;
+import com.cloud.agent.api.CheckStateCommand;
+import com.cloud.agent.api.CheckVirtualMachineCommand;
+import com.cloud.agent.api.Command;
+import com.cloud.agent.api.CronCommand;
+import com.cloud.agent.api.DeleteStoragePoolCommand;
+import com.cloud.agent.api.FenceCommand;
+import com.cloud.agent.api.GetFileStatsCommand;
+import com.cloud.agent.api.GetGPUStatsCommand;
+import com.cloud.agent.api.GetHostStatsCommand;
+import com.cloud.agent.api.GetStorageStatsCommand;
+import com.cloud.agent.api.GetVmDiskStatsCommand;
+import com.cloud.agent.api.GetVmIpAddressCommand;
+import com.cloud.agent.api.GetVmStatsCommand;
+import com.cloud.agent.api.GetVncPortCommand;
+import com.cloud.agent.api.MaintainCommand;
+import com.cloud.agent.api.ManageSnapshotCommand;
+import com.cloud.agent.api.MigrateWithStorageCommand;
+import com.cloud.agent.api.ModifyStoragePoolCommand;
+import com.cloud.agent.api.NetworkUsageCommand;
+import com.cloud.agent.api.PerformanceMonitorCommand;
+import com.cloud.agent.api.PingTestCommand;
+import com.cloud.agent.api.ReadyCommand;
+import com.cloud.agent.api.ShutdownCommand;
+import com.cloud.agent.api.SnapshotCommand;
+import com.cloud.agent.api.VMSnapshotBaseCommand;
+import com.cloud.agent.api.storage.SsCommand;
+import com.cloud.agent.api.storage.StorageCommand;
+import com.cloud.utils.NumbersUtil;
+import com.cloud.utils.concurrency.NamedThreadFactory;
+
+import org.apache.cloudstack.storage.command.StorageSubSystemCommand;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Executes the requests of the management server in lanes, so slow work cannot hold up the
+ * commands the management server uses to decide whether the host is alive.
+ *
+ * Every lane has its own threads and a bounded queue. A request goes to the lane of its slowest
+ * command. A request that does not fit in its lane is rejected rather than queued without limit.
+ *
+ * @config {@table
+ * || Param Name | Description | Values | Default ||
+ * || lane.control.workers / lane.control.queue | health, ready and maintenance | int | 2 / 100 ||
+ * || lane.ha.workers / lane.ha.queue | host and vm investigation and fencing | int | 4 / 100 ||
+ * || lane.stats.workers / lane.stats.queue | host, vm, storage and network statistics | int | 2 / 200 ||
+ * || lane.storage.workers / lane.storage.queue | copies, downloads, snapshots and other storage work | int | workers / 200 ||
+ * || lane.vm.workers / lane.vm.queue | vm lifecycle, migration and everything else | int | workers / 1000 ||
+ * }
+ */
+public class AgentRequestLanes {
+    private static final Logger s_logger = LoggerFactory.getLogger(AgentRequestLanes.class);
+
+    /**
+     * The lanes, from the fastest to the slowest work.
+     */
+    public enum Lane {
+        CONTROL, HA, STATS, VM, STORAGE;
+
+        public String getName() {
+            return name().toLowerCase();
+        }
+    }
+
+    private static final Map<Class<?>, Lane> s_lanes = new HashMap<Class<?>, Lane>();
+
+    static {
+        s_lanes.put(ReadyCommand.class, Lane.CONTROL);
+        s_lanes.put(CheckHealthCommand.class, Lane.CONTROL);
+        s_lanes.put(MaintainCommand.class, Lane.CONTROL);
+        s_lanes.put(ShutdownCommand.class, Lane.CONTROL);
+        s_lanes.put(CronCommand.class, Lane.CONTROL);
+        s_lanes.put(AgentControlCommand.class, Lane.CONTROL);
+        s_lanes.put(PingTestCommand.class, Lane.CONTROL);
+        s_lanes.put(CheckNetworkCommand.class, Lane.CONTROL);
+        s_lanes.put(CheckStateCommand.class, Lane.CONTROL);
+        s_lanes.put(CancelCommand.class, Lane.CONTROL);
+
+        // investigating and fencing other hosts can block on their storage, so it must not hold up the health checks
+        s_lanes.put(CheckOnHostCommand.class, Lane.HA);
+        s_lanes.put(FenceCommand.class, Lane.HA);
+        s_lanes.put(CheckVirtualMachineCommand.class, Lane.HA);
+
+        s_lanes.put(GetHostStatsCommand.class, Lane.STATS);
+        s_lanes.put(GetVmStatsCommand.class, Lane.STATS);
+        s_lanes.put(GetVmDiskStatsCommand.class, Lane.STATS);
+        s_lanes.put(GetStorageStatsCommand.class, Lane.STATS);
+        s_lanes.put(GetGPUStatsCommand.class, Lane.STATS);
+        s_lanes.put(GetFileStatsCommand.class, Lane.STATS);
+        s_lanes.put(GetVncPortCommand.class, Lane.STATS);
+        s_lanes.put(GetVmIpAddressCommand.class, Lane.STATS);
+        s_lanes.put(NetworkUsageCommand.class, Lane.STATS);
+        s_lanes.put(PerformanceMonitorCommand.class, Lane.STATS);
+
+        s_lanes.put(StorageSubSystemCommand.class, Lane.STORAGE);
+        s_lanes.put(StorageCommand.class, Lane.STORAGE);
+        s_lanes.put(SsCommand.class, Lane.STORAGE);
+        s_lanes.put(SnapshotCommand.class, Lane.STORAGE);
+        s_lanes.put(ManageSnapshotCommand.class, Lane.STORAGE);
+        s_lanes.put(VMSnapshotBaseCommand.class, Lane.STORAGE);
+        s_lanes.put(ModifyStoragePoolCommand.class, Lane.STORAGE);
+        s_lanes.put(DeleteStoragePoolCommand.class, Lane.STORAGE);
+        s_lanes.put(MigrateWithStorageCommand.class, Lane.STORAGE);
+    }
+
+    private final Map<Lane, ThreadPoolExecutor> _executors = new EnumMap<Lane, ThreadPoolExecutor>(Lane.class);
+
+    public AgentRequestLanes(final Properties properties, final int workers) {
+        createLane(Lane.CONTROL, properties, 2, 100);
+        createLane(Lane.HA, properties, 4, 100);
+        createLane(Lane.STATS, properties, 2, 200);
+        createLane(Lane.STORAGE, properties, workers, 200);
+        createLane(Lane.VM, properties, workers, 1000);
+    }
+
+    private void createLane(final Lane lane, final Properties properties, final int defaultWorkers, final int defaultQueue) {
+        final int workers = Math.max(1, NumbersUtil.parseInt(properties.getProperty("lane." + lane.getName() + ".workers"), defaultWorkers));
+        final int queue = Math.max(1, NumbersUtil.parseInt(properties.getProperty("lane." + lane.getName() + ".queue"), defaultQueue));
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(workers, workers, 1, TimeUnit.DAYS, new ArrayBlockingQueue<Runnable>(queue), new NamedThreadFactory(
+                "agentRequest-" + lane.getName()));
+        _executors.put(lane, executor);
+        s_logger.info("Request lane " + lane.getName() + " has " + workers + " workers and room for " + queue + " queued requests");
+    }
+
+    /**
+     * @return the lane of the slowest of the commands
+     */
+    public static Lane classify(final Command[] cmds) {
+        Lane lane = Lane.CONTROL;
+        for (final Command cmd : cmds) {
+            final Lane cmdLane = classify(cmd);
+            if (cmdLane.ordinal() > lane.ordinal()) {
+                lane = cmdLane;
+            }
+        }
+        return lane;
+    }
+
+    static Lane classify(final Command cmd) {
+        for (Class<?> clazz = cmd.getClass(); clazz != null && clazz != Command.class; clazz = clazz.getSuperclass()) {
+            final Lane lane = s_lanes.get(clazz);
+            if (lane != null) {
+                return lane;
+            }
+        }
+        return Lane.VM;
+    }
+
+    /**
+     * Queues the work in the lane of the commands.
+     *
+     * @throws RejectedExecutionException if the lane is full
+     */
+    public void submit(final Command[] cmds, final Callable<?> work) {
+        final Lane lane = classify(cmds);
+        try {
+            _executors.get(lane).submit(work);
+        } catch (final RejectedExecutionException e) {
+            s_logger.warn("Request lane " + lane.getName() + " is full with " + getQueueDepth(lane) + " queued requests");
+            throw e;
+        }
+    }
+
+    public int getQueueDepth(final Lane lane) {
+        return _executors.get(lane).getQueue().size();
+    }
+
+    /**
+     * @return the number of requests waiting in each lane, by lane name
+     */
+    public Map<String, Integer> getQueueDepths() {
+        final Map<String, Integer> depths = new LinkedHashMap<String, Integer>();
+        for (final Lane lane : Lane.values()) {
+            depths.put(lane.getName(), getQueueDepth(lane));
+        }
+        return depths;
+    }
+
+    public void shutdown() {
+        for (final ThreadPoolExecutor executor : _executors.values()) {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.agent;
+
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import com.cloud.agent.AgentRequestLanes.Lane;
+import com.cloud.agent.api.CheckHealthCommand;
+import com.cloud.agent.api.Command;
+import com.cloud.agent.api.ComputeChecksumCommand;
+import com.cloud.agent.api.FenceCommand;
+import com.cloud.agent.api.GetHostStatsCommand;
+import com.cloud.agent.api.MigrateCommand;
+import com.cloud.agent.api.ReadyCommand;
+import com.cloud.agent.api.StopCommand;
+
+import org.apache.cloudstack.storage.command.CopyCommand;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AgentRequestLanesTest {
+    @Test
+    public void classify() {
+        Assert.assertEquals(Lane.CONTROL, AgentRequestLanes.classify(new Command[] {new ReadyCommand()}));
+        Assert.assertEquals(Lane.CONTROL, AgentRequestLanes.classify(new Command[] {new CheckHealthCommand()}));
+        Assert.assertEquals(Lane.HA, AgentRequestLanes.classify(new Command[] {new FenceCommand()}));
+        Assert.assertEquals(Lane.STATS, AgentRequestLanes.classify(new Command[] {new GetHostStatsCommand("guid", "host", 1)}));
+        Assert.assertEquals(Lane.VM, AgentRequestLanes.classify(new Command[] {new MigrateCommand("i-2-10-VM", "10.0.0.2", false, null, false)}));
+        Assert.assertEquals(Lane.VM, AgentRequestLanes.classify(new Command[] {new StopCommand("i-2-10-VM", false, false)}));
+        Assert.assertEquals(Lane.STORAGE, AgentRequestLanes.classify(new Command[] {new CopyCommand(null, null, 0, false)}));
+        Assert.assertEquals(Lane.STORAGE, AgentRequestLanes.classify(new Command[] {new ComputeChecksumCommand()}));
+        // the slowest command decides
+        Assert.assertEquals(Lane.STORAGE, AgentRequestLanes.classify(new Command[] {new CheckHealthCommand(), new CopyCommand(null, null, 0, false)}));
+    }
+
+    @Test
+    public void fullLaneRejectsWithoutBlockingOthers() throws Exception {
+        final Properties properties = new Properties();
+        properties.setProperty("lane.storage.workers", "1");
+        properties.setProperty("lane.storage.queue", "2");
+        final AgentRequestLanes lanes = new AgentRequestLanes(properties, 4);
+        final Command[] copy = new Command[] {new CopyCommand(null, null, 0, false)};
+        final CountDownLatch release = new CountDownLatch(1);
+        final Callable<Boolean> blocked = () -> release.await(10, TimeUnit.SECONDS);
+
+        try {
+            lanes.submit(copy, blocked);
+            lanes.submit(copy, blocked);
+            lanes.submit(copy, blocked);
+            try {
+                lanes.submit(copy, blocked);
+                Assert.fail("The storage lane should be full");
+            } catch (final RejectedExecutionException e) {
+                // expected
+            }
+            Assert.assertEquals(Integer.valueOf(2), lanes.getQueueDepths().get("storage"));
+
+            final CountDownLatch health = new CountDownLatch(1);
+            lanes.submit(new Command[] {new CheckHealthCommand()}, () -> {
+                health.countDown();
+                return true;
+            });
+            Assert.assertTrue(health.await(10, TimeUnit.SECONDS));
+            Assert.assertEquals(Integer.valueOf(0), lanes.getQueueDepths().get("control"));
+        } finally {
+            release.countDown();
+            lanes.shutdown();
+        }
+    }
+
+    @Test
+    public void fencingDoesNotStarveHealthChecks() throws Exception {
+        final AgentRequestLanes lanes = new AgentRequestLanes(new Properties(), 4);
+        final Command[] fence = new Command[] {new FenceCommand()};
+        final CountDownLatch release = new CountDownLatch(1);
+        final Callable<Boolean> blocked = () -> release.await(10, TimeUnit.SECONDS);
+
+        try {
+            // more fencing than the ha lane has workers, so some of it queues
+            for (int i = 0; i < 6; i++) {
+                lanes.submit(fence, blocked);
+            }
+
+            final CountDownLatch ready = new CountDownLatch(2);
+            lanes.submit(new Command[] {new ReadyCommand()}, () -> {
+                ready.countDown();
+                return true;
+            });
+            lanes.submit(new Command[] {new CheckHealthCommand()}, () -> {
+                ready.countDown();
+                return true;
+            });
+            Assert.assertTrue(ready.await(10, TimeUnit.SECONDS));
+            Assert.assertTrue(lanes.getQueueDepth(Lane.HA) > 0);
+        } finally {
+            release.countDown();
+            lanes.shutdown();
+        }
+    }
+}
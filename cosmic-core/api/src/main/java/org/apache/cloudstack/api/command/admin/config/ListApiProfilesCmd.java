@@ -0,0 +1,174 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package org.apache.cloudstack.api.command.admin.config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import com.cloud.utils.StringUtils;
+import com.cloud.utils.profiler.CommandProfile;
+import com.cloud.utils.profiler.CommandProfile.PhaseProfile;
+import com.cloud.utils.profiler.CommandProfile.RepeatedStatement;
+import com.cloud.utils.profiler.CommandProfiler;
+import com.cloud.utils.profiler.CommandProfiler.Phase;
+import com.cloud.utils.profiler.Histogram;
+
+import org.apache.cloudstack.api.APICommand;
+import org.apache.cloudstack.api.ApiConstants;
+import org.apache.cloudstack.api.BaseListCmd;
+import org.apache.cloudstack.api.Parameter;
+import org.apache.cloudstack.api.response.ApiProfilePhaseResponse;
+import org.apache.cloudstack.api.response.ApiProfileResponse;
+import org.apache.cloudstack.api.response.ApiProfileStatementResponse;
+import org.apache.cloudstack.api.response.ListResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+@APICommand(name = "listApiProfiles", description = "Lists the profiles of the API commands sampled by this management server, most time consuming first. "
+        + "The share of the requests that is sampled is set by api.profiler.sample.rate and api.profiler.sample.rates.", responseObject = ApiProfileResponse.class,
+        requestHasSensitiveInfo = false, responseHasSensitiveInfo = false)
+public class ListApiProfilesCmd extends BaseListCmd {
+    public static final Logger s_logger = LoggerFactory.getLogger(ListApiProfilesCmd.class.getName());
+
+    private static final String s_name = "listapiprofilesresponse";
+
+    /////////////////////////////////////////////////////
+    //////////////// API parameters /////////////////////
+    /////////////////////////////////////////////////////
+
+    @Parameter(name = ApiConstants.NAME, type = CommandType.STRING, description = "lists the profile of this API command only")
+    private String name;
+
+    @Parameter(name = "reset", type = CommandType.BOOLEAN, description = "clears the profiles of all API commands after listing them")
+    private Boolean reset;
+
+    /////////////////////////////////////////////////////
+    /////////////////// Accessors ///////////////////////
+    /////////////////////////////////////////////////////
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isReset() {
+        return reset != null && reset;
+    }
+
+    /////////////////////////////////////////////////////
+    /////////////// API Implementation///////////////////
+    /////////////////////////////////////////////////////
+
+    @Override
+    public String getCommandName() {
+        return s_name;
+    }
+
+    @Override
+    public void execute() {
+        final List<CommandProfile> profiles = CommandProfiler.getProfiles();
+        Collections.sort(profiles, new Comparator<CommandProfile>() {
+            @Override
+            public int compare(final CommandProfile a, final CommandProfile b) {
+                return Long.compare(b.getTotal().getTime().getSum(), a.getTotal().getTime().getSum());
+            }
+        });
+        if (isReset()) {
+            CommandProfiler.reset();
+        }
+
+        final List<CommandProfile> matchingProfiles = new ArrayList<CommandProfile>();
+        for (final CommandProfile profile : profiles) {
+            if (name != null && !name.equalsIgnoreCase(profile.getCommand())) {
+                continue;
+            }
+            if (getKeyword() != null && !profile.getCommand().toLowerCase().contains(getKeyword().toLowerCase())) {
+                continue;
+            }
+            matchingProfiles.add(profile);
+        }
+        List<CommandProfile> pagedProfiles = StringUtils.applyPagination(matchingProfiles, getStartIndex(), getPageSizeVal());
+        if (pagedProfiles == null) {
+            pagedProfiles = matchingProfiles;
+        }
+
+        final List<ApiProfileResponse> profileResponses = new ArrayList<ApiProfileResponse>();
+        for (final CommandProfile profile : pagedProfiles) {
+            final ApiProfileResponse profileResponse = new ApiProfileResponse();
+            profileResponse.setName(profile.getCommand());
+            profileResponse.setCount(profile.getTotal().getTime().getCount());
+            profileResponse.setTotal(createPhaseResponse("total", profile.getTotal()));
+
+            final List<ApiProfilePhaseResponse> phaseResponses = new ArrayList<ApiProfilePhaseResponse>();
+            for (final Phase phase : Phase.values()) {
+                final PhaseProfile phaseProfile = profile.getPhase(phase);
+                if (phaseProfile.getTime().getCount() > 0) {
+                    phaseResponses.add(createPhaseResponse(phase.name().toLowerCase(), phaseProfile));
+                }
+            }
+            profileResponse.setPhases(phaseResponses);
+
+            final List<ApiProfileStatementResponse> statementResponses = new ArrayList<ApiProfileStatementResponse>();
+            for (final RepeatedStatement statement : profile.getRepeatedStatements()) {
+                final ApiProfileStatementResponse statementResponse = new ApiProfileStatementResponse();
+                statementResponse.setSql(statement.getSql());
+                statementResponse.setExecutions(statement.getExecutions());
+                statementResponse.setMaxExecutions(statement.getMaxExecutions());
+                statementResponse.setObjectName("repeatedstatement");
+                statementResponses.add(statementResponse);
+            }
+            profileResponse.setRepeatedStatements(statementResponses);
+
+            profileResponse.setObjectName("apiprofile");
+            profileResponses.add(profileResponse);
+        }
+
+        final ListResponse<ApiProfileResponse> response = new ListResponse<ApiProfileResponse>();
+        response.setResponses(profileResponses, matchingProfiles.size());
+        response.setResponseName(getCommandName());
+        setResponseObject(response);
+    }
+
+    private ApiProfilePhaseResponse createPhaseResponse(final String phaseName, final PhaseProfile profile) {
+        final Histogram time = profile.getTime();
+        final ApiProfilePhaseResponse response = new ApiProfilePhaseResponse();
+        response.setName(phaseName);
+        response.setCount(time.getCount());
+        response.setAvgTime(Math.round(time.getMean()));
+        response.setP50Time(time.getPercentile(50));
+        response.setP90Time(time.getPercentile(90));
+        response.setP99Time(time.getPercentile(99));
+        response.setMaxTime(time.getMax());
+
+        final StringBuilder histogram = new StringBuilder();
+        for (final Map.Entry<Long, Long> bucket : time.getBuckets().entrySet()) {
+            if (histogram.length() > 0) {
+                histogram.append(',');
+            }
+            histogram.append(bucket.getKey()).append(':').append(bucket.getValue());
+        }
+        response.setTimeHistogram(histogram.toString());
+
+        response.setAvgStatements(profile.getStatements().getMean());
+        response.setMaxStatements(profile.getStatements().getMax());
+        response.setAvgStatementTime(Math.round(profile.getStatementTime().getMean()));
+        response.setObjectName(phaseName.equals("total") ? "total" : "phase");
+        return response;
+    }
+}
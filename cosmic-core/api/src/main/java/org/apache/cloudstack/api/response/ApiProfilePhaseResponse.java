@@ -0,0 +1,113 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package org.apache.cloudstack.api.response;
+
+import com.cloud.serializer.Param;
+import com.google.gson.annotations.SerializedName;
+
+import org.apache.cloudstack.api.ApiConstants;
+import org.apache.cloudstack.api.BaseResponse;
+
+public class ApiProfilePhaseResponse extends BaseResponse {
+    @SerializedName(ApiConstants.NAME)
+    @Param(description = "the name of the phase")
+    private String name;
+
+    @SerializedName(ApiConstants.COUNT)
+    @Param(description = "the number of profiled executions that went through the phase")
+    private Long count;
+
+    @SerializedName("avgtime")
+    @Param(description = "the average wall time of the phase in microseconds, leaving out the phases nested in it")
+    private Long avgTime;
+
+    @SerializedName("p50time")
+    @Param(description = "the median wall time of the phase in microseconds, rounded up to the next power of two minus one")
+    private Long p50Time;
+
+    @SerializedName("p90time")
+    @Param(description = "the 90th percentile of the wall time of the phase in microseconds, rounded up to the next power of two minus one")
+    private Long p90Time;
+
+    @SerializedName("p99time")
+    @Param(description = "the 99th percentile of the wall time of the phase in microseconds, rounded up to the next power of two minus one")
+    private Long p99Time;
+
+    @SerializedName("maxtime")
+    @Param(description = "the longest wall time of the phase in microseconds")
+    private Long maxTime;
+
+    @SerializedName("timehistogram")
+    @Param(description = "the wall times of the phase as a comma separated list of upperbound:count, with upper bounds in microseconds")
+    private String timeHistogram;
+
+    @SerializedName("avgstatements")
+    @Param(description = "the average number of SQL statements executed in the phase")
+    private Double avgStatements;
+
+    @SerializedName("maxstatements")
+    @Param(description = "the most SQL statements executed in the phase by one execution")
+    private Long maxStatements;
+
+    @SerializedName("avgstatementtime")
+    @Param(description = "the average time in microseconds the SQL statements of the phase took to execute")
+    private Long avgStatementTime;
+
+    public void setName(final String name) {
+        this.name = name;
+    }
+
+    public void setCount(final Long count) {
+        this.count = count;
+    }
+
+    public void setAvgTime(final Long avgTime) {
+        this.avgTime = avgTime;
+    }
+
+    public void setP50Time(final Long p50Time) {
+        this.p50Time = p50Time;
+    }
+
+    public void setP90Time(final Long p90Time) {
+        this.p90Time = p90Time;
+    }
+
+    public void setP99Time(final Long p99Time) {
+        this.p99Time = p99Time;
+    }
+
+    public void setMaxTime(final Long maxTime) {
+        this.maxTime = maxTime;
+    }
+
+    public void setTimeHistogram(final String timeHistogram) {
+        this.timeHistogram = timeHistogram;
+    }
+
+    public void setAvgStatements(final Double avgStatements) {
+        this.avgStatements = avgStatements;
+    }
+
+    public void setMaxStatements(final Long maxStatements) {
+        this.maxStatements = maxStatements;
+    }
+
+    public void setAvgStatementTime(final Long avgStatementTime) {
+        this.avgStatementTime = avgStatementTime;
+    }
+}
@@ -0,0 +1,68 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package org.apache.cloudstack.api.response;
+
+import java.util.List;
+
+import com.cloud.serializer.Param;
+import com.google.gson.annotations.SerializedName;
+
+import org.apache.cloudstack.api.ApiConstants;
+import org.apache.cloudstack.api.BaseResponse;
+
+public class ApiProfileResponse extends BaseResponse {
+    @SerializedName(ApiConstants.NAME)
+    @Param(description = "the name of the API command, with /job appended for the executions of its async jobs")
+    private String name;
+
+    @SerializedName(ApiConstants.COUNT)
+    @Param(description = "the number of executions that were profiled")
+    private Long count;
+
+    @SerializedName("total")
+    @Param(description = "the profile of whole executions", responseObject = ApiProfilePhaseResponse.class)
+    private ApiProfilePhaseResponse total;
+
+    @SerializedName("phase")
+    @Param(description = "the profiles of the phases of the executions", responseObject = ApiProfilePhaseResponse.class)
+    private List<ApiProfilePhaseResponse> phases;
+
+    @SerializedName("repeatedstatement")
+    @Param(description = "the SQL statements executed repeatedly within one execution, which usually means they are executed once per row of another query",
+            responseObject = ApiProfileStatementResponse.class)
+    private List<ApiProfileStatementResponse> repeatedStatements;
+
+    public void setName(final String name) {
+        this.name = name;
+    }
+
+    public void setCount(final Long count) {
+        this.count = count;
+    }
+
+    public void setTotal(final ApiProfilePhaseResponse total) {
+        this.total = total;
+    }
+
+    public void setPhases(final List<ApiProfilePhaseResponse> phases) {
+        this.phases = phases;
+    }
+
+    public void setRepeatedStatements(final List<ApiProfileStatementResponse> repeatedStatements) {
+        this.repeatedStatements = repeatedStatements;
+    }
+}
@@ -0,0 +1,48 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package org.apache.cloudstack.api.response;
+
+import com.cloud.serializer.Param;
+import com.google.gson.annotations.SerializedName;
+
+import org.apache.cloudstack.api.BaseResponse;
+
+public class ApiProfileStatementResponse extends BaseResponse {
+    @SerializedName("sql")
+    @Param(description = "the SQL of the statement")
+    private String sql;
+
+    @SerializedName("executions")
+    @Param(description = "the number of profiled executions of the command that executed the statement repeatedly")
+    private Long executions;
+
+    @SerializedName("maxexecutions")
+    @Param(description = "the most times one execution of the command executed the statement")
+    private Long maxExecutions;
+
+    public void setSql(final String sql) {
+        this.sql = sql;
+    }
+
+    public void setExecutions(final Long executions) {
+        this.executions = executions;
+    }
+
+    public void setMaxExecutions(final Long maxExecutions) {
+        this.maxExecutions = maxExecutions;
+    }
+}
@@ -0,0 +1,89 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package org.apache.cloudstack.api.command.admin.config;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import com.cloud.configuration.ConfigurationService;
+import com.cloud.utils.profiler.CommandProfiler;
+
+import org.apache.cloudstack.api.response.ApiProfileResponse;
+import org.apache.cloudstack.api.response.ListResponse;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class ListApiProfilesCmdTest {
+
+    @Before
+    public void setUp() {
+        CommandProfiler.setSampleRates(1, null);
+        for (final String command : new String[]{"listHosts", "listZones", "listVirtualMachines"}) {
+            CommandProfiler.start(command);
+            CommandProfiler.finish();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        CommandProfiler.reset();
+        CommandProfiler.setSampleRates(0, null);
+    }
+
+    @Test
+    public void testExecuteWithoutPageListsAllProfiles() {
+        final ListResponse<ApiProfileResponse> response = execute(null, null);
+        Assert.assertEquals(3, response.getResponses().size());
+        Assert.assertEquals(Integer.valueOf(3), response.getCount());
+    }
+
+    @Test
+    public void testExecuteWithPageListsThatPageOnly() {
+        final Set<String> names = new HashSet<String>();
+
+        final ListResponse<ApiProfileResponse> first = execute(1, 2);
+        Assert.assertEquals(2, first.getResponses().size());
+        Assert.assertEquals(Integer.valueOf(3), first.getCount());
+        for (final ApiProfileResponse profile : first.getResponses()) {
+            names.add((String)ReflectionTestUtils.getField(profile, "name"));
+        }
+
+        final ListResponse<ApiProfileResponse> second = execute(2, 2);
+        Assert.assertEquals(1, second.getResponses().size());
+        Assert.assertEquals(Integer.valueOf(3), second.getCount());
+        names.add((String)ReflectionTestUtils.getField(second.getResponses().get(0), "name"));
+
+        Assert.assertEquals(3, names.size());
+        Assert.assertTrue(execute(3, 2).getResponses().isEmpty());
+    }
+
+    @SuppressWarnings("unchecked")
+    private ListResponse<ApiProfileResponse> execute(final Integer page, final Integer pageSize) {
+        final ListApiProfilesCmd cmd = new ListApiProfilesCmd();
+        cmd._configService = Mockito.mock(ConfigurationService.class);
+        Mockito.when(cmd._configService.getDefaultPageSize()).thenReturn(500L);
+        cmd.configure();
+        ReflectionTestUtils.setField(cmd, "page", page);
+        ReflectionTestUtils.setField(cmd, "pageSize", pageSize);
+        cmd.execute();
+        return (ListResponse<ApiProfileResponse>)cmd.getResponseObject();
+    }
+}
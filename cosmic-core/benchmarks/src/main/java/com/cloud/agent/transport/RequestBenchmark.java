@@ -0,0 +1,93 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.agent.transport;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.cloud.agent.api.Command;
+import com.cloud.agent.api.HostVmStateReportEntry;
+import com.cloud.agent.api.PingRoutingCommand;
+import com.cloud.host.Host;
+import com.cloud.vm.VirtualMachine.PowerState;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Serializes and parses the ping a host sends with the power state of its vms, the request the
+ * management server handles most. One vm keeps the request below the compression threshold, with
+ * hundreds it is compressed.
+ *
+ * Run with: java -cp target/classes:$(cat target/benchmark.classpath) com.cloud.agent.transport.RequestBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RequestBenchmark {
+
+    @Param({"1", "250"})
+    public int vms;
+
+    private Command[] _cmds;
+    private byte[] _bytes;
+
+    @Setup
+    public void setUp() {
+        final Map<String, HostVmStateReportEntry> report = new HashMap<String, HostVmStateReportEntry>();
+        for (int i = 0; i < vms; i++) {
+            report.put("i-2-" + (1000 + i) + "-VM", new HostVmStateReportEntry(i % 10 == 0 ? PowerState.PowerOff : PowerState.PowerOn, "kvm-host-01"));
+        }
+        _cmds = new Command[] {new PingRoutingCommand(Host.Type.Routing, 1L, report)};
+        _bytes = createRequest().getBytes();
+    }
+
+    private Request createRequest() {
+        final Request request = new Request(1L, 345049098498L, _cmds, true, false);
+        request.setSequence(4711L);
+        return request;
+    }
+
+    @Benchmark
+    public byte[] serialize() {
+        return createRequest().getBytes();
+    }
+
+    @Benchmark
+    public Command[] parse() throws Exception {
+        return Request.parse(_bytes).getCommands();
+    }
+
+    public static void main(final String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(RequestBenchmark.class.getSimpleName()).build()).run();
+    }
+}
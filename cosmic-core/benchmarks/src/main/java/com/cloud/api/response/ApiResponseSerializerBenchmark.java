@@ -0,0 +1,154 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.api.response;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import com.cloud.api.ApiDBUtils;
+import com.cloud.server.ManagementServer;
+import com.cloud.user.Account;
+import com.cloud.user.AccountVO;
+import com.cloud.user.UserVO;
+
+import org.apache.cloudstack.api.response.ListResponse;
+import org.apache.cloudstack.api.response.NicResponse;
+import org.apache.cloudstack.api.response.UserVmResponse;
+import org.apache.cloudstack.context.CallContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Serializes the response of listVirtualMachines with 100 vms of two nics each, as the root admin
+ * sees it. The management server behind ApiDBUtils is a stub that only knows its version.
+ *
+ * Run with: java -cp target/classes:$(cat target/benchmark.classpath) com.cloud.api.response.ApiResponseSerializerBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ApiResponseSerializerBenchmark {
+
+    private static final int VMS = 100;
+
+    @Param({"json", "xml"})
+    public String responseType;
+
+    private ListResponse<UserVmResponse> _response;
+
+    @Setup
+    public void setUp() throws Exception {
+        final Field ms = ApiDBUtils.class.getDeclaredField("s_ms");
+        ms.setAccessible(true);
+        ms.set(null, Proxy.newProxyInstance(ManagementServer.class.getClassLoader(), new Class<?>[] {ManagementServer.class},
+                (proxy, method, args) -> "getVersion".equals(method.getName()) ? "5.1.0.1-SNAPSHOT" : null));
+
+        CallContext.register(new UserVO(2L), new AccountVO("admin", 1L, null, Account.ACCOUNT_TYPE_ADMIN, UUID.randomUUID().toString()));
+
+        final Date created = new Date(1462096800000L);
+        final List<UserVmResponse> vms = new ArrayList<UserVmResponse>();
+        for (int i = 0; i < VMS; i++) {
+            final UserVmResponse vm = new UserVmResponse();
+            vm.setObjectName("virtualmachine");
+            vm.setId(new UUID(1, i).toString());
+            vm.setName("i-2-" + (1000 + i) + "-VM");
+            vm.setDisplayName("web-" + i);
+            vm.setAccountName("admin");
+            vm.setDomainId(new UUID(2, 1).toString());
+            vm.setDomainName("ROOT");
+            vm.setCreated(created);
+            vm.setState("Running");
+            vm.setHaEnable(true);
+            vm.setZoneId(new UUID(3, 1).toString());
+            vm.setZoneName("zone-01");
+            vm.setHostId(new UUID(4, i % 8).toString());
+            vm.setHostName("kvm-host-0" + i % 8);
+            vm.setTemplateId(new UUID(5, 1).toString());
+            vm.setTemplateName("CentOS 7");
+            vm.setTemplateDisplayText("CentOS 7 \"minimal\" <x86_64> & cloud-init");
+            vm.setPasswordEnabled(false);
+            vm.setServiceOfferingId(new UUID(6, 1).toString());
+            vm.setServiceOfferingName("2 vCPU, 2 GB");
+            vm.setCpuNumber(2);
+            vm.setCpuSpeed(2000);
+            vm.setMemory(2048);
+            vm.setCpuUsed("12.5%");
+            vm.setNetworkKbsRead(1024L * i);
+            vm.setNetworkKbsWrite(512L * i);
+            vm.setGuestOsId(new UUID(7, 1).toString());
+            vm.setRootDeviceId(0L);
+            vm.setRootDeviceType("ROOT");
+            vm.setHypervisor("KVM");
+            vm.setInstanceName("i-2-" + (1000 + i) + "-VM");
+            for (int n = 0; n < 2; n++) {
+                final NicResponse nic = new NicResponse();
+                nic.setObjectName("nic");
+                nic.setId(new UUID(8, i * 2 + n).toString());
+                nic.setNetworkid(new UUID(9, n).toString());
+                nic.setNetworkName("network-" + n);
+                nic.setNetmask("255.255.255.0");
+                nic.setGateway("10.1." + n + ".1");
+                nic.setIpaddress("10.1." + n + "." + (10 + i));
+                nic.setBroadcastUri("vlan://" + (100 + n));
+                nic.setTrafficType("Guest");
+                nic.setType("Isolated");
+                nic.setIsDefault(n == 0);
+                nic.setMacAddress(String.format("02:00:0%d:%02x:%02x:01", n, i / 256, i % 256));
+                nic.setDeviceId(String.valueOf(n));
+                vm.addNic(nic);
+            }
+            vms.add(vm);
+        }
+        _response = new ListResponse<UserVmResponse>();
+        _response.setResponses(vms, vms.size());
+        _response.setResponseName("listvirtualmachinesresponse");
+    }
+
+    @TearDown
+    public void tearDown() {
+        CallContext.unregister();
+    }
+
+    @Benchmark
+    public String serialize() {
+        return ApiResponseSerializer.toSerializedString(_response, responseType);
+    }
+
+    public static void main(final String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(ApiResponseSerializerBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,215 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * Compares two JMH result files and flags the benchmarks that got slower. A benchmark regressed
+ * when its score got worse by more than the threshold and by more than the errors of both scores
+ * together, so a noisy run does not count as a regression.
+ *
+ * Record a baseline before the change and the current results after it:
+ *
+ *   java -cp target/classes:$(cat target/benchmark.classpath) org.openjdk.jmh.Main -rf json -rff baseline.json
+ *   java -cp target/classes:$(cat target/benchmark.classpath) org.openjdk.jmh.Main -rf json -rff current.json
+ *   java -cp target/classes:$(cat target/benchmark.classpath) com.cloud.benchmarks.BenchmarkReport baseline.json current.json 10
+ *
+ * The report exits with 1 when a benchmark regressed, so a build can fail on it.
+ */
+public class BenchmarkReport {
+
+    public static final double DEFAULT_THRESHOLD = 10.0;
+
+    public enum Verdict {
+        REGRESSED, IMPROVED, UNCHANGED, ADDED, REMOVED
+    }
+
+    public static class Score {
+        private final double score;
+        private final double error;
+        private final String unit;
+        private final boolean higherIsBetter;
+
+        public Score(final double score, final double error, final String unit, final boolean higherIsBetter) {
+            this.score = score;
+            this.error = Double.isNaN(error) ? 0 : error;
+            this.unit = unit;
+            this.higherIsBetter = higherIsBetter;
+        }
+
+        public double getScore() {
+            return score;
+        }
+
+        public double getError() {
+            return error;
+        }
+
+        public String getUnit() {
+            return unit;
+        }
+    }
+
+    public static class Comparison {
+        private final String benchmark;
+        private final Score baseline;
+        private final Score current;
+        private final Verdict verdict;
+
+        Comparison(final String benchmark, final Score baseline, final Score current, final double threshold) {
+            this.benchmark = benchmark;
+            this.baseline = baseline;
+            this.current = current;
+            verdict = judge(threshold);
+        }
+
+        private Verdict judge(final double threshold) {
+            if (baseline == null) {
+                return Verdict.ADDED;
+            }
+            if (current == null) {
+                return Verdict.REMOVED;
+            }
+            final double worse = getWorsening();
+            if (Math.abs(worse) <= threshold || Math.abs(current.score - baseline.score) <= current.error + baseline.error) {
+                return Verdict.UNCHANGED;
+            }
+            return worse > 0 ? Verdict.REGRESSED : Verdict.IMPROVED;
+        }
+
+        /**
+         * @return how much worse the current score is than the baseline in percent, negative when it is better
+         */
+        public double getWorsening() {
+            if (baseline == null || current == null || baseline.score == 0) {
+                return 0;
+            }
+            final double change = (current.score - baseline.score) / baseline.score * 100;
+            return baseline.higherIsBetter ? -change : change;
+        }
+
+        public String getBenchmark() {
+            return benchmark;
+        }
+
+        public Verdict getVerdict() {
+            return verdict;
+        }
+    }
+
+    private final Map<String, Comparison> comparisons = new LinkedHashMap<String, Comparison>();
+
+    public BenchmarkReport(final Map<String, Score> baseline, final Map<String, Score> current, final double threshold) {
+        final Map<String, Score> all = new TreeMap<String, Score>(baseline);
+        all.putAll(current);
+        for (final String benchmark : all.keySet()) {
+            comparisons.put(benchmark, new Comparison(benchmark, baseline.get(benchmark), current.get(benchmark), threshold));
+        }
+    }
+
+    /**
+     * Reads the scores of a JMH result file written with -rf json, keyed on the benchmark and its parameters.
+     */
+    public static Map<String, Score> readResults(final Reader reader) {
+        final Map<String, Score> scores = new LinkedHashMap<String, Score>();
+        for (final JsonElement element : new JsonParser().parse(reader).getAsJsonArray()) {
+            final JsonObject result = element.getAsJsonObject();
+            final StringBuilder benchmark = new StringBuilder(result.get("benchmark").getAsString());
+            if (result.has("params")) {
+                final Map<String, String> params = new TreeMap<String, String>();
+                for (final Map.Entry<String, JsonElement> param : result.getAsJsonObject("params").entrySet()) {
+                    params.put(param.getKey(), param.getValue().getAsString());
+                }
+                benchmark.append(params);
+            }
+            final JsonObject metric = result.getAsJsonObject("primaryMetric");
+            final JsonElement error = metric.get("scoreError");
+            scores.put(benchmark.toString(), new Score(metric.get("score").getAsDouble(), error != null && error.isJsonPrimitive() ? parseDouble(error.getAsString()) : 0,
+                    metric.get("scoreUnit").getAsString(), "thrpt".equals(result.get("mode").getAsString())));
+        }
+        return scores;
+    }
+
+    private static double parseDouble(final String value) {
+        try {
+            return Double.parseDouble(value);
+        } catch (final NumberFormatException e) {
+            // JMH writes NaN as a string when there were too few iterations to tell the error
+            return 0;
+        }
+    }
+
+    public Map<String, Comparison> getComparisons() {
+        return comparisons;
+    }
+
+    public boolean hasRegressions() {
+        for (final Comparison comparison : comparisons.values()) {
+            if (comparison.getVerdict() == Verdict.REGRESSED) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void print(final PrintStream out) {
+        out.println(String.format("%-90s %14s %14s %-8s %9s  %s", "Benchmark", "Baseline", "Current", "Unit", "Worse", "Verdict"));
+        for (final Comparison comparison : comparisons.values()) {
+            final Score any = comparison.current != null ? comparison.current : comparison.baseline;
+            out.println(String.format("%-90s %14s %14s %-8s %8.1f%%  %s", comparison.benchmark, format(comparison.baseline), format(comparison.current), any.unit,
+                    comparison.getWorsening(), comparison.getVerdict()));
+        }
+    }
+
+    private static String format(final Score score) {
+        return score == null ? "-" : String.format("%.3f", score.score);
+    }
+
+    private static Map<String, Score> readResults(final String file) throws IOException {
+        try (Reader reader = new InputStreamReader(Files.newInputStream(Paths.get(file)), StandardCharsets.UTF_8)) {
+            return readResults(reader);
+        }
+    }
+
+    public static void main(final String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: BenchmarkReport <baseline.json> <current.json> [threshold percent, default " + DEFAULT_THRESHOLD + "]");
+            System.exit(2);
+        }
+        final double threshold = args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_THRESHOLD;
+        final BenchmarkReport report = new BenchmarkReport(readResults(args[0]), readResults(args[1]), threshold);
+        report.print(System.out);
+        if (report.hasRegressions()) {
+            System.out.println("Benchmarks regressed by more than " + threshold + "%");
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package com.cloud.resource;
+
+import java.util.concurrent.TimeUnit;
+
+import com.cloud.agent.api.Answer;
+import com.cloud.agent.api.CheckHealthCommand;
+import com.cloud.agent.api.Command;
+import com.cloud.agent.api.MaintainCommand;
+import com.cloud.agent.api.ReadyCommand;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Finds the resource wrappers of a package once in a fresh JVM, as a request wrapper does when an
+ * agent starts: once from the index written by ResourceWrapperProcessor and once by scanning the
+ * classpath with Reflections.
+ *
+ * Run with: java -cp target/classes:$(cat target/benchmark.classpath) com.cloud.resource.ResourceWrapperIndexBenchmark
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(5)
+public class ResourceWrapperIndexBenchmark {
+
+    private static final String PACKAGE = "com.cloud.resource";
+
+    @ResourceWrapper(handles = ReadyCommand.class)
+    public static final class ReadyWrapper extends CommandWrapper<ReadyCommand, Answer, ServerResource> {
+        @Override
+        public Answer execute(final ReadyCommand command, final ServerResource serverResource) {
+            return new Answer(command);
+        }
+    }
+
+    @ResourceWrapper(handles = CheckHealthCommand.class)
+    public static final class CheckHealthWrapper extends CommandWrapper<CheckHealthCommand, Answer, ServerResource> {
+        @Override
+        public Answer execute(final CheckHealthCommand command, final ServerResource serverResource) {
+            return new Answer(command);
+        }
+    }
+
+    @ResourceWrapper(handles = MaintainCommand.class)
+    public static final class MaintainWrapper extends CommandWrapper<MaintainCommand, Answer, ServerResource> {
+        @Override
+        public Answer execute(final MaintainCommand command, final ServerResource serverResource) {
+            return new Answer(command);
+        }
+    }
+
+    @Benchmark
+    @SuppressWarnings("rawtypes")
+    public Object loadIndex() {
+        return new RequestWrapperStub().processAnnotations(ResourceWrapperIndex.load(PACKAGE));
+    }
+
+    @Benchmark
+    @SuppressWarnings("rawtypes")
+    public Object scanClasspath() {
+        return new RequestWrapperStub().processAnnotations(ResourceWrapperIndex.scan(PACKAGE));
+    }
+
+    private static final class RequestWrapperStub extends RequestWrapper {
+        @Override
+        public Answer execute(final Command command, final ServerResource serverResource) {
+            return null;
+        }
+    }
+
+    public static void main(final String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(ResourceWrapperIndexBenchmark.class.getSimpleName()).build()).run();
+    }
+}
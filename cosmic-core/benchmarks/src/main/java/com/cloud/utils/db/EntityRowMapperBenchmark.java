@@ -0,0 +1,183 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.utils.db;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetMetaDataImpl;
+import javax.sql.rowset.RowSetProvider;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Hydrates 10k rows from an in memory result set, once with the column map lookup and reflection
+ * that was used for every column before the row mappers, and once with the row mapper of the DAO.
+ *
+ * Run with: java -cp target/classes:$(cat target/benchmark.classpath) com.cloud.utils.db.EntityRowMapperBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class EntityRowMapperBenchmark {
+
+    private static final int ROWS = 10000;
+
+    public enum State {
+        Starting, Running, Stopped
+    }
+
+    @Entity
+    @Table(name = "bench")
+    public static class BenchVO {
+        @Id
+        @Column(name = "id")
+        long id;
+
+        @Column(name = "uuid")
+        String uuid;
+
+        @Column(name = "name")
+        String name;
+
+        @Column(name = "account_id")
+        long accountId;
+
+        @Column(name = "host_id")
+        Long hostId;
+
+        @Column(name = "cpu")
+        int cpu;
+
+        @Column(name = "ram")
+        Integer ram;
+
+        @Column(name = "ha_enabled")
+        boolean haEnabled;
+
+        @Column(name = "state")
+        @Enumerated(value = EnumType.STRING)
+        State state;
+
+        @Column(name = "created")
+        Date created;
+
+        public BenchVO() {
+        }
+    }
+
+    public static class BenchDao extends GenericDaoBase<BenchVO, Long> {
+    }
+
+    private BenchDao _dao;
+    private CachedRowSet _rows;
+
+    @Setup
+    public void setUp() throws SQLException {
+        _dao = new BenchDao();
+
+        final RowSetMetaDataImpl meta = new RowSetMetaDataImpl();
+        final String[] columns = {"id", "uuid", "name", "account_id", "host_id", "cpu", "ram", "ha_enabled", "state", "created"};
+        final int[] types = {Types.BIGINT, Types.VARBINARY, Types.VARBINARY, Types.BIGINT, Types.BIGINT, Types.INTEGER, Types.INTEGER, Types.BOOLEAN,
+                Types.VARCHAR, Types.TIMESTAMP};
+        meta.setColumnCount(columns.length);
+        for (int i = 0; i < columns.length; i++) {
+            meta.setTableName(i + 1, "bench");
+            meta.setColumnName(i + 1, columns[i]);
+            meta.setColumnLabel(i + 1, columns[i]);
+            meta.setColumnType(i + 1, types[i]);
+            meta.setNullable(i + 1, ResultSetMetaData.columnNullable);
+        }
+
+        _rows = RowSetProvider.newFactory().createCachedRowSet();
+        _rows.setMetaData(meta);
+        final Timestamp created = Timestamp.valueOf("2016-05-01 10:00:00");
+        for (int row = 0; row < ROWS; row++) {
+            _rows.moveToInsertRow();
+            _rows.updateLong(1, row);
+            _rows.updateBytes(2, ("uuid-" + row).getBytes(StandardCharsets.UTF_8));
+            _rows.updateBytes(3, ("i-2-" + row + "-VM").getBytes(StandardCharsets.UTF_8));
+            _rows.updateLong(4, 2);
+            if (row % 2 == 0) {
+                _rows.updateLong(5, 1);
+            } else {
+                _rows.updateNull(5);
+            }
+            _rows.updateInt(6, 2);
+            _rows.updateInt(7, 2048);
+            _rows.updateBoolean(8, true);
+            _rows.updateString(9, State.values()[row % 3].name());
+            _rows.updateTimestamp(10, created);
+            _rows.insertRow();
+            _rows.moveToCurrentRow();
+        }
+    }
+
+    @Benchmark
+    public void columnLookup(final Blackhole bh) throws SQLException {
+        _rows.beforeFirst();
+        while (_rows.next()) {
+            final BenchVO vo = new BenchVO();
+            final ResultSetMetaData meta = _rows.getMetaData();
+            for (int index = 1, max = meta.getColumnCount(); index <= max; index++) {
+                _dao.setField(vo, _rows, meta, index);
+            }
+            bh.consume(vo);
+        }
+    }
+
+    @Benchmark
+    public void rowMapper(final Blackhole bh) throws SQLException {
+        _rows.beforeFirst();
+        while (_rows.next()) {
+            final BenchVO vo = new BenchVO();
+            _dao.getBinding(_rows, vo).map(vo, _rows);
+            bh.consume(vo);
+        }
+    }
+
+    public static void main(final String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(EntityRowMapperBenchmark.class.getSimpleName()).build()).run();
+    }
+}
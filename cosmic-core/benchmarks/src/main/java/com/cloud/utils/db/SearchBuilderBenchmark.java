@@ -0,0 +1,222 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.utils.db;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+import com.cloud.utils.db.SearchCriteria.Op;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Generates the SQL of a search on vms joined with their host, the way search() does for a DAO
+ * with a removed column: the criteria is created from the builder, its parameters are set and the
+ * statement is built from it. The statement is built once without and once with the cache of
+ * search statements per shape, which looks the statement up without building the where clause.
+ *
+ * Run with: java -cp target/classes:$(cat target/benchmark.classpath) com.cloud.utils.db.SearchBuilderBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SearchBuilderBenchmark {
+
+    public enum Status {
+        Up, Down, Disconnected
+    }
+
+    @Entity
+    @Table(name = "bench_host")
+    public static class BenchHostVO {
+        @Id
+        @Column(name = "id")
+        long id;
+
+        @Column(name = "name")
+        String name;
+
+        @Column(name = "status")
+        @Enumerated(value = EnumType.STRING)
+        Status status;
+
+        @Column(name = GenericDao.REMOVED_COLUMN)
+        Date removed;
+
+        public BenchHostVO() {
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public Date getRemoved() {
+            return removed;
+        }
+    }
+
+    @Entity
+    @Table(name = "bench_vm")
+    public static class BenchVmVO {
+        @Id
+        @Column(name = "id")
+        long id;
+
+        @Column(name = "name")
+        String name;
+
+        @Column(name = "account_id")
+        long accountId;
+
+        @Column(name = "host_id")
+        Long hostId;
+
+        @Column(name = "state")
+        @Enumerated(value = EnumType.STRING)
+        EntityRowMapperBenchmark.State state;
+
+        @Column(name = GenericDao.REMOVED_COLUMN)
+        Date removed;
+
+        public BenchVmVO() {
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getAccountId() {
+            return accountId;
+        }
+
+        public Long getHostId() {
+            return hostId;
+        }
+
+        public EntityRowMapperBenchmark.State getState() {
+            return state;
+        }
+
+        public Date getRemoved() {
+            return removed;
+        }
+    }
+
+    public static class BenchHostDao extends GenericDaoBase<BenchHostVO, Long> {
+    }
+
+    public static class BenchVmDao extends GenericDaoBase<BenchVmVO, Long> {
+    }
+
+    private BenchVmDao _vmDao;
+    private SearchBuilder<BenchVmVO> _search;
+    private Filter _filter;
+
+    @Setup
+    public void setUp() {
+        final BenchHostDao hostDao = new BenchHostDao();
+        _vmDao = new BenchVmDao();
+
+        final SearchBuilder<BenchHostVO> hostSearch = hostDao.createSearchBuilder();
+        hostSearch.and("status", hostSearch.entity().getStatus(), Op.EQ);
+
+        _search = _vmDao.createSearchBuilder();
+        _search.and("account", _search.entity().getAccountId(), Op.EQ);
+        _search.and("states", _search.entity().getState(), Op.IN);
+        _search.and("name", _search.entity().getName(), Op.LIKE);
+        _search.join("host", hostSearch, _search.entity().getHostId(), hostSearch.entity().getId(), JoinBuilder.JoinType.INNER);
+        _search.done();
+
+        _filter = new Filter(BenchVmVO.class, "id", true, 0L, 500L);
+    }
+
+    private SearchCriteria<BenchVmVO> createCriteria() {
+        final SearchCriteria<BenchVmVO> sc = _search.create();
+        sc.setParameters("account", 2L);
+        sc.setParameters("states", EntityRowMapperBenchmark.State.Starting, EntityRowMapperBenchmark.State.Running);
+        sc.setJoinParameters("host", "status", Status.Up);
+        sc.addAnd("removed", Op.NULL);
+        return sc;
+    }
+
+    @Benchmark
+    public SearchCriteria<BenchVmVO> criteria() {
+        return createCriteria();
+    }
+
+    @Benchmark
+    public String whereClause() {
+        return createCriteria().getWhereClause();
+    }
+
+    @Benchmark
+    public String selectBuilt() {
+        final SearchCriteria<BenchVmVO> sc = createCriteria();
+        final String clause = sc.getWhereClause();
+        final StringBuilder str = _vmDao.createPartialSelectSql(sc, true, false);
+        str.append(clause);
+        _vmDao.addJoins(str, sc.getJoins());
+        _vmDao.addGroupBy(str, sc);
+        _vmDao.addFilter(str, _filter);
+        return str.toString();
+    }
+
+    @Benchmark
+    public String selectCached() {
+        final SearchCriteria<BenchVmVO> sc = createCriteria();
+        final StringBuilder str = new StringBuilder(_vmDao.getSearchSql(sc, null, false));
+        _vmDao.addFilter(str, _filter);
+        return str.toString();
+    }
+
+    public static void main(final String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(SearchBuilderBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,123 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.utils.net;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the address math of NetUtils that the network and ip address managers do for every
+ * allocation over 1k addresses and cidrs. The addresses come from a random generator with a
+ * fixed seed, so every run works on the same ones.
+ *
+ * Run with: java -cp target/classes:$(cat target/benchmark.classpath) com.cloud.utils.net.NetUtilsBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class NetUtilsBenchmark {
+
+    private static final int ADDRESSES = 1024;
+
+    private String[] _ips;
+    private long[] _longs;
+    private String[] _cidrs;
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(42);
+        _ips = new String[ADDRESSES];
+        _longs = new long[ADDRESSES];
+        _cidrs = new String[ADDRESSES];
+        for (int i = 0; i < ADDRESSES; i++) {
+            _longs[i] = (10L << 24) | random.nextInt(1 << 24);
+            _ips[i] = NetUtils.long2Ip(_longs[i]);
+            final int size = 8 + random.nextInt(23);
+            _cidrs[i] = NetUtils.long2Ip(_longs[i] & (0xffffffffL << (32 - size))) + "/" + size;
+        }
+    }
+
+    @Benchmark
+    public void ip2Long(final Blackhole bh) {
+        for (final String ip : _ips) {
+            bh.consume(NetUtils.ip2Long(ip));
+        }
+    }
+
+    @Benchmark
+    public void long2Ip(final Blackhole bh) {
+        for (final long ip : _longs) {
+            bh.consume(NetUtils.long2Ip(ip));
+        }
+    }
+
+    @Benchmark
+    public void isValidIp(final Blackhole bh) {
+        for (final String ip : _ips) {
+            bh.consume(NetUtils.isValidIp(ip));
+        }
+    }
+
+    @Benchmark
+    public void cidrToLong(final Blackhole bh) {
+        for (final String cidr : _cidrs) {
+            bh.consume(NetUtils.cidrToLong(cidr));
+        }
+    }
+
+    @Benchmark
+    public void isIpWithinCidrRange(final Blackhole bh) {
+        for (int i = 0; i < ADDRESSES; i++) {
+            bh.consume(NetUtils.isIpWithtInCidrRange(_ips[i], _cidrs[(i + 1) % ADDRESSES]));
+        }
+    }
+
+    @Benchmark
+    public void isNetworksOverlap(final Blackhole bh) {
+        for (int i = 0; i < ADDRESSES; i++) {
+            bh.consume(NetUtils.isNetworksOverlap(_cidrs[i], _cidrs[(i + 1) % ADDRESSES]));
+        }
+    }
+
+    @Benchmark
+    public void getCidrNetmask(final Blackhole bh) {
+        for (final String cidr : _cidrs) {
+            bh.consume(NetUtils.getCidrNetmask(cidr));
+        }
+    }
+
+    public static void main(final String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(NetUtilsBenchmark.class.getSimpleName()).build()).run();
+    }
+}
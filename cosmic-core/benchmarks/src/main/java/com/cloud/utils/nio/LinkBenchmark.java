@@ -0,0 +1,331 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.utils.nio;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketOption;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.spi.SelectorProvider;
+import java.security.KeyStore;
+import java.security.Security;
+import java.util.Collections;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.TrustManagerFactory;
+
+import org.apache.cloudstack.utils.security.SSLUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Frames a packet the way an agent sends it to the management server: Link.write() encrypts it in
+ * SSL records of at most 16k behind a length header, and Link.read() of the receiving link takes the
+ * headers off and decrypts it again. The two ends are SSL engines that did their handshake with each
+ * other, the management server end with the fail-safe keystore, and the socket is a buffer in memory.
+ *
+ * Run with: java -cp target/classes:$(cat target/benchmark.classpath) com.cloud.utils.nio.LinkBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LinkBenchmark {
+
+    @Param({"512", "65536"})
+    public int size;
+
+    private byte[] _packet;
+    private SSLEngine _agentEngine;
+    private Link _serverLink;
+    private MemoryChannel _channel;
+
+    @Setup
+    public void setUp() throws Exception {
+        _packet = new byte[size];
+        new Random(42).nextBytes(_packet);
+
+        // Links only speak TLSv1, which newer JDKs disable
+        final String disabled = Security.getProperty("jdk.tls.disabledAlgorithms");
+        if (disabled != null) {
+            Security.setProperty("jdk.tls.disabledAlgorithms", disabled.replaceAll("(^|,)\\s*TLSv1\\s*(?=,|$)", ""));
+        }
+
+        final KeyStore ks = KeyStore.getInstance("JKS");
+        final char[] passphrase = "vmops.com".toCharArray();
+        try (InputStream stream = Link.class.getResourceAsStream("/cloud.keystore")) {
+            ks.load(stream, passphrase);
+        }
+        final KeyManagerFactory kmf = KeyManagerFactory.getInstance("SunX509");
+        kmf.init(ks, passphrase);
+        final TrustManagerFactory tmf = TrustManagerFactory.getInstance("SunX509");
+        tmf.init(ks);
+        final SSLContext serverContext = SSLUtils.getSSLContext();
+        serverContext.init(kmf.getKeyManagers(), tmf.getTrustManagers(), null);
+
+        final SSLEngine serverEngine = serverContext.createSSLEngine();
+        serverEngine.setUseClientMode(false);
+        serverEngine.setNeedClientAuth(false);
+        serverEngine.setEnabledProtocols(SSLUtils.getSupportedProtocols(serverEngine.getEnabledProtocols()));
+
+        _agentEngine = Link.initSSLContext(true).createSSLEngine("localhost", 8250);
+        _agentEngine.setUseClientMode(true);
+        _agentEngine.setEnabledProtocols(SSLUtils.getSupportedProtocols(_agentEngine.getEnabledProtocols()));
+
+        handshake(_agentEngine, serverEngine);
+
+        _serverLink = new Link(new InetSocketAddress("localhost", 8250), null);
+        _serverLink.setSSLEngine(serverEngine);
+        _channel = new MemoryChannel(size * 2 + 64 * 1024);
+    }
+
+    /**
+     * Runs the handshake between the two engines by handing the records of one directly to the other.
+     */
+    private static void handshake(final SSLEngine client, final SSLEngine server) throws IOException {
+        final int packetSize = Math.max(client.getSession().getPacketBufferSize(), server.getSession().getPacketBufferSize());
+        final ByteBuffer clientToServer = ByteBuffer.allocate(packetSize * 4);
+        final ByteBuffer serverToClient = ByteBuffer.allocate(packetSize * 4);
+        final ByteBuffer application = ByteBuffer.allocate(Math.max(client.getSession().getApplicationBufferSize(), server.getSession().getApplicationBufferSize()));
+
+        client.beginHandshake();
+        server.beginHandshake();
+        for (int steps = 0; client.getHandshakeStatus() != HandshakeStatus.NOT_HANDSHAKING || server.getHandshakeStatus() != HandshakeStatus.NOT_HANDSHAKING; steps++) {
+            if (steps > 1000) {
+                throw new IOException("SSL handshake did not finish, client " + client.getHandshakeStatus() + ", server " + server.getHandshakeStatus());
+            }
+            handshakeStep(client, serverToClient, clientToServer, application);
+            handshakeStep(server, clientToServer, serverToClient, application);
+        }
+    }
+
+    private static void handshakeStep(final SSLEngine engine, final ByteBuffer in, final ByteBuffer out, final ByteBuffer application) throws IOException {
+        switch (engine.getHandshakeStatus()) {
+            case NEED_WRAP:
+                check(engine.wrap(ByteBuffer.allocate(0), out));
+                break;
+            case NEED_UNWRAP:
+                in.flip();
+                if (in.hasRemaining()) {
+                    application.clear();
+                    final SSLEngineResult result = engine.unwrap(in, application);
+                    if (result.getStatus() != SSLEngineResult.Status.BUFFER_UNDERFLOW) {
+                        check(result);
+                    }
+                }
+                in.compact();
+                break;
+            case NEED_TASK:
+                Runnable task;
+                while ((task = engine.getDelegatedTask()) != null) {
+                    task.run();
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static void check(final SSLEngineResult result) throws IOException {
+        if (result.getStatus() != SSLEngineResult.Status.OK) {
+            throw new IOException("SSL handshake failed: " + result);
+        }
+    }
+
+    @Benchmark
+    public int write() throws IOException {
+        _channel.clear();
+        Link.write(_channel, new ByteBuffer[] {ByteBuffer.wrap(_packet)}, _agentEngine);
+        return _channel.available();
+    }
+
+    @Benchmark
+    public byte[] writeAndRead() throws IOException {
+        _channel.clear();
+        Link.write(_channel, new ByteBuffer[] {ByteBuffer.wrap(_packet)}, _agentEngine);
+        byte[] data;
+        while ((data = _serverLink.read(_channel)) == null) {
+            if (_channel.available() == 0) {
+                throw new IOException("Packet was not complete after reading all " + _packet.length + " bytes");
+            }
+        }
+        return data;
+    }
+
+    /**
+     * A socket that reads back what was written to it.
+     */
+    private static class MemoryChannel extends SocketChannel {
+        private final ByteBuffer _buffer;
+
+        MemoryChannel(final int capacity) {
+            super(SelectorProvider.provider());
+            _buffer = ByteBuffer.allocate(capacity);
+            _buffer.flip();
+        }
+
+        void clear() {
+            _buffer.clear();
+            _buffer.flip();
+        }
+
+        int available() {
+            return _buffer.remaining();
+        }
+
+        @Override
+        public int write(final ByteBuffer src) {
+            final int written = src.remaining();
+            _buffer.compact();
+            _buffer.put(src);
+            _buffer.flip();
+            return written;
+        }
+
+        @Override
+        public long write(final ByteBuffer[] srcs, final int offset, final int length) {
+            long written = 0;
+            for (int i = offset; i < offset + length; i++) {
+                written += write(srcs[i]);
+            }
+            return written;
+        }
+
+        @Override
+        public int read(final ByteBuffer dst) {
+            if (!_buffer.hasRemaining()) {
+                return 0;
+            }
+            final int read = Math.min(dst.remaining(), _buffer.remaining());
+            final ByteBuffer slice = _buffer.slice();
+            slice.limit(read);
+            dst.put(slice);
+            _buffer.position(_buffer.position() + read);
+            return read;
+        }
+
+        @Override
+        public long read(final ByteBuffer[] dsts, final int offset, final int length) {
+            long read = 0;
+            for (int i = offset; i < offset + length; i++) {
+                read += read(dsts[i]);
+            }
+            return read;
+        }
+
+        @Override
+        public SocketChannel bind(final SocketAddress local) {
+            return this;
+        }
+
+        @Override
+        public <T> SocketChannel setOption(final SocketOption<T> name, final T value) {
+            return this;
+        }
+
+        @Override
+        public <T> T getOption(final SocketOption<T> name) {
+            return null;
+        }
+
+        @Override
+        public Set<SocketOption<?>> supportedOptions() {
+            return Collections.emptySet();
+        }
+
+        @Override
+        public SocketChannel shutdownInput() {
+            return this;
+        }
+
+        @Override
+        public SocketChannel shutdownOutput() {
+            return this;
+        }
+
+        @Override
+        public Socket socket() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean isConnected() {
+            return true;
+        }
+
+        @Override
+        public boolean isConnectionPending() {
+            return false;
+        }
+
+        @Override
+        public boolean connect(final SocketAddress remote) {
+            return true;
+        }
+
+        @Override
+        public boolean finishConnect() {
+            return true;
+        }
+
+        @Override
+        public SocketAddress getRemoteAddress() {
+            return null;
+        }
+
+        @Override
+        public SocketAddress getLocalAddress() {
+            return null;
+        }
+
+        @Override
+        protected void implCloseSelectableChannel() {
+        }
+
+        @Override
+        protected void implConfigureBlocking(final boolean block) {
+        }
+    }
+
+    public static void main(final String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(LinkBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,70 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.benchmarks;
+
+import java.io.StringReader;
+import java.util.Map;
+
+import com.cloud.benchmarks.BenchmarkReport.Score;
+import com.cloud.benchmarks.BenchmarkReport.Verdict;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BenchmarkReportTest {
+
+    private static String result(final String benchmark, final String mode, final String params, final double score, final String error) {
+        return "{\"benchmark\":\"" + benchmark + "\",\"mode\":\"" + mode + "\"," + (params != null ? "\"params\":" + params + "," : "")
+                + "\"primaryMetric\":{\"score\":" + score + ",\"scoreError\":" + error + ",\"scoreUnit\":\"us/op\"}}";
+    }
+
+    private static Map<String, Score> results(final String... results) {
+        return BenchmarkReport.readResults(new StringReader("[" + String.join(",", results) + "]"));
+    }
+
+    @Test
+    public void flagsRegressionsBeyondThreshold() {
+        final Map<String, Score> baseline = results(
+                result("a.Slower", "avgt", null, 100, "1.0"),
+                result("a.Noisy", "avgt", null, 100, "20.0"),
+                result("a.Faster", "avgt", null, 100, "1.0"),
+                result("a.Throughput", "thrpt", null, 1000, "10.0"),
+                result("a.Params", "avgt", "{\"vms\":\"1\"}", 10, "0.1"),
+                result("a.Removed", "avgt", null, 10, "\"NaN\""));
+        final Map<String, Score> current = results(
+                result("a.Slower", "avgt", null, 120, "1.0"),
+                result("a.Noisy", "avgt", null, 125, "20.0"),
+                result("a.Faster", "avgt", null, 50, "1.0"),
+                result("a.Throughput", "thrpt", null, 800, "10.0"),
+                result("a.Params", "avgt", "{\"vms\":\"1\"}", 10.5, "0.1"),
+                result("a.Added", "avgt", null, 10, "\"NaN\""));
+
+        final BenchmarkReport report = new BenchmarkReport(baseline, current, 10);
+        final Map<String, BenchmarkReport.Comparison> comparisons = report.getComparisons();
+        Assert.assertEquals(Verdict.REGRESSED, comparisons.get("a.Slower").getVerdict());
+        Assert.assertEquals(20.0, comparisons.get("a.Slower").getWorsening(), 0.001);
+        Assert.assertEquals(Verdict.UNCHANGED, comparisons.get("a.Noisy").getVerdict());
+        Assert.assertEquals(Verdict.IMPROVED, comparisons.get("a.Faster").getVerdict());
+        Assert.assertEquals(Verdict.REGRESSED, comparisons.get("a.Throughput").getVerdict());
+        Assert.assertEquals(Verdict.UNCHANGED, comparisons.get("a.Params{vms=1}").getVerdict());
+        Assert.assertEquals(Verdict.REMOVED, comparisons.get("a.Removed").getVerdict());
+        Assert.assertEquals(Verdict.ADDED, comparisons.get("a.Added").getVerdict());
+        Assert.assertTrue(report.hasRegressions());
+
+        Assert.assertFalse(new BenchmarkReport(baseline, baseline, 10).hasRegressions());
+    }
+}
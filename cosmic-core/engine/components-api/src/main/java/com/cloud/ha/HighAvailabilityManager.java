@@ -24,10 +24,22 @@ import com.cloud.host.Status;
 import com.cloud.utils.component.Manager;
 import com.cloud.vm.VMInstanceVO;
 
+import org.apache.cloudstack.framework.config.ConfigKey;
+
 /**
  * HighAvailabilityManager checks to make sure the VMs are running fine.
  */
 public interface HighAvailabilityManager extends Manager {
+
+    static final ConfigKey<Integer> HaBatchSize = new ConfigKey<Integer>("Advanced", Integer.class, "ha.batch.size", "1",
+        "Number of HA work items a worker claims at once, 1 disables batching", false);
+
+    static final ConfigKey<Integer> HaBatchWorkers = new ConfigKey<Integer>("Advanced", Integer.class, "ha.batch.workers", "10",
+        "Number of work items of an HA batch that are processed in parallel", false);
+
+    static final ConfigKey<Integer> HaClusterConcurrency = new ConfigKey<Integer>("Advanced", Integer.class, "ha.cluster.concurrency", "5",
+        "Maximum number of HA work items that are processed in parallel for one cluster", false);
+
     public enum WorkType {
         Migration,  // Migrating VMs off of a host.
         Stop,       // Stops a VM for storage pool migration purposes.  This should be obsolete now.
@@ -1237,6 +1237,7 @@ public class AgentManagerImpl extends ManagerBase implements AgentManager, Handl
                         handleCommands(attache, request.getSequence(), new Command[] { cmd });
                         if (cmd instanceof PingCommand) {
                             final long cmdHostId = ((PingCommand) cmd).getHostId();
+                            logRequestQueueDepths(cmdHostId, ((PingCommand) cmd).getRequestQueueDepths());
 
                             // if the router is sending a ping, verify the
                             // gateway was pingable
@@ -1300,6 +1301,18 @@ public class AgentManagerImpl extends ManagerBase implements AgentManager, Handl
             }
         }
 
+        private void logRequestQueueDepths(final long hostId, final Map<String, Integer> depths) {
+            if (depths == null || !s_logger.isDebugEnabled()) {
+                return;
+            }
+            for (final Integer depth : depths.values()) {
+                if (depth > 0) {
+                    s_logger.debug("Host " + hostId + " has requests waiting in its request lanes: " + depths);
+                    return;
+                }
+            }
+        }
+
         protected void processResponse(final Link link, final Response response) {
             final AgentAttache attache = (AgentAttache) link.attachment();
             if (attache == null) {
@@ -16,6 +16,8 @@
 // under the License.
 package com.cloud.network.security.dao;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Set;
 
 import com.cloud.network.security.VmRulesetLogVO;
@@ -26,4 +28,6 @@ public interface VmRulesetLogDao extends GenericDao<VmRulesetLogVO, Long> {
 
     int createOrUpdate(Set<Long> workItems);
 
+    List<VmRulesetLogVO> listByVmIds(Collection<Long> vmIds);
+
 }
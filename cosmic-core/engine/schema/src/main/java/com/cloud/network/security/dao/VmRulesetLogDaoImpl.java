@@ -20,6 +20,7 @@ import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.SQLTransactionRollbackException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -39,6 +40,7 @@ import org.springframework.stereotype.Component;
 public class VmRulesetLogDaoImpl extends GenericDaoBase<VmRulesetLogVO, Long> implements VmRulesetLogDao {
     protected static final Logger s_logger = LoggerFactory.getLogger(VmRulesetLogDaoImpl.class);
     private SearchBuilder<VmRulesetLogVO> VmIdSearch;
+    private SearchBuilder<VmRulesetLogVO> VmIdsSearch;
     private String InsertOrUpdateSQl = "INSERT INTO op_vm_ruleset_log (instance_id, created, logsequence) "
         + " VALUES(?, now(), 1) ON DUPLICATE KEY UPDATE logsequence=logsequence+1";
     private static HashMap<Integer, String> cachedPrepStmtStrings = new HashMap<Integer, String>();
@@ -67,6 +69,9 @@ public class VmRulesetLogDaoImpl extends GenericDaoBase<VmRulesetLogVO, Long> im
 
         VmIdSearch.done();
 
+        VmIdsSearch = createSearchBuilder();
+        VmIdsSearch.and("vmIds", VmIdsSearch.entity().getInstanceId(), SearchCriteria.Op.IN);
+        VmIdsSearch.done();
     }
 
     @Override
@@ -76,6 +81,13 @@ public class VmRulesetLogDaoImpl extends GenericDaoBase<VmRulesetLogVO, Long> im
         return findOneIncludingRemovedBy(sc);
     }
 
+    @Override
+    public List<VmRulesetLogVO> listByVmIds(Collection<Long> vmIds) {
+        SearchCriteria<VmRulesetLogVO> sc = VmIdsSearch.create();
+        sc.setParameters("vmIds", vmIds.toArray());
+        return listIncludingRemovedBy(sc);
+    }
+
     @Override
     public int createOrUpdate(Set<Long> workItems) {
         //return createOrUpdateUsingBatch(workItems);
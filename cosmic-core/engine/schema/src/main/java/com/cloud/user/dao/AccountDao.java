@@ -18,6 +18,7 @@ package com.cloud.user.dao;
 
 import java.util.Date;
 import java.util.List;
+import java.util.function.Consumer;
 
 import com.cloud.user.Account;
 import com.cloud.user.AccountVO;
@@ -41,6 +42,8 @@ public interface AccountDao extends GenericDao<AccountVO, Long> {
 
     List<AccountVO> findActiveAccountsForDomain(Long domain);
 
+    void streamActiveAccountsForDomain(Long domain, Consumer<AccountVO> consumer);
+
     void markForCleanup(long accountId);
 
     List<AccountVO> listAccounts(String accountName, Long domainId, Filter filter);
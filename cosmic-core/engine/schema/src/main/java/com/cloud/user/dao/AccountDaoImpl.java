@@ -20,6 +20,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.util.Date;
 import java.util.List;
+import java.util.function.Consumer;
 
 import com.cloud.user.Account;
 import com.cloud.user.Account.State;
@@ -258,6 +259,13 @@ public class AccountDaoImpl extends GenericDaoBase<AccountVO, Long> implements A
         return listBy(sc);
     }
 
+    @Override
+    public void streamActiveAccountsForDomain(Long domain, Consumer<AccountVO> consumer) {
+        SearchCriteria<AccountVO> sc = DomainAccountsSearch.create();
+        sc.setParameters("domainId", domain);
+        stream(sc, consumer);
+    }
+
     @Override
     public void markForCleanup(long accountId) {
         AccountVO account = findByIdIncludingRemoved(accountId);
@@ -26,6 +26,8 @@ public interface ClusterManager extends Manager {
         "Interval to check for the heart beat between management server nodes", false);
     final ConfigKey<Integer> HeartbeatThreshold = new ConfigKey<Integer>(Integer.class, "cluster.heartbeat.threshold", "management-server", "150000",
         "Threshold before self-fence the management server", true);
+    final ConfigKey<Integer> CacheInvalidationInterval = new ConfigKey<Integer>(Integer.class, "cluster.cache.invalidation.interval", "management-server", "500",
+        "Interval in milliseconds at which entity cache invalidations are sent to the other management server nodes", false);
 
     void OnReceiveClusterServicePdu(ClusterServicePdu pdu);
 
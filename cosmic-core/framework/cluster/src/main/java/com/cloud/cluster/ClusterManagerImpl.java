@@ -17,6 +17,7 @@
 package com.cloud.cluster;
 
 import java.io.IOException;
+import java.lang.reflect.Type;
 import java.net.ConnectException;
 import java.net.InetSocketAddress;
 import java.nio.channels.SocketChannel;
@@ -28,10 +29,12 @@ import java.sql.SQLRecoverableException;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
@@ -50,6 +53,7 @@ import com.cloud.utils.concurrency.NamedThreadFactory;
 import com.cloud.utils.db.ConnectionConcierge;
 import com.cloud.utils.db.DB;
 import com.cloud.utils.db.DbProperties;
+import com.cloud.utils.db.GenericDaoBase;
 import com.cloud.utils.db.Transaction;
 import com.cloud.utils.db.TransactionCallback;
 import com.cloud.utils.db.TransactionLegacy;
@@ -59,6 +63,8 @@ import com.cloud.utils.exception.CloudRuntimeException;
 import com.cloud.utils.exception.ExceptionUtil;
 import com.cloud.utils.mgmt.JmxUtil;
 import com.cloud.utils.net.NetUtils;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
 
 import org.apache.cloudstack.framework.config.ConfigDepot;
 import org.apache.cloudstack.framework.config.ConfigKey;
@@ -118,6 +124,11 @@ public class ClusterManagerImpl extends ManagerBase implements ClusterManager, C
     private final List<ClusterServicePdu> _clusterPduIncomingQueue = new ArrayList<ClusterServicePdu>();
     private final Map<Long, ClusterServiceRequestPdu> _outgoingPdusWaitingForAck = new HashMap<Long, ClusterServiceRequestPdu>();
 
+    private static final Type CACHE_EVICTIONS_TYPE = new TypeToken<Map<String, List<String>>>() {
+    }.getType();
+    private final Gson _gson = new Gson();
+    private final Map<String, Set<String>> _pendingCacheEvictions = new HashMap<String, Set<String>>();
+
     public ClusterManagerImpl() {
         _clusterPeers = new HashMap<String, ClusterService>();
 
@@ -312,6 +323,8 @@ public class ClusterManagerImpl extends ManagerBase implements ClusterManager, C
                             } else {
                                 s_logger.warn("Original request has already been cancelled. pdu: " + pdu.getJsonPackage());
                             }
+                        } else if (pdu.getPduType() == ClusterServicePdu.PDU_TYPE_CACHE_INVALIDATION) {
+                            onCacheEvictions(pdu);
                         } else {
                             String result = _dispatcher.dispatch(pdu);
                             if (result == null) {
@@ -337,6 +350,76 @@ public class ClusterManagerImpl extends ManagerBase implements ClusterManager, C
         }
     }
 
+    private void queueCacheEviction(final String cacheName, final Object id) {
+        synchronized (_pendingCacheEvictions) {
+            Set<String> ids = _pendingCacheEvictions.get(cacheName);
+            if (ids == null) {
+                ids = new HashSet<String>();
+                _pendingCacheEvictions.put(cacheName, ids);
+            }
+            ids.add(id != null ? id.toString() : null);
+        }
+    }
+
+    private Runnable getCacheInvalidationTask() {
+        return new ManagedContextRunnable() {
+            @Override
+            protected void runInContext() {
+                try {
+                    sendCacheEvictions();
+                } catch (final Throwable e) {
+                    s_logger.warn("Unable to send entity cache invalidations", e);
+                }
+            }
+        };
+    }
+
+    /**
+     * Sends the entity cache evictions collected since the last run to all other nodes in one PDU each.
+     * Runs on the heartbeat scheduler, which is the thread that maintains _activePeers.
+     */
+    private void sendCacheEvictions() {
+        final Map<String, Set<String>> evictions;
+        synchronized (_pendingCacheEvictions) {
+            if (_pendingCacheEvictions.isEmpty()) {
+                return;
+            }
+            evictions = new HashMap<String, Set<String>>(_pendingCacheEvictions);
+            _pendingCacheEvictions.clear();
+        }
+
+        final String json = _gson.toJson(evictions);
+        for (final ManagementServerHostVO peer : _activePeers.values()) {
+            final String peerName = Long.toString(peer.getMsid());
+            if (getSelfPeerName().equals(peerName)) {
+                continue;
+            }
+            final ClusterServicePdu pdu = new ClusterServicePdu();
+            pdu.setPduType(ClusterServicePdu.PDU_TYPE_CACHE_INVALIDATION);
+            pdu.setSourcePeer(getSelfPeerName());
+            pdu.setDestPeer(peerName);
+            pdu.setJsonPackage(json);
+            addOutgoingClusterPdu(pdu);
+        }
+    }
+
+    private void onCacheEvictions(final ClusterServicePdu pdu) {
+        final Map<String, List<String>> evictions = _gson.fromJson(pdu.getJsonPackage(), CACHE_EVICTIONS_TYPE);
+        if (evictions == null) {
+            return;
+        }
+        for (final Map.Entry<String, List<String>> entry : evictions.entrySet()) {
+            for (final String id : entry.getValue()) {
+                if (!GenericDaoBase.evictFromCache(entry.getKey(), id)) {
+                    break;
+                }
+            }
+        }
+        if (s_logger.isTraceEnabled()) {
+            s_logger.trace("Evicted entities changed on " + pdu.getSourcePeer() + ": " + pdu.getJsonPackage());
+        }
+    }
+
     @Override
     public void OnReceiveClusterServicePdu(final ClusterServicePdu pdu) {
         addIncomingClusterPdu(pdu);
@@ -998,6 +1081,11 @@ public class ClusterManagerImpl extends ManagerBase implements ClusterManager, C
         _heartbeatScheduler.scheduleAtFixedRate(getHeartbeatTask(), HeartbeatInterval.value(), HeartbeatInterval.value(), TimeUnit.MILLISECONDS);
         _notificationExecutor.submit(getNotificationTask());
 
+        // entity cache invalidations go out on the same thread that keeps track of the peers
+        GenericDaoBase.setEntityCacheListener(this::queueCacheEviction);
+        _heartbeatScheduler.scheduleAtFixedRate(getCacheInvalidationTask(), CacheInvalidationInterval.value(), CacheInvalidationInterval.value(),
+                TimeUnit.MILLISECONDS);
+
         if (s_logger.isInfoEnabled()) {
             s_logger.info("Cluster manager was started successfully");
         }
@@ -1018,6 +1106,7 @@ public class ClusterManagerImpl extends ManagerBase implements ClusterManager, C
             _mshostDao.update(_mshostId, mshost);
         }
 
+        GenericDaoBase.setEntityCacheListener(null);
         _heartbeatScheduler.shutdownNow();
         _executor.shutdownNow();
 
@@ -1125,7 +1214,7 @@ public class ClusterManagerImpl extends ManagerBase implements ClusterManager, C
 
     @Override
     public ConfigKey<?>[] getConfigKeys() {
-        return new ConfigKey<?>[] {HeartbeatInterval, HeartbeatThreshold};
+        return new ConfigKey<?>[] {HeartbeatInterval, HeartbeatThreshold, CacheInvalidationInterval};
     }
 
     private boolean pingManagementNode(final ManagementServerHostVO mshost) {
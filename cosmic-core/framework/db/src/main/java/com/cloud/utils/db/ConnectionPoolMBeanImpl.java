@@ -0,0 +1,55 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.utils.db;
+
+import javax.management.StandardMBean;
+
+import org.apache.commons.pool.impl.GenericObjectPool;
+
+public class ConnectionPoolMBeanImpl extends StandardMBean implements ConnectionPoolMBean {
+    private final GenericObjectPool _pool;
+
+    public ConnectionPoolMBeanImpl(final GenericObjectPool pool) {
+        super(ConnectionPoolMBean.class, false);
+        _pool = pool;
+    }
+
+    @Override
+    public int getNumActive() {
+        return _pool.getNumActive();
+    }
+
+    @Override
+    public int getNumIdle() {
+        return _pool.getNumIdle();
+    }
+
+    @Override
+    public int getMaxActive() {
+        return _pool.getMaxActive();
+    }
+
+    @Override
+    public int getMaxIdle() {
+        return _pool.getMaxIdle();
+    }
+
+    @Override
+    public long getMaxWait() {
+        return _pool.getMaxWait();
+    }
+}
@@ -0,0 +1,100 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.utils.db;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.StandardMBean;
+
+import net.sf.ehcache.Cache;
+
+/**
+ * Counts the lookups and evictions of the entity cache of one DAO.
+ */
+public class EntityCacheMBeanImpl extends StandardMBean implements EntityCacheMBean {
+    private final Cache _cache;
+    private final AtomicLong _hits = new AtomicLong();
+    private final AtomicLong _misses = new AtomicLong();
+    private final AtomicLong _localEvictions = new AtomicLong();
+    private final AtomicLong _remoteEvictions = new AtomicLong();
+
+    public EntityCacheMBeanImpl(final Cache cache) {
+        super(EntityCacheMBean.class, false);
+        _cache = cache;
+    }
+
+    public void hit() {
+        _hits.incrementAndGet();
+    }
+
+    public void miss() {
+        _misses.incrementAndGet();
+    }
+
+    public void localEviction() {
+        _localEvictions.incrementAndGet();
+    }
+
+    public void remoteEviction() {
+        _remoteEvictions.incrementAndGet();
+    }
+
+    @Override
+    public String getCacheName() {
+        return _cache.getName();
+    }
+
+    @Override
+    public long getSize() {
+        return _cache.getSize();
+    }
+
+    @Override
+    public long getHits() {
+        return _hits.get();
+    }
+
+    @Override
+    public long getMisses() {
+        return _misses.get();
+    }
+
+    @Override
+    public double getHitRatio() {
+        final long hits = _hits.get();
+        final long lookups = hits + _misses.get();
+        return lookups == 0 ? 0 : (double)hits / lookups;
+    }
+
+    @Override
+    public long getLocalEvictions() {
+        return _localEvictions.get();
+    }
+
+    @Override
+    public long getRemoteEvictions() {
+        return _remoteEvictions.get();
+    }
+
+    @Override
+    public void resetStatistics() {
+        _hits.set(0);
+        _misses.set(0);
+        _localEvictions.set(0);
+        _remoteEvictions.set(0);
+    }
+}
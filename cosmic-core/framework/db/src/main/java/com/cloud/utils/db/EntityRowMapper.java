@@ -0,0 +1,278 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.utils.db;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.TimeZone;
+
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.Table;
+
+import com.cloud.utils.Pair;
+import com.cloud.utils.exception.CloudRuntimeException;
+
+/**
+ * Copies the columns of a result set row into an entity.
+ *
+ * A setter is generated for every mapped field of the entity when the DAO is created: a
+ * MethodHandle bound to the field and a reader for its column type. Before the first row of a
+ * result set is read the setters are bound to the column positions of that result set, so every
+ * row after that is copied without looking at the result set meta data or the column map again.
+ * Dates are parsed with a formatter kept per thread instead of a new one for every value.
+ *
+ * Types without a dedicated setter, and encrypted strings, go through the FieldReader given by the
+ * DAO, which is GenericDaoBase.setField.
+ */
+public class EntityRowMapper {
+
+    /**
+     * Reads one column into one field, the way GenericDaoBase.setField does.
+     */
+    public interface FieldReader {
+        void read(Object entity, Field field, ResultSet rs, int index) throws SQLException;
+    }
+
+    /**
+     * Copies one column of the current row into the entity.
+     */
+    interface ColumnSetter {
+        void set(Object entity, ResultSet rs, int index) throws Throwable;
+    }
+
+    // the format DateUtil.parseDateString() uses
+    private static final String DATE_FORMAT = "yyyy-MM-dd HH:mm:ss";
+    private static final MethodType OBJECT_SETTER = MethodType.methodType(void.class, Object.class, Object.class);
+
+    private final Map<Pair<String, String>, Attribute> _allColumns;
+    private final Map<Attribute, ColumnSetter> _setters = new IdentityHashMap<Attribute, ColumnSetter>();
+    private final FieldReader _fallback;
+    private final ThreadLocal<DateFormat> _dateFormat;
+
+    public EntityRowMapper(final Map<Pair<String, String>, Attribute> allColumns, final FieldReader fallback, final TimeZone timeZone) {
+        _allColumns = allColumns;
+        _fallback = fallback;
+        _dateFormat = ThreadLocal.withInitial(() -> {
+            final DateFormat format = new SimpleDateFormat(DATE_FORMAT);
+            format.setTimeZone(timeZone);
+            return format;
+        });
+        final MethodHandles.Lookup lookup = MethodHandles.lookup();
+        for (final Attribute attr : allColumns.values()) {
+            if (attr.field != null && !_setters.containsKey(attr)) {
+                _setters.put(attr, createSetter(lookup, attr.field));
+            }
+        }
+    }
+
+    /**
+     * Binds the setters to the columns of a result set.
+     *
+     * @param meta the meta data of the result set
+     * @param entityClass the class of the entities that are filled
+     * @return a binding for all rows of the result set
+     */
+    public Binding bind(final ResultSetMetaData meta, final Class<?> entityClass) throws SQLException {
+        final int count = meta.getColumnCount();
+        final ColumnSetter[] setters = new ColumnSetter[count];
+        for (int index = 1; index <= count; index++) {
+            Attribute attr = _allColumns.get(new Pair<String, String>(meta.getTableName(index), meta.getColumnName(index)));
+            if (attr == null) {
+                // work around for mysql bug to return original table name instead of view name in db view case
+                final Table tbl = entityClass.getSuperclass().getAnnotation(Table.class);
+                if (tbl != null) {
+                    attr = _allColumns.get(new Pair<String, String>(tbl.name(), meta.getColumnLabel(index)));
+                }
+            }
+            if (attr == null) {
+                throw new CloudRuntimeException("How come I can't find " + meta.getCatalogName(index) + "." + meta.getColumnName(index));
+            }
+            ColumnSetter setter = _setters.get(attr);
+            if (setter == null) {
+                setter = fallbackSetter(attr.field);
+            }
+            setters[index - 1] = setter;
+        }
+        return new Binding(setters);
+    }
+
+    /**
+     * The setters of an EntityRowMapper, in the column order of one result set.
+     */
+    public static class Binding {
+        private final ColumnSetter[] _columns;
+
+        Binding(final ColumnSetter[] columns) {
+            _columns = columns;
+        }
+
+        public void map(final Object entity, final ResultSet rs) throws SQLException {
+            for (int i = 0; i < _columns.length; i++) {
+                try {
+                    _columns[i].set(entity, rs, i + 1);
+                } catch (final SQLException | RuntimeException | Error e) {
+                    throw e;
+                } catch (final Throwable e) {
+                    throw new CloudRuntimeException("Yikes! ", e);
+                }
+            }
+        }
+
+        public int getColumnCount() {
+            return _columns.length;
+        }
+    }
+
+    private ColumnSetter createSetter(final MethodHandles.Lookup lookup, final Field field) {
+        final Class<?> type = field.getType();
+        if (Modifier.isFinal(field.getModifiers()) || Modifier.isStatic(field.getModifiers())) {
+            return fallbackSetter(field);
+        }
+        if (type == String.class) {
+            final Encrypt encrypt = field.getAnnotation(Encrypt.class);
+            if (encrypt != null && encrypt.encrypt()) {
+                return fallbackSetter(field);
+            }
+        }
+
+        final MethodHandle handle;
+        try {
+            field.setAccessible(true);
+            handle = lookup.unreflectSetter(field);
+        } catch (final IllegalAccessException | SecurityException e) {
+            return fallbackSetter(field);
+        }
+
+        if (type == long.class) {
+            final MethodHandle setter = handle.asType(MethodType.methodType(void.class, Object.class, long.class));
+            return (entity, rs, index) -> {
+                setter.invokeExact(entity, rs.getLong(index));
+            };
+        } else if (type == int.class) {
+            final MethodHandle setter = handle.asType(MethodType.methodType(void.class, Object.class, int.class));
+            return (entity, rs, index) -> {
+                setter.invokeExact(entity, rs.getInt(index));
+            };
+        } else if (type == boolean.class) {
+            final MethodHandle setter = handle.asType(MethodType.methodType(void.class, Object.class, boolean.class));
+            return (entity, rs, index) -> {
+                setter.invokeExact(entity, rs.getBoolean(index));
+            };
+        } else if (type.isPrimitive()) {
+            return fallbackSetter(field);
+        }
+
+        final MethodHandle setter = handle.asType(OBJECT_SETTER);
+        if (type == String.class) {
+            return (entity, rs, index) -> {
+                final byte[] bytes = rs.getBytes(index);
+                setter.invokeExact(entity, (Object)(bytes == null ? null : new String(bytes, StandardCharsets.UTF_8)));
+            };
+        } else if (type == Long.class) {
+            return (entity, rs, index) -> {
+                final long value = rs.getLong(index);
+                setter.invokeExact(entity, (Object)(rs.wasNull() ? null : value));
+            };
+        } else if (type == Integer.class) {
+            return (entity, rs, index) -> {
+                final int value = rs.getInt(index);
+                setter.invokeExact(entity, (Object)(rs.wasNull() ? null : value));
+            };
+        } else if (type == Boolean.class) {
+            return (entity, rs, index) -> {
+                final boolean value = rs.getBoolean(index);
+                setter.invokeExact(entity, (Object)(rs.wasNull() ? null : value));
+            };
+        } else if (type == Date.class) {
+            return (entity, rs, index) -> {
+                final Object data = rs.getDate(index);
+                setter.invokeExact(entity, (Object)(data == null ? null : parseDate(rs.getString(index))));
+            };
+        } else if (type.isEnum()) {
+            return createEnumSetter(field, setter);
+        }
+        return fallbackSetter(field);
+    }
+
+    private ColumnSetter createEnumSetter(final Field field, final MethodHandle setter) {
+        final Enumerated enumerated = field.getAnnotation(Enumerated.class);
+        final EnumType enumType = (enumerated == null) ? EnumType.STRING : enumerated.value();
+        final Enum<?>[] enums = (Enum<?>[])field.getType().getEnumConstants();
+
+        if (enumType == EnumType.ORDINAL) {
+            return (entity, rs, index) -> {
+                final int ordinal = rs.getInt(index);
+                if (ordinal >= 0 && ordinal < enums.length) {
+                    setter.invokeExact(entity, (Object)enums[ordinal]);
+                }
+            };
+        }
+
+        final Map<String, Enum<?>> byName = new HashMap<String, Enum<?>>(enums.length * 2);
+        for (final Enum<?> e : enums) {
+            byName.put(e.name(), e);
+        }
+        return (entity, rs, index) -> {
+            final String value = rs.getString(index);
+            if (value == null) {
+                return;
+            }
+            Enum<?> e = byName.get(value);
+            if (e == null) {
+                for (final Enum<?> candidate : enums) {
+                    if (candidate.name().equalsIgnoreCase(value)) {
+                        e = candidate;
+                        break;
+                    }
+                }
+            }
+            if (e != null) {
+                setter.invokeExact(entity, (Object)e);
+            }
+        };
+    }
+
+    /**
+     * Parses a date the way DateUtil.parseDateString() does, without creating a formatter for every value.
+     */
+    private Date parseDate(final String value) {
+        try {
+            return _dateFormat.get().parse(value);
+        } catch (final ParseException e) {
+            throw new CloudRuntimeException("why why ", e);
+        }
+    }
+
+    private ColumnSetter fallbackSetter(final Field field) {
+        return (entity, rs, index) -> _fallback.read(entity, field, rs, index);
+    }
+}
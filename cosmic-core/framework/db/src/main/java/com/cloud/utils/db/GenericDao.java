@@ -19,6 +19,7 @@ package com.cloud.utils.db;
 import java.io.Serializable;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 import javax.naming.ConfigurationException;
 
@@ -169,6 +170,33 @@ public interface GenericDao<T, ID extends Serializable> {
 
     List<T> searchIncludingRemoved(SearchCriteria<T> sc, final Filter filter, final Boolean lock, final boolean cache, final boolean enableQueryCache);
 
+    /**
+     * Walks the active rows matching the search criteria in the order of their ids.  The rows are
+     * read in batches that start after the id of the last row of the previous batch, so only one
+     * batch is held in memory and the consumer is free to run other queries.  The entities are not
+     * put into the entity cache.
+     * @param sc search criteria, null for all rows
+     * @param consumer called for every entity
+     */
+    void stream(SearchCriteria<T> sc, Consumer<T> consumer);
+
+    /**
+     * Like stream() but hands the entities to the consumer one batch at a time.
+     * @param sc search criteria, null for all rows
+     * @param batchSize number of rows to read per query
+     * @param consumer called for every batch
+     */
+    void streamBatches(SearchCriteria<T> sc, int batchSize, Consumer<List<T>> consumer);
+
+    /**
+     * Like streamBatches() but includes removed rows.
+     * @param sc search criteria, null for all rows
+     * @param batchSize number of rows to read per query
+     * @param cache whether to put the entities into the entity cache
+     * @param consumer called for every batch
+     */
+    void streamIncludingRemoved(SearchCriteria<T> sc, int batchSize, boolean cache, Consumer<List<T>> consumer);
+
     /**
      * Customized search with SearchCritiria
      * @param sc
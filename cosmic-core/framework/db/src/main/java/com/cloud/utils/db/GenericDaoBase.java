@@ -18,6 +18,7 @@ package com.cloud.utils.db;
 
 import java.io.Serializable;
 import java.io.UnsupportedEncodingException;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Array;
 import java.lang.reflect.Field;
 import java.lang.reflect.ParameterizedType;
@@ -44,6 +45,7 @@ import java.util.Map;
 import java.util.TimeZone;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
 import javax.naming.ConfigurationException;
 import javax.persistence.AttributeOverride;
@@ -65,6 +67,7 @@ import com.cloud.utils.component.ComponentMethodInterceptable;
 import com.cloud.utils.crypt.DBEncryptionUtil;
 import com.cloud.utils.db.SearchCriteria.SelectType;
 import com.cloud.utils.exception.CloudRuntimeException;
+import com.cloud.utils.mgmt.JmxUtil;
 import com.cloud.utils.net.Ip;
 import com.cloud.utils.net.NetUtils;
 
@@ -152,13 +155,21 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
     protected Enhancer _enhancer;
     protected Factory _factory;
     protected Enhancer _searchEnhancer;
+    protected EntityRowMapper _rowMapper;
     protected int _timeoutSeconds;
 
+    // SELECT statements of searches without criteria, see getSearchSql()
+    private final Map<List<Object>, String> _searchSqls = new ConcurrentHashMap<List<Object>, String>();
+    // The result set the current thread is reading and the binding of its columns
+    private final ThreadLocal<BoundResultSet> _boundResultSet = new ThreadLocal<BoundResultSet>();
+
     protected final static CallbackFilter s_callbackFilter = new UpdateFilter();
 
     protected static final String FOR_UPDATE_CLAUSE = " FOR UPDATE ";
     protected static final String SHARE_MODE_CLAUSE = " LOCK IN SHARE MODE";
     protected static final String SELECT_LAST_INSERT_ID_SQL = "SELECT LAST_INSERT_ID()";
+    protected static final int MAX_CACHED_SEARCH_SQLS = 64;
+    protected static final int DEFAULT_STREAM_BATCH_SIZE = 500;
 
     protected static final SequenceFetcher s_seqFetcher = SequenceFetcher.getInstance();
 
@@ -258,6 +269,8 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
         _searchEnhancer.setSuperclass(_entityBeanType);
         _searchEnhancer.setCallback(new UpdateBuilder(this));
 
+        _rowMapper = new EntityRowMapper(_allColumns, this::setField, s_gmtTimeZone);
+
         if (s_logger.isTraceEnabled()) {
             s_logger.trace("Select SQL: " + _partialSelectSql.first().toString());
             s_logger.trace("Remove SQL: " + (_removeSql != null ? _removeSql.first() : "No remove sql"));
@@ -366,41 +379,27 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
 
     @Override
     public List<T> searchIncludingRemoved(SearchCriteria<T> sc, final Filter filter, final Boolean lock, final boolean cache, final boolean enableQueryCache) {
-        String clause = sc != null ? sc.getWhereClause() : null;
-        if (clause != null && clause.length() == 0) {
-            clause = null;
-        }
-
-        final StringBuilder str = createPartialSelectSql(sc, clause != null, enableQueryCache);
-        if (clause != null) {
-            str.append(clause);
-        }
-
-        Collection<JoinBuilder<SearchCriteria<?>>> joins = null;
-        if (sc != null) {
-            joins = sc.getJoins();
-            if (joins != null) {
-                addJoins(str, joins);
-            }
-        }
-
-        List<Object> groupByValues = addGroupBy(str, sc);
-        addFilter(str, filter);
+        final Collection<JoinBuilder<SearchCriteria<?>>> joins = sc != null ? sc.getJoins() : null;
+        final List<Object> groupByValues = getGroupByValues(sc);
 
         final TransactionLegacy txn = TransactionLegacy.currentTxn();
-        if (lock != null) {
-            assert (txn.dbTxnStarted() == true) : "As nice as I can here now....how do you lock when there's no DB transaction?  Review your db 101 course from college.";
-            str.append(lock ? FOR_UPDATE_CLAUSE : SHARE_MODE_CLAUSE);
+        String sql = getSearchSql(sc, null, enableQueryCache);
+        if (filter != null || lock != null) {
+            final StringBuilder str = new StringBuilder(sql);
+            addFilter(str, filter);
+            if (lock != null) {
+                assert (txn.dbTxnStarted() == true) : "As nice as I can here now....how do you lock when there's no DB transaction?  Review your db 101 course from college.";
+                str.append(lock ? FOR_UPDATE_CLAUSE : SHARE_MODE_CLAUSE);
+            }
+            sql = str.toString();
         }
 
-        final String sql = str.toString();
-
         PreparedStatement pstmt = null;
         final List<T> result = new ArrayList<T>();
         try {
             pstmt = txn.prepareAutoCloseStatement(sql);
             int i = 1;
-            if (clause != null) {
+            if (sc != null) {
                 for (final Pair<Attribute, Object> value : sc.getValues()) {
                     prepareAttribute(i++, pstmt, value.first(), value.second());
                 }
@@ -431,6 +430,89 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
         }
     }
 
+    @Override
+    public void stream(final SearchCriteria<T> sc, final Consumer<T> consumer) {
+        streamBatches(sc, DEFAULT_STREAM_BATCH_SIZE, batch -> batch.forEach(consumer));
+    }
+
+    @Override
+    public void streamBatches(SearchCriteria<T> sc, final int batchSize, final Consumer<List<T>> consumer) {
+        if (_removed != null) {
+            if (sc == null) {
+                sc = createSearchCriteria();
+            }
+            sc.addAnd(_removed.second().field.getName(), SearchCriteria.Op.NULL);
+        }
+        streamIncludingRemoved(sc, batchSize, false, consumer);
+    }
+
+    @Override
+    @DB()
+    public void streamIncludingRemoved(final SearchCriteria<T> sc, final int batchSize, final boolean cache, final Consumer<List<T>> consumer) {
+        final Attribute[] idAttributes = _idAttributes.get(_table);
+        final Attribute id = idAttributes != null && idAttributes.length == 1 ? idAttributes[0] : null;
+        final Class<?> idType = id != null && id.field != null ? id.field.getType() : null;
+        if ((idType != long.class && idType != Long.class && idType != int.class && idType != Integer.class)
+                || (sc != null && (sc.getGroupBy() != null || !sc.isSelectAll()))) {
+            // Without a single numeric id there is nothing to continue from, so fall back to one batch
+            final List<T> all = searchIncludingRemoved(sc, null, null, cache);
+            if (!all.isEmpty()) {
+                consumer.accept(all);
+            }
+            return;
+        }
+
+        final String idColumn = id.table + "." + id.columnName;
+        final int limit = batchSize > 0 ? batchSize : DEFAULT_STREAM_BATCH_SIZE;
+        final String sql = getSearchSql(sc, idColumn, false) + " ORDER BY " + idColumn + " LIMIT " + limit;
+        long lastId = Long.MIN_VALUE;
+        while (true) {
+            final List<T> batch = searchBatch(sc, sql, lastId, cache);
+            if (batch.isEmpty()) {
+                return;
+            }
+            try {
+                lastId = ((Number)id.field.get(batch.get(batch.size() - 1))).longValue();
+            } catch (final IllegalAccessException e) {
+                throw new CloudRuntimeException("Unable to read the id of " + _entityBeanType, e);
+            }
+            consumer.accept(batch);
+            if (batch.size() < limit) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Runs one query of streamIncludingRemoved().  The rows are read completely before the batch is
+     * handed out, so the consumer can run its own queries on the same connection.
+     */
+    @DB()
+    protected List<T> searchBatch(final SearchCriteria<T> sc, final String sql, final long lastId, final boolean cache) {
+        final TransactionLegacy txn = TransactionLegacy.currentTxn();
+        final List<T> batch = new ArrayList<T>();
+        try (PreparedStatement pstmt = txn.prepareStatement(sql)) {
+            int i = 1;
+            if (sc != null) {
+                for (final Pair<Attribute, Object> value : sc.getValues()) {
+                    prepareAttribute(i++, pstmt, value.first(), value.second());
+                }
+            }
+            pstmt.setLong(i++, lastId);
+            if (sc != null && sc.getJoins() != null) {
+                addJoinAttributes(i, pstmt, sc.getJoins());
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    batch.add(toEntityBean(rs, cache));
+                }
+            }
+        } catch (final SQLException e) {
+            throw new CloudRuntimeException("DB Exception on: " + sql, e);
+        }
+        return batch;
+    }
+
     @Override
     @SuppressWarnings("unchecked")
     public <M> List<M> customSearchIncludingRemoved(SearchCriteria<M> sc, final Filter filter) {
@@ -440,36 +522,23 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
         if (sc.isSelectAll()) {
             return (List<M>)searchIncludingRemoved((SearchCriteria<T>)sc, filter, null, false);
         }
-        String clause = sc.getWhereClause();
-        if (clause != null && clause.length() == 0) {
-            clause = null;
-        }
+        final Collection<JoinBuilder<SearchCriteria<?>>> joins = sc.getJoins();
+        final List<Object> groupByValues = getGroupByValues(sc);
 
-        final StringBuilder str = createPartialSelectSql(sc, clause != null);
-        if (clause != null) {
-            str.append(clause);
-        }
-
-        Collection<JoinBuilder<SearchCriteria<?>>> joins = null;
-        joins = sc.getJoins();
-        if (joins != null) {
-            addJoins(str, joins);
+        String sql = getSearchSql(sc, null, false);
+        if (filter != null) {
+            final StringBuilder str = new StringBuilder(sql);
+            addFilter(str, filter);
+            sql = str.toString();
         }
 
-        List<Object> groupByValues = addGroupBy(str, sc);
-        addFilter(str, filter);
-
-        final String sql = str.toString();
-
         final TransactionLegacy txn = TransactionLegacy.currentTxn();
         PreparedStatement pstmt = null;
         try {
             pstmt = txn.prepareAutoCloseStatement(sql);
             int i = 1;
-            if (clause != null) {
-                for (final Pair<Attribute, Object> value : sc.getValues()) {
-                    prepareAttribute(i++, pstmt, value.first(), value.second());
-                }
+            for (final Pair<Attribute, Object> value : sc.getValues()) {
+                prepareAttribute(i++, pstmt, value.first(), value.second());
             }
 
             if (joins != null) {
@@ -804,7 +873,8 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
             throw new CloudRuntimeException("Unable to persist element collection", e);
         }
 
-        int rowsUpdated = update(ub, sc, null);
+        int rowsUpdated = executeUpdate(ub, sc, null);
+        evictFromCache(id);
 
         txn.commit();
 
@@ -812,6 +882,15 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
     }
 
     public int update(UpdateBuilder ub, final SearchCriteria<?> sc, Integer rows) {
+        final int result = executeUpdate(ub, sc, rows);
+        if (result > 0) {
+            // the ids of the updated rows are not known
+            evictAllFromCache();
+        }
+        return result;
+    }
+
+    private int executeUpdate(UpdateBuilder ub, final SearchCriteria<?> sc, Integer rows) {
         StringBuilder sql = null;
         PreparedStatement pstmt = null;
         final TransactionLegacy txn = TransactionLegacy.currentTxn();
@@ -947,8 +1026,10 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
         if (_cache != null) {
             final Element element = _cache.get(id);
             if (element == null) {
+                _cacheStats.miss();
                 result = lockRow(id, null);
             } else {
+                _cacheStats.hit();
                 result = (T)element.getObjectValue();
             }
         } else {
@@ -980,8 +1061,10 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
         if (_cache != null) {
             final Element element = _cache.get(id);
             if (element == null) {
+                _cacheStats.miss();
                 result = findById(id, true, null);
             } else {
+                _cacheStats.hit();
                 result = (T)element.getObjectValue();
             }
         } else {
@@ -1102,6 +1185,14 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
         }
     }
 
+    protected List<Object> getGroupByValues(SearchCriteria<?> sc) {
+        if (sc == null) {
+            return null;
+        }
+        Pair<GroupBy<?, ?, ?>, List<Object>> groupBys = sc.getGroupBy();
+        return groupBys != null ? groupBys.second() : null;
+    }
+
     @DB()
     protected void addFilter(final StringBuilder sql, final Filter filter) {
         if (filter != null) {
@@ -1190,9 +1281,7 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
             }
 
             txn.commit();
-            if (_cache != null) {
-                _cache.remove(id);
-            }
+            evictFromCache(id);
             return true;
         } catch (final SQLException e) {
             throw new CloudRuntimeException("DB Exception on: " + pstmt, e);
@@ -1224,7 +1313,11 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
             for (final Pair<Attribute, Object> value : sc.getValues()) {
                 prepareAttribute(++i, pstmt, value.first(), value.second());
             }
-            return pstmt.executeUpdate();
+            final int result = pstmt.executeUpdate();
+            if (result > 0) {
+                evictAllFromCache();
+            }
+            return result;
         } catch (final SQLException e) {
             throw new CloudRuntimeException("DB Exception on: " + pstmt, e);
         } catch (final Throwable e) {
@@ -1262,6 +1355,61 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
         return sql;
     }
 
+    /**
+     * Returns the SELECT statement of a search, including its joins and group by but without the
+     * filter and lock clauses.  The statement only depends on the SearchBuilder the criteria was
+     * created from and on the shape of its conditions, so it is built once per shape and cached on
+     * the builder.  A lookup does not build the where clause, it only walks the conditions.
+     *
+     * @param sc search criteria, may be null
+     * @param keysetColumn column to page on, the statement then has an extra "column > ?" condition
+     *                     after the values of the criteria, may be null
+     * @param enableQueryCache whether to add the SQL_CACHE hint
+     */
+    protected String getSearchSql(final SearchCriteria<?> sc, final String keysetColumn, final boolean enableQueryCache) {
+        final List<Object> shape = new ArrayList<Object>();
+        shape.add(enableQueryCache);
+        shape.add(keysetColumn);
+        final Map<List<Object>, String> sqls;
+        if (sc == null) {
+            sqls = _searchSqls;
+        } else if (sc.addShape(shape)) {
+            sqls = sc.getSearchSqls();
+        } else {
+            return buildSearchSql(sc, keysetColumn, enableQueryCache);
+        }
+
+        String sql = sqls.get(shape);
+        if (sql == null) {
+            sql = buildSearchSql(sc, keysetColumn, enableQueryCache);
+            // a builder has few shapes, unless conditions are added to every criteria created from it
+            if (sqls.size() < MAX_CACHED_SEARCH_SQLS) {
+                sqls.put(shape, sql);
+            }
+        }
+        return sql;
+    }
+
+    protected String buildSearchSql(final SearchCriteria<?> sc, final String keysetColumn, final boolean enableQueryCache) {
+        String clause = sc != null ? sc.getWhereClause() : null;
+        if (clause != null && clause.length() == 0) {
+            clause = null;
+        }
+        if (keysetColumn != null) {
+            clause = (clause != null ? "(" + clause + ") AND " : "") + keysetColumn + " > ?";
+        }
+
+        final StringBuilder str = createPartialSelectSql(sc, clause != null, enableQueryCache);
+        if (clause != null) {
+            str.append(clause);
+        }
+        if (sc != null && sc.getJoins() != null) {
+            addJoins(str, sc.getJoins());
+        }
+        addGroupBy(str, sc);
+        return str.toString();
+    }
+
     @DB()
     protected void addJoins(StringBuilder str, Collection<JoinBuilder<SearchCriteria<?>>> joins) {
         int fromIndex = str.lastIndexOf("WHERE");
@@ -1656,15 +1804,26 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
 
     @DB()
     protected void toEntityBean(final ResultSet result, final T entity) throws SQLException {
-        ResultSetMetaData meta = result.getMetaData();
-        for (int index = 1, max = meta.getColumnCount(); index <= max; index++) {
-            setField(entity, result, meta, index);
-        }
+        getBinding(result, entity).map(entity, result);
         for (Attribute attr : _ecAttributes) {
             loadCollection(entity, attr);
         }
     }
 
+    /**
+     * Returns the row mapper binding for a result set.  The columns are bound when the first row
+     * is read and the binding is kept for the rows after it.
+     */
+    protected EntityRowMapper.Binding getBinding(final ResultSet result, final Object entity) throws SQLException {
+        final BoundResultSet bound = _boundResultSet.get();
+        if (bound != null && bound.resultSet.get() == result) {
+            return bound.binding;
+        }
+        final EntityRowMapper.Binding binding = _rowMapper.bind(result.getMetaData(), entity.getClass());
+        _boundResultSet.set(new BoundResultSet(result, binding));
+        return binding;
+    }
+
     @DB()
     @SuppressWarnings("unchecked")
     protected void loadCollection(T entity, Attribute attr) {
@@ -1791,9 +1950,7 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
 
             final int result = pstmt.executeUpdate();
             txn.commit();
-            if (_cache != null) {
-                _cache.remove(id);
-            }
+            evictFromCache(id);
             return result > 0;
         } catch (final SQLException e) {
             throw new CloudRuntimeException("DB Exception on: " + pstmt, e);
@@ -1814,6 +1971,10 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
     }
 
     protected Cache _cache;
+    protected EntityCacheMBeanImpl _cacheStats;
+
+    private static final Map<String, GenericDaoBase<?, ?>> s_cachedDaos = new ConcurrentHashMap<String, GenericDaoBase<?, ?>>();
+    private static volatile EntityCacheListener s_cacheListener;
 
     @DB()
     protected void createCache(final Map<String, ? extends Object> params) {
@@ -1826,12 +1987,92 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
             final int idle = NumbersUtil.parseInt((String)params.get("cache.time.to.idle"), 300);
             _cache = new Cache(getName(), maxElements, false, live == -1, live == -1 ? Integer.MAX_VALUE : live, idle);
             cm.addCache(_cache);
+            _cacheStats = new EntityCacheMBeanImpl(_cache);
+            s_cachedDaos.put(_cache.getName(), this);
+            try {
+                JmxUtil.registerMBean("DAO Cache", _cache.getName(), _cacheStats);
+            } catch (final Exception e) {
+                s_logger.warn("Unable to register mbean for cache " + _cache.getName(), e);
+            }
             s_logger.info("Cache created: " + _cache.toString());
         } else {
             _cache = null;
         }
     }
 
+    /**
+     * Evicts a changed entity from the cache, here right away and through the EntityCacheListener on
+     * the other management servers once the change is committed.
+     */
+    protected void evictFromCache(final ID id) {
+        if (_cache == null) {
+            return;
+        }
+        _cache.remove(id);
+        _cacheStats.localEviction();
+        publishEviction(id);
+    }
+
+    /**
+     * Like evictFromCache() for changes of which the ids are not known, such as updates by search criteria.
+     */
+    protected void evictAllFromCache() {
+        if (_cache == null) {
+            return;
+        }
+        _cache.removeAll();
+        _cacheStats.localEviction();
+        publishEviction(null);
+    }
+
+    private void publishEviction(final ID id) {
+        final EntityCacheListener listener = s_cacheListener;
+        if (listener != null) {
+            final String cacheName = _cache.getName();
+            TransactionLegacy.currentTxn().runAfterCommit(() -> listener.evicted(cacheName, id));
+        }
+    }
+
+    public static void setEntityCacheListener(final EntityCacheListener listener) {
+        s_cacheListener = listener;
+    }
+
+    /**
+     * Evicts an entity that was changed on another management server.
+     *
+     * @param cacheName the name of the cache as passed to the EntityCacheListener
+     * @param id the id of the entity as a string, null to evict all entities
+     * @return false if there is no cache by that name
+     */
+    public static boolean evictFromCache(final String cacheName, final String id) {
+        final GenericDaoBase<?, ?> dao = s_cachedDaos.get(cacheName);
+        if (dao == null) {
+            return false;
+        }
+        dao.evictRemote(id);
+        return true;
+    }
+
+    private void evictRemote(final String id) {
+        final Class<?> type = _idField != null ? _idField.getType() : null;
+        try {
+            if (id == null) {
+                _cache.removeAll();
+            } else if (type == Long.class || type == long.class) {
+                _cache.remove(Long.valueOf(id));
+            } else if (type == Integer.class || type == int.class) {
+                _cache.remove(Integer.valueOf(id));
+            } else if (type == String.class) {
+                _cache.remove(id);
+            } else {
+                _cache.removeAll();
+            }
+        } catch (final NumberFormatException e) {
+            _cache.removeAll();
+        }
+        _cacheStats.remoteEviction();
+    }
+
     @Override
     @DB()
     public boolean configure(final String name, final Map<String, Object> params) throws ConfigurationException {
@@ -2013,4 +2254,15 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
         Integer count = getCount(sc);
         return new Pair<List<T>, Integer>(objects, count);
     }
+
+    private static class BoundResultSet {
+        // weak so a thread does not keep the rows of its last result set alive
+        final WeakReference<ResultSet> resultSet;
+        final EntityRowMapper.Binding binding;
+
+        BoundResultSet(final ResultSet resultSet, final EntityRowMapper.Binding binding) {
+            this.resultSet = new WeakReference<ResultSet>(resultSet);
+            this.binding = binding;
+        }
+    }
 }
@@ -0,0 +1,65 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.utils.db;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+
+import com.cloud.utils.profiler.CommandProfiler;
+
+/**
+ * Reports the executions of a statement to the {@link CommandProfiler}. Statements are only wrapped
+ * while the thread that prepares them profiles a command, so the statements of commands that are not
+ * sampled are left alone.
+ */
+final class ProfiledStatement implements InvocationHandler {
+    private final PreparedStatement stmt;
+    private final String sql;
+
+    private ProfiledStatement(final PreparedStatement stmt, final String sql) {
+        this.stmt = stmt;
+        this.sql = sql;
+    }
+
+    static PreparedStatement wrap(final PreparedStatement stmt, final String sql) {
+        if (!CommandProfiler.isProfiling()) {
+            return stmt;
+        }
+        return (PreparedStatement)Proxy.newProxyInstance(ProfiledStatement.class.getClassLoader(), new Class<?>[]{PreparedStatement.class},
+                new ProfiledStatement(stmt, sql));
+    }
+
+    @Override
+    public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+        final boolean execute = method.getName().startsWith("execute");
+        final long start = execute ? System.nanoTime() : 0;
+        try {
+            return method.invoke(stmt, args);
+        } catch (final InvocationTargetException e) {
+            throw e.getCause();
+        } finally {
+            if (execute) {
+                // statements executed with sql of their own are counted by that sql
+                final String executed = args != null && args.length > 0 && args[0] instanceof String ? (String)args[0] : sql;
+                CommandProfiler.statementExecuted(executed, System.nanoTime() - start);
+            }
+        }
+    }
+}
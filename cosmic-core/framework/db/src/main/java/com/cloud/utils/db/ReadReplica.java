@@ -0,0 +1,135 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.utils.db;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.StandardMBean;
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hands out connections to a read replica of the cloud database for the read only mode of
+ * TransactionLegacy.
+ *
+ * The replication lag is checked with SHOW SLAVE STATUS at most once per check interval, by the
+ * thread that asks for a connection. While the replica lags more than maxLagSeconds, is not
+ * replicating or can't be reached, getConnection() returns null and the reads go to the primary
+ * database. A database that is not a replica at all reports no slave status and counts as up to date.
+ */
+public class ReadReplica extends StandardMBean implements ReadReplicaMBean {
+    private static final Logger s_logger = LoggerFactory.getLogger(ReadReplica.class);
+
+    private final DataSource _ds;
+    private final long _maxLagSeconds;
+    private final long _checkIntervalMs;
+    private final AtomicLong _lastCheck = new AtomicLong();
+    private final AtomicLong _replicaConnections = new AtomicLong();
+    private final AtomicLong _primaryFallbacks = new AtomicLong();
+    private volatile boolean _usable;
+    private volatile long _lagSeconds = -1;
+
+    public ReadReplica(final DataSource ds, final long maxLagSeconds, final long checkIntervalMs) {
+        super(ReadReplicaMBean.class, false);
+        _ds = ds;
+        _maxLagSeconds = maxLagSeconds;
+        _checkIntervalMs = checkIntervalMs;
+    }
+
+    /**
+     * @return a connection to the replica, or null if the primary database has to be used
+     */
+    public Connection getConnection() {
+        final long now = System.currentTimeMillis();
+        final long last = _lastCheck.get();
+        if (now - last >= _checkIntervalMs && _lastCheck.compareAndSet(last, now)) {
+            checkLag();
+        }
+
+        if (_usable) {
+            try {
+                final Connection conn = _ds.getConnection();
+                _replicaConnections.incrementAndGet();
+                return conn;
+            } catch (final SQLException e) {
+                s_logger.warn("Unable to get a connection to the read replica, using the primary database", e);
+                _usable = false;
+            }
+        }
+        _primaryFallbacks.incrementAndGet();
+        return null;
+    }
+
+    protected void checkLag() {
+        try (Connection conn = _ds.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SHOW SLAVE STATUS")) {
+            long lag = 0;
+            if (rs.next()) {
+                lag = rs.getLong("Seconds_Behind_Master");
+                if (rs.wasNull()) {
+                    // replication is stopped
+                    lag = -1;
+                }
+            }
+            updateLag(lag);
+        } catch (final SQLException e) {
+            s_logger.warn("Unable to check the replication lag of the read replica", e);
+            updateLag(-1);
+        }
+    }
+
+    protected void updateLag(final long lagSeconds) {
+        final boolean usable = lagSeconds >= 0 && lagSeconds <= _maxLagSeconds;
+        if (usable != _usable) {
+            s_logger.info("Read replica is " + (usable ? "" : "not ") + "used for read only queries, replication lag: " + lagSeconds + "s");
+        }
+        _lagSeconds = lagSeconds;
+        _usable = usable;
+    }
+
+    @Override
+    public boolean isUsable() {
+        return _usable;
+    }
+
+    @Override
+    public long getReplicationLagSeconds() {
+        return _lagSeconds;
+    }
+
+    @Override
+    public long getMaxLagSeconds() {
+        return _maxLagSeconds;
+    }
+
+    @Override
+    public long getReplicaConnections() {
+        return _replicaConnections.get();
+    }
+
+    @Override
+    public long getPrimaryFallbacks() {
+        return _primaryFallbacks.get();
+    }
+}
@@ -24,6 +24,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.persistence.Column;
 import javax.persistence.Transient;
@@ -66,6 +67,9 @@ public abstract class SearchBase<J extends SearchBase<?, T, K>, T, K> {
     protected SelectType _selectType;
     T _entity;
 
+    // SELECT statements of the searches created from this builder by their shape, see GenericDaoBase.getSearchSql()
+    final Map<List<Object>, String> _searchSqls = new ConcurrentHashMap<List<Object>, String>();
+
     SearchBase(final Class<T> entityType, final Class<K> resultType) {
         init(entityType, resultType);
     }
@@ -92,6 +92,7 @@ public class SearchCriteria<K> {
     private final List<Object> _groupByValues;
     private final Class<K> _resultType;
     private final SelectType _selectType;
+    private final Map<List<Object>, String> _searchSqls;
 
     protected SearchCriteria(SearchBase<?, ?, K> sb) {
         this._attrs = sb._attrs;
@@ -116,6 +117,7 @@ public class SearchCriteria<K> {
         }
         _resultType = sb._resultType;
         _selectType = sb._selectType;
+        _searchSqls = sb._searchSqls;
     }
 
     protected void setParameters(HashMap<String, Object[]> parameters) {
@@ -166,6 +168,67 @@ public class SearchCriteria<K> {
         return _selects == null || _selects.size() == 0;
     }
 
+    /**
+     * @return the SELECT statements of the searches created from the same builder, by their shape
+     */
+    Map<List<Object>, String> getSearchSqls() {
+        return _searchSqls;
+    }
+
+    /**
+     * Adds the shape of the where clause of this criteria and its joins to the list: which conditions
+     * are part of it and, where it changes the SQL, how many values they have. Criteria created from
+     * the same builder with the same shape have the same where clause. Like getWhereClause(), this
+     * applies the presets of the conditions.
+     *
+     * @return false if the where clause depends on more than its shape, as it does for nested criteria
+     */
+    boolean addShape(final List<Object> shape) {
+        for (Condition condition : _conditions) {
+            if (!addShape(shape, condition, condition.op == null || condition.op.params == 0)) {
+                return false;
+            }
+        }
+
+        shape.add(_additionals.size());
+        for (Condition condition : _additionals) {
+            shape.add(condition.attr);
+            shape.add(condition.op);
+            shape.add(condition.cond);
+            if (!addShape(shape, condition, condition.op.params == 0)) {
+                return false;
+            }
+        }
+
+        if (_joins != null) {
+            for (JoinBuilder<SearchCriteria<?>> join : _joins.values()) {
+                if (!join.getT().addShape(shape)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private boolean addShape(final List<Object> shape, final Condition condition, final boolean withoutParams) {
+        if (condition.isPreset()) {
+            _params.put(condition.name, condition.presets);
+        }
+        final Object[] params = _params.get(condition.name);
+        if (!withoutParams && params == null) {
+            shape.add(-1);
+        } else if (condition.op == Op.SC) {
+            return false;
+        } else if (condition.op != null && condition.op.params == -1) {
+            shape.add(params.length);
+        } else if ((condition.op == Op.EQ || condition.op == Op.NEQ) && (params == null || params.length == 0 || params[0] == null)) {
+            shape.add(0);
+        } else {
+            shape.add(1);
+        }
+        return true;
+    }
+
     protected JoinBuilder<SearchCriteria<?>> findJoin(Map<String, JoinBuilder<SearchCriteria<?>>> jbmap, String joinName) {
         JoinBuilder<SearchCriteria<?>> jb = jbmap.get(joinName);
         if (jb != null) {
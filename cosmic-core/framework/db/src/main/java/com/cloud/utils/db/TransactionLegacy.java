@@ -31,6 +31,7 @@ import java.util.List;
 import java.util.Properties;
 import java.util.concurrent.atomic.AtomicLong;
 
+import javax.management.InstanceNotFoundException;
 import javax.sql.DataSource;
 
 import com.cloud.utils.Pair;
@@ -95,6 +96,8 @@ public class TransactionLegacy implements Closeable {
     private long _id;
 
     private final LinkedList<Pair<String, Long>> _lockTimes = new LinkedList<>();
+    private final List<Runnable> _afterCommit = new LinkedList<>();
+    private boolean _replicaConn;
 
     private String _name;
     private Connection _conn;
@@ -388,6 +391,10 @@ public class TransactionLegacy implements Closeable {
             return;
         }
 
+        if (_replicaConn) {
+            // writes go to the primary database, the next getConnection() picks it
+            closeConnection();
+        }
         _txn = true;
 
         _txnTime = System.currentTimeMillis();
@@ -442,7 +449,7 @@ public class TransactionLegacy implements Closeable {
 
     public PreparedStatement prepareStatement(final String sql) throws SQLException {
         final Connection conn = getConnection();
-        final PreparedStatement pstmt = conn.prepareStatement(sql);
+        final PreparedStatement pstmt = ProfiledStatement.wrap(conn.prepareStatement(sql), sql);
         if (s_stmtLogger.isTraceEnabled()) {
             s_stmtLogger.trace("Preparing: " + sql);
         }
@@ -461,7 +468,7 @@ public class TransactionLegacy implements Closeable {
     public PreparedStatement prepareAutoCloseStatement(final String sql, final int autoGeneratedKeys)
             throws SQLException {
         final Connection conn = getConnection();
-        final PreparedStatement pstmt = conn.prepareStatement(sql, autoGeneratedKeys);
+        final PreparedStatement pstmt = ProfiledStatement.wrap(conn.prepareStatement(sql, autoGeneratedKeys), sql);
         if (s_stmtLogger.isTraceEnabled()) {
             s_stmtLogger.trace("Preparing: " + sql);
         }
@@ -481,7 +488,7 @@ public class TransactionLegacy implements Closeable {
      */
     public PreparedStatement prepareAutoCloseStatement(final String sql, final String[] columnNames) throws SQLException {
         final Connection conn = getConnection();
-        final PreparedStatement pstmt = conn.prepareStatement(sql, columnNames);
+        final PreparedStatement pstmt = ProfiledStatement.wrap(conn.prepareStatement(sql, columnNames), sql);
         if (s_stmtLogger.isTraceEnabled()) {
             s_stmtLogger.trace("Preparing: " + sql);
         }
@@ -501,8 +508,8 @@ public class TransactionLegacy implements Closeable {
     public PreparedStatement prepareAutoCloseStatement(final String sql, final int resultSetType, final int resultSetConcurrency,
                                                        final int resultSetHoldability) throws SQLException {
         final Connection conn = getConnection();
-        final PreparedStatement pstmt = conn.prepareStatement(sql, resultSetType, resultSetConcurrency,
-                resultSetHoldability);
+        final PreparedStatement pstmt = ProfiledStatement.wrap(conn.prepareStatement(sql, resultSetType, resultSetConcurrency,
+                resultSetHoldability), sql);
         if (s_stmtLogger.isTraceEnabled()) {
             s_stmtLogger.trace("Preparing: " + sql);
         }
@@ -524,7 +531,13 @@ public class TransactionLegacy implements Closeable {
         if (_conn == null) {
             switch (_dbId) {
                 case CLOUD_DB:
-                    if (s_ds != null) {
+                    if (s_replica != null && !_txn && isReadOnly()) {
+                        _conn = s_replica.getConnection();
+                        _replicaConn = _conn != null;
+                    }
+                    if (_conn != null) {
+                        _conn.setReadOnly(true);
+                    } else if (s_ds != null) {
                         _conn = s_ds.getConnection();
                     } else {
                         s_logger.warn("A static-initialized variable becomes null, process is dying?");
@@ -699,11 +712,65 @@ public class TransactionLegacy implements Closeable {
                 clearLockTimes();
                 closeConnection();
             }
-            return true;
         } catch (final SQLException e) {
+            _afterCommit.clear();
             rollbackTransaction();
             throw new CloudRuntimeException("Unable to commit or close the connection. ", e);
         }
+        runAfterCommitTasks();
+        return true;
+    }
+
+    /**
+     * Starts a read only scope on the current thread. Until the matching exitReadOnly(), connections
+     * to the cloud database that are not taken for a transaction come from the read replica if
+     * there is one. Scopes can be nested.
+     */
+    public static void enterReadOnly() {
+        s_readOnlyDepth.set(s_readOnlyDepth.get() + 1);
+    }
+
+    public static void exitReadOnly() {
+        final int depth = s_readOnlyDepth.get() - 1;
+        s_readOnlyDepth.set(depth);
+        if (depth == 0) {
+            // don't let writes after the scope use a replica connection that is still open
+            final TransactionLegacy txn = tls.get();
+            if (txn != null && txn._replicaConn && !txn._txn) {
+                txn.closeConnection();
+            }
+        }
+    }
+
+    public static boolean isReadOnly() {
+        return s_readOnlyDepth.get() > 0;
+    }
+
+    public boolean isUsingReplica() {
+        return _replicaConn;
+    }
+
+    /**
+     * Runs the task once the changes of the current transaction are committed, or right away when
+     * no transaction is started.  The task is dropped when the transaction is rolled back.
+     */
+    public void runAfterCommit(final Runnable task) {
+        if (_txn) {
+            _afterCommit.add(task);
+        } else {
+            task.run();
+        }
+    }
+
+    private void runAfterCommitTasks() {
+        while (!_afterCommit.isEmpty()) {
+            final Runnable task = _afterCommit.remove(0);
+            try {
+                task.run();
+            } catch (final RuntimeException e) {
+                s_logger.warn("Unable to run after commit task " + task, e);
+            }
+        }
     }
 
     protected void closeConnection() {
@@ -726,6 +793,7 @@ public class TransactionLegacy implements Closeable {
                 }
                 _conn.close();
                 _conn = null;
+                _replicaConn = false;
             }
 
         } catch (final SQLException e) {
@@ -808,6 +876,7 @@ public class TransactionLegacy implements Closeable {
         }
         assert !hasTxnInStack() : "Who's rolling back transaction when there's still txn in stack?";
         _txn = false;
+        _afterCommit.clear();
         try {
             if (_conn != null) {
                 if (s_logger.isDebugEnabled()) {
@@ -967,7 +1036,9 @@ public class TransactionLegacy implements Closeable {
 
     private static DataSource s_ds;
     private static DataSource s_usageDS;
+    private static ReadReplica s_replica;
     private static boolean s_dbHAEnabled;
+    private static final ThreadLocal<Integer> s_readOnlyDepth = ThreadLocal.withInitial(() -> 0);
 
     static {
         // Initialize with assumed db.properties file
@@ -1067,6 +1138,35 @@ public class TransactionLegacy implements Closeable {
 
             // Default Data Source for CloudStack
             s_ds = new PoolingDataSource(cloudPoolableConnectionFactory.getPool());
+            registerMBean("DB Connection Pools", "cloud", new ConnectionPoolMBeanImpl(cloudConnectionPool));
+
+            // Read replica of the cloud db for read only queries
+            s_replica = null;
+            final String replicaHost = dbProps.getProperty("db.cloud.replica.host");
+            if (replicaHost != null && !replicaHost.isEmpty()) {
+                final int replicaPort = Integer.parseInt(dbProps.getProperty("db.cloud.replica.port", String.valueOf(cloudPort)));
+                final int replicaMaxActive = Integer.parseInt(dbProps.getProperty("db.cloud.replica.maxActive", String.valueOf(cloudMaxActive)));
+                final int replicaMaxIdle = Integer.parseInt(dbProps.getProperty("db.cloud.replica.maxIdle", String.valueOf(cloudMaxIdle)));
+                final long replicaMaxWait = Long.parseLong(dbProps.getProperty("db.cloud.replica.maxWait", String.valueOf(cloudMaxWait)));
+                final long replicaMaxLag = Long.parseLong(dbProps.getProperty("db.cloud.replica.maxLagSeconds", "5"));
+                final long replicaCheckInterval = Long.parseLong(dbProps.getProperty("db.cloud.replica.lagCheckIntervalMillis", "10000"));
+
+                final GenericObjectPool replicaConnectionPool = new GenericObjectPool(null, replicaMaxActive,
+                        GenericObjectPool.DEFAULT_WHEN_EXHAUSTED_ACTION, replicaMaxWait, replicaMaxIdle, cloudTestOnBorrow, false,
+                        cloudTimeBtwEvictionRunsMillis, 1, cloudMinEvcitableIdleTimeMillis, cloudTestWhileIdle);
+                final ConnectionFactory replicaConnectionFactory = new DriverManagerConnectionFactory(
+                        DB_CONNECTION_SCHEME + "://" + replicaHost + ":" + replicaPort + "/" + cloudDbName +
+                                "?autoReconnect=" + cloudAutoReconnect + (url != null ? "&" + url : "") + (useSSL ? "&useSSL=true" : ""),
+                        cloudUsername, cloudPassword);
+                final PoolableConnectionFactory replicaPoolableConnectionFactory = new PoolableConnectionFactory(
+                        replicaConnectionFactory, replicaConnectionPool, poolableObjFactory, cloudValidationQuery, false, false,
+                        isolationLevel);
+
+                s_replica = new ReadReplica(new PoolingDataSource(replicaPoolableConnectionFactory.getPool()), replicaMaxLag, replicaCheckInterval);
+                s_logger.info("Read only queries go to the read replica at " + replicaHost + ":" + replicaPort + " while it lags at most " + replicaMaxLag + "s");
+                registerMBean("DB Connection Pools", "cloud replica", new ConnectionPoolMBeanImpl(replicaConnectionPool));
+                registerMBean("DB Read Replica", "cloud", s_replica);
+            }
 
             // Configure the usage db
             final int usageMaxActive = Integer.parseInt(dbProps.getProperty("db.usage.maxActive"));
@@ -1095,6 +1195,7 @@ public class TransactionLegacy implements Closeable {
 
             // Data Source for usage server
             s_usageDS = new PoolingDataSource(usagePoolableConnectionFactory.getPool());
+            registerMBean("DB Connection Pools", "usage", new ConnectionPoolMBeanImpl(usageConnectionPool));
         } catch (final Exception e) {
             s_ds = getDefaultDataSource("cloud");
             s_usageDS = getDefaultDataSource("cloud_usage");
@@ -1104,6 +1205,20 @@ public class TransactionLegacy implements Closeable {
         }
     }
 
+    private static void registerMBean(final String type, final String name, final Object mbean) {
+        try {
+            // initDataSource() can run more than once, replace the beans of the previous pools
+            try {
+                JmxUtil.unregisterMBean(type, name);
+            } catch (final InstanceNotFoundException e) {
+                s_logger.trace("No mbean " + name + " registered yet");
+            }
+            JmxUtil.registerMBean(type, name, mbean);
+        } catch (final Exception e) {
+            s_logger.warn("Unable to register mbean " + name, e);
+        }
+    }
+
     private static void loadMariaDbDriver() {
         try {
             Class.forName("org.mariadb.jdbc.Driver");
@@ -1135,6 +1250,15 @@ public class TransactionLegacy implements Closeable {
         /* connectionPool */poolableConnectionFactory.getPool());
     }
 
+    /**
+     * Used for unit testing primarily
+     *
+     * @param replica
+     */
+    static void setReadReplica(final ReadReplica replica) {
+        s_replica = replica;
+    }
+
     /**
      * Used for unit testing primarily
      *
@@ -0,0 +1,98 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.utils.db;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.naming.ConfigurationException;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Element;
+
+public class EntityCacheTest {
+
+    @After
+    public void tearDown() {
+        GenericDaoBase.setEntityCacheListener(null);
+        CacheManager.create().removeCache("entityCacheTestDao");
+    }
+
+    @Test
+    public void testRemoteEvictionUsesTheIdType() throws ConfigurationException {
+        final DbTestDao dao = createCachedDao();
+        dao._cache.put(new Element(5L, new DbTestVO()));
+        dao._cache.put(new Element(6L, new DbTestVO()));
+
+        Assert.assertTrue(GenericDaoBase.evictFromCache("entityCacheTestDao", "5"));
+        Assert.assertNull(dao._cache.get(5L));
+        Assert.assertNotNull(dao._cache.get(6L));
+        Assert.assertEquals(1, dao._cacheStats.getRemoteEvictions());
+        Assert.assertFalse(GenericDaoBase.evictFromCache("noSuchDao", "5"));
+
+        Assert.assertTrue(GenericDaoBase.evictFromCache("entityCacheTestDao", null));
+        Assert.assertNull(dao._cache.get(6L));
+    }
+
+    @Test
+    public void testEvictionIsPublishedAfterCommit() throws ConfigurationException {
+        final DbTestDao dao = createCachedDao();
+        final List<String> published = new ArrayList<String>();
+        GenericDaoBase.setEntityCacheListener((cacheName, id) -> published.add(cacheName + ":" + id));
+        dao._cache.put(new Element(7L, new DbTestVO()));
+
+        final TransactionLegacy txn = TransactionLegacy.open("testEvictionIsPublishedAfterCommit");
+        try {
+            txn.start();
+            dao.evictFromCache(7L);
+            Assert.assertNull(dao._cache.get(7L));
+            Assert.assertTrue(published.isEmpty());
+            txn.commit();
+        } finally {
+            txn.close();
+        }
+        Assert.assertEquals(1, published.size());
+        Assert.assertEquals("entityCacheTestDao:7", published.get(0));
+        Assert.assertEquals(1, dao._cacheStats.getLocalEvictions());
+    }
+
+    @Test
+    public void testHitRatio() throws ConfigurationException {
+        final DbTestDao dao = createCachedDao();
+        dao._cacheStats.hit();
+        dao._cacheStats.hit();
+        dao._cacheStats.hit();
+        dao._cacheStats.miss();
+        Assert.assertEquals(0.75, dao._cacheStats.getHitRatio(), 0.001);
+        dao._cacheStats.resetStatistics();
+        Assert.assertEquals(0, dao._cacheStats.getHitRatio(), 0.001);
+    }
+
+    private static DbTestDao createCachedDao() throws ConfigurationException {
+        final DbTestDao dao = new DbTestDao();
+        final Map<String, Object> params = new HashMap<String, Object>();
+        params.put("cache.size", "10");
+        dao.configure("entityCacheTestDao", params);
+        return dao;
+    }
+}
@@ -0,0 +1,121 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.utils.db;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class EntityRowMapperTest {
+
+    @Test
+    public void testRowsAreMappedWithOneBinding() throws SQLException {
+        final DbTestDao dao = new DbTestDao();
+        final ResultSetMetaData meta = Mockito.mock(ResultSetMetaData.class);
+        Mockito.when(meta.getColumnCount()).thenReturn(4);
+        Mockito.when(meta.getTableName(Mockito.anyInt())).thenReturn("test");
+        Mockito.when(meta.getColumnName(1)).thenReturn("id");
+        Mockito.when(meta.getColumnName(2)).thenReturn("fld_int");
+        Mockito.when(meta.getColumnName(3)).thenReturn("fld_long");
+        Mockito.when(meta.getColumnName(4)).thenReturn("fld_string");
+
+        final ResultSet rs = Mockito.mock(ResultSet.class);
+        Mockito.when(rs.getMetaData()).thenReturn(meta);
+        Mockito.when(rs.getLong(1)).thenReturn(10L, 11L);
+        Mockito.when(rs.getInt(2)).thenReturn(5, 6);
+        Mockito.when(rs.getLong(3)).thenReturn(100L, 0L);
+        Mockito.when(rs.wasNull()).thenReturn(false, true);
+        Mockito.when(rs.getBytes(4)).thenReturn("first".getBytes(StandardCharsets.UTF_8), null);
+
+        final DbTestVO first = dao.toEntityBean(rs, false);
+        final DbTestVO second = dao.toEntityBean(rs, false);
+
+        Assert.assertEquals(10L, first.id);
+        Assert.assertEquals(5, first.getFieldInt());
+        Assert.assertEquals(Long.valueOf(100L), first.fieldLong);
+        Assert.assertEquals("first", first.getFieldString());
+        Assert.assertEquals(11L, second.id);
+        Assert.assertEquals(6, second.getFieldInt());
+        Assert.assertNull(second.fieldLong);
+        Assert.assertNull(second.getFieldString());
+        // the columns are resolved for the first row only
+        Mockito.verify(rs, Mockito.times(1)).getMetaData();
+    }
+
+    @Test
+    public void testSearchSqlIsCachedPerShape() {
+        final DbTestDao dao = new DbTestDao();
+        final SearchBuilder<DbTestVO> sb = dao.createSearchBuilder();
+        sb.and("fieldInt", sb.entity().getFieldInt(), SearchCriteria.Op.EQ);
+        sb.and("fieldString", sb.entity().getFieldString(), SearchCriteria.Op.EQ);
+        sb.and("fieldLongs", sb.entity().getFieldLong(), SearchCriteria.Op.IN);
+        sb.done();
+
+        final SearchCriteria<DbTestVO> sc1 = sb.create();
+        sc1.setParameters("fieldInt", 1);
+        final SearchCriteria<DbTestVO> sc2 = sb.create();
+        sc2.setParameters("fieldInt", 2);
+        final SearchCriteria<DbTestVO> sc3 = sb.create();
+        sc3.setParameters("fieldInt", 3);
+        sc3.setParameters("fieldString", "foo");
+
+        final String sql1 = assertSearchSql(dao, sc1, null, false);
+        Assert.assertSame(sql1, assertSearchSql(dao, sc2, null, false));
+        final String sql3 = assertSearchSql(dao, sc3, null, false);
+        Assert.assertNotEquals(sql1, sql3);
+        Assert.assertTrue(sql3.contains("test.fld_string"));
+        Assert.assertNotEquals(sql1, assertSearchSql(dao, sc1, null, true));
+        Assert.assertNotEquals(sql1, assertSearchSql(dao, sc1, "test.id", false));
+
+        // the number of values of IN and null values of EQ change the statement
+        final SearchCriteria<DbTestVO> in1 = sb.create();
+        in1.setParameters("fieldLongs", 1L);
+        final SearchCriteria<DbTestVO> in3 = sb.create();
+        in3.setParameters("fieldLongs", 1L, 2L, 3L);
+        Assert.assertNotEquals(assertSearchSql(dao, in1, null, false), assertSearchSql(dao, in3, null, false));
+        final SearchCriteria<DbTestVO> isNull = sb.create();
+        isNull.setParameters("fieldString", (Object)null);
+        Assert.assertTrue(assertSearchSql(dao, isNull, null, false).contains("IS NULL"));
+
+        // so do conditions added to the criteria
+        final SearchCriteria<DbTestVO> added = sb.create();
+        added.setParameters("fieldInt", 1);
+        added.addAnd("fieldLong", SearchCriteria.Op.NULL);
+        Assert.assertNotEquals(sql1, assertSearchSql(dao, added, null, false));
+        final SearchCriteria<DbTestVO> addedOther = sb.create();
+        addedOther.setParameters("fieldInt", 1);
+        addedOther.addAnd("fieldString", SearchCriteria.Op.NULL);
+        assertSearchSql(dao, addedOther, null, false);
+
+        // nested criteria are built every time
+        final SearchCriteria<DbTestVO> nested = sb.create();
+        nested.addAnd("fieldInt", SearchCriteria.Op.SC, sc3);
+        assertSearchSql(dao, nested, null, false);
+        Assert.assertEquals(9, sb.create().getSearchSqls().size());
+    }
+
+    private static String assertSearchSql(final DbTestDao dao, final SearchCriteria<DbTestVO> sc, final String keysetColumn, final boolean queryCache) {
+        final String sql = dao.getSearchSql(sc, keysetColumn, queryCache);
+        Assert.assertEquals(dao.buildSearchSql(sc, keysetColumn, queryCache), sql);
+        return sql;
+    }
+}
@@ -0,0 +1,93 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.utils.db;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class GenericDaoStreamTest {
+
+    @Test
+    public void testBatchesContinueAfterLastId() {
+        final StreamDao dao = new StreamDao(Arrays.asList(vo(1), vo(2)), Arrays.asList(vo(5), vo(7)), Collections.singletonList(vo(9)));
+        final List<Long> seen = new ArrayList<Long>();
+        dao.streamIncludingRemoved(null, 2, false, batch -> batch.forEach(vo -> seen.add(vo.id)));
+
+        Assert.assertEquals(Arrays.asList(1L, 2L, 5L, 7L, 9L), seen);
+        Assert.assertEquals(Arrays.asList(Long.MIN_VALUE, 2L, 7L), dao.lastIds);
+        Assert.assertTrue(dao.sql.contains("test.id > ?"));
+        Assert.assertTrue(dao.sql.endsWith(" ORDER BY test.id LIMIT 2"));
+    }
+
+    @Test
+    public void testFullBatchIsFollowedByOneMoreQuery() {
+        final StreamDao dao = new StreamDao(Arrays.asList(vo(1), vo(2)));
+        final List<Integer> sizes = new ArrayList<Integer>();
+        dao.streamIncludingRemoved(null, 2, false, batch -> sizes.add(batch.size()));
+
+        Assert.assertEquals(Collections.singletonList(2), sizes);
+        Assert.assertEquals(Arrays.asList(Long.MIN_VALUE, 2L), dao.lastIds);
+    }
+
+    @Test
+    public void testCriteriaIsKeptInFrontOfTheKey() {
+        final StreamDao dao = new StreamDao(Collections.singletonList(vo(3)));
+        final SearchBuilder<DbTestVO> sb = dao.createSearchBuilder();
+        sb.and("fieldInt", sb.entity().getFieldInt(), SearchCriteria.Op.EQ);
+        sb.done();
+        final SearchCriteria<DbTestVO> sc = sb.create();
+        sc.setParameters("fieldInt", 1);
+
+        final List<Long> seen = new ArrayList<Long>();
+        dao.stream(sc, vo -> seen.add(vo.id));
+
+        Assert.assertEquals(Collections.singletonList(3L), seen);
+        Assert.assertTrue(dao.sql.matches(".*\\(\\s*test\\.fld_int\\s*=\\s*\\?\\s*\\) AND test\\.id > \\?.*"));
+        Assert.assertSame(sc, dao.sc);
+    }
+
+    private static DbTestVO vo(final long id) {
+        final DbTestVO vo = new DbTestVO();
+        vo.id = id;
+        return vo;
+    }
+
+    private static class StreamDao extends DbTestDao {
+        private final List<List<DbTestVO>> batches;
+        private final List<Long> lastIds = new ArrayList<Long>();
+        private String sql;
+        private SearchCriteria<DbTestVO> sc;
+
+        @SafeVarargs
+        StreamDao(final List<DbTestVO>... batches) {
+            this.batches = new ArrayList<List<DbTestVO>>(Arrays.asList(batches));
+        }
+
+        @Override
+        protected List<DbTestVO> searchBatch(final SearchCriteria<DbTestVO> sc, final String sql, final long lastId, final boolean cache) {
+            this.sql = sql;
+            this.sc = sc;
+            lastIds.add(lastId);
+            return batches.isEmpty() ? Collections.<DbTestVO>emptyList() : batches.remove(0);
+        }
+    }
+}
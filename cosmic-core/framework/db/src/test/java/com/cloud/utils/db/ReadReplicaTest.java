@@ -0,0 +1,107 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.utils.db;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import javax.sql.DataSource;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class ReadReplicaTest {
+
+    @After
+    public void tearDown() {
+        TransactionLegacy.setReadReplica(null);
+    }
+
+    @Test
+    public void testReadOnlyScopeUsesReplicaUntilTransactionStarts() throws SQLException {
+        final Connection replicaConn = Mockito.mock(Connection.class);
+        TransactionLegacy.setReadReplica(new ReadReplica(replicaDataSource(replicaConn, false), 5, 60000));
+
+        final TransactionLegacy txn = TransactionLegacy.open("testReadOnlyScopeUsesReplicaUntilTransactionStarts");
+        TransactionLegacy.enterReadOnly();
+        try {
+            Assert.assertSame(replicaConn, txn.getConnection());
+            Assert.assertTrue(txn.isUsingReplica());
+            Mockito.verify(replicaConn).setReadOnly(true);
+
+            txn.start();
+            Assert.assertFalse(txn.isUsingReplica());
+            Mockito.verify(replicaConn).close();
+            txn.rollback();
+        } finally {
+            TransactionLegacy.exitReadOnly();
+            txn.close();
+        }
+        Assert.assertFalse(TransactionLegacy.isReadOnly());
+    }
+
+    @Test
+    public void testReplicaConnectionIsReleasedWithTheScope() throws SQLException {
+        final Connection replicaConn = Mockito.mock(Connection.class);
+        TransactionLegacy.setReadReplica(new ReadReplica(replicaDataSource(replicaConn, false), 5, 60000));
+
+        final TransactionLegacy txn = TransactionLegacy.open("testReplicaConnectionIsReleasedWithTheScope");
+        try {
+            TransactionLegacy.enterReadOnly();
+            TransactionLegacy.enterReadOnly();
+            txn.getConnection();
+            TransactionLegacy.exitReadOnly();
+            Assert.assertTrue(txn.isUsingReplica());
+            TransactionLegacy.exitReadOnly();
+            Assert.assertFalse(txn.isUsingReplica());
+            Mockito.verify(replicaConn).close();
+        } finally {
+            txn.close();
+        }
+    }
+
+    @Test
+    public void testLaggingReplicaIsNotUsed() throws SQLException {
+        final ReadReplica replica = new ReadReplica(replicaDataSource(Mockito.mock(Connection.class), true), 5, 60000);
+        Assert.assertNull(replica.getConnection());
+        Assert.assertEquals(30, replica.getReplicationLagSeconds());
+        Assert.assertFalse(replica.isUsable());
+        Assert.assertEquals(1, replica.getPrimaryFallbacks());
+
+        replica.updateLag(2);
+        Assert.assertNotNull(replica.getConnection());
+        Assert.assertEquals(1, replica.getReplicaConnections());
+    }
+
+    private static DataSource replicaDataSource(final Connection conn, final boolean lagging) throws SQLException {
+        final ResultSet status = Mockito.mock(ResultSet.class);
+        Mockito.when(status.next()).thenReturn(lagging);
+        Mockito.when(status.getLong("Seconds_Behind_Master")).thenReturn(30L);
+        final Statement stmt = Mockito.mock(Statement.class);
+        Mockito.when(stmt.executeQuery("SHOW SLAVE STATUS")).thenReturn(status);
+        final Connection checkConn = Mockito.mock(Connection.class);
+        Mockito.when(checkConn.createStatement()).thenReturn(stmt);
+
+        final DataSource ds = Mockito.mock(DataSource.class);
+        Mockito.when(ds.getConnection()).thenReturn(checkConn, conn);
+        return ds;
+    }
+}
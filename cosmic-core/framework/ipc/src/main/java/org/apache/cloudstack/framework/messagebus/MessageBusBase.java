@@ -20,34 +20,67 @@
 package org.apache.cloudstack.framework.messagebus;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.cloud.utils.concurrency.NamedThreadFactory;
 import com.cloud.utils.db.TransactionLegacy;
 import com.cloud.utils.exception.CloudRuntimeException;
 
 import org.apache.cloudstack.framework.serializer.MessageSerializer;
+import org.apache.cloudstack.managed.context.ManagedContextRunnable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Delivers published messages to the subscribers of the subject and of its parents.
+ *
+ * The subscriptions are kept in a trie that is copied on every change, so a publish reads a snapshot
+ * without locking and subscribers may subscribe or unsubscribe while a message is being delivered.
+ *
+ * By default a message is delivered on the thread that publishes it, one publish at a time. With
+ * dispatchThreads set, a publish only queues the message for each subscriber and returns. The queue
+ * of a subscriber is drained by one thread at a time, so a subscriber still gets its messages one by
+ * one and, for every subject, in the order they were published.
+ */
 public class MessageBusBase implements MessageBus {
 
-    private final Gate _gate;
-    private final List<ActionRecord> _pendingActions;
+    private static final Logger s_logger = LoggerFactory.getLogger(MessageBusBase.class);
+
+    private static final int SUBJECT_LOCK_STRIPES = 64;
+    private static final int DELIVERIES_PER_RUN = 64;
 
-    private final SubscriptionNode _subscriberRoot;
-    private MessageSerializer _messageSerializer;
+    private final Object _subscriptionLock = new Object();
+    private volatile SubscriptionNode _subscriberRoot;
 
-    private static final Logger s_logger = LoggerFactory.getLogger(MessageBusBase.class);
+    private final ReentrantLock _publishLock = new ReentrantLock();
+    private final Object[] _subjectLocks;
+    private final Map<MessageSubscriber, SubscriberQueue> _subscriberQueues = new ConcurrentHashMap<MessageSubscriber, SubscriberQueue>();
+    private volatile ThreadPoolExecutor _dispatchExecutor;
+
+    private final ConcurrentHashMap<String, SubjectStatistics> _subjectStatistics = new ConcurrentHashMap<String, SubjectStatistics>();
+    private long _slowDeliveryThreshold = 1000;
+
+    private MessageSerializer _messageSerializer;
 
     public MessageBusBase() {
-        _gate = new Gate();
-        _pendingActions = new ArrayList<ActionRecord>();
+        _subscriberRoot = SubscriptionNode.EMPTY;
 
-        _subscriberRoot = new SubscriptionNode(null, "/", null);
+        _subjectLocks = new Object[SUBJECT_LOCK_STRIPES];
+        for (int i = 0; i < _subjectLocks.length; i++) {
+            _subjectLocks[i] = new Object();
+        }
     }
 
     @Override
@@ -60,102 +93,97 @@ public class MessageBusBase implements MessageBus {
         return _messageSerializer;
     }
 
+    /**
+     * @param dispatchThreads number of threads that deliver messages, or 0 to deliver them on the publishing thread
+     */
+    public void setDispatchThreads(int dispatchThreads) {
+        final ThreadPoolExecutor previous = _dispatchExecutor;
+        if (dispatchThreads > 0) {
+            final ThreadPoolExecutor executor = new ThreadPoolExecutor(dispatchThreads, dispatchThreads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                    new NamedThreadFactory("MessageBus-Dispatch"));
+            executor.allowCoreThreadTimeOut(true);
+            _dispatchExecutor = executor;
+        } else {
+            _dispatchExecutor = null;
+        }
+        if (previous != null) {
+            previous.shutdown();
+        }
+    }
+
+    public int getDispatchThreads() {
+        final ThreadPoolExecutor executor = _dispatchExecutor;
+        return executor != null ? executor.getMaximumPoolSize() : 0;
+    }
+
+    /**
+     * @param slowDeliveryThreshold milliseconds a subscriber may take on a message before it is logged
+     */
+    public void setSlowDeliveryThreshold(long slowDeliveryThreshold) {
+        _slowDeliveryThreshold = slowDeliveryThreshold;
+    }
+
+    /**
+     * @return the delivery statistics of every subject published so far
+     */
+    public Map<String, SubjectStatistics> getSubjectStatistics() {
+        return Collections.unmodifiableMap(_subjectStatistics);
+    }
+
+    /**
+     * @return the number of messages queued for subscribers and not yet delivered
+     */
+    public int getPendingDeliveries() {
+        int pending = 0;
+        for (SubscriberQueue queue : _subscriberQueues.values()) {
+            pending += queue.size();
+        }
+        return pending;
+    }
+
     @Override
     public void subscribe(String subject, MessageSubscriber subscriber) {
         assert (subject != null);
         assert (subscriber != null);
-        if (_gate.enter()) {
-            if (s_logger.isTraceEnabled()) {
-                s_logger.trace("Enter gate in message bus subscribe");
-            }
-            try {
-                SubscriptionNode current = locate(subject, null, true);
-                assert (current != null);
-                current.addSubscriber(subscriber);
-            } finally {
-                _gate.leave();
-            }
-        } else {
-            synchronized (_pendingActions) {
-                _pendingActions.add(new ActionRecord(ActionType.Subscribe, subject, subscriber));
+        synchronized (_subscriptionLock) {
+            _subscriberRoot = _subscriberRoot.withSubscriber(tokenize(subject), 0, subscriber);
+            final SubscriberQueue queue = _subscriberQueues.get(subscriber);
+            if (queue != null) {
+                queue.setRetired(false);
             }
         }
     }
 
     @Override
     public void unsubscribe(String subject, MessageSubscriber subscriber) {
-        if (_gate.enter()) {
-            if (s_logger.isTraceEnabled()) {
-                s_logger.trace("Enter gate in message bus unsubscribe");
-            }
-            try {
-                if (subject != null) {
-                    SubscriptionNode current = locate(subject, null, false);
-                    if (current != null)
-                        current.removeSubscriber(subscriber, false);
-                } else {
-                    _subscriberRoot.removeSubscriber(subscriber, true);
-                }
-            } finally {
-                _gate.leave();
+        synchronized (_subscriptionLock) {
+            if (subject != null) {
+                _subscriberRoot = _subscriberRoot.withoutSubscriber(tokenize(subject), 0, subscriber);
+            } else {
+                _subscriberRoot = _subscriberRoot.withoutSubscriberRecursively(subscriber);
             }
-        } else {
-            synchronized (_pendingActions) {
-                _pendingActions.add(new ActionRecord(ActionType.Unsubscribe, subject, subscriber));
+
+            final SubscriberQueue queue = _subscriberQueues.get(subscriber);
+            if (queue != null && !_subscriberRoot.contains(subscriber)) {
+                queue.setRetired(true);
             }
         }
     }
 
     @Override
     public void clearAll() {
-        if (_gate.enter()) {
-            if (s_logger.isTraceEnabled()) {
-                s_logger.trace("Enter gate in message bus clearAll");
-            }
-            try {
-                _subscriberRoot.clearAll();
-                doPrune();
-            } finally {
-                _gate.leave();
-            }
-        } else {
-            synchronized (_pendingActions) {
-                _pendingActions.add(new ActionRecord(ActionType.ClearAll, null, null));
+        synchronized (_subscriptionLock) {
+            _subscriberRoot = SubscriptionNode.EMPTY;
+            for (SubscriberQueue queue : _subscriberQueues.values()) {
+                queue.setRetired(true);
             }
         }
     }
 
     @Override
     public void prune() {
-        if (_gate.enter()) {
-            if (s_logger.isTraceEnabled()) {
-                s_logger.trace("Enter gate in message bus prune");
-            }
-            try {
-                doPrune();
-            } finally {
-                _gate.leave();
-            }
-        } else {
-            synchronized (_pendingActions) {
-                _pendingActions.add(new ActionRecord(ActionType.Prune, null, null));
-            }
-        }
-    }
-
-    private void doPrune() {
-        List<SubscriptionNode> trimNodes = new ArrayList<SubscriptionNode>();
-        _subscriberRoot.prune(trimNodes);
-
-        while (trimNodes.size() > 0) {
-            SubscriptionNode node = trimNodes.remove(0);
-            SubscriptionNode parent = node.getParent();
-            if (parent != null) {
-                parent.removeChild(node.getNodeKey());
-                if (parent.isTrimmable()) {
-                    trimNodes.add(parent);
-                }
-            }
+        synchronized (_subscriptionLock) {
+            _subscriberRoot = _subscriberRoot.pruned();
         }
     }
 
@@ -166,284 +194,371 @@ public class MessageBusBase implements MessageBus {
             String errMsg = "NO EVENT PUBLISH CAN BE WRAPPED WITHIN DB TRANSACTION!";
             s_logger.error(errMsg, new CloudRuntimeException(errMsg));
         }
-        if (_gate.enter(true)) {
-            if (s_logger.isTraceEnabled()) {
-                s_logger.trace("Enter gate in message bus publish");
-            }
-            try {
-                List<SubscriptionNode> chainFromTop = new ArrayList<SubscriptionNode>();
-                SubscriptionNode current = locate(subject, chainFromTop, false);
 
-                if (current != null)
-                    current.notifySubscribers(senderAddress, subject, args);
+        final List<MessageSubscriber> subscribers = locateSubscribers(_subscriberRoot, subject);
+        final SubjectStatistics statistics = getStatistics(subject);
+        final long publishedAt = System.nanoTime();
+        statistics.published(subscribers.size());
 
-                Collections.reverse(chainFromTop);
-                for (SubscriptionNode node : chainFromTop)
-                    node.notifySubscribers(senderAddress, subject, args);
+        final ThreadPoolExecutor executor = _dispatchExecutor;
+        if (executor == null) {
+            _publishLock.lock();
+            try {
+                for (MessageSubscriber subscriber : subscribers) {
+                    deliver(subscriber, new Delivery(senderAddress, subject, args, statistics, publishedAt));
+                }
             } finally {
-                _gate.leave();
+                _publishLock.unlock();
             }
+            return;
         }
-    }
 
-    private void onGateOpen() {
-        synchronized (_pendingActions) {
-            ActionRecord record = null;
-            while (_pendingActions.size() > 0) {
-                record = _pendingActions.remove(0);
-                switch (record.getType()) {
-                    case Subscribe: {
-                        SubscriptionNode current = locate(record.getSubject(), null, true);
-                        assert (current != null);
-                        current.addSubscriber(record.getSubscriber());
+        // every subscriber must see the messages of a subject in the same order
+        synchronized (_subjectLocks[(subject.hashCode() & Integer.MAX_VALUE) % _subjectLocks.length]) {
+            for (MessageSubscriber subscriber : subscribers) {
+                final Delivery delivery = new Delivery(senderAddress, subject, args, statistics, publishedAt);
+                SubscriberQueue queue = _subscriberQueues.get(subscriber);
+                if (queue == null) {
+                    final SubscriberQueue created = new SubscriberQueue(subscriber);
+                    queue = _subscriberQueues.putIfAbsent(subscriber, created);
+                    if (queue == null) {
+                        queue = created;
                     }
-                        break;
-
-                    case Unsubscribe:
-                        if (record.getSubject() != null) {
-                            SubscriptionNode current = locate(record.getSubject(), null, false);
-                            if (current != null)
-                                current.removeSubscriber(record.getSubscriber(), false);
-                        } else {
-                            _subscriberRoot.removeSubscriber(record.getSubscriber(), true);
-                        }
-                        break;
-
-                    case ClearAll:
-                        _subscriberRoot.clearAll();
-                        break;
-
-                    case Prune:
-                        doPrune();
-                        break;
-
-                    default:
-                        assert (false);
-                        break;
-
                 }
+                queue.enqueue(delivery, executor);
             }
         }
     }
 
-    private SubscriptionNode locate(String subject, List<SubscriptionNode> chainFromTop, boolean createPath) {
-
-        assert (subject != null);
-        // "/" is special name for root node
-        if (subject.equals("/"))
-            return _subscriberRoot;
-
-        String[] subjectPathTokens = subject.split("\\.");
-        return locate(subjectPathTokens, _subscriberRoot, chainFromTop, createPath);
+    private void deliver(MessageSubscriber subscriber, Delivery delivery) {
+        final long start = System.nanoTime();
+        try {
+            subscriber.onPublishMessage(delivery._senderAddress, delivery._subject, delivery._args);
+        } finally {
+            final long end = System.nanoTime();
+            delivery._statistics.delivered(end - delivery._publishedAt);
+
+            final long spent = TimeUnit.NANOSECONDS.toMillis(end - start);
+            if (_slowDeliveryThreshold > 0 && spent > _slowDeliveryThreshold) {
+                s_logger.warn("Subscriber " + subscriber.getClass().getName() + " took " + spent + " ms on message " + delivery._subject);
+            }
+        }
     }
 
-    private static SubscriptionNode locate(String[] subjectPathTokens, SubscriptionNode current, List<SubscriptionNode> chainFromTop, boolean createPath) {
-
-        assert (current != null);
-        assert (subjectPathTokens != null);
-        assert (subjectPathTokens.length > 0);
+    private SubjectStatistics getStatistics(String subject) {
+        SubjectStatistics statistics = _subjectStatistics.get(subject);
+        if (statistics == null) {
+            final SubjectStatistics created = new SubjectStatistics();
+            statistics = _subjectStatistics.putIfAbsent(subject, created);
+            if (statistics == null) {
+                statistics = created;
+            }
+        }
+        return statistics;
+    }
 
-        if (chainFromTop != null)
+    /**
+     * @return the subscribers of the subject followed by those of its parents, the closest parent first
+     */
+    private static List<MessageSubscriber> locateSubscribers(SubscriptionNode root, String subject) {
+        assert (subject != null);
+        final List<SubscriptionNode> chainFromTop = new ArrayList<SubscriptionNode>();
+        SubscriptionNode current = root;
+        for (String token : tokenize(subject)) {
             chainFromTop.add(current);
-
-        SubscriptionNode next = current.getChild(subjectPathTokens[0]);
-        if (next == null) {
-            if (createPath) {
-                next = new SubscriptionNode(current, subjectPathTokens[0], null);
-                current.addChild(subjectPathTokens[0], next);
-            } else {
-                return null;
+            current = current.getChild(token);
+            if (current == null) {
+                break;
             }
         }
 
-        if (subjectPathTokens.length > 1) {
-            return locate(Arrays.copyOfRange(subjectPathTokens, 1, subjectPathTokens.length), next, chainFromTop, createPath);
-        } else {
-            return next;
+        final List<MessageSubscriber> subscribers = new ArrayList<MessageSubscriber>();
+        if (current != null) {
+            subscribers.addAll(current.getSubscribers());
+        }
+        for (int i = chainFromTop.size() - 1; i >= 0; i--) {
+            subscribers.addAll(chainFromTop.get(i).getSubscribers());
         }
+        return subscribers;
+    }
+
+    private static String[] tokenize(String subject) {
+        assert (subject != null);
+        // "/" is special name for root node
+        if (subject.equals("/"))
+            return new String[0];
+        return subject.split("\\.");
     }
 
     private boolean noDbTxn() {
         TransactionLegacy txn = TransactionLegacy.currentTxn();
-        return !txn.dbTxnStarted();
+        return txn == null || !txn.dbTxnStarted();
     }
 
     //
     // Support inner classes
     //
-    private static enum ActionType {
-        Subscribe, Unsubscribe, ClearAll, Prune
+    public static class SubjectStatistics {
+        private final AtomicLong _published = new AtomicLong();
+        private final AtomicLong _subscribers = new AtomicLong();
+        private final AtomicLong _delivered = new AtomicLong();
+        private final AtomicLong _totalLatency = new AtomicLong();
+        private final AtomicLong _maxLatency = new AtomicLong();
+
+        void published(int subscribers) {
+            _published.incrementAndGet();
+            _subscribers.addAndGet(subscribers);
+        }
+
+        void delivered(long latency) {
+            _delivered.incrementAndGet();
+            _totalLatency.addAndGet(latency);
+            long max = _maxLatency.get();
+            while (latency > max && !_maxLatency.compareAndSet(max, latency)) {
+                max = _maxLatency.get();
+            }
+        }
+
+        public long getPublished() {
+            return _published.get();
+        }
+
+        /**
+         * @return the number of deliveries the messages fanned out to
+         */
+        public long getFanOut() {
+            return _subscribers.get();
+        }
+
+        public long getDelivered() {
+            return _delivered.get();
+        }
+
+        /**
+         * @return the average time in milliseconds from a publish until a subscriber has handled the message
+         */
+        public double getAverageLatency() {
+            final long delivered = _delivered.get();
+            return delivered == 0 ? 0 : _totalLatency.get() / 1000000.0 / delivered;
+        }
+
+        /**
+         * @return the longest time in milliseconds from a publish until a subscriber has handled the message
+         */
+        public double getMaxLatency() {
+            return _maxLatency.get() / 1000000.0;
+        }
+
+        @Override
+        public String toString() {
+            return "published=" + getPublished() + ", fanOut=" + getFanOut() + ", delivered=" + getDelivered() + ", averageLatency=" +
+                    String.format("%.3f", getAverageLatency()) + "ms, maxLatency=" + String.format("%.3f", getMaxLatency()) + "ms";
+        }
     }
 
-    private static class ActionRecord {
-        private final ActionType _type;
+    private static class Delivery {
+        private final String _senderAddress;
         private final String _subject;
-        private final MessageSubscriber _subscriber;
+        private final Object _args;
+        private final SubjectStatistics _statistics;
+        private final long _publishedAt;
 
-        public ActionRecord(ActionType type, String subject, MessageSubscriber subscriber) {
-            _type = type;
+        public Delivery(String senderAddress, String subject, Object args, SubjectStatistics statistics, long publishedAt) {
+            _senderAddress = senderAddress;
             _subject = subject;
+            _args = args;
+            _statistics = statistics;
+            _publishedAt = publishedAt;
+        }
+    }
+
+    /**
+     * Messages waiting for one subscriber. At most one thread drains it at a time.
+     */
+    private class SubscriberQueue implements Runnable {
+        private final MessageSubscriber _subscriber;
+        private final Queue<Delivery> _deliveries = new ConcurrentLinkedQueue<Delivery>();
+        private final AtomicBoolean _scheduled = new AtomicBoolean();
+        private volatile boolean _retired;
+        private volatile ThreadPoolExecutor _executor;
+
+        public SubscriberQueue(MessageSubscriber subscriber) {
             _subscriber = subscriber;
         }
 
-        public ActionType getType() {
-            return _type;
+        public int size() {
+            return _deliveries.size();
         }
 
-        public String getSubject() {
-            return _subject;
+        public void setRetired(boolean retired) {
+            _retired = retired;
+            if (retired) {
+                removeIfIdle();
+            }
         }
 
-        public MessageSubscriber getSubscriber() {
-            return _subscriber;
+        public void enqueue(Delivery delivery, ThreadPoolExecutor executor) {
+            _executor = executor;
+            _deliveries.add(delivery);
+            schedule();
         }
-    }
 
-    private class Gate {
-        private int _reentranceCount;
-        private Thread _gateOwner;
-
-        public Gate() {
-            _reentranceCount = 0;
-            _gateOwner = null;
-        }
-
-        public boolean enter() {
-            return enter(false);
-        }
-
-        public boolean enter(boolean wait) {
-            while (true) {
-                synchronized (this) {
-                    if (_reentranceCount == 0) {
-                        assert (_gateOwner == null);
-
-                        _reentranceCount++;
-                        _gateOwner = Thread.currentThread();
-                        return true;
-                    } else {
-                        if (wait) {
-                            try {
-                                wait();
-                            } catch (InterruptedException e) {
-                                s_logger.debug("[ignored] interupted while guarding re-entrance on message bus.");
-                            }
-                        } else {
-                            break;
-                        }
+        private void schedule() {
+            if (_scheduled.compareAndSet(false, true)) {
+                _executor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                // subscribers use the database and the call context like they do on the publishing thread
+                new ManagedContextRunnable() {
+                    @Override
+                    protected void runInContext() {
+                        drain();
                     }
+                }.run();
+            } catch (RuntimeException e) {
+                s_logger.warn("Unable to deliver messages to subscriber " + _subscriber.getClass().getName(), e);
+            } finally {
+                _scheduled.set(false);
+                // give the other subscribers a turn before delivering the rest
+                if (!_deliveries.isEmpty()) {
+                    schedule();
+                } else {
+                    removeIfIdle();
                 }
             }
-
-            return false;
         }
 
-        public void leave() {
-            synchronized (this) {
-                if (_reentranceCount > 0) {
-                    try {
-                        assert (_gateOwner == Thread.currentThread());
-
-                        onGateOpen();
-                    } finally {
-                        if (s_logger.isTraceEnabled()) {
-                            s_logger.trace("Open gate of message bus");
-                        }
-                        _reentranceCount--;
-                        assert (_reentranceCount == 0);
-                        _gateOwner = null;
-
-                        notifyAll();
-                    }
+        private void drain() {
+            for (int i = 0; i < DELIVERIES_PER_RUN; i++) {
+                final Delivery delivery = _deliveries.poll();
+                if (delivery == null) {
+                    break;
+                }
+                try {
+                    deliver(_subscriber, delivery);
+                } catch (RuntimeException e) {
+                    s_logger.warn("Subscriber " + _subscriber.getClass().getName() + " failed on message " + delivery._subject, e);
                 }
             }
         }
+
+        private void removeIfIdle() {
+            if (_retired && !_scheduled.get() && _deliveries.isEmpty()) {
+                _subscriberQueues.remove(_subscriber, this);
+            }
+        }
     }
 
+    /**
+     * A node of the subscription trie. Nodes are never changed once they are published; a change
+     * returns new nodes for the path to the root and shares the rest of the trie.
+     */
     private static class SubscriptionNode {
-        private final String _nodeKey;
+        static final SubscriptionNode EMPTY = new SubscriptionNode(Collections.<MessageSubscriber> emptyList(), Collections.<String, SubscriptionNode> emptyMap());
+
         private final List<MessageSubscriber> _subscribers;
         private final Map<String, SubscriptionNode> _children;
-        private final SubscriptionNode _parent;
-
-        public SubscriptionNode(SubscriptionNode parent, String nodeKey, MessageSubscriber subscriber) {
-            assert (nodeKey != null);
-            _parent = parent;
-            _nodeKey = nodeKey;
-            _subscribers = new ArrayList<MessageSubscriber>();
 
-            if (subscriber != null)
-                _subscribers.add(subscriber);
-
-            _children = new HashMap<String, SubscriptionNode>();
+        private SubscriptionNode(List<MessageSubscriber> subscribers, Map<String, SubscriptionNode> children) {
+            _subscribers = subscribers;
+            _children = children;
         }
 
-        public SubscriptionNode getParent() {
-            return _parent;
-        }
-
-        public String getNodeKey() {
-            return _nodeKey;
-        }
-
-        @SuppressWarnings("unused")
-        public List<MessageSubscriber> getSubscriber() {
+        public List<MessageSubscriber> getSubscribers() {
             return _subscribers;
         }
 
-        public void addSubscriber(MessageSubscriber subscriber) {
-            if (!_subscribers.contains(subscriber))
-                _subscribers.add(subscriber);
+        public SubscriptionNode getChild(String key) {
+            return _children.get(key);
         }
 
-        public void removeSubscriber(MessageSubscriber subscriber, boolean recursively) {
-            if (recursively) {
-                for (Map.Entry<String, SubscriptionNode> entry : _children.entrySet()) {
-                    entry.getValue().removeSubscriber(subscriber, true);
-                }
+        public SubscriptionNode withSubscriber(String[] path, int depth, MessageSubscriber subscriber) {
+            if (depth == path.length) {
+                if (_subscribers.contains(subscriber))
+                    return this;
+                final List<MessageSubscriber> subscribers = new ArrayList<MessageSubscriber>(_subscribers);
+                subscribers.add(subscriber);
+                return new SubscriptionNode(Collections.unmodifiableList(subscribers), _children);
             }
-            _subscribers.remove(subscriber);
-        }
 
-        public SubscriptionNode getChild(String key) {
-            return _children.get(key);
+            SubscriptionNode child = _children.get(path[depth]);
+            if (child == null)
+                child = EMPTY;
+            return withChild(path[depth], child.withSubscriber(path, depth + 1, subscriber));
         }
 
-        public void addChild(String key, SubscriptionNode childNode) {
-            _children.put(key, childNode);
-        }
+        public SubscriptionNode withoutSubscriber(String[] path, int depth, MessageSubscriber subscriber) {
+            if (depth == path.length)
+                return withoutOwnSubscriber(subscriber);
 
-        public void removeChild(String key) {
-            _children.remove(key);
+            final SubscriptionNode child = _children.get(path[depth]);
+            if (child == null)
+                return this;
+            final SubscriptionNode newChild = child.withoutSubscriber(path, depth + 1, subscriber);
+            return newChild == child ? this : withChild(path[depth], newChild);
         }
 
-        public void clearAll() {
-            // depth-first
+        public SubscriptionNode withoutSubscriberRecursively(MessageSubscriber subscriber) {
+            Map<String, SubscriptionNode> children = null;
             for (Map.Entry<String, SubscriptionNode> entry : _children.entrySet()) {
-                entry.getValue().clearAll();
+                final SubscriptionNode newChild = entry.getValue().withoutSubscriberRecursively(subscriber);
+                if (newChild != entry.getValue()) {
+                    if (children == null)
+                        children = new HashMap<String, SubscriptionNode>(_children);
+                    children.put(entry.getKey(), newChild);
+                }
             }
-            _subscribers.clear();
-        }
 
-        public void prune(List<SubscriptionNode> trimNodes) {
-            assert (trimNodes != null);
+            final SubscriptionNode node = children == null ? this : new SubscriptionNode(_subscribers, Collections.unmodifiableMap(children));
+            return node.withoutOwnSubscriber(subscriber);
+        }
 
+        public SubscriptionNode pruned() {
+            Map<String, SubscriptionNode> children = null;
             for (Map.Entry<String, SubscriptionNode> entry : _children.entrySet()) {
-                entry.getValue().prune(trimNodes);
+                final SubscriptionNode newChild = entry.getValue().pruned();
+                if (newChild != entry.getValue() || newChild.isTrimmable()) {
+                    if (children == null)
+                        children = new HashMap<String, SubscriptionNode>(_children);
+                    if (newChild.isTrimmable())
+                        children.remove(entry.getKey());
+                    else
+                        children.put(entry.getKey(), newChild);
+                }
             }
-
-            if (isTrimmable())
-                trimNodes.add(this);
+            return children == null ? this : new SubscriptionNode(_subscribers, Collections.unmodifiableMap(children));
         }
 
-        public void notifySubscribers(String senderAddress, String subject, Object args) {
-            for (MessageSubscriber subscriber : _subscribers) {
-                subscriber.onPublishMessage(senderAddress, subject, args);
+        public boolean contains(MessageSubscriber subscriber) {
+            if (_subscribers.contains(subscriber))
+                return true;
+            for (SubscriptionNode child : _children.values()) {
+                if (child.contains(subscriber))
+                    return true;
             }
+            return false;
         }
 
         public boolean isTrimmable() {
-            return _children.size() == 0 && _subscribers.size() == 0;
+            return _children.isEmpty() && _subscribers.isEmpty();
+        }
+
+        private SubscriptionNode withoutOwnSubscriber(MessageSubscriber subscriber) {
+            if (!_subscribers.contains(subscriber))
+                return this;
+            final List<MessageSubscriber> subscribers = new ArrayList<MessageSubscriber>(_subscribers);
+            subscribers.remove(subscriber);
+            return new SubscriptionNode(Collections.unmodifiableList(subscribers), _children);
+        }
+
+        private SubscriptionNode withChild(String key, SubscriptionNode child) {
+            final Map<String, SubscriptionNode> children = new HashMap<String, SubscriptionNode>(_children);
+            children.put(key, child);
+            return new SubscriptionNode(_subscribers, Collections.unmodifiableMap(children));
         }
     }
 }
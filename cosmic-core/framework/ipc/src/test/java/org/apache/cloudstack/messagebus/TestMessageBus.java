@@ -20,11 +20,15 @@ package org.apache.cloudstack.messagebus;
 
 import javax.inject.Inject;
 
+import com.cloud.utils.db.TransactionLegacy;
+
 import org.apache.cloudstack.framework.messagebus.MessageBus;
 import org.apache.cloudstack.framework.messagebus.MessageDetector;
 import org.apache.cloudstack.framework.messagebus.MessageSubscriber;
 import org.apache.cloudstack.framework.messagebus.PublishScope;
+import org.junit.After;
 import org.junit.Assert;
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mockito;
@@ -43,6 +47,19 @@ public class TestMessageBus extends TestCase {
     @Inject
     MessageBus _messageBus;
 
+    private TransactionLegacy _txn;
+
+    @Before
+    public void setUp() {
+        // publish checks that it is not called from within a database transaction
+        _txn = TransactionLegacy.open("TestMessageBus");
+    }
+
+    @After
+    public void tearDown() {
+        _txn.close();
+    }
+
     @Test
     public void testExactSubjectMatch() {
         _messageBus.subscribe("Host", new MessageSubscriber() {
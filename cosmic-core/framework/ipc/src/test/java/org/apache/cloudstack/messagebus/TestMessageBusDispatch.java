@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cloudstack.messagebus;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import com.cloud.utils.db.TransactionLegacy;
+
+import org.apache.cloudstack.framework.messagebus.MessageBusBase;
+import org.apache.cloudstack.framework.messagebus.MessageSubscriber;
+import org.apache.cloudstack.framework.messagebus.PublishScope;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestMessageBusDispatch {
+
+    private TransactionLegacy _txn;
+
+    @Before
+    public void setUp() {
+        // publish checks that it is not called from within a database transaction
+        _txn = TransactionLegacy.open("TestMessageBusDispatch");
+    }
+
+    @After
+    public void tearDown() {
+        _txn.close();
+    }
+
+    @Test
+    public void testOrderPerSubjectWithDispatchThreads() throws Exception {
+        final MessageBusBase messageBus = new MessageBusBase();
+        messageBus.setDispatchThreads(4);
+
+        final int count = 1000;
+        final CountDownLatch done = new CountDownLatch(2 * count);
+        final List<Integer> fast = Collections.synchronizedList(new ArrayList<Integer>());
+        final List<Integer> slow = Collections.synchronizedList(new ArrayList<Integer>());
+        final CountDownLatch release = new CountDownLatch(1);
+        messageBus.subscribe("VM", new MessageSubscriber() {
+            @Override
+            public void onPublishMessage(String senderAddress, String subject, Object args) {
+                fast.add((Integer)args);
+                done.countDown();
+            }
+        });
+        messageBus.subscribe("/", new MessageSubscriber() {
+            @Override
+            public void onPublishMessage(String senderAddress, String subject, Object args) {
+                if ((Integer)args == 0) {
+                    try {
+                        release.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                slow.add((Integer)args);
+                done.countDown();
+            }
+        });
+
+        for (int i = 0; i < count; i++) {
+            messageBus.publish(null, "VM", PublishScope.LOCAL, i);
+        }
+        // a slow subscriber does not hold up the publisher, it is still stuck on the first message
+        Assert.assertTrue(slow.isEmpty());
+        release.countDown();
+
+        Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+        for (int i = 0; i < count; i++) {
+            Assert.assertEquals(i, fast.get(i).intValue());
+            Assert.assertEquals(i, slow.get(i).intValue());
+        }
+
+        Assert.assertEquals(count, messageBus.getSubjectStatistics().get("VM").getPublished());
+        Assert.assertEquals(2 * count, messageBus.getSubjectStatistics().get("VM").getFanOut());
+        Assert.assertEquals(2 * count, messageBus.getSubjectStatistics().get("VM").getDelivered());
+        Assert.assertTrue(messageBus.getSubjectStatistics().get("VM").getMaxLatency() > 0);
+        messageBus.setDispatchThreads(0);
+    }
+
+    @Test
+    public void testSubscribeWhilePublishing() {
+        final MessageBusBase messageBus = new MessageBusBase();
+        final List<String> received = new ArrayList<String>();
+        final MessageSubscriber late = new MessageSubscriber() {
+            @Override
+            public void onPublishMessage(String senderAddress, String subject, Object args) {
+                received.add("late");
+            }
+        };
+        messageBus.subscribe("Host", new MessageSubscriber() {
+            @Override
+            public void onPublishMessage(String senderAddress, String subject, Object args) {
+                received.add("early");
+                messageBus.subscribe("Host", late);
+            }
+        });
+
+        // the publish in progress keeps the subscriptions it started with
+        messageBus.publish(null, "Host.123", PublishScope.LOCAL, null);
+        Assert.assertEquals(Collections.singletonList("early"), received);
+
+        received.clear();
+        messageBus.unsubscribe(null, late);
+        messageBus.subscribe("Host.123", late);
+        messageBus.publish(null, "Host.123", PublishScope.LOCAL, null);
+        Assert.assertEquals(2, received.size());
+        Assert.assertEquals("late", received.get(0));
+
+        received.clear();
+        messageBus.unsubscribe(null, late);
+        messageBus.prune();
+        messageBus.publish(null, "Host.123", PublishScope.LOCAL, null);
+        Assert.assertEquals(Collections.singletonList("early"), received);
+    }
+}
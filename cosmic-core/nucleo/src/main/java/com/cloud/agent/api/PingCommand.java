@@ -19,11 +19,14 @@
 
 package com.cloud.agent.api;
 
+import java.util.Map;
+
 import com.cloud.host.Host;
 
 public class PingCommand extends Command {
     Host.Type hostType;
     long hostId;
+    Map<String, Integer> requestQueueDepths;
 
     protected PingCommand() {
     }
@@ -41,6 +44,18 @@ public class PingCommand extends Command {
         return hostId;
     }
 
+    /**
+     * @return the number of requests waiting in each request lane of the agent, or null if the
+     * agent does not report them
+     */
+    public Map<String, Integer> getRequestQueueDepths() {
+        return requestQueueDepths;
+    }
+
+    public void setRequestQueueDepths(Map<String, Integer> requestQueueDepths) {
+        this.requestQueueDepths = requestQueueDepths;
+    }
+
     @Override
     public boolean executeInSequence() {
         return false;
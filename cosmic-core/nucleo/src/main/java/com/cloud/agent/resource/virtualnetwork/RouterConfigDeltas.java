@@ -0,0 +1,200 @@
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package com.cloud.agent.resource.virtualnetwork;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.cloud.utils.exception.CloudRuntimeException;
+
+/**
+ * Content hashes of the config files last applied to each virtual router.
+ *
+ * The json config files are processed by update_config.py, which merges them into the state of
+ * the router. Sending a file with the same contents as the last one applied for that config does
+ * not change the router, so the file and its update_config.py run can be left out. The hashes of
+ * a router are forgotten when it may have lost its state (start, reboot) or when applying to it
+ * failed, after which everything is sent again.
+ */
+public class RouterConfigDeltas {
+
+    // Files that are consumed by the router rather than merged into its state
+    private static final Set<String> s_alwaysSent = new HashSet<String>();
+
+    static {
+        s_alwaysSent.add(VRScripts.VM_PASSWORD_CONFIG);
+        s_alwaysSent.add(VRScripts.GUEST_NETWORK_CONFIG);
+    }
+
+    private final Map<String, Map<String, String>> _hashes = new ConcurrentHashMap<String, Map<String, String>>();
+    private final Map<String, RouterConfigStats> _stats = new ConcurrentHashMap<String, RouterConfigStats>();
+
+    /**
+     * Leaves out the config files of the router that have not changed since they were last applied,
+     * together with the update_config.py runs that process them.
+     *
+     * @param applied filled with the hashes of the files that are sent, to be passed to applied()
+     *                once the router has processed them
+     * @return the config items that need to be sent
+     */
+    public List<ConfigItem> filter(final String routerName, final List<ConfigItem> cfg, final Map<String, String> applied) {
+        final Map<String, String> current = _hashes.get(routerName);
+        final Set<String> skippedFiles = new HashSet<String>();
+        final List<ConfigItem> changed = new ArrayList<ConfigItem>(cfg.size());
+
+        for (final ConfigItem c : cfg) {
+            if (c instanceof FileConfigItem) {
+                final FileConfigItem file = (FileConfigItem)c;
+                final String configName = getConfigName(file);
+                if (configName != null) {
+                    final String hash = hash(file.getFileContents());
+                    // a config sent earlier in the same batch is what the router will have
+                    final String last = applied.containsKey(configName) ? applied.get(configName) : current == null ? null : current.get(configName);
+                    if (hash.equals(last)) {
+                        skippedFiles.add(file.getFileName());
+                        continue;
+                    }
+                    applied.put(configName, hash);
+                }
+            } else if (c instanceof ScriptConfigItem) {
+                final ScriptConfigItem script = (ScriptConfigItem)c;
+                if (VRScripts.UPDATE_CONFIG.equals(script.getScript()) && skippedFiles.contains(script.getArgs())) {
+                    continue;
+                }
+            }
+            changed.add(c);
+        }
+
+        final RouterConfigStats stats = getStats(routerName);
+        synchronized (stats) {
+            stats.sectionsSkipped += cfg.size() - changed.size();
+        }
+        return changed;
+    }
+
+    /**
+     * Records the hashes of config files the router has processed.
+     */
+    public void applied(final String routerName, final Map<String, String> applied) {
+        if (!applied.isEmpty()) {
+            _hashes.computeIfAbsent(routerName, k -> new ConcurrentHashMap<String, String>()).putAll(applied);
+        }
+    }
+
+    /**
+     * Forgets what was applied to the router, so the next configuration is sent in full.
+     */
+    public void forget(final String routerName) {
+        _hashes.remove(routerName);
+    }
+
+    public void recordPush(final String routerName, final int sections, final long bytes, final long elapsedMs) {
+        final RouterConfigStats stats = getStats(routerName);
+        synchronized (stats) {
+            stats.pushes++;
+            stats.sectionsSent += sections;
+            stats.bytesSent += bytes;
+            stats.totalTimeMs += elapsedMs;
+            stats.lastTimeMs = elapsedMs;
+        }
+    }
+
+    public RouterConfigStats getStats(final String routerName) {
+        return _stats.computeIfAbsent(routerName, k -> new RouterConfigStats());
+    }
+
+    public Map<String, RouterConfigStats> getAllStats() {
+        return new HashMap<String, RouterConfigStats>(_stats);
+    }
+
+    /**
+     * @return the name of the config a json file in the config cache belongs to, for instance
+     * ip_associations.json for ip_associations.json.&lt;uuid&gt;, or null if the file is always sent
+     */
+    static String getConfigName(final FileConfigItem file) {
+        if (!VRScripts.CONFIG_PERSIST_LOCATION.equals(file.getFilePath())) {
+            return null;
+        }
+        final String fileName = file.getFileName();
+        final int end = fileName.indexOf(".json");
+        if (end < 0) {
+            return null;
+        }
+        final String configName = fileName.substring(0, end + ".json".length());
+        return s_alwaysSent.contains(configName) ? null : configName;
+    }
+
+    static String hash(final String contents) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return Base64.getEncoder().encodeToString(digest.digest(contents.getBytes(StandardCharsets.UTF_8)));
+        } catch (final NoSuchAlgorithmException e) {
+            throw new CloudRuntimeException("Unable to hash router config", e);
+        }
+    }
+
+    public static class RouterConfigStats {
+        private long pushes;
+        private long sectionsSent;
+        private long sectionsSkipped;
+        private long bytesSent;
+        private long totalTimeMs;
+        private long lastTimeMs;
+
+        public synchronized long getPushes() {
+            return pushes;
+        }
+
+        public synchronized long getSectionsSent() {
+            return sectionsSent;
+        }
+
+        public synchronized long getSectionsSkipped() {
+            return sectionsSkipped;
+        }
+
+        public synchronized long getBytesSent() {
+            return bytesSent;
+        }
+
+        public synchronized long getTotalTimeMs() {
+            return totalTimeMs;
+        }
+
+        public synchronized long getLastTimeMs() {
+            return lastTimeMs;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return "pushes: " + pushes + ", sections sent: " + sectionsSent + ", sections skipped: " + sectionsSkipped + ", bytes sent: " + bytesSent + ", total time: "
+                    + totalTimeMs + "ms, last push: " + lastTimeMs + "ms";
+        }
+    }
+}
@@ -22,6 +22,7 @@ package com.cloud.agent.resource.virtualnetwork;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -75,6 +76,8 @@ public class VirtualRoutingResource {
     private int _retry;
     private int _port;
     private int _eachTimeout;
+    private boolean _deltaConfig;
+    private final RouterConfigDeltas _configDeltas = new RouterConfigDeltas();
 
     private String _cfgVersion = "1.0";
 
@@ -124,7 +127,7 @@ public class VirtualRoutingResource {
                 return Answer.createUnsupportedCommandAnswer(cmd);
             }
 
-            return applyConfig(cmd, cfg);
+            return applyConfig(cmd, routerName, cfg);
         } catch (final IllegalArgumentException e) {
             return new Answer(cmd, false, e.getMessage());
         } finally {
@@ -170,22 +173,36 @@ public class VirtualRoutingResource {
     }
 
 
-    private Answer applyConfig(NetworkElementCommand cmd, List<ConfigItem> cfg) {
+    private Answer applyConfig(NetworkElementCommand cmd, String routerName, List<ConfigItem> cfg) {
 
 
         if (cfg.isEmpty()) {
             return new Answer(cmd, true, "Nothing to do");
         }
 
+        Map<String, String> applied = new HashMap<String, String>();
+        List<ConfigItem> changed = _deltaConfig ? _configDeltas.filter(routerName, cfg, applied) : cfg;
+
         List<ExecutionResult> results = new ArrayList<ExecutionResult>();
         List<String> details = new ArrayList<String>();
         boolean finalResult = false;
+        boolean allApplied = true;
+        long pushStart = System.currentTimeMillis();
+        long bytes = 0;
+        int sections = 0;
         for (ConfigItem configItem : cfg) {
-            long startTimestamp = System.currentTimeMillis();
-            ExecutionResult result = applyConfigToVR(cmd.getRouterAccessIp(), configItem);
-            if (s_logger.isDebugEnabled()) {
-                long elapsed = System.currentTimeMillis() - startTimestamp;
-                s_logger.debug("Processing " + configItem + " took " + elapsed + "ms");
+            ExecutionResult result;
+            if (changed.contains(configItem)) {
+                long startTimestamp = System.currentTimeMillis();
+                result = applyConfigToVR(cmd.getRouterAccessIp(), configItem);
+                if (s_logger.isDebugEnabled()) {
+                    long elapsed = System.currentTimeMillis() - startTimestamp;
+                    s_logger.debug("Processing " + configItem + " took " + elapsed + "ms");
+                }
+                bytes += configItem.getAggregateCommand().getBytes(StandardCharsets.UTF_8).length;
+                sections++;
+            } else {
+                result = new ExecutionResult(true, "unchanged, not sent");
             }
             if (result == null) {
                 result = new ExecutionResult(false, "null execution result");
@@ -193,6 +210,14 @@ public class VirtualRoutingResource {
             results.add(result);
             details.add(configItem.getInfo() + (result.isSuccess() ? " - success: " : " - failed: ") + result.getDetails());
             finalResult = result.isSuccess();
+            allApplied &= finalResult;
+        }
+        recordPush(routerName, sections, bytes, System.currentTimeMillis() - pushStart);
+
+        if (allApplied) {
+            _configDeltas.applied(routerName, applied);
+        } else {
+            _configDeltas.forget(routerName);
         }
 
         // Not sure why this matters, but log it anyway
@@ -275,6 +300,9 @@ public class VirtualRoutingResource {
         value = (String)params.get("router.aggregation.command.each.timeout");
         _eachTimeout = NumbersUtil.parseInt(value, 3);
 
+        value = (String)params.get("router.aggregation.delta");
+        _deltaConfig = Boolean.parseBoolean(value);
+
         if (_vrDeployer == null) {
             throw new ConfigurationException("Unable to find the resource for VirtualRouterDeployer!");
         }
@@ -283,6 +311,26 @@ public class VirtualRoutingResource {
         return true;
     }
 
+    /**
+     * Forgets the config that was applied to a router that may have lost it, for instance because
+     * it was started or rebooted, so the next configuration is sent in full.
+     */
+    public void forgetRouterConfig(final String routerName) {
+        _configDeltas.forget(routerName);
+    }
+
+    public Map<String, RouterConfigDeltas.RouterConfigStats> getRouterConfigStats() {
+        return _configDeltas.getAllStats();
+    }
+
+    private void recordPush(final String routerName, final int sections, final long bytes, final long elapsed) {
+        _configDeltas.recordPush(routerName, sections, bytes, elapsed);
+        if (s_logger.isDebugEnabled()) {
+            s_logger.debug("Sent " + sections + " config sections (" + bytes + " bytes) to " + routerName + " in " + elapsed + "ms, totals "
+                    + _configDeltas.getStats(routerName));
+        }
+    }
+
     public boolean connect(final String ipAddress) {
         return connect(ipAddress, _port);
     }
@@ -351,9 +399,7 @@ public class VirtualRoutingResource {
             Queue<NetworkElementCommand> queue = _vrAggregateCommandsSet.get(routerName);
             int answerCounts = 0;
             try {
-                StringBuilder sb = new StringBuilder();
-                sb.append("#Apache CloudStack Virtual Router Config File\n");
-                sb.append("<version>\n" + _cfgVersion + "\n</version>\n");
+                List<ConfigItem> cfgs = new ArrayList<ConfigItem>();
                 for (NetworkElementCommand command : queue) {
                     answerCounts += command.getAnswersCount();
                     List<ConfigItem> cfg = generateCommandCfg(command);
@@ -361,12 +407,24 @@ public class VirtualRoutingResource {
                         s_logger.warn("Unknown commands for VirtualRoutingResource, but continue: " + cmd.toString());
                         continue;
                     }
+                    cfgs.addAll(cfg);
+                }
 
-                    for (ConfigItem c : cfg) {
-                        sb.append(c.getAggregateCommand());
+                Map<String, String> applied = new HashMap<String, String>();
+                if (_deltaConfig) {
+                    cfgs = _configDeltas.filter(routerName, cfgs, applied);
+                    if (cfgs.isEmpty()) {
+                        return new Answer(cmd, true, "Command aggregation finished, configuration unchanged");
                     }
                 }
 
+                StringBuilder sb = new StringBuilder();
+                sb.append("#Apache CloudStack Virtual Router Config File\n");
+                sb.append("<version>\n" + _cfgVersion + "\n</version>\n");
+                for (ConfigItem c : cfgs) {
+                    sb.append(c.getAggregateCommand());
+                }
+
                 // TODO replace with applyConfig with a stop on fail
                 String cfgFileName = "VR-"+ UUID.randomUUID().toString() + ".cfg";
                 FileConfigItem fileConfigItem = new FileConfigItem(VRScripts.CONFIG_CACHE_LOCATION, cfgFileName, sb.toString());
@@ -377,16 +435,18 @@ public class VirtualRoutingResource {
                     timeout = 120;
                 }
 
+                long startTimestamp = System.currentTimeMillis();
                 ExecutionResult result = applyConfigToVR(cmd.getRouterAccessIp(), fileConfigItem);
-                if (!result.isSuccess()) {
-                    return new Answer(cmd, false, result.getDetails());
+                if (result.isSuccess()) {
+                    result = applyConfigToVR(cmd.getRouterAccessIp(), scriptConfigItem, timeout);
                 }
-
-                result = applyConfigToVR(cmd.getRouterAccessIp(), scriptConfigItem, timeout);
+                recordPush(routerName, cfgs.size(), sb.toString().getBytes(StandardCharsets.UTF_8).length, System.currentTimeMillis() - startTimestamp);
                 if (!result.isSuccess()) {
+                    _configDeltas.forget(routerName);
                     return new Answer(cmd, false, result.getDetails());
                 }
 
+                _configDeltas.applied(routerName, applied);
                 return new Answer(cmd, true, "Command aggregation finished");
             } finally {
                 queue.clear();
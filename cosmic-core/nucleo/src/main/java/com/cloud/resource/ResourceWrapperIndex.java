@@ -0,0 +1,180 @@
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package com.cloud.resource;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.cloud.utils.exception.CloudRuntimeException;
+
+import org.reflections.Reflections;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Finds the {@link ResourceWrapper} classes of a package. Every jar that has them carries an index
+ * written by {@link ResourceWrapperProcessor} when it was compiled, so the classpath does not have to
+ * be scanned when a resource starts. A jar or folder that has the package but no index for it, such as
+ * one compiled without annotation processing, makes the wrappers be looked up by a scan as well.
+ */
+public final class ResourceWrapperIndex {
+    private static final Logger s_logger = LoggerFactory.getLogger(ResourceWrapperIndex.class);
+
+    public static final String INDEX = "META-INF/cosmic/resource-wrappers";
+
+    private ResourceWrapperIndex() {
+    }
+
+    /**
+     * @param packagePrefix prefix of the package of the wrappers, matched like the package filter of Reflections
+     * @return the wrappers in the index, merged with the wrappers found by scanning the classpath if a location
+     * that has the package has no index for it
+     */
+    @SuppressWarnings("rawtypes")
+    public static Set<Class<? extends CommandWrapper>> load(final String packagePrefix) {
+        final Set<Class<? extends CommandWrapper>> wrappers = loadIndex(packagePrefix);
+        final List<String> unindexed = findUnindexedLocations(ResourceWrapperIndex.class.getClassLoader(), packagePrefix);
+        if (wrappers.isEmpty() || !unindexed.isEmpty()) {
+            s_logger.warn("No resource wrappers of " + packagePrefix + " in " + INDEX + " of " + (unindexed.isEmpty() ? "the classpath" : unindexed)
+                    + ", scanning the classpath for them");
+            wrappers.addAll(scan(packagePrefix));
+        }
+        return wrappers;
+    }
+
+    /**
+     * @return the jars and folders that have the package, but no wrappers of it in their index
+     */
+    static List<String> findUnindexedLocations(final ClassLoader classLoader, final String packagePrefix) {
+        final Map<String, Set<String>> indexes = readIndexes(classLoader);
+        final String packagePath = packagePrefix.replace('.', '/');
+        final List<String> unindexed = new ArrayList<String>();
+        try {
+            final Enumeration<URL> packages = classLoader.getResources(packagePath);
+            while (packages.hasMoreElements()) {
+                final String location = getLocation(packages.nextElement(), packagePath);
+                if (!hasWrappers(indexes.get(location), packagePrefix)) {
+                    unindexed.add(location);
+                }
+            }
+        } catch (final IOException e) {
+            throw new CloudRuntimeException("Unable to find the locations of " + packagePrefix, e);
+        }
+        return unindexed;
+    }
+
+    private static boolean hasWrappers(final Set<String> classNames, final String packagePrefix) {
+        if (classNames != null) {
+            for (final String className : classNames) {
+                if (className.startsWith(packagePrefix)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the wrappers in the index only
+     */
+    @SuppressWarnings("rawtypes")
+    public static Set<Class<? extends CommandWrapper>> loadIndex(final String packagePrefix) {
+        final ClassLoader classLoader = ResourceWrapperIndex.class.getClassLoader();
+        final Set<Class<? extends CommandWrapper>> wrappers = new LinkedHashSet<Class<? extends CommandWrapper>>();
+        final Set<String> classNames = new HashSet<String>();
+        for (final Set<String> index : readIndexes(classLoader).values()) {
+            classNames.addAll(index);
+        }
+        for (final String className : classNames) {
+            if (!className.startsWith(packagePrefix)) {
+                continue;
+            }
+            try {
+                wrappers.add(Class.forName(className, false, classLoader).asSubclass(CommandWrapper.class));
+            } catch (final ClassNotFoundException e) {
+                throw new CloudRuntimeException("Resource wrapper " + className + " is in the index but not on the classpath", e);
+            }
+        }
+        return wrappers;
+    }
+
+    /**
+     * @return the wrappers found by scanning the classpath, as was done before the index
+     */
+    @SuppressWarnings("rawtypes")
+    public static Set<Class<? extends CommandWrapper>> scan(final String packagePrefix) {
+        final Set<Class<? extends CommandWrapper>> wrappers = new LinkedHashSet<Class<? extends CommandWrapper>>();
+        for (final Class<? extends CommandWrapper> wrapper : new Reflections(packagePrefix).getSubTypesOf(CommandWrapper.class)) {
+            if (wrapper.isAnnotationPresent(ResourceWrapper.class)) {
+                wrappers.add(wrapper);
+            }
+        }
+        return wrappers;
+    }
+
+    /**
+     * @return the class names in the index of every jar and folder, by location
+     */
+    private static Map<String, Set<String>> readIndexes(final ClassLoader classLoader) {
+        final Map<String, Set<String>> indexes = new HashMap<String, Set<String>>();
+        try {
+            final Enumeration<URL> urls = classLoader.getResources(INDEX);
+            while (urls.hasMoreElements()) {
+                final URL index = urls.nextElement();
+                final Set<String> classNames = new HashSet<String>();
+                indexes.put(getLocation(index, INDEX), classNames);
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(index.openStream(), StandardCharsets.UTF_8))) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        line = line.trim();
+                        if (!line.isEmpty() && !line.startsWith("#")) {
+                            classNames.add(line);
+                        }
+                    }
+                }
+            }
+        } catch (final IOException e) {
+            throw new CloudRuntimeException("Unable to read " + INDEX, e);
+        }
+        return indexes;
+    }
+
+    /**
+     * @return the url of the jar or folder a resource was found in
+     */
+    private static String getLocation(final URL url, final String path) {
+        String resource = url.toString();
+        if (resource.endsWith("/")) {
+            resource = resource.substring(0, resource.length() - 1);
+        }
+        return resource.endsWith(path) ? resource.substring(0, resource.length() - path.length()) : resource;
+    }
+}
@@ -0,0 +1,90 @@
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package com.cloud.resource;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic.Kind;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+/**
+ * Writes the {@link ResourceWrapperIndex} of the module that is being compiled: the binary names of
+ * its {@link ResourceWrapper} classes, one per line. Modules that depend on nucleo run it without
+ * further configuration.
+ */
+@SupportedAnnotationTypes("com.cloud.resource.ResourceWrapper")
+public class ResourceWrapperProcessor extends AbstractProcessor {
+
+    private final Set<String> wrappers = new TreeSet<String>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(final Set<? extends TypeElement> annotations, final RoundEnvironment roundEnv) {
+        if (roundEnv.processingOver()) {
+            if (!wrappers.isEmpty()) {
+                writeIndex();
+            }
+            return false;
+        }
+
+        final TypeMirror commandWrapper = processingEnv.getTypeUtils().erasure(
+                processingEnv.getElementUtils().getTypeElement(CommandWrapper.class.getName()).asType());
+        for (final Element element : roundEnv.getElementsAnnotatedWith(ResourceWrapper.class)) {
+            if (element.getKind() != ElementKind.CLASS || !processingEnv.getTypeUtils().isAssignable(element.asType(), commandWrapper)) {
+                processingEnv.getMessager().printMessage(Kind.ERROR, "@ResourceWrapper is only allowed on a CommandWrapper", element);
+                continue;
+            }
+            wrappers.add(processingEnv.getElementUtils().getBinaryName((TypeElement)element).toString());
+        }
+        return false;
+    }
+
+    private void writeIndex() {
+        try {
+            final FileObject index = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", ResourceWrapperIndex.INDEX);
+            try (Writer writer = new OutputStreamWriter(index.openOutputStream(), StandardCharsets.UTF_8)) {
+                for (final String wrapper : wrappers) {
+                    writer.write(wrapper);
+                    writer.write('\n');
+                }
+            }
+        } catch (final IOException e) {
+            processingEnv.getMessager().printMessage(Kind.ERROR, "Unable to write " + ResourceWrapperIndex.INDEX + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,148 @@
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package com.cloud.storage.template;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.cloud.utils.exception.CloudRuntimeException;
+
+/**
+ * Digests of a file that is being downloaded, updated with every block that is written so the file
+ * does not have to be read again once it is complete.
+ *
+ * The MD5 digest is always kept. The digest of the registered checksum is kept as well when it uses
+ * another algorithm, which is told from the length of the checksum as createtmplt.sh does.
+ */
+public class DownloadDigest {
+    public static final String MD5 = "MD5";
+
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    private final Map<String, MessageDigest> digests = new LinkedHashMap<String, MessageDigest>();
+    private long length = 0;
+
+    public DownloadDigest(String checksum) {
+        addDigest(MD5);
+        final String algorithm = getAlgorithm(checksum);
+        if (algorithm != null) {
+            addDigest(algorithm);
+        }
+    }
+
+    private void addDigest(String algorithm) {
+        if (digests.containsKey(algorithm)) {
+            return;
+        }
+        try {
+            digests.put(algorithm, MessageDigest.getInstance(algorithm));
+        } catch (final NoSuchAlgorithmException e) {
+            throw new CloudRuntimeException("Unable to create a " + algorithm + " digest", e);
+        }
+    }
+
+    /**
+     * @return the algorithm of a hex encoded checksum, or null if it is not one
+     */
+    public static String getAlgorithm(String checksum) {
+        if (checksum == null || !checksum.trim().matches("[0-9a-fA-F]+")) {
+            return null;
+        }
+        switch (checksum.trim().length()) {
+            case 32:
+                return MD5;
+            case 40:
+                return "SHA-1";
+            case 56:
+                return "SHA-224";
+            case 64:
+                return "SHA-256";
+            case 96:
+                return "SHA-384";
+            case 128:
+                return "SHA-512";
+            default:
+                return null;
+        }
+    }
+
+    public synchronized void update(byte[] block, int offset, int len) {
+        for (final MessageDigest digest : digests.values()) {
+            digest.update(block, offset, len);
+        }
+        length += len;
+    }
+
+    /**
+     * Starts over with the first bytes of the file. Used when a download is resumed on a file the
+     * digests did not see being written.
+     */
+    public synchronized void update(File file, long prefix) throws IOException {
+        reset();
+        final byte[] block = new byte[BUFFER_SIZE];
+        try (InputStream in = new FileInputStream(file)) {
+            while (length < prefix) {
+                final int read = in.read(block, 0, (int)Math.min(block.length, prefix - length));
+                if (read < 0) {
+                    throw new IOException("File " + file + " is shorter than " + prefix + " bytes");
+                }
+                update(block, 0, read);
+            }
+        }
+    }
+
+    public synchronized void reset() {
+        for (final MessageDigest digest : digests.values()) {
+            digest.reset();
+        }
+        length = 0;
+    }
+
+    /**
+     * @return the number of bytes digested
+     */
+    public synchronized long getLength() {
+        return length;
+    }
+
+    /**
+     * @return the hex encoded digest of the bytes so far, or null if the algorithm is not kept
+     */
+    public synchronized String getHexDigest(String algorithm) {
+        final MessageDigest digest = digests.get(algorithm);
+        if (digest == null) {
+            return null;
+        }
+        final byte[] value;
+        try {
+            value = ((MessageDigest)digest.clone()).digest();
+        } catch (final CloneNotSupportedException e) {
+            throw new CloudRuntimeException("Unable to read the " + algorithm + " digest", e);
+        }
+        return String.format("%0" + value.length * 2 + "x", new BigInteger(1, value));
+    }
+}
@@ -25,7 +25,6 @@ import java.io.InputStream;
 import java.io.RandomAccessFile;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.net.URL;
 import java.util.Date;
 
 import com.cloud.storage.StorageLayer;
@@ -79,15 +78,17 @@ public class HttpTemplateDownloader extends ManagedContextRunnable implements Te
     private long maxTemplateSizeInBytes;
     private ResourceType resourceType = ResourceType.TEMPLATE;
     private final HttpMethodRetryHandler myretryhandler;
+    private final DownloadDigest digest;
 
     public HttpTemplateDownloader(StorageLayer storageLayer, String downloadUrl, String toDir, DownloadCompleteCallback callback, long maxTemplateSizeInBytes,
-            String user, String password, Proxy proxy, ResourceType resourceType) {
+            String user, String password, Proxy proxy, ResourceType resourceType, String checksum) {
         _storage = storageLayer;
         this.downloadUrl = downloadUrl;
         setToDir(toDir);
         status = TemplateDownloader.Status.NOT_STARTED;
         this.resourceType = resourceType;
         this.maxTemplateSizeInBytes = maxTemplateSizeInBytes;
+        digest = new DownloadDigest(checksum);
 
         totalBytes = 0;
         client = new HttpClient(s_httpClientManager);
@@ -232,8 +233,14 @@ public class HttpTemplateDownloader extends ManagedContextRunnable implements Te
                 remoteSize = maxTemplateSizeInBytes;
             }
 
-            final URL url = new URL(getDownloadUrl());
-            final InputStream in = url.openStream();
+            if (localFileSize == 0) {
+                digest.reset();
+            } else if (digest.getLength() != localFileSize) {
+                s_logger.info("Digesting the " + localFileSize + " bytes already downloaded to " + toFile);
+                digest.update(file, localFileSize);
+            }
+
+            final InputStream in = request.getResponseBodyAsStream();
 
             final RandomAccessFile out = new RandomAccessFile(file, "rw");
             out.seek(localFileSize);
@@ -241,13 +248,14 @@ public class HttpTemplateDownloader extends ManagedContextRunnable implements Te
             s_logger.info("Starting download from " + getDownloadUrl() + " to " + toFile + " remoteSize=" + remoteSize + " , max size=" + maxTemplateSizeInBytes);
 
             final byte[] block = new byte[CHUNK_SIZE];
-            long offset = 0;
+            long offset = localFileSize;
             boolean done = false;
             boolean verifiedFormat=false;
             status = TemplateDownloader.Status.IN_PROGRESS;
             while (!done && status != Status.ABORTED && offset <= remoteSize) {
                 if ((bytes = in.read(block, 0, CHUNK_SIZE)) > -1) {
                     out.write(block, 0, bytes);
+                    digest.update(block, 0, bytes);
                     offset += bytes;
                     out.seek(offset);
                     totalBytes += bytes;
@@ -436,4 +444,11 @@ public class HttpTemplateDownloader extends ManagedContextRunnable implements Te
         return resourceType;
     }
 
+    /**
+     * @return the digests of the bytes written to the local file
+     */
+    public DownloadDigest getDigest() {
+        return digest;
+    }
+
 }
@@ -0,0 +1,104 @@
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package com.cloud.agent.resource.virtualnetwork;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class RouterConfigDeltasTest {
+
+    private static final String ROUTERNAME = "r-4-VM";
+
+    private static List<ConfigItem> config(final String configName, final String contents) {
+        final String fileName = configName + "." + contents.hashCode();
+        final List<ConfigItem> cfg = new ArrayList<ConfigItem>();
+        cfg.add(new FileConfigItem(VRScripts.CONFIG_PERSIST_LOCATION, fileName, contents));
+        cfg.add(new ScriptConfigItem(VRScripts.UPDATE_CONFIG, fileName));
+        return cfg;
+    }
+
+    @Test
+    public void testUnchangedConfigIsNotSent() {
+        final RouterConfigDeltas deltas = new RouterConfigDeltas();
+        final List<ConfigItem> cfg = new ArrayList<ConfigItem>();
+        cfg.addAll(config(VRScripts.IP_ASSOCIATION_CONFIG, "{\"ip_address\":[]}"));
+        cfg.addAll(config(VRScripts.FIREWALL_RULES_CONFIG, "{\"rules\":[]}"));
+
+        Map<String, String> applied = new HashMap<String, String>();
+        assertEquals(4, deltas.filter(ROUTERNAME, cfg, applied).size());
+        deltas.applied(ROUTERNAME, applied);
+
+        final List<ConfigItem> next = new ArrayList<ConfigItem>();
+        next.addAll(config(VRScripts.IP_ASSOCIATION_CONFIG, "{\"ip_address\":[]}"));
+        next.addAll(config(VRScripts.FIREWALL_RULES_CONFIG, "{\"rules\":[{}]}"));
+        applied = new HashMap<String, String>();
+        final List<ConfigItem> changed = deltas.filter(ROUTERNAME, next, applied);
+        assertEquals(2, changed.size());
+        assertTrue(((FileConfigItem)changed.get(0)).getFileName().startsWith(VRScripts.FIREWALL_RULES_CONFIG));
+        assertEquals(2, deltas.getStats(ROUTERNAME).getSectionsSkipped());
+
+        // nothing has been applied to another router yet
+        assertEquals(4, deltas.filter("r-5-VM", next, new HashMap<String, String>()).size());
+    }
+
+    @Test
+    public void testChangeInBatchIsNotUndone() {
+        final RouterConfigDeltas deltas = new RouterConfigDeltas();
+        Map<String, String> applied = new HashMap<String, String>();
+        deltas.filter(ROUTERNAME, config(VRScripts.VM_METADATA_CONFIG, "a"), applied);
+        deltas.applied(ROUTERNAME, applied);
+
+        // going back to what was applied before within the same batch has to be sent
+        final List<ConfigItem> cfg = new ArrayList<ConfigItem>();
+        cfg.addAll(config(VRScripts.VM_METADATA_CONFIG, "b"));
+        cfg.addAll(config(VRScripts.VM_METADATA_CONFIG, "a"));
+        cfg.addAll(config(VRScripts.VM_METADATA_CONFIG, "a"));
+        applied = new HashMap<String, String>();
+        assertEquals(4, deltas.filter(ROUTERNAME, cfg, applied).size());
+    }
+
+    @Test
+    public void testForgottenRouterIsSentEverything() {
+        final RouterConfigDeltas deltas = new RouterConfigDeltas();
+        final Map<String, String> applied = new HashMap<String, String>();
+        deltas.filter(ROUTERNAME, config(VRScripts.STATIC_ROUTES_CONFIG, "routes"), applied);
+        deltas.applied(ROUTERNAME, applied);
+        assertEquals(0, deltas.filter(ROUTERNAME, config(VRScripts.STATIC_ROUTES_CONFIG, "routes"), new HashMap<String, String>()).size());
+
+        deltas.forget(ROUTERNAME);
+        assertEquals(2, deltas.filter(ROUTERNAME, config(VRScripts.STATIC_ROUTES_CONFIG, "routes"), new HashMap<String, String>()).size());
+    }
+
+    @Test
+    public void testPasswordsAreAlwaysSent() {
+        final FileConfigItem password = new FileConfigItem(VRScripts.CONFIG_PERSIST_LOCATION, VRScripts.VM_PASSWORD_CONFIG + ".1234", "{}");
+        assertNull(RouterConfigDeltas.getConfigName(password));
+        final FileConfigItem metadata = new FileConfigItem(VRScripts.CONFIG_PERSIST_LOCATION, VRScripts.VM_METADATA_CONFIG + ".1234", "{}");
+        assertEquals(VRScripts.VM_METADATA_CONFIG, RouterConfigDeltas.getConfigName(metadata));
+    }
+}
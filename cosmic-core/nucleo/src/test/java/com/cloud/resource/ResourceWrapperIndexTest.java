@@ -0,0 +1,82 @@
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package com.cloud.resource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ResourceWrapperIndexTest {
+
+    private static final String PACKAGE = "com.example.resource.wrapper";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testLocationWithoutIndexIsFound() throws IOException {
+        final File indexed = createLocation("indexed", PACKAGE + ".ExampleReadyWrapper");
+        final File unindexed = createLocation("unindexed", null);
+        final File otherPackage = createLocation("other", "com.example.other.ExampleWrapper");
+
+        try (URLClassLoader classLoader = new URLClassLoader(new URL[] {indexed.toURI().toURL(), unindexed.toURI().toURL(), otherPackage.toURI().toURL()}, null)) {
+            final List<String> locations = ResourceWrapperIndex.findUnindexedLocations(classLoader, PACKAGE);
+
+            assertEquals(2, locations.size());
+            assertTrue(locations.contains(unindexed.toURI().toURL().toString()));
+            assertTrue(locations.contains(otherPackage.toURI().toURL().toString()));
+        }
+    }
+
+    @Test
+    public void testIndexedLocationsAreNotScanned() throws IOException {
+        final File indexed = createLocation("indexed", PACKAGE + ".ExampleReadyWrapper");
+
+        try (URLClassLoader classLoader = new URLClassLoader(new URL[] {indexed.toURI().toURL()}, null)) {
+            assertTrue(ResourceWrapperIndex.findUnindexedLocations(classLoader, PACKAGE).isEmpty());
+        }
+    }
+
+    /**
+     * Creates a folder that has the package, and an index if a wrapper is given.
+     */
+    private File createLocation(final String name, final String wrapper) throws IOException {
+        final File location = folder.newFolder(name);
+        new File(location, PACKAGE.replace('.', '/')).mkdirs();
+        if (wrapper != null) {
+            final File index = new File(location, ResourceWrapperIndex.INDEX);
+            index.getParentFile().mkdirs();
+            Files.write(index.toPath(), Arrays.asList("# resource wrappers", wrapper), StandardCharsets.UTF_8);
+        }
+        return location;
+    }
+}
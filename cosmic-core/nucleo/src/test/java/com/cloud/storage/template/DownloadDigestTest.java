@@ -0,0 +1,78 @@
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package com.cloud.storage.template;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class DownloadDigestTest {
+
+    private static final byte[] CONTENT = "The quick brown fox jumps over the lazy dog".getBytes(StandardCharsets.US_ASCII);
+    private static final String MD5 = "9e107d9d372bb6826bd81d3542a419d6";
+    private static final String SHA_256 = "d7a8fbb307d7809469ca9abcb0082e4f8d5651e46d3cdb762d02d0bf37c9e592";
+
+    @Test
+    public void testAlgorithmFromChecksum() {
+        assertEquals("MD5", DownloadDigest.getAlgorithm(MD5));
+        assertEquals("SHA-256", DownloadDigest.getAlgorithm(SHA_256.toUpperCase()));
+        assertEquals("SHA-1", DownloadDigest.getAlgorithm("2fd4e1c67a2d28fced849ee1bb76e7391b93eb12"));
+        assertNull(DownloadDigest.getAlgorithm(null));
+        assertNull(DownloadDigest.getAlgorithm("0"));
+        assertNull(DownloadDigest.getAlgorithm("9e107d9d372bb6826bd81d3542a419dx"));
+    }
+
+    @Test
+    public void testDigestInBlocks() {
+        final DownloadDigest digest = new DownloadDigest(SHA_256);
+        digest.update(CONTENT, 0, 10);
+        digest.update(CONTENT, 10, CONTENT.length - 10);
+
+        assertEquals(CONTENT.length, digest.getLength());
+        assertEquals(MD5, digest.getHexDigest(DownloadDigest.MD5));
+        assertEquals(SHA_256, digest.getHexDigest("SHA-256"));
+        assertNull(digest.getHexDigest("SHA-512"));
+        // reading a digest does not end it
+        assertEquals(MD5, digest.getHexDigest(DownloadDigest.MD5));
+    }
+
+    @Test
+    public void testResumeFromFile() throws Exception {
+        final File file = File.createTempFile("digest", ".tmp");
+        file.deleteOnExit();
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(CONTENT, 0, 20);
+            out.write(new byte[] {1, 2, 3});
+        }
+
+        final DownloadDigest digest = new DownloadDigest(null);
+        digest.update(CONTENT, 0, 5);
+        digest.update(file, 20);
+        assertEquals(20, digest.getLength());
+        digest.update(CONTENT, 20, CONTENT.length - 20);
+
+        assertEquals(MD5, digest.getHexDigest(DownloadDigest.MD5));
+    }
+}
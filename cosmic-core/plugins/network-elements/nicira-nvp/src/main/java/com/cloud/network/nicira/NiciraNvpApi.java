@@ -20,6 +20,7 @@
 package com.cloud.network.nicira;
 
 import java.lang.reflect.Type;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -51,8 +52,11 @@ public class NiciraNvpApi {
     private static final String WILDCARD_QUERY_PARAMETER = NiciraConstants.WILDCARD_QUERY_PARAMETER;
     private static final String UUID_QUERY_PARAMETER = NiciraConstants.UUID_QUERY_PARAMETER;
     private static final String FIELDS_QUERY_PARAMETER = NiciraConstants.FIELDS_QUERY_PARAMETER;
+    private static final String PAGE_LENGTH_QUERY_PARAMETER = NiciraConstants.PAGE_LENGTH_QUERY_PARAMETER;
+    private static final String PAGE_CURSOR_QUERY_PARAMETER = NiciraConstants.PAGE_CURSOR_QUERY_PARAMETER;
 
     private static final int DEFAULT_MAX_RETRIES = 5;
+    private static final int DEFAULT_PAGE_LENGTH = 1000;
 
     private final RESTServiceConnector restConnector;
 
@@ -96,6 +100,7 @@ public class NiciraNvpApi {
             .password(builder.password)
             .loginUrl(NiciraConstants.LOGIN_URL)
             .executionLimit(DEFAULT_MAX_RETRIES)
+            .maxConcurrentRequests(builder.maxConcurrentRequests)
             .build();
         restConnector = RESTServiceConnector.create()
             .classToDeserializerMap(classToDeserializerMap)
@@ -167,6 +172,45 @@ public class NiciraNvpApi {
         return entities.getResults();
     }
 
+    /**
+     * GET all items, one page at a time
+     *
+     * @param uri
+     * @param listType
+     * @return
+     * @throws NiciraNvpApiException
+     */
+    private <T> List<T> findAll(final String uri, final Type listType) throws NiciraNvpApiException {
+        final Map<String, String> params = new HashMap<String, String>(defaultListParams);
+        params.put(PAGE_LENGTH_QUERY_PARAMETER, Integer.toString(DEFAULT_PAGE_LENGTH));
+
+        final List<T> results = new ArrayList<T>();
+        while (true) {
+            NiciraNvpList<T> page;
+            try {
+                page = restConnector.executeRetrieveObject(listType, uri, params);
+            } catch (final CloudstackRESTException e) {
+                throw new NiciraNvpApiException(e);
+            }
+
+            if (page == null) {
+                throw new NiciraNvpApiException("Unexpected response from API");
+            }
+            if (page.getResults() != null) {
+                results.addAll(page.getResults());
+            }
+
+            final String pageCursor = page.getPageCursor();
+            if (pageCursor == null || pageCursor.isEmpty()) {
+                return results;
+            }
+            if (pageCursor.equals(params.get(PAGE_CURSOR_QUERY_PARAMETER))) {
+                throw new NiciraNvpApiException("API returned the same page cursor twice for " + uri);
+            }
+            params.put(PAGE_CURSOR_QUERY_PARAMETER, pageCursor);
+        }
+    }
+
     /**
      * PUT item given a UUID as key and an item object with the new data
      *
@@ -352,6 +396,16 @@ public class NiciraNvpApi {
         return find(Optional.fromNullable(uuid), LogicalSwitch.class);
     }
 
+    /**
+     * GET all {@link LogicalSwitch}, using as many pages as needed
+     *
+     * @return
+     * @throws NiciraNvpApiException
+     */
+    public List<LogicalSwitch> findAllLogicalSwitches() throws NiciraNvpApiException {
+        return findAll(SWITCH_URI_PREFIX, listTypeMap.get(LogicalSwitch.class));
+    }
+
     /**
      * PUT {@link LogicalSwitch} given a UUID as key and a {@link LogicalSwitch} with the new data
      *
@@ -431,6 +485,19 @@ public class NiciraNvpApi {
         }
     }
 
+    /**
+     * GET all {@link LogicalSwitchPort} of a {@link LogicalSwitch}, using as many pages as needed
+     *
+     * @param logicalSwitchUuid
+     * @return
+     * @throws NiciraNvpApiException
+     */
+    public List<LogicalSwitchPort> findAllLogicalSwitchPorts(final String logicalSwitchUuid) throws NiciraNvpApiException {
+        final Type niciraListType = new TypeToken<NiciraNvpList<LogicalSwitchPort>>() {
+        }.getType();
+        return findAll(buildLogicalSwitchElementUri(logicalSwitchUuid, LPORT_PATH_SEGMENT), niciraListType);
+    }
+
     public List<LogicalRouterPort> findLogicalRouterPortsByUuid(final String logicalRouterUuid, final String logicalRouterPortUuid) throws NiciraNvpApiException {
         final String uri = buildLogicalRouterElementUri(logicalRouterUuid, LPORT_PATH_SEGMENT);
         final Map<String, String> params = buildBasicParametersMap(UUID_QUERY_PARAMETER);
@@ -470,6 +537,16 @@ public class NiciraNvpApi {
         return find(Optional.fromNullable(uuid), LogicalRouter.class);
     }
 
+    /**
+     * GET all {@link LogicalRouter}, using as many pages as needed
+     *
+     * @return
+     * @throws NiciraNvpApiException
+     */
+    public List<LogicalRouter> findAllLogicalRouters() throws NiciraNvpApiException {
+        return findAll(ROUTER_URI_PREFIX, listTypeMap.get(LogicalRouter.class));
+    }
+
     public LogicalRouter findOneLogicalRouterByUuid(final String logicalRouterUuid) throws NiciraNvpApiException {
         return findLogicalRouter(logicalRouterUuid).get(0);
     }
@@ -594,6 +671,7 @@ public class NiciraNvpApi {
         private String password;
         private CloseableHttpClient httpClient;
         private HttpClientContext httpClientContext = HttpClientContext.create();
+        private int maxConcurrentRequests = NiciraRestClient.DEFAULT_MAX_CONCURRENT_REQUESTS;
 
         public Builder host(final String host) {
             this.host = host;
@@ -620,6 +698,11 @@ public class NiciraNvpApi {
             return this;
         }
 
+        public Builder maxConcurrentRequests(final int maxConcurrentRequests) {
+            this.maxConcurrentRequests = maxConcurrentRequests;
+            return this;
+        }
+
         public NiciraNvpApi build() {
             return new NiciraNvpApi(this);
         }
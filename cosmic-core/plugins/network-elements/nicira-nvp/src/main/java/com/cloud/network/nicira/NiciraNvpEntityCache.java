@@ -0,0 +1,353 @@
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package com.cloud.network.nicira;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.cloud.utils.concurrency.NamedThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cache of the logical switches, logical routers and logical switch ports of one controller.
+ *
+ * The cache is filled by paged listings of all entities of a kind, instead of one request per
+ * entity, and indexes them by uuid and by their tags (cs_account and the like). A lookup by uuid
+ * is answered from the cache while the listing is fresh; otherwise, or when the entity is not in
+ * the cache, the entity is looked up on the controller by its uuid, so a lookup never waits for a
+ * listing and a missing entity is never reported from the cache. Lookups by tag need the listing
+ * and list the entities when it expired. Changes made through the resource are applied to the
+ * cache, changes made by others are picked up when the cache is reconciled with the controller,
+ * which lists the indexes again that were used since they were last listed.
+ */
+public class NiciraNvpEntityCache {
+
+    private static final Logger s_logger = LoggerFactory.getLogger(NiciraNvpEntityCache.class);
+
+    private final NiciraNvpApi api;
+    private final long timeToLiveMs;
+    private final ExecutorService executor;
+
+    private final EntityIndex<LogicalSwitch> switches = new EntityIndex<LogicalSwitch>();
+    private final EntityIndex<LogicalRouter> routers = new EntityIndex<LogicalRouter>();
+    private final Map<String, EntityIndex<LogicalSwitchPort>> switchPorts = new ConcurrentHashMap<String, EntityIndex<LogicalSwitchPort>>();
+
+    /**
+     * @param timeToLiveMs how long a listing is used before it is listed again
+     * @param maxConcurrentRequests how many listings are run against the controller at the same time
+     */
+    public NiciraNvpEntityCache(final NiciraNvpApi api, final long timeToLiveMs, final int maxConcurrentRequests) {
+        this.api = api;
+        this.timeToLiveMs = timeToLiveMs;
+        final ThreadPoolExecutor pool = new ThreadPoolExecutor(maxConcurrentRequests, maxConcurrentRequests, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new NamedThreadFactory("NiciraNvpEntityCache"));
+        pool.allowCoreThreadTimeOut(true);
+        executor = pool;
+    }
+
+    public List<LogicalSwitch> findLogicalSwitch(final String logicalSwitchUuid) throws NiciraNvpApiException {
+        final LogicalSwitch logicalSwitch = switches.getIfFresh(logicalSwitchUuid, timeToLiveMs);
+        if (logicalSwitch != null) {
+            return Collections.singletonList(logicalSwitch);
+        }
+
+        final List<LogicalSwitch> found = api.findLogicalSwitch(logicalSwitchUuid);
+        for (final LogicalSwitch entity : found) {
+            switches.put(entity);
+        }
+        return found;
+    }
+
+    public List<LogicalRouter> findLogicalRouter(final String logicalRouterUuid) throws NiciraNvpApiException {
+        final LogicalRouter logicalRouter = routers.getIfFresh(logicalRouterUuid, timeToLiveMs);
+        if (logicalRouter != null) {
+            return Collections.singletonList(logicalRouter);
+        }
+
+        final List<LogicalRouter> found = api.findLogicalRouter(logicalRouterUuid);
+        for (final LogicalRouter entity : found) {
+            routers.put(entity);
+        }
+        return found;
+    }
+
+    public List<LogicalSwitchPort> findLogicalSwitchPortsByUuid(final String logicalSwitchUuid, final String logicalSwitchPortUuid) throws NiciraNvpApiException {
+        final EntityIndex<LogicalSwitchPort> ports = getSwitchPorts(logicalSwitchUuid);
+        final LogicalSwitchPort port = ports.getIfFresh(logicalSwitchPortUuid, timeToLiveMs);
+        if (port != null) {
+            return Collections.singletonList(port);
+        }
+
+        final List<LogicalSwitchPort> found = api.findLogicalSwitchPortsByUuid(logicalSwitchUuid, logicalSwitchPortUuid);
+        for (final LogicalSwitchPort entity : found) {
+            ports.put(entity);
+        }
+        return found;
+    }
+
+    public List<LogicalSwitch> findLogicalSwitchesByTag(final NiciraNvpTag tag) throws NiciraNvpApiException {
+        return fresh(switches, () -> api.findAllLogicalSwitches()).getByTag(tag);
+    }
+
+    public List<LogicalRouter> findLogicalRoutersByTag(final NiciraNvpTag tag) throws NiciraNvpApiException {
+        return fresh(routers, () -> api.findAllLogicalRouters()).getByTag(tag);
+    }
+
+    public void putLogicalSwitch(final LogicalSwitch logicalSwitch) {
+        switches.put(logicalSwitch);
+    }
+
+    public void evictLogicalSwitch(final String logicalSwitchUuid) {
+        switches.remove(logicalSwitchUuid);
+        switchPorts.remove(logicalSwitchUuid);
+    }
+
+    public void putLogicalRouter(final LogicalRouter logicalRouter) {
+        routers.put(logicalRouter);
+    }
+
+    public void evictLogicalRouter(final String logicalRouterUuid) {
+        routers.remove(logicalRouterUuid);
+    }
+
+    public void putLogicalSwitchPort(final String logicalSwitchUuid, final LogicalSwitchPort logicalSwitchPort) {
+        getSwitchPorts(logicalSwitchUuid).put(logicalSwitchPort);
+    }
+
+    public void evictLogicalSwitchPort(final String logicalSwitchUuid, final String logicalSwitchPortUuid) {
+        final EntityIndex<LogicalSwitchPort> ports = switchPorts.get(logicalSwitchUuid);
+        if (ports != null) {
+            ports.remove(logicalSwitchPortUuid);
+        }
+    }
+
+    /**
+     * Lists the expired indexes that were used since they were last listed again, all at the same
+     * time, so changes made on the controller by others are picked up and the lookups that follow
+     * are answered from the cache. Indexes of switch ports that were not used are dropped.
+     */
+    public void reconcile() throws NiciraNvpApiException {
+        final List<Callable<Void>> listings = new ArrayList<Callable<Void>>();
+        if (switches.isExpired(timeToLiveMs) && switches.isUsedSinceLoad()) {
+            listings.add(() -> reload(switches, () -> api.findAllLogicalSwitches()));
+        }
+        if (routers.isExpired(timeToLiveMs) && routers.isUsedSinceLoad()) {
+            listings.add(() -> reload(routers, () -> api.findAllLogicalRouters()));
+        }
+        for (final Map.Entry<String, EntityIndex<LogicalSwitchPort>> entry : switchPorts.entrySet()) {
+            if (switches.isLoaded() && switches.get(entry.getKey()) == null) {
+                // the switch is gone, and its ports with it
+                switchPorts.remove(entry.getKey(), entry.getValue());
+            } else if (entry.getValue().isExpired(timeToLiveMs)) {
+                if (entry.getValue().isUsedSinceLoad()) {
+                    listings.add(() -> reload(entry.getValue(), () -> api.findAllLogicalSwitchPorts(entry.getKey())));
+                } else {
+                    switchPorts.remove(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        if (listings.isEmpty()) {
+            return;
+        }
+
+        s_logger.debug("Reconciling " + listings.size() + " entity listings with the controller");
+        final List<Future<Void>> futures = new ArrayList<Future<Void>>();
+        for (final Callable<Void> listing : listings) {
+            futures.add(executor.submit(listing));
+        }
+        NiciraNvpApiException failure = null;
+        for (final Future<Void> future : futures) {
+            try {
+                future.get();
+            } catch (final ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause() instanceof NiciraNvpApiException ? (NiciraNvpApiException) e.getCause() : new NiciraNvpApiException(e.getCause().getMessage(), e.getCause());
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new NiciraNvpApiException("Interrupted while reconciling the entity cache", e);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private EntityIndex<LogicalSwitchPort> getSwitchPorts(final String logicalSwitchUuid) {
+        return switchPorts.computeIfAbsent(logicalSwitchUuid, k -> new EntityIndex<LogicalSwitchPort>());
+    }
+
+    private <T extends BaseNiciraNamedEntity> EntityIndex<T> fresh(final EntityIndex<T> index, final Listing<T> listing) throws NiciraNvpApiException {
+        if (index.isExpired(timeToLiveMs)) {
+            synchronized (index.loadLock) {
+                // someone else may have listed the entities while we waited
+                if (index.isExpired(timeToLiveMs)) {
+                    reload(index, listing);
+                }
+            }
+        }
+        return index;
+    }
+
+    private <T extends BaseNiciraNamedEntity> Void reload(final EntityIndex<T> index, final Listing<T> listing) throws NiciraNvpApiException {
+        synchronized (index.loadLock) {
+            index.startLoad();
+            boolean loaded = false;
+            try {
+                index.finishLoad(listing.list());
+                loaded = true;
+            } finally {
+                if (!loaded) {
+                    index.abortLoad();
+                }
+            }
+        }
+        return null;
+    }
+
+    private interface Listing<T> {
+        List<T> list() throws NiciraNvpApiException;
+    }
+
+    /**
+     * Entities of one kind by uuid and by tag. Changes made while the entities are listed are kept
+     * aside and applied on top of the listing, as the listing may not include them yet.
+     */
+    private static class EntityIndex<T extends BaseNiciraNamedEntity> {
+        private final Object loadLock = new Object();
+        private Map<String, T> byUuid = new HashMap<String, T>();
+        private Map<String, List<T>> byTag = new HashMap<String, List<T>>();
+        private Map<String, T> changedDuringLoad;
+        private long loadedAt;
+        private boolean loaded;
+        // looked up since the entities were last listed
+        private boolean used;
+
+        synchronized boolean isLoaded() {
+            return loaded;
+        }
+
+        synchronized boolean isExpired(final long timeToLiveMs) {
+            return !loaded || System.currentTimeMillis() - loadedAt >= timeToLiveMs;
+        }
+
+        synchronized boolean isUsedSinceLoad() {
+            return used;
+        }
+
+        synchronized T get(final String uuid) {
+            return byUuid.get(uuid);
+        }
+
+        /**
+         * @return the entity if it is in a listing that has not expired, otherwise null
+         */
+        synchronized T getIfFresh(final String uuid, final long timeToLiveMs) {
+            used = true;
+            return isExpired(timeToLiveMs) ? null : byUuid.get(uuid);
+        }
+
+        synchronized List<T> getByTag(final NiciraNvpTag tag) {
+            used = true;
+            final List<T> entities = byTag.get(tagKey(tag));
+            return entities == null ? Collections.<T> emptyList() : new ArrayList<T>(entities);
+        }
+
+        synchronized void put(final T entity) {
+            if (entity.getUuid() == null) {
+                return;
+            }
+            remove(entity.getUuid());
+            byUuid.put(entity.getUuid(), entity);
+            if (entity.getTags() != null) {
+                for (final NiciraNvpTag tag : entity.getTags()) {
+                    byTag.computeIfAbsent(tagKey(tag), k -> new ArrayList<T>()).add(entity);
+                }
+            }
+            if (changedDuringLoad != null) {
+                changedDuringLoad.put(entity.getUuid(), entity);
+            }
+        }
+
+        synchronized void remove(final String uuid) {
+            final T entity = byUuid.remove(uuid);
+            if (entity != null && entity.getTags() != null) {
+                for (final NiciraNvpTag tag : entity.getTags()) {
+                    final List<T> tagged = byTag.get(tagKey(tag));
+                    if (tagged != null) {
+                        tagged.remove(entity);
+                    }
+                }
+            }
+            if (changedDuringLoad != null) {
+                changedDuringLoad.put(uuid, null);
+            }
+        }
+
+        synchronized void startLoad() {
+            changedDuringLoad = new HashMap<String, T>();
+        }
+
+        synchronized void abortLoad() {
+            changedDuringLoad = null;
+        }
+
+        synchronized void finishLoad(final List<T> entities) {
+            final Map<String, T> changes = changedDuringLoad;
+            changedDuringLoad = null;
+            byUuid = new HashMap<String, T>();
+            byTag = new HashMap<String, List<T>>();
+            for (final T entity : entities) {
+                put(entity);
+            }
+            for (final Map.Entry<String, T> change : changes.entrySet()) {
+                if (change.getValue() == null) {
+                    remove(change.getKey());
+                } else {
+                    put(change.getValue());
+                }
+            }
+            loadedAt = System.currentTimeMillis();
+            loaded = true;
+            used = false;
+        }
+
+        private static String tagKey(final NiciraNvpTag tag) {
+            return tag.getScope() + "=" + tag.getTag();
+        }
+    }
+}
@@ -24,6 +24,7 @@ import java.util.List;
 public class NiciraNvpList<T> {
     private List<T> results;
     private int resultCount;
+    private String pageCursor;
 
     public List<T> getResults() {
         return this.results;
@@ -41,6 +42,14 @@ public class NiciraNvpList<T> {
         this.resultCount = resultCount;
     }
 
+    public String getPageCursor() {
+        return pageCursor;
+    }
+
+    public void setPageCursor(String pageCursor) {
+        this.pageCursor = pageCursor;
+    }
+
     public boolean isEmpty() {
         return this.resultCount == 0;
     }
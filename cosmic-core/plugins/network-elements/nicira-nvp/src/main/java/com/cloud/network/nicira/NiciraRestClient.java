@@ -20,8 +20,12 @@
 package com.cloud.network.nicira;
 
 import java.io.IOException;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
 
 import com.cloud.utils.rest.BasicRestClient;
 import com.cloud.utils.rest.CloudstackRESTException;
@@ -49,10 +53,14 @@ public class NiciraRestClient extends BasicRestClient {
 
     private static final int DEFAULT_BODY_RESP_MAX_LEN = 1024;
     private static final int DEFAULT_EXECUTION_LIMIT = 5;
+    public static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 10;
 
     private final ExecutionCounter counter;
     private final int maxResponseErrorMesageLength;
     private final int executionLimit;
+    private final Semaphore requestPermits;
+    // responses returned by execute whose permit is given back when they are closed
+    private final Set<CloseableHttpResponse> openResponses = Collections.newSetFromMap(new ConcurrentHashMap<CloseableHttpResponse, Boolean>());
 
     private final String username;
     private final String password;
@@ -62,6 +70,7 @@ public class NiciraRestClient extends BasicRestClient {
         super(builder.client, builder.clientContext, builder.hostname);
         executionLimit = builder.executionLimit;
         counter = new ExecutionCounter(executionLimit);
+        requestPermits = new Semaphore(builder.maxConcurrentRequests, true);
         maxResponseErrorMesageLength = builder.maxResponseErrorMesageLength;
         username = builder.username;
         password = builder.password;
@@ -72,9 +81,43 @@ public class NiciraRestClient extends BasicRestClient {
         return new Builder();
     }
 
+    /**
+     * Executes the request, waiting while the maximum number of requests is already being executed
+     * against the controller. Callers on different threads share the pooled connections of the
+     * client, the limit keeps them from flooding the controller. A request counts until its
+     * response is closed with {@link #closeResponse(CloseableHttpResponse)}, as the response body
+     * is still streamed from the controller until then.
+     */
     @Override
     public CloseableHttpResponse execute(final HttpUriRequest request) throws CloudstackRESTException {
-        return execute(request, 0);
+        try {
+            requestPermits.acquire();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CloudstackRESTException("Interrupted while waiting to execute " + request.getMethod() + " request", e);
+        }
+        boolean executed = false;
+        try {
+            final CloseableHttpResponse response = execute(request, 0);
+            openResponses.add(response);
+            executed = true;
+            return response;
+        } finally {
+            if (!executed) {
+                requestPermits.release();
+            }
+        }
+    }
+
+    @Override
+    public void closeResponse(final CloseableHttpResponse response) throws CloudstackRESTException {
+        try {
+            super.closeResponse(response);
+        } finally {
+            if (openResponses.remove(response)) {
+                requestPermits.release();
+            }
+        }
     }
 
     private CloseableHttpResponse execute(final HttpUriRequest request, final int previousStatusCode) throws CloudstackRESTException {
@@ -153,6 +196,7 @@ public class NiciraRestClient extends BasicRestClient {
         private String loginUrl;
         private int executionLimit = DEFAULT_EXECUTION_LIMIT;
         private int maxResponseErrorMesageLength = DEFAULT_BODY_RESP_MAX_LEN;
+        private int maxConcurrentRequests = DEFAULT_MAX_CONCURRENT_REQUESTS;
 
         public Builder hostname(final String hostname) {
             this.hostname = hostname;
@@ -196,6 +240,11 @@ public class NiciraRestClient extends BasicRestClient {
             return this;
         }
 
+        public Builder maxConcurrentRequests(final int maxConcurrentRequests) {
+            this.maxConcurrentRequests = maxConcurrentRequests;
+            return this;
+        }
+
         @Override
         public NiciraRestClient build() {
             return new NiciraRestClient(this);
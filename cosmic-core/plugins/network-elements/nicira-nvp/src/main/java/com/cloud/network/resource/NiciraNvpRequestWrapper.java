@@ -26,10 +26,9 @@ import com.cloud.agent.api.Answer;
 import com.cloud.agent.api.Command;
 import com.cloud.resource.CommandWrapper;
 import com.cloud.resource.RequestWrapper;
+import com.cloud.resource.ResourceWrapperIndex;
 import com.cloud.resource.ServerResource;
 
-import org.reflections.Reflections;
-
 public class NiciraNvpRequestWrapper extends RequestWrapper {
 
     private static NiciraNvpRequestWrapper instance;
@@ -38,9 +37,8 @@ public class NiciraNvpRequestWrapper extends RequestWrapper {
         instance = new NiciraNvpRequestWrapper();
     }
 
-    Reflections baseWrappers = new Reflections("com.cloud.network.resource.wrapper");
     @SuppressWarnings("rawtypes")
-    Set<Class<? extends CommandWrapper>> baseSet = baseWrappers.getSubTypesOf(CommandWrapper.class);
+    Set<Class<? extends CommandWrapper>> baseSet = ResourceWrapperIndex.load("com.cloud.network.resource.wrapper");
 
     private NiciraNvpRequestWrapper() {
         init();
@@ -41,9 +41,12 @@ import com.cloud.network.nicira.Match;
 import com.cloud.network.nicira.NatRule;
 import com.cloud.network.nicira.NiciraNvpApi;
 import com.cloud.network.nicira.NiciraNvpApiException;
+import com.cloud.network.nicira.NiciraNvpEntityCache;
+import com.cloud.network.nicira.NiciraRestClient;
 import com.cloud.network.nicira.SourceNatRule;
 import com.cloud.network.utils.CommandRetryUtility;
 import com.cloud.resource.ServerResource;
+import com.cloud.utils.NumbersUtil;
 import com.cloud.utils.nicira.nvp.plugin.NiciraNvpApiVersion;
 import com.cloud.utils.rest.CloudstackRESTException;
 import com.cloud.utils.rest.HttpClientHelper;
@@ -58,18 +61,23 @@ public class NiciraNvpResource implements ServerResource {
     public static final int NAME_MAX_LEN = 40;
     public static final int NUM_RETRIES = 2;
     private static final int MAX_REDIRECTS = 5;
+    private static final int DEFAULT_ENTITY_CACHE_TTL = 30;
 
     private String name;
     private String guid;
     private String zoneId;
 
+    private int maxConcurrentRequests = NiciraRestClient.DEFAULT_MAX_CONCURRENT_REQUESTS;
+
     private NiciraNvpApi niciraNvpApi;
+    private NiciraNvpEntityCache niciraNvpEntityCache;
     private NiciraNvpUtilities niciraNvpUtilities;
     private CommandRetryUtility retryUtility;
 
     protected NiciraNvpApi createNiciraNvpApi(final String host, final String username, final String password) throws CloudstackRESTException {
         try {
-            return NiciraNvpApi.create().host(host).username(username).password(password).httpClient(HttpClientHelper.createHttpClient(MAX_REDIRECTS)).build();
+            return NiciraNvpApi.create().host(host).username(username).password(password).httpClient(HttpClientHelper.createHttpClient(MAX_REDIRECTS))
+                    .maxConcurrentRequests(maxConcurrentRequests).build();
         } catch (final KeyManagementException e) {
             throw new CloudstackRESTException("Could not create HTTP client", e);
         } catch (final NoSuchAlgorithmException e) {
@@ -112,6 +120,10 @@ public class NiciraNvpResource implements ServerResource {
             throw new ConfigurationException("Unable to find admin password");
         }
 
+        // Controller calls and listings of the entity cache running at the same time
+        maxConcurrentRequests = NumbersUtil.parseInt((String) params.get("maxconcurrentrequests"), NiciraRestClient.DEFAULT_MAX_CONCURRENT_REQUESTS);
+        final int entityCacheTtl = NumbersUtil.parseInt((String) params.get("entitycachettl"), DEFAULT_ENTITY_CACHE_TTL);
+
         niciraNvpUtilities = NiciraNvpUtilities.getInstance();
         retryUtility = CommandRetryUtility.getInstance();
         retryUtility.setServerResource(this);
@@ -121,6 +133,7 @@ public class NiciraNvpResource implements ServerResource {
         } catch (final CloudstackRESTException e) {
             throw new ConfigurationException("Could not create a Nicira Nvp API client: " + e.getMessage());
         }
+        niciraNvpEntityCache = new NiciraNvpEntityCache(niciraNvpApi, entityCacheTtl * 1000L, maxConcurrentRequests);
 
         return true;
     }
@@ -129,6 +142,10 @@ public class NiciraNvpResource implements ServerResource {
         return niciraNvpApi;
     }
 
+    public NiciraNvpEntityCache getNiciraNvpEntityCache() {
+        return niciraNvpEntityCache;
+    }
+
     public NiciraNvpUtilities getNiciraNvpUtilities() {
         return niciraNvpUtilities;
     }
@@ -144,6 +161,9 @@ public class NiciraNvpResource implements ServerResource {
 
     @Override
     public boolean stop() {
+        if (niciraNvpEntityCache != null) {
+            niciraNvpEntityCache.shutdown();
+        }
         return true;
     }
 
@@ -184,6 +204,11 @@ public class NiciraNvpResource implements ServerResource {
             s_logger.error("getControlClusterStatus failed", e);
             return null;
         }
+        try {
+            niciraNvpEntityCache.reconcile();
+        } catch (final NiciraNvpApiException e) {
+            s_logger.warn("Unable to reconcile the entity cache with the controller", e);
+        }
         return new PingCommand(Host.Type.L2Networking, id);
     }
 
@@ -35,6 +35,7 @@ import com.cloud.network.nicira.LogicalSwitchPort;
 import com.cloud.network.nicira.Match;
 import com.cloud.network.nicira.NiciraNvpApi;
 import com.cloud.network.nicira.NiciraNvpApiException;
+import com.cloud.network.nicira.NiciraNvpEntityCache;
 import com.cloud.network.nicira.NiciraNvpTag;
 import com.cloud.network.nicira.PatchAttachment;
 import com.cloud.network.nicira.RouterNextHop;
@@ -143,6 +144,10 @@ public final class NiciraNvpCreateLogicalRouterCommandWrapper extends CommandWra
                 throw e;
             }
 
+            final NiciraNvpEntityCache entityCache = niciraNvpResource.getNiciraNvpEntityCache();
+            entityCache.putLogicalRouter(lrc);
+            entityCache.putLogicalSwitchPort(logicalSwitchUuid, lsp);
+
             return new CreateLogicalRouterAnswer(command, true, "Logical Router created (uuid " + lrc.getUuid() + ")", lrc.getUuid());
         } catch (final NiciraNvpApiException e) {
             final CommandRetryUtility retryUtility = niciraNvpResource.getRetryUtility();
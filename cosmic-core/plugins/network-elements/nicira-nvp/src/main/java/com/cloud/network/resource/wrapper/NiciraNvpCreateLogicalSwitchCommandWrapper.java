@@ -62,6 +62,7 @@ public final class NiciraNvpCreateLogicalSwitchCommandWrapper extends CommandWra
         try {
             final NiciraNvpApi niciraNvpApi = niciraNvpResource.getNiciraNvpApi();
             logicalSwitch = niciraNvpApi.createLogicalSwitch(logicalSwitch);
+            niciraNvpResource.getNiciraNvpEntityCache().putLogicalSwitch(logicalSwitch);
             final String switchUuid = logicalSwitch.getUuid();
             return new CreateLogicalSwitchAnswer(command, true, "Logicalswitch " + switchUuid + " created", switchUuid);
         } catch (final NiciraNvpApiException e) {
@@ -61,6 +61,7 @@ public final class NiciraNvpCreateLogicalSwitchPortCommandWrapper extends Comman
                 niciraNvpApi.deleteLogicalSwitchPort(command.getLogicalSwitchUuid(), newPort.getUuid());
                 throw ex; // Rethrow the original exception
             }
+            niciraNvpResource.getNiciraNvpEntityCache().putLogicalSwitchPort(logicalSwitchUuid, newPort);
             return new CreateLogicalSwitchPortAnswer(command, true, "Logical switch port " + newPort.getUuid() + " created", newPort.getUuid());
         } catch (final NiciraNvpApiException e) {
             final CommandRetryUtility retryUtility = niciraNvpResource.getRetryUtility();
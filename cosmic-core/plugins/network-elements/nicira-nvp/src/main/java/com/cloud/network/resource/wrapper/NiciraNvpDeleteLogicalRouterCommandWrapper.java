@@ -40,6 +40,7 @@ public final class NiciraNvpDeleteLogicalRouterCommandWrapper extends CommandWra
 
         try {
             niciraNvpApi.deleteLogicalRouter(command.getLogicalRouterUuid());
+            niciraNvpResource.getNiciraNvpEntityCache().evictLogicalRouter(command.getLogicalRouterUuid());
             return new DeleteLogicalRouterAnswer(command, true, "Logical Router deleted (uuid " + command.getLogicalRouterUuid() + ")");
         } catch (final NiciraNvpApiException e) {
             final CommandRetryUtility retryUtility = niciraNvpResource.getRetryUtility();
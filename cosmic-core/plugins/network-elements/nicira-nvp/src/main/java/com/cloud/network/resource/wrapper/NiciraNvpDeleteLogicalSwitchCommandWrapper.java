@@ -39,6 +39,7 @@ public final class NiciraNvpDeleteLogicalSwitchCommandWrapper extends CommandWra
         try {
             final NiciraNvpApi niciraNvpApi = niciraNvpResource.getNiciraNvpApi();
             niciraNvpApi.deleteLogicalSwitch(command.getLogicalSwitchUuid());
+            niciraNvpResource.getNiciraNvpEntityCache().evictLogicalSwitch(command.getLogicalSwitchUuid());
             return new DeleteLogicalSwitchAnswer(command, true, "Logicalswitch " + command.getLogicalSwitchUuid() + " deleted");
         } catch (final NiciraNvpApiException e) {
             final CommandRetryUtility retryUtility = niciraNvpResource.getRetryUtility();
@@ -27,8 +27,8 @@ import com.cloud.agent.api.Answer;
 import com.cloud.agent.api.FindLogicalSwitchAnswer;
 import com.cloud.agent.api.FindLogicalSwitchCommand;
 import com.cloud.network.nicira.LogicalSwitch;
-import com.cloud.network.nicira.NiciraNvpApi;
 import com.cloud.network.nicira.NiciraNvpApiException;
+import com.cloud.network.nicira.NiciraNvpEntityCache;
 import com.cloud.network.resource.NiciraNvpResource;
 import com.cloud.network.utils.CommandRetryUtility;
 import com.cloud.resource.CommandWrapper;
@@ -41,10 +41,10 @@ public final class NiciraNvpFindLogicalSwitchCommandWrapper extends CommandWrapp
     public Answer execute(final FindLogicalSwitchCommand command, final NiciraNvpResource niciraNvpResource) {
         final String logicalSwitchUuid = command.getLogicalSwitchUuid();
 
-        final NiciraNvpApi niciraNvpApi = niciraNvpResource.getNiciraNvpApi();
+        final NiciraNvpEntityCache entityCache = niciraNvpResource.getNiciraNvpEntityCache();
 
         try {
-            final List<LogicalSwitch> switches = niciraNvpApi.findLogicalSwitch(logicalSwitchUuid);
+            final List<LogicalSwitch> switches = entityCache.findLogicalSwitch(logicalSwitchUuid);
             if (switches.size() == 0) {
                 return new FindLogicalSwitchAnswer(command, false, "Logical switc " + logicalSwitchUuid + " not found", null);
             } else {
@@ -27,8 +27,8 @@ import com.cloud.agent.api.Answer;
 import com.cloud.agent.api.FindLogicalSwitchPortAnswer;
 import com.cloud.agent.api.FindLogicalSwitchPortCommand;
 import com.cloud.network.nicira.LogicalSwitchPort;
-import com.cloud.network.nicira.NiciraNvpApi;
 import com.cloud.network.nicira.NiciraNvpApiException;
+import com.cloud.network.nicira.NiciraNvpEntityCache;
 import com.cloud.network.resource.NiciraNvpResource;
 import com.cloud.network.utils.CommandRetryUtility;
 import com.cloud.resource.CommandWrapper;
@@ -42,10 +42,10 @@ public final class NiciraNvpFindLogicalSwitchPortCommandWrapper extends CommandW
         final String logicalSwitchUuid = command.getLogicalSwitchUuid();
         final String logicalSwitchPortUuid = command.getLogicalSwitchPortUuid();
 
-        final NiciraNvpApi niciraNvpApi = niciraNvpResource.getNiciraNvpApi();
+        final NiciraNvpEntityCache entityCache = niciraNvpResource.getNiciraNvpEntityCache();
 
         try {
-            final List<LogicalSwitchPort> ports = niciraNvpApi.findLogicalSwitchPortsByUuid(logicalSwitchUuid, logicalSwitchPortUuid);
+            final List<LogicalSwitchPort> ports = entityCache.findLogicalSwitchPortsByUuid(logicalSwitchUuid, logicalSwitchPortUuid);
             if (ports.size() == 0) {
                 return new FindLogicalSwitchPortAnswer(command, false, "Logical switchport " + logicalSwitchPortUuid + " not found", null);
             } else {
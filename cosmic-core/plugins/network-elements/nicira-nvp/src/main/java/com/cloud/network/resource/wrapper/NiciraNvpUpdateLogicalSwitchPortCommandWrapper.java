@@ -58,6 +58,8 @@ public final class NiciraNvpUpdateLogicalSwitchPortCommandWrapper extends Comman
             final VifAttachment vifAttachment = niciraNvpUtilities.createVifAttachment(attachmentUuid);
 
             niciraNvpApi.updateLogicalSwitchPortAttachment(logicalSwitchUuid, logicalSwitchPortUuid, vifAttachment);
+            // the cached port has the old attachment
+            niciraNvpResource.getNiciraNvpEntityCache().evictLogicalSwitchPort(logicalSwitchUuid, logicalSwitchPortUuid);
             return new UpdateLogicalSwitchPortAnswer(command, true, "Attachment for  " + logicalSwitchPortUuid + " updated", logicalSwitchPortUuid);
         } catch (final NiciraNvpApiException e) {
             final CommandRetryUtility retryUtility = niciraNvpResource.getRetryUtility();
@@ -0,0 +1,240 @@
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package com.cloud.network.nicira;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.apache.http.HttpHost;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Runs the cache against a local HTTP stub of the controller.
+ */
+public class NiciraNvpEntityCacheTest {
+
+    private static final String SWITCH_PAGE_1 = "{\"results\": [{\"uuid\": \"ls-1\", \"tags\": [{\"scope\": \"cs_account\", \"tag\": \"admin\"}]},"
+            + "{\"uuid\": \"ls-2\", \"tags\": [{\"scope\": \"cs_account\", \"tag\": \"user\"}]}], \"result_count\": 3, \"page_cursor\": \"cursor-1\"}";
+    private static final String SWITCH_PAGE_2 = "{\"results\": [{\"uuid\": \"ls-3\", \"tags\": [{\"scope\": \"cs_account\", \"tag\": \"admin\"}]}], \"result_count\": 3}";
+
+    private final Map<String, AtomicInteger> requests = new ConcurrentHashMap<String, AtomicInteger>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private volatile long responseDelayMs;
+
+    private HttpServer server;
+    private CloseableHttpClient httpClient;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/ws.v1/", this::handle);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        httpClient = HttpClients.custom().setConnectionManager(new PoolingHttpClientConnectionManager()).build();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        httpClient.close();
+        server.stop(0);
+    }
+
+    private void handle(final HttpExchange exchange) throws IOException {
+        final int current = inFlight.incrementAndGet();
+        maxInFlight.accumulateAndGet(current, Math::max);
+        try {
+            if (responseDelayMs > 0) {
+                Thread.sleep(responseDelayMs);
+            }
+            final String path = exchange.getRequestURI().getPath();
+            final String query = exchange.getRequestURI().getQuery();
+            requests.computeIfAbsent(path + (query.contains("uuid=") ? "?uuid" : ""), k -> new AtomicInteger()).incrementAndGet();
+
+            final String body;
+            if (path.equals(NiciraConstants.SWITCH_URI_PREFIX)) {
+                if (query.contains("uuid=ls-4")) {
+                    body = "{\"results\": [{\"uuid\": \"ls-4\"}], \"result_count\": 1}";
+                } else if (query.contains("uuid=")) {
+                    body = "{\"results\": [], \"result_count\": 0}";
+                } else {
+                    body = query.contains("_page_cursor=cursor-1") ? SWITCH_PAGE_2 : SWITCH_PAGE_1;
+                }
+            } else if (path.endsWith(NiciraConstants.LPORT_PATH_SEGMENT)) {
+                final String logicalSwitchUuid = path.split("/")[3];
+                body = query.contains("uuid=") ? "{\"results\": [], \"result_count\": 0}"
+                        : "{\"results\": [{\"uuid\": \"" + logicalSwitchUuid + "-port-1\"}, {\"uuid\": \"" + logicalSwitchUuid + "-port-2\"}], \"result_count\": 2}";
+            } else {
+                body = "{\"results\": [], \"result_count\": 0}";
+            }
+
+            final byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    private NiciraNvpEntityCache createCache(final int maxConcurrentRequests) {
+        return createCache(maxConcurrentRequests, 60000);
+    }
+
+    private NiciraNvpEntityCache createCache(final int maxConcurrentRequests, final long timeToLiveMs) {
+        final HttpClientContext httpClientContext = HttpClientContext.create();
+        final NiciraNvpApi api = NiciraNvpApi.create()
+            .host("127.0.0.1")
+            .username("admin")
+            .password("adminpassword")
+            .httpClient(httpClient)
+            .httpClientContext(httpClientContext)
+            .maxConcurrentRequests(maxConcurrentRequests)
+            .build();
+        // talk plain HTTP to the stub instead of HTTPS to a controller
+        httpClientContext.setTargetHost(new HttpHost("127.0.0.1", server.getAddress().getPort(), "http"));
+        return new NiciraNvpEntityCache(api, timeToLiveMs, maxConcurrentRequests);
+    }
+
+    private int requestCount(final String key) {
+        final AtomicInteger count = requests.get(key);
+        return count == null ? 0 : count.get();
+    }
+
+    @Test
+    public void testLookupsAreAnsweredFromPagedListing() throws Exception {
+        final NiciraNvpEntityCache cache = createCache(4);
+
+        assertThat(cache.findLogicalSwitchesByTag(new NiciraNvpTag("cs_account", "admin")), hasSize(2));
+        assertThat(cache.findLogicalSwitch("ls-3"), hasSize(1));
+        assertThat(cache.findLogicalSwitch("ls-1"), hasSize(1));
+
+        // both pages of the listing, and nothing else
+        assertThat(requestCount(NiciraConstants.SWITCH_URI_PREFIX), equalTo(2));
+        assertThat(requestCount(NiciraConstants.SWITCH_URI_PREFIX + "?uuid"), equalTo(0));
+        cache.shutdown();
+    }
+
+    @Test
+    public void testLookupsQueryUuidUntilReconciled() throws Exception {
+        final NiciraNvpEntityCache cache = createCache(4);
+
+        // nothing is listed yet, a lookup asks for the one switch instead of listing all of them
+        assertThat(cache.findLogicalSwitch("ls-4"), hasSize(1));
+        assertThat(cache.findLogicalSwitch("ls-5"), hasSize(0));
+        assertThat(requestCount(NiciraConstants.SWITCH_URI_PREFIX + "?uuid"), equalTo(2));
+        assertThat(requestCount(NiciraConstants.SWITCH_URI_PREFIX), equalTo(0));
+
+        // the ping lists the switches, as they are looked up
+        cache.reconcile();
+        assertThat(requestCount(NiciraConstants.SWITCH_URI_PREFIX), equalTo(2));
+        assertThat(cache.findLogicalSwitch("ls-1"), hasSize(1));
+        assertThat(cache.findLogicalSwitch("ls-3"), hasSize(1));
+        assertThat(requestCount(NiciraConstants.SWITCH_URI_PREFIX + "?uuid"), equalTo(2));
+
+        // a missing one is asked for every time
+        assertThat(cache.findLogicalSwitch("ls-5"), hasSize(0));
+        assertThat(requestCount(NiciraConstants.SWITCH_URI_PREFIX + "?uuid"), equalTo(3));
+        cache.shutdown();
+    }
+
+    @Test
+    public void testSwitchPortsAreListedOncePerSwitch() throws Exception {
+        final NiciraNvpEntityCache cache = createCache(4);
+        final String lports = NiciraConstants.SWITCH_URI_PREFIX + "/ls-1" + NiciraConstants.LPORT_PATH_SEGMENT;
+
+        assertThat(cache.findLogicalSwitchPortsByUuid("ls-1", "ls-1-port-1"), hasSize(0));
+        assertThat(requestCount(lports + "?uuid"), equalTo(1));
+        cache.reconcile();
+
+        assertThat(cache.findLogicalSwitchPortsByUuid("ls-1", "ls-1-port-1"), hasSize(1));
+        assertThat(cache.findLogicalSwitchPortsByUuid("ls-1", "ls-1-port-2"), hasSize(1));
+        assertThat(requestCount(lports), equalTo(1));
+
+        cache.evictLogicalSwitchPort("ls-1", "ls-1-port-2");
+        assertThat(cache.findLogicalSwitchPortsByUuid("ls-1", "ls-1-port-2"), hasSize(0));
+        assertThat(requestCount(lports), equalTo(1));
+        assertThat(requestCount(lports + "?uuid"), equalTo(2));
+        cache.shutdown();
+    }
+
+    @Test
+    public void testReconcileListsOnlyIndexesInUse() throws Exception {
+        final NiciraNvpEntityCache cache = createCache(4, 0);
+        final String lports = NiciraConstants.SWITCH_URI_PREFIX + "/ls-1" + NiciraConstants.LPORT_PATH_SEGMENT;
+        cache.putLogicalSwitchPort("ls-1", new LogicalSwitchPort());
+
+        assertThat(cache.findLogicalSwitchesByTag(new NiciraNvpTag("cs_account", "admin")), hasSize(2));
+        assertThat(requestCount(NiciraConstants.SWITCH_URI_PREFIX), equalTo(2));
+
+        // the switches were used since they were listed, the ports of ls-1 never were
+        cache.reconcile();
+        assertThat(requestCount(NiciraConstants.SWITCH_URI_PREFIX), equalTo(4));
+        assertThat(requestCount(lports), equalTo(0));
+
+        // nothing was used since
+        cache.reconcile();
+        assertThat(requestCount(NiciraConstants.SWITCH_URI_PREFIX), equalTo(4));
+        assertThat(requestCount(NiciraConstants.ROUTER_URI_PREFIX), equalTo(0));
+        cache.shutdown();
+    }
+
+    @Test
+    public void testReconcileRespectsConcurrencyLimit() throws Exception {
+        final NiciraNvpEntityCache cache = createCache(2);
+        for (int i = 0; i < 8; i++) {
+            cache.findLogicalSwitchPortsByUuid("ls-" + i, "ls-" + i + "-port-1");
+        }
+        responseDelayMs = 50;
+
+        cache.reconcile();
+
+        assertThat(requestCount(NiciraConstants.SWITCH_URI_PREFIX + "/ls-7" + NiciraConstants.LPORT_PATH_SEGMENT), equalTo(1));
+        assertThat(maxInFlight.get(), lessThanOrEqualTo(2));
+        final List<LogicalSwitchPort> ports = cache.findLogicalSwitchPortsByUuid("ls-7", "ls-7-port-1");
+        assertThat(ports, hasSize(1));
+        cache.shutdown();
+    }
+}
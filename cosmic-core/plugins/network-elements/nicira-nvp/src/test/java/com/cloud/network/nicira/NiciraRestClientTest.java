@@ -34,6 +34,11 @@ import static org.powermock.api.mockito.PowerMockito.verifyPrivate;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import com.cloud.utils.rest.CloudstackRESTException;
 import com.cloud.utils.rest.HttpMethods;
@@ -121,6 +126,40 @@ public class NiciraRestClientTest {
         verifyPrivate(client).invoke("execute", request, 0);
     }
 
+    @Test
+    public void testResponseHoldsRequestPermitUntilClosed() throws Exception {
+        final CloseableHttpResponse otherResponse = mock(CloseableHttpResponse.class);
+        when(mockResponse.getStatusLine()).thenReturn(HTTP_200_STATUSLINE);
+        when(otherResponse.getStatusLine()).thenReturn(HTTP_200_STATUSLINE);
+        when(httpClient.execute(eq(HTTP_HOST), eq(request), eq(httpClientContext))).thenReturn(mockResponse).thenReturn(otherResponse);
+        final NiciraRestClient client = NiciraRestClient.create()
+            .client(httpClient)
+            .clientContext(httpClientContext)
+            .hostname(LOCALHOST)
+            .username(ADMIN)
+            .password(ADMIN_PASSWORD)
+            .loginUrl(LOGIN_PATH)
+            .maxConcurrentRequests(1)
+            .build();
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try {
+            final CloseableHttpResponse response = client.execute(request);
+            final Future<CloseableHttpResponse> next = executor.submit(() -> client.execute(request));
+            try {
+                next.get(200, TimeUnit.MILLISECONDS);
+                fail("Expected the second request to wait until the first response is closed");
+            } catch (final TimeoutException e) {
+                // the body of the first response may still be read
+            }
+
+            client.closeResponse(response);
+            assertThat(next.get(10, TimeUnit.SECONDS), sameInstance(otherResponse));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
     @Test
     public void testExecuteUnauthorizedThenSuccess() throws Exception {
         when(mockResponse.getStatusLine())
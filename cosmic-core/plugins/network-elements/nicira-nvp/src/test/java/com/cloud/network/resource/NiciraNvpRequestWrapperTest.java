@@ -19,10 +19,13 @@
 
 package com.cloud.network.resource;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.util.ArrayList;
@@ -41,8 +44,11 @@ import com.cloud.network.nicira.LogicalRouterPort;
 import com.cloud.network.nicira.LogicalSwitch;
 import com.cloud.network.nicira.NiciraNvpApi;
 import com.cloud.network.nicira.NiciraNvpApiException;
+import com.cloud.network.nicira.NiciraNvpEntityCache;
 import com.cloud.network.nicira.VifAttachment;
+import com.cloud.resource.ResourceWrapperIndex;
 
+import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
 import org.mockito.Mockito;
@@ -51,6 +57,12 @@ public class NiciraNvpRequestWrapperTest {
 
     @Mock
     private final NiciraNvpResource niciraNvpResource = Mockito.mock(NiciraNvpResource.class);
+    private final NiciraNvpEntityCache niciraNvpEntityCache = Mockito.mock(NiciraNvpEntityCache.class);
+
+    @Before
+    public void setUp() {
+        when(niciraNvpResource.getNiciraNvpEntityCache()).thenReturn(niciraNvpEntityCache);
+    }
 
     @Test
     public void testReadyCommandWrapper() {
@@ -133,6 +145,7 @@ public class NiciraNvpRequestWrapperTest {
         final Answer answer = wrapper.execute(command, niciraNvpResource);
 
         assertTrue(answer.getResult());
+        verify(niciraNvpEntityCache).evictLogicalSwitch(logicalSwitchUuid);
     }
 
     @Test
@@ -247,4 +260,11 @@ public class NiciraNvpRequestWrapperTest {
 
         assertTrue(answer.getResult());
     }
+
+    @Test
+    public void testEveryWrapperIsIndexed() {
+        final String packagePrefix = "com.cloud.network.resource.wrapper";
+        assertFalse(ResourceWrapperIndex.loadIndex(packagePrefix).isEmpty());
+        assertEquals(ResourceWrapperIndex.scan(packagePrefix), ResourceWrapperIndex.loadIndex(packagePrefix));
+    }
 }
\ No newline at end of file
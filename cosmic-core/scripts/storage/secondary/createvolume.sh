@@ -22,7 +22,7 @@
 # createtmplt.sh -- install a volume
 
 usage() {
-  printf "Usage: %s: -t <volume-fs> -n <volumename> -f <root disk file> -c <md5 cksum> -d <descr> -h  [-u] [-v]\n" $(basename $0) >&2
+  printf "Usage: %s: -t <volume-fs> -n <volumename> -f <root disk file> -c <md5 cksum> [-k] -d <descr> -h  [-u] [-v]\n" $(basename $0) >&2
 }
 
 
@@ -139,8 +139,9 @@ hvm=false
 cleanup=false
 dflag=
 cflag=
+kflag=
 
-while getopts 'vuht:n:f:s:c:d:S:' OPTION
+while getopts 'vuhkt:n:f:s:c:d:S:' OPTION
 do
   case $OPTION in
   t)	tflag=1
@@ -157,6 +158,8 @@ do
   c)	cflag=1
 		cksum="$OPTARG"
 		;;
+  k)	kflag=1
+		;;
   d)	dflag=1
 		descr="$OPTARG"
 		;;
@@ -192,7 +195,8 @@ then
   exit 3
 fi
 
-if [ -n "$cksum" ]
+# -k: the checksum was verified while downloading, only record it
+if [ -n "$cksum" ] && [ -z "$kflag" ]
 then
   verify_cksum $cksum $tmpltimg
 fi
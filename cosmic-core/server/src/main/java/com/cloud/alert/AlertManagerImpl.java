@@ -81,7 +81,6 @@ import org.apache.cloudstack.framework.config.Configurable;
 import org.apache.cloudstack.framework.config.dao.ConfigurationDao;
 import org.apache.cloudstack.managed.context.ManagedContextTimerTask;
 import org.apache.cloudstack.storage.datastore.db.PrimaryDataStoreDao;
-import org.apache.cloudstack.storage.datastore.db.StoragePoolVO;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -285,15 +284,14 @@ public class AlertManagerImpl extends ManagerBase implements AlertManager, Confi
                 s_logger.debug("Executing storage capacity update");
             }
             // Calculate storage pool capacity
-            List<StoragePoolVO> storagePools = _storagePoolDao.listAll();
-            for (StoragePoolVO pool : storagePools) {
+            _storagePoolDao.stream(null, pool -> {
                 long disk = _capacityMgr.getAllocatedPoolCapacity(pool, null);
                 if (pool.isShared()) {
                     _storageMgr.createCapacityEntry(pool, Capacity.CAPACITY_TYPE_STORAGE_ALLOCATED, disk);
                 } else {
                     _storageMgr.createCapacityEntry(pool, Capacity.CAPACITY_TYPE_LOCAL_STORAGE, disk);
                 }
-            }
+            });
 
             if (s_logger.isDebugEnabled()) {
                 s_logger.debug("Done executing storage capacity update");
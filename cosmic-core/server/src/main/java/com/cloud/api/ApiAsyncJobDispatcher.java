@@ -27,9 +27,13 @@ import com.cloud.user.User;
 import com.cloud.utils.component.AdapterBase;
 import com.cloud.utils.component.ComponentContext;
 import com.cloud.utils.db.EntityManager;
+import com.cloud.utils.profiler.CommandProfiler;
+import com.cloud.utils.profiler.CommandProfiler.Phase;
+import com.cloud.utils.profiler.CommandProfiler.Span;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 
+import org.apache.cloudstack.api.APICommand;
 import org.apache.cloudstack.api.ApiErrorCode;
 import org.apache.cloudstack.api.BaseAsyncCmd;
 import org.apache.cloudstack.api.BaseAsyncCreateCmd;
@@ -102,15 +106,25 @@ public class ApiAsyncJobDispatcher extends AdapterBase implements AsyncJobDispat
                 ctx.putContextParameters((Map<Object, Object>) gson.fromJson(contextDetails, objectMapType));
             }
 
+            // executions of jobs are profiled apart from the requests that submitted them
+            final APICommand annotation = cmdClass.getAnnotation(APICommand.class);
+            final boolean profiled = annotation != null && CommandProfiler.start(annotation.name() + "/job");
             try {
                 // dispatch could ultimately queue the job
                 _dispatcher.dispatch(cmdObj, params, true);
 
                 // serialize this to the async job table
-                _asyncJobMgr.completeAsyncJob(job.getId(), JobInfo.Status.SUCCEEDED, 0, ApiSerializerHelper.toSerializedString(cmdObj.getResponseObject()));
+                final String result;
+                try (Span span = CommandProfiler.enter(Phase.SERIALIZE)) {
+                    result = ApiSerializerHelper.toSerializedString(cmdObj.getResponseObject());
+                }
+                _asyncJobMgr.completeAsyncJob(job.getId(), JobInfo.Status.SUCCEEDED, 0, result);
             } catch (InvalidParameterValueException ipve) {
                 throw new ServerApiException(ApiErrorCode.PARAM_ERROR, ipve.getMessage());
             } finally {
+                if (profiled) {
+                    CommandProfiler.finish();
+                }
                 CallContext.unregister();
             }
         } catch (Throwable e) {
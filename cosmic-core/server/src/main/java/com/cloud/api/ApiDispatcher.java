@@ -28,6 +28,9 @@ import com.cloud.projects.Project;
 import com.cloud.user.Account;
 import com.cloud.user.AccountManager;
 import com.cloud.utils.db.EntityManager;
+import com.cloud.utils.profiler.CommandProfiler;
+import com.cloud.utils.profiler.CommandProfiler.Phase;
+import com.cloud.utils.profiler.CommandProfiler.Span;
 
 import org.apache.cloudstack.acl.ControlledEntity;
 import org.apache.cloudstack.acl.InfrastructureEntity;
@@ -81,7 +84,9 @@ public class ApiDispatcher {
 
 
     public void dispatchCreateCmd(final BaseAsyncCreateCmd cmd, final Map<String, String> params) throws Exception {
-        asyncCreationDispatchChain.dispatch(new DispatchTask(cmd, params));
+        try (Span span = CommandProfiler.enter(Phase.PARAMETERS)) {
+            asyncCreationDispatchChain.dispatch(new DispatchTask(cmd, params));
+        }
     }
 
     private void doAccessChecks(BaseCmd cmd, Map<Object, AccessType> entitiesToAccess) {
@@ -103,7 +108,9 @@ public class ApiDispatcher {
 
     public void dispatch(final BaseCmd cmd, final Map<String, String> params, final boolean execute) throws Exception {
         // Let the chain of responsibility dispatch gradually
-        standardDispatchChain.dispatch(new DispatchTask(cmd, params));
+        try (Span span = CommandProfiler.enter(Phase.PARAMETERS)) {
+            standardDispatchChain.dispatch(new DispatchTask(cmd, params));
+        }
 
         final CallContext ctx = CallContext.current();
         ctx.setEventDisplayEnabled(cmd.isDisplay());
@@ -147,7 +154,9 @@ public class ApiDispatcher {
             ((BaseCustomIdCmd)cmd).checkUuid();
         }
 
-        cmd.execute();
+        try (Span span = CommandProfiler.enter(Phase.EXECUTE)) {
+            cmd.execute();
+        }
                             }
 
 }
@@ -39,6 +39,9 @@ import com.cloud.utils.db.TransactionLegacy;
 import com.cloud.utils.db.UUIDManager;
 import com.cloud.utils.exception.CloudRuntimeException;
 import com.cloud.utils.exception.ExceptionProxyObject;
+import com.cloud.utils.profiler.CommandProfiler;
+import com.cloud.utils.profiler.CommandProfiler.Phase;
+import com.cloud.utils.profiler.CommandProfiler.Span;
 import org.apache.cloudstack.acl.APIChecker;
 import org.apache.cloudstack.api.*;
 import org.apache.cloudstack.api.ResponseObject.ResponseView;
@@ -66,6 +69,8 @@ import org.apache.cloudstack.api.command.user.volume.ListVolumesCmd;
 import org.apache.cloudstack.api.command.user.zone.ListZonesCmd;
 import org.apache.cloudstack.api.response.*;
 import org.apache.cloudstack.context.CallContext;
+import org.apache.cloudstack.framework.config.ConfigKey;
+import org.apache.cloudstack.framework.config.Configurable;
 import org.apache.cloudstack.framework.config.dao.ConfigurationDao;
 import org.apache.cloudstack.framework.config.impl.ConfigurationVO;
 import org.apache.cloudstack.framework.events.EventBus;
@@ -111,14 +116,16 @@ import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 @Component
-public class ApiServer extends ManagerBase implements HttpRequestHandler, ApiServerService {
+public class ApiServer extends ManagerBase implements HttpRequestHandler, ApiServerService, Configurable {
     private static final Logger s_logger = LoggerFactory.getLogger(ApiServer.class.getName());
     private static final Logger s_accessLogger = LoggerFactory.getLogger("apiserver." + ApiServer.class.getName());
 
@@ -131,6 +138,11 @@ public class ApiServer extends ManagerBase implements HttpRequestHandler, ApiSer
      */
     public static final String CONTROL_CHARACTERS = "[\000-\011\013-\014\016-\037\177]";
 
+    static final ConfigKey<Double> ProfilerSampleRate = new ConfigKey<>("Advanced", Double.class, "api.profiler.sample.rate", "0.01",
+            "Share of the API requests, from 0 to 1, whose time and SQL statements are profiled per phase, see listApiProfiles. 0 disables the profiler.", true);
+    static final ConfigKey<String> ProfilerSampleRates = new ConfigKey<>("Advanced", String.class, "api.profiler.sample.rates", "",
+            "Comma separated list of command=rate overriding api.profiler.sample.rate for specific API commands, e.g. listVirtualMachines=1", true);
+
     @Inject
     protected ApiDispatcher _dispatcher;
     @Inject
@@ -164,6 +176,8 @@ public class ApiServer extends ManagerBase implements HttpRequestHandler, ApiSer
 
     private static final ExecutorService s_executor = new ThreadPoolExecutor(10, 150, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), new NamedThreadFactory(
             "ApiServer"));
+    // the sample rates are read from the database every minute rather than on every request
+    private final ScheduledExecutorService _profilerConfigExecutor = Executors.newScheduledThreadPool(1, new NamedThreadFactory("ApiProfilerConfig"));
     @Inject
     MessageBus _messageBus;
 
@@ -318,9 +332,36 @@ public class ApiServer extends ManagerBase implements HttpRequestHandler, ApiSer
             listenerThread.start();
         }
 
+        _profilerConfigExecutor.scheduleWithFixedDelay(new ManagedContextRunnable() {
+            @Override
+            protected void runInContext() {
+                try {
+                    CommandProfiler.setSampleRates(ProfilerSampleRate.value(), ProfilerSampleRates.value());
+                } catch (final Exception e) {
+                    s_logger.warn("Unable to refresh the sample rates of the API profiler", e);
+                }
+            }
+        }, 0, 60, TimeUnit.SECONDS);
+
+        return true;
+    }
+
+    @Override
+    public boolean stop() {
+        _profilerConfigExecutor.shutdownNow();
         return true;
     }
 
+    @Override
+    public String getConfigComponentName() {
+        return ApiServer.class.getSimpleName();
+    }
+
+    @Override
+    public ConfigKey<?>[] getConfigKeys() {
+        return new ConfigKey<?>[] {ProfilerSampleRate, ProfilerSampleRates};
+    }
+
     // NOTE: handle() only handles over the wire (OTW) requests from integration.api.port 8096
     // If integration api port is not configured, actual OTW requests will be received by ApiServlet
     @Override
@@ -456,17 +497,24 @@ public class ApiServer extends ManagerBase implements HttpRequestHandler, ApiSer
                         throw new CloudRuntimeException("No APICommand annotation found for class " + cmdClass.getCanonicalName());
                     }
 
-                    BaseCmd cmdObj = (BaseCmd) cmdClass.newInstance();
-                    cmdObj = ComponentContext.inject(cmdObj);
-                    cmdObj.configure();
-                    cmdObj.setFullUrlParams(paramMap);
-                    cmdObj.setResponseType(responseType);
-                    cmdObj.setHttpMethod(paramMap.get(ApiConstants.HTTPMETHOD).toString());
-
-                    // This is where the command is either serialized, or directly dispatched
-                    final StringBuilder log = new StringBuilder();
-                    response = queueCommand(cmdObj, paramMap, log);
-                    buildAuditTrail(auditTrailSb, command[0], log.toString());
+                    final boolean profiled = CommandProfiler.start(annotation.name());
+                    try {
+                        BaseCmd cmdObj = (BaseCmd) cmdClass.newInstance();
+                        cmdObj = ComponentContext.inject(cmdObj);
+                        cmdObj.configure();
+                        cmdObj.setFullUrlParams(paramMap);
+                        cmdObj.setResponseType(responseType);
+                        cmdObj.setHttpMethod(paramMap.get(ApiConstants.HTTPMETHOD).toString());
+
+                        // This is where the command is either serialized, or directly dispatched
+                        final StringBuilder log = new StringBuilder();
+                        response = queueCommand(cmdObj, paramMap, log);
+                        buildAuditTrail(auditTrailSb, command[0], log.toString());
+                    } finally {
+                        if (profiled) {
+                            CommandProfiler.finish();
+                        }
+                    }
                 } else {
                     final String errorString = "Unknown API command: " + command[0];
                     s_logger.warn(errorString);
@@ -579,7 +627,9 @@ public class ApiServer extends ManagerBase implements HttpRequestHandler, ApiSer
             } else {
                 // Extract the uuid before params are processed and id reflects internal db id
                 objectUuid = params.get(ApiConstants.ID);
-                dispatchChainFactory.getStandardDispatchChain().dispatch(new DispatchTask(cmdObj, params));
+                try (Span span = CommandProfiler.enter(Phase.PARAMETERS)) {
+                    dispatchChainFactory.getStandardDispatchChain().dispatch(new DispatchTask(cmdObj, params));
+                }
             }
 
             final BaseAsyncCmd asyncCmd = (BaseAsyncCmd) cmdObj;
@@ -598,9 +648,11 @@ public class ApiServer extends ManagerBase implements HttpRequestHandler, ApiSer
             asyncCmd.setStartEventId(startEventId);
 
             // save the scheduled event
-            final Long eventId =
-                    ActionEventUtils.onScheduledActionEvent((callerUserId == null) ? (Long) User.UID_SYSTEM : callerUserId, asyncCmd.getEntityOwnerId(), asyncCmd.getEventType(),
-                            asyncCmd.getEventDescription(), asyncCmd.isDisplay(), startEventId);
+            final Long eventId;
+            try (Span span = CommandProfiler.enter(Phase.JOB_SUBMIT)) {
+                eventId = ActionEventUtils.onScheduledActionEvent((callerUserId == null) ? (Long) User.UID_SYSTEM : callerUserId, asyncCmd.getEntityOwnerId(),
+                        asyncCmd.getEventType(), asyncCmd.getEventDescription(), asyncCmd.isDisplay(), startEventId);
+            }
             if (startEventId == 0) {
                 // There was no create event before, set current event id as start eventId
                 startEventId = eventId;
@@ -622,7 +674,10 @@ public class ApiServer extends ManagerBase implements HttpRequestHandler, ApiSer
                     injectedJobId);
             job.setDispatcher(_asyncDispatcher.getName());
 
-            final long jobId = _asyncMgr.submitAsyncJob(job);
+            final long jobId;
+            try (Span span = CommandProfiler.enter(Phase.JOB_SUBMIT)) {
+                jobId = _asyncMgr.submitAsyncJob(job);
+            }
 
             if (jobId == 0L) {
                 final String errorMsg = "Unable to schedule async job for command " + job.getCmd();
@@ -630,12 +685,14 @@ public class ApiServer extends ManagerBase implements HttpRequestHandler, ApiSer
                 throw new ServerApiException(ApiErrorCode.INTERNAL_ERROR, errorMsg);
             }
             final String response;
-            if (objectId != null) {
-                final String objUuid = (objectUuid == null) ? objectId.toString() : objectUuid;
-                response = getBaseAsyncCreateResponse(jobId, (BaseAsyncCreateCmd) asyncCmd, objUuid);
-            } else {
-                SerializationContext.current().setUuidTranslation(true);
-                response = getBaseAsyncResponse(jobId, asyncCmd);
+            try (Span span = CommandProfiler.enter(Phase.SERIALIZE)) {
+                if (objectId != null) {
+                    final String objUuid = (objectUuid == null) ? objectId.toString() : objectUuid;
+                    response = getBaseAsyncCreateResponse(jobId, (BaseAsyncCreateCmd) asyncCmd, objUuid);
+                } else {
+                    SerializationContext.current().setUuidTranslation(true);
+                    response = getBaseAsyncResponse(jobId, asyncCmd);
+                }
             }
             // Always log response for async for now, I don't think any sensitive data will be in here.
             // It might be nice to send this through scrubbing similar to how
@@ -661,8 +718,10 @@ public class ApiServer extends ManagerBase implements HttpRequestHandler, ApiSer
                 buildAsyncListResponse((BaseListCmd) cmdObj, caller);
             }
 
-            SerializationContext.current().setUuidTranslation(true);
-            return ApiResponseSerializer.toSerializedStringWithSecureLogs((ResponseObject) cmdObj.getResponseObject(), cmdObj.getResponseType(), log);
+            try (Span span = CommandProfiler.enter(Phase.SERIALIZE)) {
+                SerializationContext.current().setUuidTranslation(true);
+                return ApiResponseSerializer.toSerializedStringWithSecureLogs((ResponseObject) cmdObj.getResponseObject(), cmdObj.getResponseType(), log);
+            }
         }
     }
 
@@ -18,6 +18,9 @@
 package com.cloud.api.dispatch;
 
 import com.cloud.exception.ResourceAllocationException;
+import com.cloud.utils.profiler.CommandProfiler;
+import com.cloud.utils.profiler.CommandProfiler.Phase;
+import com.cloud.utils.profiler.CommandProfiler.Span;
 
 import org.apache.cloudstack.api.ApiErrorCode;
 import org.apache.cloudstack.api.BaseAsyncCreateCmd;
@@ -44,7 +47,9 @@ public class CommandCreationWorker implements DispatchWorker {
         if (cmd instanceof BaseAsyncCreateCmd) {
             try {
                 CallContext.current().setEventDisplayEnabled(cmd.isDisplay());
-                ((BaseAsyncCreateCmd)cmd).create();
+                try (Span span = CommandProfiler.enter(Phase.EXECUTE)) {
+                    ((BaseAsyncCreateCmd)cmd).create();
+                }
             } catch (final ResourceAllocationException e) {
                 throw new ServerApiException(ApiErrorCode.RESOURCE_ALLOCATION_ERROR,
                         e.getMessage(), e);
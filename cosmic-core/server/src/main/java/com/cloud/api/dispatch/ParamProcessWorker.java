@@ -40,6 +40,9 @@ import com.cloud.user.AccountManager;
 import com.cloud.utils.DateUtil;
 import com.cloud.utils.db.EntityManager;
 import com.cloud.utils.exception.CloudRuntimeException;
+import com.cloud.utils.profiler.CommandProfiler;
+import com.cloud.utils.profiler.CommandProfiler.Phase;
+import com.cloud.utils.profiler.CommandProfiler.Span;
 
 import org.apache.cloudstack.acl.ControlledEntity;
 import org.apache.cloudstack.acl.InfrastructureEntity;
@@ -217,7 +220,9 @@ public class ParamProcessWorker implements DispatchWorker {
 
         }
 
-        doAccessChecks(cmd, entitiesToAccess);
+        try (Span span = CommandProfiler.enter(Phase.ACCESS_CHECK)) {
+            doAccessChecks(cmd, entitiesToAccess);
+        }
     }
 
 
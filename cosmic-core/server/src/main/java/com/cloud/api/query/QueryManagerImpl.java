@@ -66,6 +66,7 @@ import com.cloud.utils.Ternary;
 import com.cloud.utils.component.ManagerBase;
 import com.cloud.utils.db.Filter;
 import com.cloud.utils.db.JoinBuilder;
+import com.cloud.utils.db.ReadOnly;
 import com.cloud.utils.db.SearchBuilder;
 import com.cloud.utils.db.SearchCriteria;
 import com.cloud.utils.db.SearchCriteria.Func;
@@ -300,6 +301,7 @@ public class QueryManagerImpl extends ManagerBase implements QueryService, Confi
      * .api.command.admin.user.ListUsersCmd)
      */
     @Override
+    @ReadOnly
     public ListResponse<UserResponse> searchForUsers(final ListUsersCmd cmd) throws PermissionDeniedException {
         final Pair<List<UserAccountJoinVO>, Integer> result = searchForUsersInternal(cmd);
         final ListResponse<UserResponse> response = new ListResponse<>();
@@ -417,6 +419,7 @@ public class QueryManagerImpl extends ManagerBase implements QueryService, Confi
     }
 
     @Override
+    @ReadOnly
     public ListResponse<EventResponse> searchForEvents(final ListEventsCmd cmd) {
         final Pair<List<EventJoinVO>, Integer> result = searchForEventsInternal(cmd);
         final ListResponse<EventResponse> response = new ListResponse<>();
@@ -536,6 +539,7 @@ public class QueryManagerImpl extends ManagerBase implements QueryService, Confi
     }
 
     @Override
+    @ReadOnly
     public ListResponse<ResourceTagResponse> listTags(final ListTagsCmd cmd) {
         final Pair<List<ResourceTagJoinVO>, Integer> tags = listTagsInternal(cmd);
         final ListResponse<ResourceTagResponse> response = new ListResponse<>();
@@ -615,6 +619,7 @@ public class QueryManagerImpl extends ManagerBase implements QueryService, Confi
     }
 
     @Override
+    @ReadOnly
     public ListResponse<InstanceGroupResponse> searchForVmGroups(final ListVMGroupsCmd cmd) {
         final Pair<List<InstanceGroupJoinVO>, Integer> groups = searchForVmGroupsInternal(cmd);
         final ListResponse<InstanceGroupResponse> response = new ListResponse<>();
@@ -671,6 +676,7 @@ public class QueryManagerImpl extends ManagerBase implements QueryService, Confi
     }
 
     @Override
+    @ReadOnly
     public ListResponse<UserVmResponse> searchForUserVMs(final ListVMsCmd cmd) {
         final Pair<List<UserVmJoinVO>, Integer> result = searchForUserVMsInternal(cmd);
         final ListResponse<UserVmResponse> response = new ListResponse<>();
@@ -947,6 +953,7 @@ public class QueryManagerImpl extends ManagerBase implements QueryService, Confi
     }
 
     @Override
+    @ReadOnly
     public ListResponse<SecurityGroupResponse> searchForSecurityGroups(final ListSecurityGroupsCmd cmd) {
         final Pair<List<SecurityGroupJoinVO>, Integer> result = searchForSecurityGroupsInternal(cmd);
         final ListResponse<SecurityGroupResponse> response = new ListResponse<>();
@@ -1059,6 +1066,7 @@ public class QueryManagerImpl extends ManagerBase implements QueryService, Confi
     }
 
     @Override
+    @ReadOnly
     public ListResponse<DomainRouterResponse> searchForRouters(final ListRoutersCmd cmd) {
         final Pair<List<DomainRouterJoinVO>, Integer> result =
                 searchForRoutersInternal(cmd, cmd.getId(), cmd.getRouterName(), cmd.getState(), cmd.getZoneId(), cmd.getPodId(), cmd.getClusterId(), cmd.getHostId(),
@@ -1071,6 +1079,7 @@ public class QueryManagerImpl extends ManagerBase implements QueryService, Confi
     }
 
     @Override
+    @ReadOnly
     public ListResponse<DomainRouterResponse> searchForInternalLbVms(final ListInternalLBVMsCmd cmd) {
         final Pair<List<DomainRouterJoinVO>, Integer> result =
                 searchForRoutersInternal(cmd, cmd.getId(), cmd.getRouterName(), cmd.getState(), cmd.getZoneId(), cmd.getPodId(), null, cmd.getHostId(), cmd.getKeyword(),
@@ -1208,6 +1217,7 @@ public class QueryManagerImpl extends ManagerBase implements QueryService, Confi
     }
 
     @Override
+    @ReadOnly
     public ListResponse<ProjectResponse> listProjects(final ListProjectsCmd cmd) {
         final Pair<List<ProjectJoinVO>, Integer> projects = listProjectsInternal(cmd);
         final ListResponse<ProjectResponse> response = new ListResponse<>();
@@ -1344,6 +1354,7 @@ public class QueryManagerImpl extends ManagerBase implements QueryService, Confi
     }
 
     @Override
+    @ReadOnly
     public ListResponse<ProjectInvitationResponse> listProjectInvitations(final ListProjectInvitationsCmd cmd) {
         final Pair<List<ProjectInvitationJoinVO>, Integer> invites = listProjectInvitationsInternal(cmd);
         final ListResponse<ProjectInvitationResponse> response = new ListResponse<>();
@@ -1354,6 +1365,7 @@ public class QueryManagerImpl extends ManagerBase implements QueryService, Confi
         return response;
     }
 
+    @ReadOnly
     public Pair<List<ProjectInvitationJoinVO>, Integer> listProjectInvitationsInternal(final ListProjectInvitationsCmd cmd) {
         final Long id = cmd.getId();
         final Long projectId = cmd.getProjectId();
@@ -1413,6 +1425,7 @@ public class QueryManagerImpl extends ManagerBase implements QueryService, Confi
     }
 
     @Override
+    @ReadOnly
     public ListResponse<ProjectAccountResponse> listProjectAccounts(final ListProjectAccountsCmd cmd) {
         final Pair<List<ProjectAccountJoinVO>, Integer> projectAccounts = listProjectAccountsInternal(cmd);
         final ListResponse<ProjectAccountResponse> response = new ListResponse<>();
@@ -1422,6 +1435,7 @@ public class QueryManagerImpl extends ManagerBase implements QueryService, Confi
         return response;
     }
 
+    @ReadOnly
     public Pair<List<ProjectAccountJoinVO>, Integer> listProjectAccountsInternal(final ListProjectAccountsCmd cmd) {
         final long projectId = cmd.getProjectId();
         final String accountName = cmd.getAccountName();
@@ -1471,6 +1485,7 @@ public class QueryManagerImpl extends ManagerBase implements QueryService, Confi
     }
 
     @Override
+    @ReadOnly
     public ListResponse<HostResponse> searchForServers(final ListHostsCmd cmd) {
         // FIXME: do we need to support list hosts with VmId, maybe we should
         // create another command just for this
@@ -1484,6 +1499,7 @@ public class QueryManagerImpl extends ManagerBase implements QueryService, Confi
         return response;
     }
 
+    @ReadOnly
     public Pair<List<HostJoinVO>, Integer> searchForServersInternal(final ListHostsCmd cmd) {
 
         final Long zoneId = _accountMgr.checkAccessAndSpecifyAuthority(CallContext.current().getCallingAccount(), cmd.getZoneId());
@@ -1591,6 +1607,7 @@ public class QueryManagerImpl extends ManagerBase implements QueryService, Confi
     }
 
     @Override
+    @ReadOnly
     public ListResponse<VolumeResponse> searchForVolumes(final ListVolumesCmd cmd) {
         final Pair<List<VolumeJoinVO>, Integer> result = searchForVolumesInternal(cmd);
         final ListResponse<VolumeResponse> response = new ListResponse<>();
@@ -1767,6 +1784,7 @@ public class QueryManagerImpl extends ManagerBase implements QueryService, Confi
     }
 
     @Override
+    @ReadOnly
     public ListResponse<DomainResponse> searchForDomains(final ListDomainsCmd cmd) {
         final Pair<List<DomainJoinVO>, Integer> result = searchForDomainsInternal(cmd);
         final ListResponse<DomainResponse> response = new ListResponse<>();
@@ -1846,6 +1864,7 @@ public class QueryManagerImpl extends ManagerBase implements QueryService, Confi
     }
 
     @Override
+    @ReadOnly
     public ListResponse<AccountResponse> searchForAccounts(final ListAccountsCmd cmd) {
         final Pair<List<AccountJoinVO>, Integer> result = searchForAccountsInternal(cmd);
         final ListResponse<AccountResponse> response = new ListResponse<>();
@@ -1979,6 +1998,7 @@ public class QueryManagerImpl extends ManagerBase implements QueryService, Confi
     }
 
     @Override
+    @ReadOnly
     public ListResponse<AsyncJobResponse> searchForAsyncJobs(final ListAsyncJobsCmd cmd) {
         final Pair<List<AsyncJobJoinVO>, Integer> result = searchForAsyncJobsInternal(cmd);
         final ListResponse<AsyncJobResponse> response = new ListResponse<>();
@@ -2056,6 +2076,7 @@ public class QueryManagerImpl extends ManagerBase implements QueryService, Confi
     }
 
     @Override
+    @ReadOnly
     public ListResponse<StoragePoolResponse> searchForStoragePools(final ListStoragePoolsCmd cmd) {
         final Pair<List<StoragePoolJoinVO>, Integer> result = searchForStoragePoolsInternal(cmd);
         final ListResponse<StoragePoolResponse> response = new ListResponse<>();
@@ -2166,6 +2187,7 @@ public class QueryManagerImpl extends ManagerBase implements QueryService, Confi
     }
 
     @Override
+    @ReadOnly
     public ListResponse<StorageTagResponse> searchForStorageTags(final ListStorageTagsCmd cmd) {
         final Pair<List<StorageTagVO>, Integer> result = searchForStorageTagsInternal(cmd);
         final ListResponse<StorageTagResponse> response = new ListResponse<>();
@@ -2207,6 +2229,7 @@ public class QueryManagerImpl extends ManagerBase implements QueryService, Confi
     }
 
     @Override
+    @ReadOnly
     public ListResponse<HostTagResponse> searchForHostTags(final ListHostTagsCmd cmd) {
         final Pair<List<HostTagVO>, Integer> result = searchForHostTagsInternal(cmd);
         final ListResponse<HostTagResponse> response = new ListResponse<>();
@@ -2248,6 +2271,7 @@ public class QueryManagerImpl extends ManagerBase implements QueryService, Confi
     }
 
     @Override
+    @ReadOnly
     public ListResponse<ImageStoreResponse> searchForImageStores(final ListImageStoresCmd cmd) {
         final Pair<List<ImageStoreJoinVO>, Integer> result = searchForImageStoresInternal(cmd);
         final ListResponse<ImageStoreResponse> response = new ListResponse<>();
@@ -2327,6 +2351,7 @@ public class QueryManagerImpl extends ManagerBase implements QueryService, Confi
     }
 
     @Override
+    @ReadOnly
     public ListResponse<ImageStoreResponse> searchForSecondaryStagingStores(final ListSecondaryStagingStoresCmd cmd) {
         final Pair<List<ImageStoreJoinVO>, Integer> result = searchForCacheStoresInternal(cmd);
         final ListResponse<ImageStoreResponse> response = new ListResponse<>();
@@ -2406,6 +2431,7 @@ public class QueryManagerImpl extends ManagerBase implements QueryService, Confi
     }
 
     @Override
+    @ReadOnly
     public ListResponse<DiskOfferingResponse> searchForDiskOfferings(final ListDiskOfferingsCmd cmd) {
         final Pair<List<DiskOfferingJoinVO>, Integer> result = searchForDiskOfferingsInternal(cmd);
         final ListResponse<DiskOfferingResponse> response = new ListResponse<>();
@@ -2533,6 +2559,7 @@ public class QueryManagerImpl extends ManagerBase implements QueryService, Confi
     }
 
     @Override
+    @ReadOnly
     public ListResponse<ServiceOfferingResponse> searchForServiceOfferings(final ListServiceOfferingsCmd cmd) {
         final Pair<List<ServiceOfferingJoinVO>, Integer> result = searchForServiceOfferingsInternal(cmd);
         result.first();
@@ -2691,6 +2718,7 @@ public class QueryManagerImpl extends ManagerBase implements QueryService, Confi
     }
 
     @Override
+    @ReadOnly
     public ListResponse<ZoneResponse> listDataCenters(final ListZonesCmd cmd) {
         final Pair<List<DataCenterJoinVO>, Integer> result = listDataCentersInternal(cmd);
         final ListResponse<ZoneResponse> response = new ListResponse<>();
@@ -2928,6 +2956,7 @@ public class QueryManagerImpl extends ManagerBase implements QueryService, Confi
     }
 
     @Override
+    @ReadOnly
     public ListResponse<TemplateResponse> listTemplates(final ListTemplatesCmd cmd) {
         final Pair<List<TemplateJoinVO>, Integer> result = searchForTemplatesInternal(cmd);
         final ListResponse<TemplateResponse> response = new ListResponse<>();
@@ -3237,6 +3266,7 @@ public class QueryManagerImpl extends ManagerBase implements QueryService, Confi
     }
 
     @Override
+    @ReadOnly
     public ListResponse<TemplateResponse> listIsos(final ListIsosCmd cmd) {
         final Pair<List<TemplateJoinVO>, Integer> result = searchForIsosInternal(cmd);
         final ListResponse<TemplateResponse> response = new ListResponse<>();
@@ -3287,6 +3317,7 @@ public class QueryManagerImpl extends ManagerBase implements QueryService, Confi
     }
 
     @Override
+    @ReadOnly
     public ListResponse<AffinityGroupResponse> searchForAffinityGroups(final ListAffinityGroupsCmd cmd) {
         final Pair<List<AffinityGroupJoinVO>, Integer> result = searchForAffinityGroupsInternal(cmd);
         final ListResponse<AffinityGroupResponse> response = new ListResponse<>();
@@ -3295,6 +3326,7 @@ public class QueryManagerImpl extends ManagerBase implements QueryService, Confi
         return response;
     }
 
+    @ReadOnly
     public Pair<List<AffinityGroupJoinVO>, Integer> searchForAffinityGroupsInternal(final ListAffinityGroupsCmd cmd) {
 
         final Long affinityGroupId = cmd.getId();
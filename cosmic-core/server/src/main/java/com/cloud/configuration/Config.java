@@ -333,6 +333,15 @@ public enum Config {
             "300",
             "Lock wait timeout (seconds) while updating the security group work queue",
             null),
+    SecurityGroupRulesetCacheTime(
+            "Network",
+            ManagementServer.class,
+            Integer.class,
+            "network.securitygroups.ruleset.cache.time",
+            "30",
+            "Time (in seconds) the compiled rules of a security group are used to compose the rulesets of vms before they are compiled again. " +
+                    "0 compiles the rules for every vm",
+            "Seconds"),
     SecurityGroupWorkPerAgentMaxQueueSize(
             "Network",
             ManagementServer.class,
@@ -546,7 +555,7 @@ public enum Config {
             "86400",
             "The interval (in seconds) to wait before running the expunge thread.",
             null),
-    ExpungeWorkers("Advanced", UserVmManager.class, Integer.class, "expunge.workers", "1", "Number of workers performing expunge ", null),
+    ExpungeWorkers("Advanced", UserVmManager.class, Integer.class, "expunge.workers", "4", "Number of vms each management server expunges at a time", null),
     ExtractURLCleanUpInterval(
             "Advanced",
             ManagementServer.class,
@@ -630,14 +639,6 @@ public enum Config {
             "30",
             "Interval (in seconds) to report redundant router status.",
             null),
-    RouterCheckPoolSize(
-            "Advanced",
-            NetworkOrchestrationService.class,
-            Integer.class,
-            "router.check.poolsize",
-            "10",
-            "Numbers of threads using to check redundant router status.",
-            null),
     RouterExtraPublicNics(
             "Advanced",
             NetworkOrchestrationService.class,
@@ -1338,6 +1339,39 @@ public enum Config {
             "0",
             "Time (in seconds) to wait before retrying resource count check task. Default is 0 which is to never run the task",
             "Seconds"),
+    ResourceCountCheckBatchSize(
+            "Advanced",
+            ManagementServer.class,
+            Integer.class,
+            "resourcecount.check.batch.size",
+            "100",
+            "Number of accounts and of domains whose resource counts are verified by one run of the resource count check task",
+            null),
+    ResourceCountLeasePercent(
+            "Advanced",
+            ManagementServer.class,
+            Integer.class,
+            "resourcecount.lease.percent",
+            "0",
+            "Percentage of the free resources of a domain a management server leases to check domain limits without locking the domain resource counts. " +
+                    "The lease is shared by the management servers that are up. Default is 0 which is to lock the domain resource counts on every check",
+            null),
+    ResourceCountLeaseTime(
+            "Advanced",
+            ManagementServer.class,
+            Integer.class,
+            "resourcecount.lease.time",
+            "30",
+            "Time (in seconds) a lease on the free resources of a domain is used before it is taken again",
+            "Seconds"),
+    ResourceCountReconcileInterval(
+            "Advanced",
+            ManagementServer.class,
+            Integer.class,
+            "resourcecount.reconcile.interval",
+            "1000",
+            "Time (in milliseconds) between the writes of domain resource count changes when leases are used",
+            null),
 
     //disabling lb as cluster sync does not work with distributed cluster
     SubDomainNetworkAccess(
@@ -1723,6 +1757,15 @@ public enum Config {
             "timeout in seconds for each Virtual Router command being aggregated. The final aggregation command timeout would be determined by this timeout * commands counts ",
             null),
 
+    RouterAggregationDelta(
+            "Advanced",
+            NetworkOrchestrationService.class,
+            Boolean.class,
+            "router.aggregation.delta",
+            "false",
+            "only send the Virtual Router config files that changed since they were last applied to the router",
+            null),
+
     ManagementServerVendor("Advanced", ManagementServer.class, String.class, "mgt.server.vendor", "ACS", "the vendor of management server", null),
     PublishActionEvent("Advanced", ManagementServer.class, Boolean.class, "publish.action.events", "true", "enable or disable publishing of action events on the event bus", null),
     PublishAlertEvent("Advanced", ManagementServer.class, Boolean.class, "publish.alert.events", "true", "enable or disable publishing of alert events on the event bus", null),
@@ -1731,7 +1774,7 @@ public enum Config {
     PublishAsynJobEvent("Advanced", ManagementServer.class, Boolean.class, "publish.async.job.events", "true", "enable or disable publishing of usage events on the event bus", null),
 
     // StatsCollector
-    StatsOutPutGraphiteHost("Advanced", ManagementServer.class, String.class, "stats.output.uri", "", "URI to additionally send StatsCollector statistics to", null),
+    StatsOutPutGraphiteHost("Advanced", ManagementServer.class, String.class, "stats.output.uri", "", "URI to additionally send StatsCollector statistics to, as graphite://host:port/prefix with the optional query protocol=udp|tcp, buffer=<lines>, packet=<bytes> and drop=newest|oldest", null),
 
     SSVMPSK("Hidden", ManagementServer.class, String.class, "upload.post.secret.key", "", "PSK with SSVM", null);
 
@@ -0,0 +1,197 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.ha;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.cloud.utils.concurrency.NamedThreadFactory;
+import com.cloud.utils.exception.CloudRuntimeException;
+
+import org.apache.cloudstack.managed.context.ManagedContextRunnable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Processes a batch of claimed HA work items in parallel.
+ *
+ * Items are started in priority order. At most workers items run at the same time, and at most
+ * clusterConcurrency items run for the same cluster, counting the items of all the batches that
+ * are being processed, so a failed rack does not hammer the storage and hosts of a single cluster.
+ * Items of a saturated cluster are skipped until one of its items completes; they do not hold up
+ * the items of other clusters.
+ */
+public class HaBatchProcessor {
+    private static final Logger s_logger = LoggerFactory.getLogger(HaBatchProcessor.class);
+
+    public interface WorkProcessor {
+        void process(HaWorkVO work);
+    }
+
+    public interface ClusterResolver {
+        /**
+         * @return the cluster the work item belongs to, or null if it can not be determined.
+         */
+        Long getClusterId(HaWorkVO work);
+    }
+
+    private final ExecutorService _pool;
+    private final int _workers;
+    private final int _clusterConcurrency;
+    private final ClusterResolver _clusterResolver;
+    private final WorkProcessor _processor;
+
+    // shared by every thread that processes a batch, so the caps hold across batches
+    private final Object _lock = new Object();
+    private final Map<Long, Integer> _running = new HashMap<>();
+    private int _inFlight;
+
+    private final AtomicLong _recovered = new AtomicLong();
+    private final AtomicLong _totalTimeToRecoverMs = new AtomicLong();
+    private final AtomicLong _maxTimeToRecoverMs = new AtomicLong();
+    private volatile long _lastTimeToRecoverMs;
+
+    public HaBatchProcessor(final int workers, final int clusterConcurrency, final ClusterResolver clusterResolver, final WorkProcessor processor) {
+        _workers = Math.max(1, workers);
+        _clusterConcurrency = Math.max(1, clusterConcurrency);
+        _clusterResolver = clusterResolver;
+        _processor = processor;
+        _pool = Executors.newFixedThreadPool(_workers, new NamedThreadFactory("HA-Batch"));
+    }
+
+    /**
+     * Processes the batch and blocks until every item has been handled. Batches processed at the
+     * same time by several threads share the worker and cluster caps.
+     */
+    public void process(final List<HaWorkVO> batch, final Comparator<HaWorkVO> priority) {
+        final List<HaWorkVO> sorted = new ArrayList<>(batch);
+        sorted.sort(priority);
+
+        final LinkedList<HaWorkVO> pending = new LinkedList<>(sorted);
+        final Map<HaWorkVO, Long> clusters = new HashMap<>();
+        for (final HaWorkVO work : sorted) {
+            clusters.put(work, _clusterResolver.getClusterId(work));
+        }
+        // items of this batch that are running, guarded by _lock like the shared counters
+        final int[] started = new int[1];
+
+        synchronized (_lock) {
+            while (!pending.isEmpty() || started[0] > 0) {
+                final Iterator<HaWorkVO> it = pending.iterator();
+                while (_inFlight < _workers && it.hasNext()) {
+                    final HaWorkVO work = it.next();
+                    final Long clusterId = clusters.get(work);
+                    final int clusterRunning = _running.getOrDefault(clusterId, 0);
+                    if (clusterId != null && clusterRunning >= _clusterConcurrency) {
+                        continue;
+                    }
+                    it.remove();
+                    _running.put(clusterId, clusterRunning + 1);
+                    _inFlight++;
+                    started[0]++;
+                    submit(work, () -> {
+                        synchronized (_lock) {
+                            _running.merge(clusterId, -1, Integer::sum);
+                            _inFlight--;
+                            started[0]--;
+                            _lock.notifyAll();
+                        }
+                    });
+                }
+
+                try {
+                    _lock.wait();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    s_logger.warn("Interrupted while processing a batch of HA work, " + pending.size() + " items are left for the next round");
+                    return;
+                }
+            }
+        }
+    }
+
+    private void submit(final HaWorkVO work, final Runnable done) {
+        final ManagedContextRunnable task = new ManagedContextRunnable() {
+            @Override
+            protected void runInContext() {
+                _processor.process(work);
+            }
+        };
+        try {
+            _pool.execute(() -> {
+                try {
+                    task.run();
+                } catch (final Throwable th) {
+                    s_logger.error("Caught this throwable while processing " + work, th);
+                } finally {
+                    done.run();
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            done.run();
+            throw new CloudRuntimeException("Unable to process HA work item " + work + ", the HA batch pool is shut down", e);
+        }
+    }
+
+    public void recordRecovery(final HaWorkVO work) {
+        if (work.getCreated() == null) {
+            return;
+        }
+        final long timeToRecover = System.currentTimeMillis() - work.getCreated().getTime();
+        _recovered.incrementAndGet();
+        _totalTimeToRecoverMs.addAndGet(timeToRecover);
+        _maxTimeToRecoverMs.accumulateAndGet(timeToRecover, Math::max);
+        _lastTimeToRecoverMs = timeToRecover;
+        s_logger.info("Recovered vm " + work.getInstanceId() + " in " + timeToRecover + " ms");
+    }
+
+    public long getRecovered() {
+        return _recovered.get();
+    }
+
+    public long getAverageTimeToRecoverMs() {
+        final long recovered = _recovered.get();
+        return recovered == 0 ? 0 : _totalTimeToRecoverMs.get() / recovered;
+    }
+
+    public long getMaxTimeToRecoverMs() {
+        return _maxTimeToRecoverMs.get();
+    }
+
+    public long getLastTimeToRecoverMs() {
+        return _lastTimeToRecoverMs;
+    }
+
+    public void shutdown() {
+        _pool.shutdown();
+        try {
+            _pool.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
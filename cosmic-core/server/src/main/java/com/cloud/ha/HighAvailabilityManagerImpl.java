@@ -17,10 +17,13 @@
 package com.cloud.ha;
 
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -54,6 +57,7 @@ import com.cloud.host.Status;
 import com.cloud.host.dao.HostDao;
 import com.cloud.resource.ResourceManager;
 import com.cloud.server.ManagementServer;
+import com.cloud.service.ServiceOfferingVO;
 import com.cloud.service.dao.ServiceOfferingDao;
 import com.cloud.storage.StorageManager;
 import com.cloud.storage.dao.GuestOSCategoryDao;
@@ -71,6 +75,8 @@ import com.cloud.vm.VirtualMachineProfile;
 import com.cloud.vm.dao.VMInstanceDao;
 
 import org.apache.cloudstack.engine.orchestration.service.VolumeOrchestrationService;
+import org.apache.cloudstack.framework.config.ConfigKey;
+import org.apache.cloudstack.framework.config.Configurable;
 import org.apache.cloudstack.framework.config.dao.ConfigurationDao;
 import org.apache.cloudstack.managed.context.ManagedContext;
 import org.apache.cloudstack.managed.context.ManagedContextRunnable;
@@ -100,7 +106,7 @@ import org.slf4j.LoggerFactory;
  *         ha.retry.wait | time to wait before retrying the work item | seconds | 120 || || stop.retry.wait | time to wait
  *         before retrying the stop | seconds | 120 || * }
  **/
-public class HighAvailabilityManagerImpl extends ManagerBase implements HighAvailabilityManager, ClusterManagerListener {
+public class HighAvailabilityManagerImpl extends ManagerBase implements HighAvailabilityManager, ClusterManagerListener, Configurable {
 
   protected static final Logger s_logger = LoggerFactory.getLogger(HighAvailabilityManagerImpl.class);
   WorkerThread[] _workers;
@@ -193,6 +199,10 @@ public class HighAvailabilityManagerImpl extends ManagerBase implements HighAvai
   boolean _forceHA;
   String _haTag = null;
 
+  int _batchSize;
+  HaBatchProcessor _batchProcessor;
+  final Map<Long, CompletableFuture<HostVerdict>> _hostVerdicts = new ConcurrentHashMap<Long, CompletableFuture<HostVerdict>>();
+
   protected HighAvailabilityManagerImpl() {
   }
 
@@ -460,15 +470,20 @@ public class HighAvailabilityManagerImpl extends ManagerBase implements HighAvai
         }
 
         Investigator investigator = null;
-        for (final Investigator it : investigators) {
-          investigator = it;
-          try
-          {
-            alive = investigator.isVmAlive(vm, host);
-            s_logger.info(investigator.getName() + " found " + vm + " to be alive? " + alive);
-            break;
-          } catch (final UnknownVM e) {
-            s_logger.info(investigator.getName() + " could not find " + vm);
+        if (_batchProcessor != null && getHostVerdict(host) == Status.Down) {
+          s_logger.info("Host " + host.getId() + " was found to be down, so " + vm + " is not alive");
+          alive = false;
+        } else {
+          for (final Investigator it : investigators) {
+            investigator = it;
+            try
+            {
+              alive = investigator.isVmAlive(vm, host);
+              s_logger.info(investigator.getName() + " found " + vm + " to be alive? " + alive);
+              break;
+            } catch (final UnknownVM e) {
+              s_logger.info(investigator.getName() + " could not find " + vm);
+            }
           }
         }
 
@@ -575,6 +590,9 @@ public class HighAvailabilityManagerImpl extends ManagerBase implements HighAvai
       final VMInstanceVO started = _instanceDao.findById(vm.getId());
       if (started != null && started.getState() == VirtualMachine.State.Running) {
         s_logger.info("VM is now restarted: " + vmId + " on " + started.getHostId());
+        if (_batchProcessor != null) {
+          _batchProcessor.recordRecovery(work);
+        }
         return null;
       }
 
@@ -604,6 +622,71 @@ public class HighAvailabilityManagerImpl extends ManagerBase implements HighAvai
     return (System.currentTimeMillis() >> 10) + _restartRetryInterval;
   }
 
+  /**
+   * Investigates a failed host once and shares the verdict with all the work items of the VMs that ran on it, until the
+   * verdict is older than the investigate retry interval. Work items of a host that is being investigated wait for that
+   * investigation, while hosts are investigated in parallel.
+   */
+  protected Status getHostVerdict(final HostVO host) {
+    final long hostId = host.getId();
+    final long start = System.currentTimeMillis();
+    while (true) {
+      final CompletableFuture<HostVerdict> created = new CompletableFuture<HostVerdict>();
+      final CompletableFuture<HostVerdict> pending = _hostVerdicts.computeIfAbsent(hostId, k -> created);
+      if (pending == created) {
+        try {
+          created.complete(new HostVerdict(investigate(hostId), System.currentTimeMillis()));
+        } catch (final RuntimeException e) {
+          _hostVerdicts.remove(hostId, created);
+          created.completeExceptionally(e);
+          throw e;
+        }
+      }
+      final HostVerdict verdict = pending.join();
+      // a verdict reached after this call started is as fresh as it gets
+      if (verdict.time >= start || System.currentTimeMillis() - verdict.time < _investigateRetryInterval * 1000L) {
+        return verdict.status;
+      }
+      _hostVerdicts.remove(hostId, pending);
+    }
+  }
+
+  protected static class HostVerdict {
+    final Status status;
+    final long time;
+
+    HostVerdict(final Status status, final long time) {
+      this.status = status;
+      this.time = time;
+    }
+  }
+
+  /**
+   * Orders a batch of work: system VMs first as the user VMs depend on them, then VMs with an HA offering, then the
+   * biggest VMs so they find capacity before the cluster gets fragmented. Ties are broken by the order of scheduling.
+   */
+  protected Comparator<HaWorkVO> getHaPriority(final List<HaWorkVO> batch) {
+    final Map<Long, Integer> haOffering = new HashMap<Long, Integer>();
+    final Map<Long, Integer> ramSize = new HashMap<Long, Integer>();
+    for (final HaWorkVO work : batch) {
+      final VMInstanceVO vm = _instanceDao.findByIdIncludingRemoved(work.getInstanceId());
+      final ServiceOfferingVO offering = vm != null ? _serviceOfferingDao.findByIdIncludingRemoved(vm.getId(), vm.getServiceOfferingId()) : null;
+      if (offering != null) {
+        haOffering.put(work.getId(), offering.getOfferHA() ? 0 : 1);
+        ramSize.put(work.getId(), offering.getRamSize() != null ? offering.getRamSize() : 0);
+      }
+    }
+    return Comparator.<HaWorkVO>comparingInt(work -> work.getType() == VirtualMachine.Type.User ? 1 : 0)
+        .thenComparingInt(work -> haOffering.getOrDefault(work.getId(), 1))
+        .thenComparingInt(work -> -ramSize.getOrDefault(work.getId(), 0))
+        .thenComparingLong(HaWorkVO::getId);
+  }
+
+  protected Long getClusterId(final HaWorkVO work) {
+    final HostVO host = _hostDao.findByIdIncludingRemoved(work.getHostId());
+    return host != null ? host.getClusterId() : null;
+  }
+
   public Long migrate(final HaWorkVO work) {
     final long vmId = work.getInstanceId();
 
@@ -804,6 +887,16 @@ public class HighAvailabilityManagerImpl extends ManagerBase implements HighAvai
     _haDao.update(work.getId(), work);
   }
 
+  private void processWorkWithContext(final HaWorkVO work) {
+    NDC.push("work-" + work.getId());
+    try {
+      s_logger.info("Processing work " + work);
+      processWork(work);
+    } finally {
+      NDC.pop();
+    }
+  }
+
   @Override
   public boolean configure(final String name, final Map<String, Object> xmlParams) throws ConfigurationException {
     _serverId = _msServer.getId();
@@ -852,6 +945,15 @@ public class HighAvailabilityManagerImpl extends ManagerBase implements HighAvai
 
     _haTag = params.get("ha.tag");
 
+    _batchSize = HaBatchSize.value();
+    if (_batchSize > 1) {
+      final int batchWorkers = HaBatchWorkers.value();
+      final int clusterConcurrency = HaClusterConcurrency.value();
+      _batchProcessor = new HaBatchProcessor(batchWorkers, clusterConcurrency, this::getClusterId, this::processWorkWithContext);
+      s_logger.info("HA work is processed in batches of " + _batchSize + " with " + batchWorkers + " workers and at most " + clusterConcurrency
+          + " items per cluster");
+    }
+
     _haDao.releaseWorkItems(_serverId);
 
     _stopped = true;
@@ -882,6 +984,10 @@ public class HighAvailabilityManagerImpl extends ManagerBase implements HighAvai
 
     _executor.shutdown();
 
+    if (_batchProcessor != null) {
+      _batchProcessor.shutdown();
+    }
+
     return true;
   }
 
@@ -918,6 +1024,10 @@ public class HighAvailabilityManagerImpl extends ManagerBase implements HighAvai
     }
 
     private void runWithContext() {
+      if (_batchProcessor != null) {
+        runBatchWithContext();
+        return;
+      }
       HaWorkVO work = null;
       try {
         s_logger.trace("Checking the database for work");
@@ -946,6 +1056,28 @@ public class HighAvailabilityManagerImpl extends ManagerBase implements HighAvai
       }
     }
 
+    private void runBatchWithContext() {
+      try {
+        s_logger.trace("Checking the database for a batch of work");
+        final List<HaWorkVO> batch = _haDao.take(_serverId, _batchSize);
+        if (batch.isEmpty()) {
+          try {
+            synchronized (this) {
+              wait(_timeToSleep);
+            }
+          } catch (final InterruptedException e) {
+            s_logger.info("Interrupted");
+          }
+          return;
+        }
+
+        s_logger.info("Processing a batch of " + batch.size() + " work items");
+        _batchProcessor.process(batch, getHaPriority(batch));
+      } catch (final Throwable th) {
+        s_logger.error("Caught this throwable, ", th);
+      }
+    }
+
     public synchronized void wakup() {
       notifyAll();
     }
@@ -981,4 +1113,14 @@ public class HighAvailabilityManagerImpl extends ManagerBase implements HighAvai
     final List<HaWorkVO> haWorks = _haDao.listPendingHaWorkForVm(vmId);
     return haWorks.size() > 0;
   }
+
+  @Override
+  public String getConfigComponentName() {
+    return HighAvailabilityManager.class.getSimpleName();
+  }
+
+  @Override
+  public ConfigKey<?>[] getConfigKeys() {
+    return new ConfigKey<?>[] {HaBatchSize, HaBatchWorkers, HaClusterConcurrency};
+  }
 }
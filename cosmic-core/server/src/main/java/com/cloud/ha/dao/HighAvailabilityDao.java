@@ -32,6 +32,15 @@ public interface HighAvailabilityDao extends GenericDao<HaWorkVO, Long> {
      */
     HaWorkVO take(long serverId);
 
+    /**
+     * Takes up to limit available HA work items in one transaction.
+     *
+     * @param serverId server that is taking them.
+     * @param limit maximum number of work items to take.
+     * @return list of WorkVO or empty list.
+     */
+    List<HaWorkVO> take(long serverId, int limit);
+
     /**
      * Finds all the work items related to this instance.
      *
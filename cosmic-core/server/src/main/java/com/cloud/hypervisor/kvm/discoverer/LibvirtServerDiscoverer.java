@@ -263,7 +263,7 @@ public abstract class LibvirtServerDiscoverer extends DiscovererBase implements
         return null;
     }
 
-    private HostVO waitForHostConnect(final long dcId, final long podId, final long clusterId, final String guid) {
+    protected HostVO waitForHostConnect(final long dcId, final long podId, final long clusterId, final String guid) {
         for (int i = 0; i < _waitTime * 2; i++) {
             final List<HostVO> hosts = _resourceMgr.listAllUpAndEnabledHosts(Host.Type.Routing, clusterId, podId, dcId);
             for (final HostVO host : hosts) {
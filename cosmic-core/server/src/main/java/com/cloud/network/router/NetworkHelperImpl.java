@@ -146,6 +146,8 @@ public class NetworkHelperImpl implements NetworkHelper {
 
     protected final Map<HypervisorType, ConfigKey<String>> hypervisorsMap = new HashMap<>();
 
+    protected final RouterCommandCoalescer _commandCoalescer = new RouterCommandCoalescer();
+
     @PostConstruct
     protected void setupHypervisorsMap() {
         hypervisorsMap.put(HypervisorType.XenServer, VirtualNetworkApplianceManager.RouterTemplateXen);
@@ -162,7 +164,13 @@ public class NetworkHelperImpl implements NetworkHelper {
         }
         Answer[] answers = null;
         try {
-            answers = _agentMgr.send(router.getHostId(), cmds);
+            final int applyWindow = VirtualNetworkApplianceManager.RouterRulesApplyWindow.value();
+            if (applyWindow > 0) {
+                answers = _commandCoalescer.submit(router.getId(), cmds, commands -> _agentMgr.send(router.getHostId(), commands), applyWindow,
+                        VirtualNetworkApplianceManager.RouterRulesApplyBatchSize.value());
+            } else {
+                answers = _agentMgr.send(router.getHostId(), cmds);
+            }
         } catch (final OperationTimedoutException e) {
             s_logger.warn("Timed Out", e);
             throw new AgentUnavailableException("Unable to send commands to virtual router ", router.getHostId(), e);
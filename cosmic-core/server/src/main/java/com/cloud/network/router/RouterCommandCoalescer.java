@@ -0,0 +1,304 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.network.router;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.cloud.agent.api.Answer;
+import com.cloud.agent.api.Command;
+import com.cloud.agent.api.Command.OnError;
+import com.cloud.agent.api.routing.AggregationControlCommand;
+import com.cloud.agent.api.routing.AggregationControlCommand.Action;
+import com.cloud.agent.api.routing.NetworkElementCommand;
+import com.cloud.agent.manager.Commands;
+import com.cloud.exception.AgentUnavailableException;
+import com.cloud.exception.OperationTimedoutException;
+import com.cloud.utils.exception.CloudRuntimeException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Coalesces the commands that are sent to a virtual router at the same time.
+ *
+ * Commands for a router are queued in the order they are submitted. The first submitter waits for
+ * the apply window to collect the commands submitted after it, then sends the queue on behalf of
+ * everyone in as few requests as possible: the rule commands of several submitters go in one
+ * request, wrapped in an aggregation so the router applies them in one config push. Every
+ * submitter gets the answers to its own commands. Commands that are not rule commands, and
+ * aggregations started by the caller, are sent on their own, in order.
+ */
+public class RouterCommandCoalescer {
+    private static final Logger s_logger = LoggerFactory.getLogger(RouterCommandCoalescer.class);
+
+    public interface Sender {
+        Answer[] send(Commands cmds) throws AgentUnavailableException, OperationTimedoutException;
+    }
+
+    private final Map<Long, RouterQueue> _queues = new ConcurrentHashMap<Long, RouterQueue>();
+
+    /**
+     * Sends the commands to the router, together with the commands submitted for it by others.
+     *
+     * @param windowMs how long to wait for more commands before sending
+     * @param maxBatchSize maximum number of commands sent in one request
+     * @return the answers to the commands, which are also set on cmds, or null if the router did
+     * not answer all of them
+     */
+    public Answer[] submit(final long routerId, final Commands cmds, final Sender sender, final long windowMs, final int maxBatchSize)
+            throws AgentUnavailableException, OperationTimedoutException {
+        final Pending pending = new Pending(cmds, sender);
+        RouterQueue queue;
+        boolean leader;
+        while (true) {
+            queue = _queues.computeIfAbsent(routerId, k -> new RouterQueue());
+            synchronized (queue) {
+                if (queue.retired) {
+                    continue;
+                }
+                queue.pending.add(pending);
+                leader = !queue.draining;
+                queue.draining = true;
+            }
+            break;
+        }
+
+        if (leader) {
+            if (windowMs > 0) {
+                try {
+                    Thread.sleep(windowMs);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            drain(routerId, queue, maxBatchSize);
+        }
+        return pending.await();
+    }
+
+    private void drain(final long routerId, final RouterQueue queue, final int maxBatchSize) {
+        try {
+            while (true) {
+                final List<Pending> batch;
+                final boolean aggregate;
+                synchronized (queue) {
+                    if (queue.pending.isEmpty()) {
+                        queue.draining = false;
+                        if (!queue.aggregating) {
+                            queue.retired = true;
+                            _queues.remove(routerId, queue);
+                        }
+                        return;
+                    }
+                    batch = takeBatch(queue, maxBatchSize);
+                    aggregate = batch.size() > 1 && !queue.aggregating;
+                }
+                send(routerId, batch, aggregate);
+            }
+        } catch (final Error e) {
+            synchronized (queue) {
+                for (final Pending pending : queue.pending) {
+                    pending.fail(new CloudRuntimeException("Unable to send commands to router " + routerId, e));
+                }
+                queue.pending.clear();
+                queue.draining = false;
+            }
+            throw e;
+        }
+    }
+
+    private List<Pending> takeBatch(final RouterQueue queue, final int maxBatchSize) {
+        final List<Pending> batch = new ArrayList<Pending>();
+        final Pending head = queue.pending.poll();
+        batch.add(head);
+        if (!head.coalescable) {
+            // keep track of aggregations started by the caller, they must not be nested
+            for (final Command cmd : head.cmds) {
+                if (cmd instanceof AggregationControlCommand) {
+                    queue.aggregating = ((AggregationControlCommand)cmd).getAction() == Action.Start;
+                }
+            }
+            return batch;
+        }
+
+        int size = head.cmds.size();
+        while (!queue.pending.isEmpty()) {
+            final Pending next = queue.pending.peek();
+            if (!next.coalescable || size + next.cmds.size() > maxBatchSize) {
+                break;
+            }
+            batch.add(queue.pending.poll());
+            size += next.cmds.size();
+        }
+        return batch;
+    }
+
+    private void send(final long routerId, final List<Pending> batch, final boolean aggregate) {
+        final Pending head = batch.get(0);
+        if (batch.size() == 1) {
+            try {
+                head.complete(head.sender.send(head.cmds));
+            } catch (final Exception e) {
+                head.fail(e);
+            }
+            return;
+        }
+
+        final Commands merged = new Commands(OnError.Continue);
+        final NetworkElementCommand first = (NetworkElementCommand)head.cmds.toCommands()[0];
+        if (aggregate) {
+            merged.addCommand(createAggregationCommand(Action.Start, first));
+        }
+        for (final Pending pending : batch) {
+            for (final Command cmd : pending.cmds) {
+                merged.addCommand(cmd);
+            }
+        }
+        if (aggregate) {
+            merged.addCommand(createAggregationCommand(Action.Finish, first));
+        }
+
+        if (s_logger.isDebugEnabled()) {
+            s_logger.debug("Sending " + merged.size() + " commands of " + batch.size() + " callers to router " + routerId + " in one request");
+        }
+
+        final Answer[] answers;
+        try {
+            answers = head.sender.send(merged);
+        } catch (final Exception e) {
+            for (final Pending pending : batch) {
+                pending.fail(e);
+            }
+            return;
+        }
+
+        if (answers == null || answers.length != merged.size()) {
+            for (final Pending pending : batch) {
+                pending.complete(null);
+            }
+            return;
+        }
+
+        // the commands in an aggregation are applied by the finish command, so its answer is theirs
+        final Answer finish = aggregate ? answers[answers.length - 1] : null;
+        int index = aggregate ? 1 : 0;
+        for (final Pending pending : batch) {
+            final Answer[] own = Arrays.copyOfRange(answers, index, index + pending.cmds.size());
+            index += pending.cmds.size();
+            if (finish != null && !finish.getResult()) {
+                final Command[] cmds = pending.cmds.toCommands();
+                for (int i = 0; i < own.length; i++) {
+                    own[i] = new Answer(cmds[i], false, finish.getDetails());
+                }
+            }
+            pending.complete(own);
+        }
+    }
+
+    private static AggregationControlCommand createAggregationCommand(final Action action, final NetworkElementCommand cmd) {
+        return new AggregationControlCommand(action, cmd.getAccessDetail(NetworkElementCommand.ROUTER_NAME), cmd.getAccessDetail(NetworkElementCommand.ROUTER_IP),
+                cmd.getAccessDetail(NetworkElementCommand.ROUTER_GUEST_IP));
+    }
+
+    /**
+     * @return true if the commands can be sent together with those of others, which is the case for
+     * rule commands that do not depend on each other's result
+     */
+    static boolean isCoalescable(final Commands cmds) {
+        if (cmds.size() == 0 || cmds.stopOnError()) {
+            return false;
+        }
+        for (final Command cmd : cmds) {
+            if (!(cmd instanceof NetworkElementCommand) || cmd instanceof AggregationControlCommand) {
+                return false;
+            }
+            final NetworkElementCommand elementCmd = (NetworkElementCommand)cmd;
+            if (elementCmd.isQuery() || elementCmd.getAccessDetail(NetworkElementCommand.ROUTER_NAME) == null
+                    || elementCmd.getAccessDetail(NetworkElementCommand.ROUTER_IP) == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static class RouterQueue {
+        private final LinkedList<Pending> pending = new LinkedList<Pending>();
+        private boolean draining;
+        private boolean aggregating;
+        private boolean retired;
+    }
+
+    private static class Pending {
+        private final Commands cmds;
+        private final Sender sender;
+        private final boolean coalescable;
+        private boolean done;
+        private Answer[] answers;
+        private Exception failure;
+
+        Pending(final Commands cmds, final Sender sender) {
+            this.cmds = cmds;
+            this.sender = sender;
+            coalescable = isCoalescable(cmds);
+        }
+
+        synchronized void complete(final Answer[] answers) {
+            if (answers != null) {
+                cmds.setAnswers(answers);
+            }
+            this.answers = answers;
+            done = true;
+            notifyAll();
+        }
+
+        synchronized void fail(final Exception failure) {
+            this.failure = failure;
+            done = true;
+            notifyAll();
+        }
+
+        synchronized Answer[] await() throws AgentUnavailableException, OperationTimedoutException {
+            boolean interrupted = false;
+            while (!done) {
+                try {
+                    wait();
+                } catch (final InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+
+            if (failure instanceof AgentUnavailableException) {
+                throw (AgentUnavailableException)failure;
+            } else if (failure instanceof OperationTimedoutException) {
+                throw (OperationTimedoutException)failure;
+            } else if (failure instanceof RuntimeException) {
+                throw (RuntimeException)failure;
+            } else if (failure != null) {
+                throw new CloudRuntimeException("Unable to send commands to router", failure);
+            }
+            return answers;
+        }
+    }
+}
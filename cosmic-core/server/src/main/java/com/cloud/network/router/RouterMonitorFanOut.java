@@ -0,0 +1,243 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.network.router;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.cloud.utils.concurrency.NamedThreadFactory;
+
+import org.apache.cloudstack.managed.context.ManagedContextRunnable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Fans the per-router work of the router monitoring tasks out over a shared pool.
+ *
+ * Work is grouped by the host the routers run on and cut in batches, so one batch can be sent to
+ * the agent as a single Commands request. At most perHostConcurrency batches are in flight for any
+ * host, which keeps a big sweep from flooding a single agent.
+ */
+public class RouterMonitorFanOut {
+    private static final Logger s_logger = LoggerFactory.getLogger(RouterMonitorFanOut.class);
+
+    public interface HostBatchHandler<T> {
+        void handle(long hostId, List<T> batch) throws Exception;
+    }
+
+    private final ExecutorService _pool;
+    private final int _perHostConcurrency;
+    private final int _batchSize;
+    private final Map<String, SweepStats> _stats = new ConcurrentHashMap<>();
+
+    public RouterMonitorFanOut(final String name, final int poolSize, final int perHostConcurrency, final int batchSize) {
+        _pool = Executors.newFixedThreadPool(Math.max(1, poolSize), new NamedThreadFactory(name));
+        _perHostConcurrency = Math.max(1, perHostConcurrency);
+        _batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * Runs one sweep and blocks until every batch has been handled.
+     *
+     * @param sweepName  name the metrics of this sweep are kept under
+     * @param intervalMs interval the sweep is scheduled at, used to compute the lag
+     * @param workByHost work items grouped by host id
+     * @param handler    called once per batch, possibly concurrently for different hosts
+     */
+    public <T> SweepStats sweep(final String sweepName, final long intervalMs, final Map<Long, List<T>> workByHost, final HostBatchHandler<T> handler) {
+        final SweepStats stats = getStats(sweepName);
+        final long start = System.currentTimeMillis();
+        stats.started(start, intervalMs);
+
+        final List<Runnable> drainers = new ArrayList<>();
+        int batches = 0;
+        for (final Map.Entry<Long, List<T>> entry : workByHost.entrySet()) {
+            final List<T> items = entry.getValue();
+            if (items == null || items.isEmpty()) {
+                continue;
+            }
+            final Queue<List<T>> hostQueue = new ConcurrentLinkedQueue<>();
+            for (int i = 0; i < items.size(); i += _batchSize) {
+                hostQueue.add(new ArrayList<>(items.subList(i, Math.min(i + _batchSize, items.size()))));
+            }
+            batches += hostQueue.size();
+            final int drainerCount = Math.min(_perHostConcurrency, hostQueue.size());
+            for (int i = 0; i < drainerCount; i++) {
+                drainers.add(new HostDrainer<>(entry.getKey(), hostQueue, handler, stats));
+            }
+        }
+
+        final CountDownLatch done = new CountDownLatch(drainers.size());
+        for (final Runnable drainer : drainers) {
+            _pool.execute(() -> {
+                try {
+                    drainer.run();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        try {
+            done.await();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            s_logger.warn("Interrupted while waiting for sweep " + sweepName + " to complete");
+        }
+
+        stats.finished(System.currentTimeMillis() - start, workByHost.size(), batches);
+        if (s_logger.isDebugEnabled()) {
+            s_logger.debug("Sweep " + sweepName + " handled " + batches + " batches on " + workByHost.size() + " hosts in " + stats.getLastDurationMs() + " ms, lag "
+                    + stats.getLastLagMs() + " ms");
+        }
+        if (intervalMs > 0 && stats.getLastDurationMs() > intervalMs) {
+            s_logger.warn("Sweep " + sweepName + " took " + stats.getLastDurationMs() + " ms, which is longer than its interval of " + intervalMs + " ms");
+        }
+        return stats;
+    }
+
+    public SweepStats getStats(final String sweepName) {
+        return _stats.computeIfAbsent(sweepName, k -> new SweepStats());
+    }
+
+    public Map<String, SweepStats> getAllStats() {
+        return _stats;
+    }
+
+    public void shutdown() {
+        _pool.shutdown();
+        try {
+            _pool.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class HostDrainer<T> extends ManagedContextRunnable {
+        private final long _hostId;
+        private final Queue<List<T>> _queue;
+        private final HostBatchHandler<T> _handler;
+        private final SweepStats _stats;
+
+        HostDrainer(final long hostId, final Queue<List<T>> queue, final HostBatchHandler<T> handler, final SweepStats stats) {
+            _hostId = hostId;
+            _queue = queue;
+            _handler = handler;
+            _stats = stats;
+        }
+
+        @Override
+        protected void runInContext() {
+            List<T> batch;
+            while ((batch = _queue.poll()) != null) {
+                try {
+                    _handler.handle(_hostId, batch);
+                } catch (final Exception e) {
+                    _stats.failedBatches.incrementAndGet();
+                    s_logger.warn("Failed to handle a batch of " + batch.size() + " routers on host " + _hostId, e);
+                }
+            }
+        }
+    }
+
+    public static class SweepStats {
+        private final AtomicLong sweeps = new AtomicLong();
+        private final AtomicLong overruns = new AtomicLong();
+        private final AtomicLong failedBatches = new AtomicLong();
+        private volatile long lastStart;
+        private volatile long lastDurationMs;
+        private volatile long lastLagMs;
+        private volatile long maxLagMs;
+        private volatile int lastHosts;
+        private volatile int lastBatches;
+
+        synchronized void started(final long start, final long intervalMs) {
+            if (lastStart > 0 && intervalMs > 0) {
+                lastLagMs = Math.max(0, start - lastStart - intervalMs);
+                maxLagMs = Math.max(maxLagMs, lastLagMs);
+            }
+            lastStart = start;
+        }
+
+        synchronized void finished(final long durationMs, final int hosts, final int batches) {
+            sweeps.incrementAndGet();
+            lastDurationMs = durationMs;
+            lastHosts = hosts;
+            lastBatches = batches;
+            if (lastLagMs > 0) {
+                overruns.incrementAndGet();
+            }
+        }
+
+        public long getSweeps() {
+            return sweeps.get();
+        }
+
+        public long getOverruns() {
+            return overruns.get();
+        }
+
+        public long getFailedBatches() {
+            return failedBatches.get();
+        }
+
+        public long getLastDurationMs() {
+            return lastDurationMs;
+        }
+
+        public long getLastLagMs() {
+            return lastLagMs;
+        }
+
+        public long getMaxLagMs() {
+            return maxLagMs;
+        }
+
+        public int getLastHosts() {
+            return lastHosts;
+        }
+
+        public int getLastBatches() {
+            return lastBatches;
+        }
+
+        /**
+         * Returns the counters and timings of the sweep, keyed on the given prefix, for the external stats collector.
+         */
+        public Map<String, Number> getMetrics(final String prefix) {
+            final Map<String, Number> metrics = new LinkedHashMap<>();
+            metrics.put(prefix + ".sweeps", getSweeps());
+            metrics.put(prefix + ".overruns", getOverruns());
+            metrics.put(prefix + ".failed_batches", getFailedBatches());
+            metrics.put(prefix + ".duration_ms", getLastDurationMs());
+            metrics.put(prefix + ".lag_ms", getLastLagMs());
+            metrics.put(prefix + ".max_lag_ms", getMaxLagMs());
+            metrics.put(prefix + ".hosts", getLastHosts());
+            metrics.put(prefix + ".batches", getLastBatches());
+            return metrics;
+        }
+    }
+}
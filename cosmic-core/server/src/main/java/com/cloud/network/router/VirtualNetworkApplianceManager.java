@@ -41,6 +41,11 @@ public interface VirtualNetworkApplianceManager extends Manager, VirtualNetworkA
   static final String RouterTemplateOvm3CK = "router.template.ovm3";
   static final String SetServiceMonitorCK = "network.router.EnableServiceMonitoring";
   static final String RouterAlertsCheckIntervalCK = "router.alerts.check.interval";
+  static final String RouterMonitorPoolSizeCK = "router.monitor.poolsize";
+  static final String RouterMonitorHostConcurrencyCK = "router.monitor.host.concurrency";
+  static final String RouterMonitorBatchSizeCK = "router.monitor.batch.size";
+  static final String RouterRulesApplyWindowCK = "router.rules.apply.window";
+  static final String RouterRulesApplyBatchSizeCK = "router.rules.apply.batch.size";
 
   static final ConfigKey<String> RouterTemplateXen = new ConfigKey<String>(String.class, RouterTemplateXenCK, "Advanced", "SystemVM Template (XenServer)",
       "Name of the default router template on Xenserver.", true, ConfigKey.Scope.Zone, null);
@@ -54,6 +59,17 @@ public interface VirtualNetworkApplianceManager extends Manager, VirtualNetworkA
 
   static final ConfigKey<Integer> RouterAlertsCheckInterval = new ConfigKey<Integer>(Integer.class, RouterAlertsCheckIntervalCK, "Advanced", "1800",
       "Interval (in seconds) to check for alerts in Virtual Router.", false, ConfigKey.Scope.Global, null);
+  static final ConfigKey<Integer> RouterMonitorPoolSize = new ConfigKey<Integer>(Integer.class, RouterMonitorPoolSizeCK, "Advanced", "16",
+      "Number of threads used to fan out the router usage, status and alert checks.", false, ConfigKey.Scope.Global, null);
+  static final ConfigKey<Integer> RouterMonitorHostConcurrency = new ConfigKey<Integer>(Integer.class, RouterMonitorHostConcurrencyCK, "Advanced", "2",
+      "Maximum number of concurrent router monitoring requests sent to a single host.", false, ConfigKey.Scope.Global, null);
+  static final ConfigKey<Integer> RouterMonitorBatchSize = new ConfigKey<Integer>(Integer.class, RouterMonitorBatchSizeCK, "Advanced", "20",
+      "Maximum number of router monitoring commands coalesced in one request to a host.", false, ConfigKey.Scope.Global, null);
+  static final ConfigKey<Integer> RouterRulesApplyWindow = new ConfigKey<Integer>(Integer.class, RouterRulesApplyWindowCK, "Advanced", "0",
+      "Time (in milliseconds) to wait for more rule changes for a router, which are then applied to it in one aggregated push. 0 sends every change on its own.",
+      true, ConfigKey.Scope.Global, null);
+  static final ConfigKey<Integer> RouterRulesApplyBatchSize = new ConfigKey<Integer>(Integer.class, RouterRulesApplyBatchSizeCK, "Advanced", "200",
+      "Maximum number of rule commands applied to a router in one aggregated push.", true, ConfigKey.Scope.Global, null);
   static final ConfigKey<Boolean> routerVersionCheckEnabled = new ConfigKey<Boolean>("Advanced", Boolean.class, "router.version.check", "true",
       "If true, router minimum required version is checked before sending command", false);
   static final ConfigKey<Boolean> UseExternalDnsServers = new ConfigKey<Boolean>(Boolean.class, "use.external.dns", "Advanced", "false",
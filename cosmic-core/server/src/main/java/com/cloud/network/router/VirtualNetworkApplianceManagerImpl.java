@@ -77,6 +77,7 @@ import com.cloud.offerings.NetworkOfferingVO;
 import com.cloud.offerings.dao.NetworkOfferingDao;
 import com.cloud.resource.ResourceManager;
 import com.cloud.server.ConfigurationServer;
+import com.cloud.server.StatsCollector;
 import com.cloud.service.ServiceOfferingVO;
 import com.cloud.service.dao.ServiceOfferingDao;
 import com.cloud.storage.Storage.ProvisioningType;
@@ -280,7 +281,6 @@ public class VirtualNetworkApplianceManagerImpl extends ManagerBase implements V
 
     int _routerStatsInterval = 300;
     int _routerCheckInterval = 30;
-    int _rvrStatusUpdatePoolSize = 10;
     private String _dnsBasicZoneUpdates = "all";
     private final Set<String> _guestOSNeedGatewayOnNonDefaultNetwork = new HashSet<>();
 
@@ -295,9 +295,7 @@ public class VirtualNetworkApplianceManagerImpl extends ManagerBase implements V
     ScheduledExecutorService _executor;
     ScheduledExecutorService _checkExecutor;
     ScheduledExecutorService _networkStatsUpdateExecutor;
-    ExecutorService _rvrStatusUpdateExecutor;
-
-    BlockingQueue<Long> _vrUpdateQueue = null;
+    RouterMonitorFanOut _routerMonitor;
 
     @Override
     public VirtualRouter destroyRouter(final long routerId, final Account caller, final Long callerUserId) throws ResourceUnavailableException, ConcurrentOperationException {
@@ -489,18 +487,7 @@ public class VirtualNetworkApplianceManagerImpl extends ManagerBase implements V
         value = configs.get("router.check.interval");
         _routerCheckInterval = NumbersUtil.parseInt(value, 30);
 
-        value = configs.get("router.check.poolsize");
-        _rvrStatusUpdatePoolSize = NumbersUtil.parseInt(value, 10);
-
-    /*
-     * We assume that one thread can handle 20 requests in 1 minute in
-     * normal situation, so here we give the queue size up to 50 minutes.
-     * It's mostly for buffer, since each time CheckRouterTask running, it
-     * would add all the redundant networks in the queue immediately
-     */
-        _vrUpdateQueue = new LinkedBlockingQueue<>(_rvrStatusUpdatePoolSize * 1000);
-
-        _rvrStatusUpdateExecutor = Executors.newFixedThreadPool(_rvrStatusUpdatePoolSize, new NamedThreadFactory("RedundantRouterStatusMonitor"));
+        _routerMonitor = new RouterMonitorFanOut("RouterMonitorFanOut", RouterMonitorPoolSize.value(), RouterMonitorHostConcurrency.value(), RouterMonitorBatchSize.value());
 
         String instance = configs.get("instance.name");
         if (instance == null) {
@@ -604,9 +591,6 @@ public class VirtualNetworkApplianceManagerImpl extends ManagerBase implements V
 
         if (_routerCheckInterval > 0) {
             _checkExecutor.scheduleAtFixedRate(new CheckRouterTask(), _routerCheckInterval, _routerCheckInterval, TimeUnit.SECONDS);
-            for (int i = 0; i < _rvrStatusUpdatePoolSize; i++) {
-                _rvrStatusUpdateExecutor.execute(new RvRStatusUpdateTask());
-            }
         } else {
             s_logger.debug("router.check.interval - " + _routerCheckInterval + " so not scheduling the redundant router checking thread");
         }
@@ -623,9 +607,39 @@ public class VirtualNetworkApplianceManagerImpl extends ManagerBase implements V
 
     @Override
     public boolean stop() {
+        if (_routerMonitor != null) {
+            _routerMonitor.shutdown();
+        }
         return true;
     }
 
+    public Map<String, RouterMonitorFanOut.SweepStats> getRouterMonitorStats() {
+        return _routerMonitor.getAllStats();
+    }
+
+    /**
+     * Runs a sweep of the router monitor and sends its metrics to the external stats collector.
+     */
+    /**
+     * Sends a batch of router commands to a host. The agent runs them one after the other, so the
+     * request gets the sum of their waits as timeout instead of the largest one.
+     */
+    protected Answer[] sendBatch(final long hostId, final Commands cmds) throws AgentUnavailableException, OperationTimedoutException {
+        int wait = 0;
+        for (final Command cmd : cmds) {
+            wait += cmd.getWait();
+        }
+        return _agentMgr.send(hostId, cmds, wait);
+    }
+
+    protected <T> void sweep(final String sweepName, final long intervalMs, final Map<Long, List<T>> workByHost, final RouterMonitorFanOut.HostBatchHandler<T> handler) {
+        final RouterMonitorFanOut.SweepStats stats = _routerMonitor.sweep(sweepName, intervalMs, workByHost, handler);
+        final StatsCollector statsCollector = StatsCollector.getInstance();
+        if (statsCollector != null) {
+            statsCollector.exportMetrics(stats.getMetrics("routers.monitor." + sweepName));
+        }
+    }
+
     protected VirtualNetworkApplianceManagerImpl() {
     }
 
@@ -640,10 +654,11 @@ public class VirtualNetworkApplianceManagerImpl extends ManagerBase implements V
                 final List<DomainRouterVO> routers = _routerDao.listByStateAndNetworkType(VirtualMachine.State.Running, GuestType.Isolated, mgmtSrvrId);
                 s_logger.debug("Found " + routers.size() + " running routers. ");
 
+                final Map<Long, List<NetworkUsageWorkItem>> workByHost = new HashMap<>();
                 for (final DomainRouterVO router : routers) {
                     final String privateIP = router.getPrivateIpAddress();
 
-                    if (privateIP != null) {
+                    if (privateIP != null && router.getHostId() != null) {
                         final boolean forVpc = router.getVpcId() != null;
                         final List<? extends Nic> routerNics = _nicDao.listByVmId(router.getId());
                         for (final Nic routerNic : routerNics) {
@@ -659,89 +674,135 @@ public class VirtualNetworkApplianceManagerImpl extends ManagerBase implements V
                             if (forVpc && network.getTrafficType() == TrafficType.Public || !forVpc && network.getTrafficType() == TrafficType.Guest
                                     && network.getGuestType() == Network.GuestType.Isolated) {
                                 final NetworkUsageCommand usageCmd = new NetworkUsageCommand(privateIP, router.getHostName(), forVpc, routerNic.getIPv4Address());
-                                final String routerType = router.getType().toString();
-                                final UserStatisticsVO previousStats = _userStatsDao.findBy(router.getAccountId(), router.getDataCenterId(), network.getId(),
-                                        forVpc ? routerNic.getIPv4Address() : null, router.getId(), routerType);
-                                NetworkUsageAnswer answer = null;
-                                try {
-                                    answer = (NetworkUsageAnswer) _agentMgr.easySend(router.getHostId(), usageCmd);
-                                } catch (final Exception e) {
-                                    s_logger.warn("Error while collecting network stats from router: " + router.getInstanceName() + " from host: " + router.getHostId(), e);
-                                    continue;
-                                }
-
-                                if (answer != null) {
-                                    if (!answer.getResult()) {
-                                        s_logger.warn("Error while collecting network stats from router: " + router.getInstanceName() + " from host: " + router.getHostId()
-                                                + "; details: " + answer.getDetails());
-                                        continue;
-                                    }
-                                    try {
-                                        if (answer.getBytesReceived() == 0 && answer.getBytesSent() == 0) {
-                                            s_logger.debug("Recieved and Sent bytes are both 0. Not updating user_statistics");
-                                            continue;
-                                        }
-                                        final NetworkUsageAnswer answerFinal = answer;
-                                        Transaction.execute(new TransactionCallbackNoReturn() {
-                                            @Override
-                                            public void doInTransactionWithoutResult(final TransactionStatus status) {
-                                                final UserStatisticsVO stats = _userStatsDao.lock(router.getAccountId(), router.getDataCenterId(), network.getId(),
-                                                        forVpc ? routerNic.getIPv4Address() : null, router.getId(), routerType);
-                                                if (stats == null) {
-                                                    s_logger.warn("unable to find stats for account: " + router.getAccountId());
-                                                    return;
-                                                }
-
-                                                if (previousStats != null
-                                                        && (previousStats.getCurrentBytesReceived() != stats.getCurrentBytesReceived() || previousStats.getCurrentBytesSent() != stats
-                                                        .getCurrentBytesSent())) {
-                                                    s_logger.debug("Router stats changed from the time NetworkUsageCommand was sent. " + "Ignoring current answer. Router: "
-                                                            + answerFinal.getRouterName() + " Rcvd: " + answerFinal.getBytesReceived() + "Sent: " + answerFinal.getBytesSent());
-                                                    return;
-                                                }
-
-                                                if (stats.getCurrentBytesReceived() > answerFinal.getBytesReceived()) {
-                                                    if (s_logger.isDebugEnabled()) {
-                                                        s_logger.debug("Received # of bytes that's less than the last one.  "
-                                                                + "Assuming something went wrong and persisting it. Router: " + answerFinal.getRouterName() + " Reported: "
-                                                                + answerFinal.getBytesReceived() + " Stored: " + stats.getCurrentBytesReceived());
-                                                    }
-                                                    stats.setNetBytesReceived(stats.getNetBytesReceived() + stats.getCurrentBytesReceived());
-                                                }
-                                                stats.setCurrentBytesReceived(answerFinal.getBytesReceived());
-                                                if (stats.getCurrentBytesSent() > answerFinal.getBytesSent()) {
-                                                    if (s_logger.isDebugEnabled()) {
-                                                        s_logger.debug("Received # of bytes that's less than the last one.  "
-                                                                + "Assuming something went wrong and persisting it. Router: " + answerFinal.getRouterName() + " Reported: "
-                                                                + answerFinal.getBytesSent() + " Stored: " + stats.getCurrentBytesSent());
-                                                    }
-                                                    stats.setNetBytesSent(stats.getNetBytesSent() + stats.getCurrentBytesSent());
-                                                }
-                                                stats.setCurrentBytesSent(answerFinal.getBytesSent());
-                                                if (!_dailyOrHourly) {
-                                                    // update agg bytes
-                                                    stats.setAggBytesSent(stats.getNetBytesSent() + stats.getCurrentBytesSent());
-                                                    stats.setAggBytesReceived(stats.getNetBytesReceived() + stats.getCurrentBytesReceived());
-                                                }
-                                                _userStatsDao.update(stats.getId(), stats);
-                                            }
-                                        });
-
-                                    } catch (final Exception e) {
-                                        s_logger.warn("Unable to update user statistics for account: " + router.getAccountId() + " Rx: " + answer.getBytesReceived() + "; Tx: "
-                                                + answer.getBytesSent());
-                                    }
-                                }
+                                workByHost.computeIfAbsent(router.getHostId(), k -> new ArrayList<>()).add(new NetworkUsageWorkItem(router, network, routerNic, usageCmd));
                             }
                         }
                     }
                 }
+
+                sweep("NetworkUsageTask", _routerStatsInterval * 1000L, workByHost, (hostId, batch) -> collectNetworkUsage(hostId, batch));
             } catch (final Exception e) {
                 s_logger.warn("Error while collecting network stats", e);
             }
         }
     }
 
+    protected static class NetworkUsageWorkItem {
+        final DomainRouterVO router;
+        final Network network;
+        final Nic routerNic;
+        final NetworkUsageCommand command;
+
+        NetworkUsageWorkItem(final DomainRouterVO router, final Network network, final Nic routerNic, final NetworkUsageCommand command) {
+            this.router = router;
+            this.network = network;
+            this.routerNic = routerNic;
+            this.command = command;
+        }
+    }
+
+    protected void collectNetworkUsage(final long hostId, final List<NetworkUsageWorkItem> batch) {
+        final Commands cmds = new Commands(Command.OnError.Continue);
+        final List<UserStatisticsVO> previousStats = new ArrayList<>(batch.size());
+        for (final NetworkUsageWorkItem item : batch) {
+            final DomainRouterVO router = item.router;
+            final boolean forVpc = router.getVpcId() != null;
+            previousStats.add(_userStatsDao.findBy(router.getAccountId(), router.getDataCenterId(), item.network.getId(), forVpc ? item.routerNic.getIPv4Address() : null,
+                    router.getId(), router.getType().toString()));
+            cmds.addCommand(item.command);
+        }
+
+        final Answer[] answers;
+        try {
+            answers = sendBatch(hostId, cmds);
+        } catch (final Exception e) {
+            s_logger.warn("Error while collecting network stats from " + batch.size() + " routers on host: " + hostId, e);
+            return;
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            final NetworkUsageWorkItem item = batch.get(i);
+            final Answer answer = answers != null && i < answers.length ? answers[i] : null;
+            if (answer != null && !(answer instanceof NetworkUsageAnswer)) {
+                s_logger.warn("Error while collecting network stats from router: " + item.router.getInstanceName() + " from host: " + hostId + "; details: " + answer
+                        .getDetails());
+                continue;
+            }
+            updateNetworkUsage(item, previousStats.get(i), (NetworkUsageAnswer) answer);
+        }
+    }
+
+    private void updateNetworkUsage(final NetworkUsageWorkItem item, final UserStatisticsVO previousStats, final NetworkUsageAnswer answer) {
+        final DomainRouterVO router = item.router;
+        final Network network = item.network;
+        final Nic routerNic = item.routerNic;
+        final boolean forVpc = router.getVpcId() != null;
+        final String routerType = router.getType().toString();
+
+        if (answer != null) {
+            if (!answer.getResult()) {
+                s_logger.warn("Error while collecting network stats from router: " + router.getInstanceName() + " from host: " + router.getHostId()
+                        + "; details: " + answer.getDetails());
+                return;
+            }
+            try {
+                if (answer.getBytesReceived() == 0 && answer.getBytesSent() == 0) {
+                    s_logger.debug("Recieved and Sent bytes are both 0. Not updating user_statistics");
+                    return;
+                }
+                final NetworkUsageAnswer answerFinal = answer;
+                Transaction.execute(new TransactionCallbackNoReturn() {
+                    @Override
+                    public void doInTransactionWithoutResult(final TransactionStatus status) {
+                        final UserStatisticsVO stats = _userStatsDao.lock(router.getAccountId(), router.getDataCenterId(), network.getId(),
+                                forVpc ? routerNic.getIPv4Address() : null, router.getId(), routerType);
+                        if (stats == null) {
+                            s_logger.warn("unable to find stats for account: " + router.getAccountId());
+                            return;
+                        }
+
+                        if (previousStats != null
+                                && (previousStats.getCurrentBytesReceived() != stats.getCurrentBytesReceived() || previousStats.getCurrentBytesSent() != stats
+                                .getCurrentBytesSent())) {
+                            s_logger.debug("Router stats changed from the time NetworkUsageCommand was sent. " + "Ignoring current answer. Router: "
+                                    + answerFinal.getRouterName() + " Rcvd: " + answerFinal.getBytesReceived() + "Sent: " + answerFinal.getBytesSent());
+                            return;
+                        }
+
+                        if (stats.getCurrentBytesReceived() > answerFinal.getBytesReceived()) {
+                            if (s_logger.isDebugEnabled()) {
+                                s_logger.debug("Received # of bytes that's less than the last one.  "
+                                        + "Assuming something went wrong and persisting it. Router: " + answerFinal.getRouterName() + " Reported: "
+                                        + answerFinal.getBytesReceived() + " Stored: " + stats.getCurrentBytesReceived());
+                            }
+                            stats.setNetBytesReceived(stats.getNetBytesReceived() + stats.getCurrentBytesReceived());
+                        }
+                        stats.setCurrentBytesReceived(answerFinal.getBytesReceived());
+                        if (stats.getCurrentBytesSent() > answerFinal.getBytesSent()) {
+                            if (s_logger.isDebugEnabled()) {
+                                s_logger.debug("Received # of bytes that's less than the last one.  "
+                                        + "Assuming something went wrong and persisting it. Router: " + answerFinal.getRouterName() + " Reported: "
+                                        + answerFinal.getBytesSent() + " Stored: " + stats.getCurrentBytesSent());
+                            }
+                            stats.setNetBytesSent(stats.getNetBytesSent() + stats.getCurrentBytesSent());
+                        }
+                        stats.setCurrentBytesSent(answerFinal.getBytesSent());
+                        if (!_dailyOrHourly) {
+                            // update agg bytes
+                            stats.setAggBytesSent(stats.getNetBytesSent() + stats.getCurrentBytesSent());
+                            stats.setAggBytesReceived(stats.getNetBytesReceived() + stats.getCurrentBytesReceived());
+                        }
+                        _userStatsDao.update(stats.getId(), stats);
+                    }
+                });
+
+            } catch (final Exception e) {
+                s_logger.warn("Unable to update user statistics for account: " + router.getAccountId() + " Rx: " + answer.getBytesReceived() + "; Tx: "
+                        + answer.getBytesSent());
+            }
+        }
+    }
+
     protected class NetworkStatsUpdateTask extends ManagedContextRunnable {
 
         public NetworkStatsUpdateTask() {
@@ -796,6 +857,7 @@ public class VirtualNetworkApplianceManagerImpl extends ManagerBase implements V
 
     @DB
     protected void updateSite2SiteVpnConnectionState(final List<DomainRouterVO> routers) {
+        final Map<Long, List<Site2SiteVpnCheckItem>> workByHost = new HashMap<>();
         for (final DomainRouterVO router : routers) {
             final List<Site2SiteVpnConnectionVO> conns = _s2sVpnMgr.getConnectionsForRouter(router);
             if (conns == null || conns.isEmpty()) {
@@ -833,104 +895,170 @@ public class VirtualNetworkApplianceManagerImpl extends ManagerBase implements V
                 command.setAccessDetail(NetworkElementCommand.ROUTER_IP, _routerControlHelper.getRouterControlIp(router.getId()));
                 command.setAccessDetail(NetworkElementCommand.ROUTER_NAME, router.getInstanceName());
                 command.setWait(30);
-                final Answer origAnswer = _agentMgr.easySend(router.getHostId(), command);
-                CheckS2SVpnConnectionsAnswer answer = null;
-                if (origAnswer instanceof CheckS2SVpnConnectionsAnswer) {
-                    answer = (CheckS2SVpnConnectionsAnswer) origAnswer;
-                } else {
-                    s_logger.warn("Unable to update router " + router.getHostName() + "'s VPN connection status");
-                    continue;
-                }
-                if (!answer.getResult()) {
-                    s_logger.warn("Unable to update router " + router.getHostName() + "'s VPN connection status");
-                    continue;
+                workByHost.computeIfAbsent(host.getId(), k -> new ArrayList<>()).add(new Site2SiteVpnCheckItem(router, conns, command));
+            }
+        }
+
+        sweep("CheckS2SVpnConnections", _routerCheckInterval * 1000L, workByHost, (hostId, batch) -> checkSite2SiteVpnConnections(hostId, batch));
+    }
+
+    protected static class Site2SiteVpnCheckItem {
+        final DomainRouterVO router;
+        final List<Site2SiteVpnConnectionVO> conns;
+        final CheckS2SVpnConnectionsCommand command;
+
+        Site2SiteVpnCheckItem(final DomainRouterVO router, final List<Site2SiteVpnConnectionVO> conns, final CheckS2SVpnConnectionsCommand command) {
+            this.router = router;
+            this.conns = conns;
+            this.command = command;
+        }
+    }
+
+    protected void checkSite2SiteVpnConnections(final long hostId, final List<Site2SiteVpnCheckItem> batch) {
+        final Commands cmds = new Commands(Command.OnError.Continue);
+        for (final Site2SiteVpnCheckItem item : batch) {
+            cmds.addCommand(item.command);
+        }
+        final Answer[] answers;
+        try {
+            answers = sendBatch(hostId, cmds);
+        } catch (final Exception e) {
+            s_logger.warn("Unable to update VPN connection status of " + batch.size() + " routers on host " + hostId, e);
+            return;
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            final DomainRouterVO router = batch.get(i).router;
+            final Answer origAnswer = answers != null && i < answers.length ? answers[i] : null;
+            CheckS2SVpnConnectionsAnswer answer = null;
+            if (origAnswer instanceof CheckS2SVpnConnectionsAnswer) {
+                answer = (CheckS2SVpnConnectionsAnswer) origAnswer;
+            } else {
+                s_logger.warn("Unable to update router " + router.getHostName() + "'s VPN connection status");
+                continue;
+            }
+            if (!answer.getResult()) {
+                s_logger.warn("Unable to update router " + router.getHostName() + "'s VPN connection status");
+                continue;
+            }
+            for (final Site2SiteVpnConnectionVO conn : batch.get(i).conns) {
+                final Site2SiteVpnConnectionVO lock = _s2sVpnConnectionDao.acquireInLockTable(conn.getId());
+                if (lock == null) {
+                    throw new CloudRuntimeException("Unable to acquire lock for site to site vpn connection id " + conn.getId());
                 }
-                for (final Site2SiteVpnConnectionVO conn : conns) {
-                    final Site2SiteVpnConnectionVO lock = _s2sVpnConnectionDao.acquireInLockTable(conn.getId());
-                    if (lock == null) {
-                        throw new CloudRuntimeException("Unable to acquire lock for site to site vpn connection id " + conn.getId());
+                try {
+                    if (conn.getState() != Site2SiteVpnConnection.State.Connected && conn.getState() != Site2SiteVpnConnection.State.Disconnected) {
+                        continue;
                     }
-                    try {
-                        if (conn.getState() != Site2SiteVpnConnection.State.Connected && conn.getState() != Site2SiteVpnConnection.State.Disconnected) {
-                            continue;
-                        }
-                        final Site2SiteVpnConnection.State oldState = conn.getState();
-                        final Site2SiteCustomerGateway gw = _s2sCustomerGatewayDao.findById(conn.getCustomerGatewayId());
-                        if (answer.isConnected(gw.getGatewayIp())) {
-                            conn.setState(Site2SiteVpnConnection.State.Connected);
-                        } else {
-                            conn.setState(Site2SiteVpnConnection.State.Disconnected);
-                        }
-                        _s2sVpnConnectionDao.persist(conn);
-                        if (oldState != conn.getState()) {
-                            final String title = "Site-to-site Vpn Connection to " + gw.getName() + " just switch from " + oldState + " to " + conn.getState();
-                            final String context = "Site-to-site Vpn Connection to " + gw.getName() + " on router " + router.getHostName() + "(id: " + router.getId() + ") "
-                                    + " just switch from " + oldState + " to " + conn.getState();
-                            s_logger.info(context);
-                            _alertMgr.sendAlert(AlertManager.AlertType.ALERT_TYPE_DOMAIN_ROUTER, router.getDataCenterId(), router.getPodIdToDeployIn(), title, context);
-                        }
-                    } finally {
-                        _s2sVpnConnectionDao.releaseFromLockTable(lock.getId());
+                    final Site2SiteVpnConnection.State oldState = conn.getState();
+                    final Site2SiteCustomerGateway gw = _s2sCustomerGatewayDao.findById(conn.getCustomerGatewayId());
+                    if (answer.isConnected(gw.getGatewayIp())) {
+                        conn.setState(Site2SiteVpnConnection.State.Connected);
+                    } else {
+                        conn.setState(Site2SiteVpnConnection.State.Disconnected);
+                    }
+                    _s2sVpnConnectionDao.persist(conn);
+                    if (oldState != conn.getState()) {
+                        final String title = "Site-to-site Vpn Connection to " + gw.getName() + " just switch from " + oldState + " to " + conn.getState();
+                        final String context = "Site-to-site Vpn Connection to " + gw.getName() + " on router " + router.getHostName() + "(id: " + router.getId() + ") "
+                                + " just switch from " + oldState + " to " + conn.getState();
+                        s_logger.info(context);
+                        _alertMgr.sendAlert(AlertManager.AlertType.ALERT_TYPE_DOMAIN_ROUTER, router.getDataCenterId(), router.getPodIdToDeployIn(), title, context);
                     }
+                } finally {
+                    _s2sVpnConnectionDao.releaseFromLockTable(lock.getId());
                 }
             }
         }
     }
 
     protected void updateRoutersRedundantState(final List<DomainRouterVO> routers) {
-        boolean updated;
+        final Map<Long, List<RedundantStateCheckItem>> workByHost = new HashMap<>();
         for (final DomainRouterVO router : routers) {
-            updated = false;
             if (!router.getIsRedundantRouter()) {
                 continue;
             }
-            final RedundantState prevState = router.getRedundantState();
             if (router.getState() != VirtualMachine.State.Running) {
-                router.setRedundantState(RedundantState.UNKNOWN);
-                updated = true;
+                updateRedundantState(router, RedundantState.UNKNOWN);
+                continue;
+            }
+            final String privateIP = router.getPrivateIpAddress();
+            final HostVO host = _hostDao.findById(router.getHostId());
+            if (host == null || host.getState() != Status.Up) {
+                updateRedundantState(router, RedundantState.UNKNOWN);
+            } else if (privateIP != null) {
+                final CheckRouterCommand command = new CheckRouterCommand();
+                command.setAccessDetail(NetworkElementCommand.ROUTER_IP, _routerControlHelper.getRouterControlIp(router.getId()));
+                command.setAccessDetail(NetworkElementCommand.ROUTER_NAME, router.getInstanceName());
+                command.setWait(30);
+                workByHost.computeIfAbsent(host.getId(), k -> new ArrayList<>()).add(new RedundantStateCheckItem(router, command));
+            }
+        }
+
+        sweep("CheckRedundantRouters", _routerCheckInterval * 1000L, workByHost, (hostId, batch) -> checkRedundantState(hostId, batch));
+    }
+
+    protected static class RedundantStateCheckItem {
+        final DomainRouterVO router;
+        final CheckRouterCommand command;
+
+        RedundantStateCheckItem(final DomainRouterVO router, final CheckRouterCommand command) {
+            this.router = router;
+            this.command = command;
+        }
+    }
+
+    protected void checkRedundantState(final long hostId, final List<RedundantStateCheckItem> batch) {
+        final Commands cmds = new Commands(Command.OnError.Continue);
+        for (final RedundantStateCheckItem item : batch) {
+            cmds.addCommand(item.command);
+        }
+        final Answer[] answers;
+        try {
+            answers = sendBatch(hostId, cmds);
+        } catch (final Exception e) {
+            // none of the routers was checked, so their state is left as it is until the next sweep
+            s_logger.warn("Unable to update redundant state of " + batch.size() + " routers on host " + hostId, e);
+            return;
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            final DomainRouterVO router = batch.get(i).router;
+            final Answer origAnswer = answers != null && i < answers.length ? answers[i] : null;
+            if (origAnswer == null) {
+                s_logger.warn("No answer to the status check of router " + router.getHostName() + ", leaving its redundant state " + router.getRedundantState());
+                continue;
+            }
+            CheckRouterAnswer answer = null;
+            if (origAnswer instanceof CheckRouterAnswer) {
+                answer = (CheckRouterAnswer) origAnswer;
             } else {
-                final String privateIP = router.getPrivateIpAddress();
-                final HostVO host = _hostDao.findById(router.getHostId());
-                if (host == null || host.getState() != Status.Up) {
-                    router.setRedundantState(RedundantState.UNKNOWN);
-                    updated = true;
-                } else if (privateIP != null) {
-                    final CheckRouterCommand command = new CheckRouterCommand();
-                    command.setAccessDetail(NetworkElementCommand.ROUTER_IP, _routerControlHelper.getRouterControlIp(router.getId()));
-                    command.setAccessDetail(NetworkElementCommand.ROUTER_NAME, router.getInstanceName());
-                    command.setWait(30);
-                    final Answer origAnswer = _agentMgr.easySend(router.getHostId(), command);
-                    CheckRouterAnswer answer = null;
-                    if (origAnswer instanceof CheckRouterAnswer) {
-                        answer = (CheckRouterAnswer) origAnswer;
-                    } else {
-                        s_logger.warn("Unable to update router " + router.getHostName() + "'s status");
-                    }
-                    RedundantState state = RedundantState.UNKNOWN;
-                    if (answer != null) {
-                        if (answer.getResult()) {
-                            state = answer.getState();
-                        } else {
-                            s_logger.info("Agent response doesn't seem to be correct ==> " + answer.getResult());
-                        }
-                    }
-                    router.setRedundantState(state);
-                    updated = true;
-                }
+                s_logger.warn("Unable to update router " + router.getHostName() + "'s status");
             }
-            if (updated) {
-                _routerDao.update(router.getId(), router);
-            }
-            final RedundantState currState = router.getRedundantState();
-            if (prevState != currState) {
-                final String title = "Redundant virtual router " + router.getInstanceName() + " just switch from " + prevState + " to " + currState;
-                final String context = "Redundant virtual router (name: " + router.getHostName() + ", id: " + router.getId() + ") " + " just switch from " + prevState + " to "
-                        + currState;
-                s_logger.info(context);
-                if (currState == RedundantState.MASTER) {
-                    _alertMgr.sendAlert(AlertManager.AlertType.ALERT_TYPE_DOMAIN_ROUTER, router.getDataCenterId(), router.getPodIdToDeployIn(), title, context);
+            RedundantState state = RedundantState.UNKNOWN;
+            if (answer != null) {
+                if (answer.getResult()) {
+                    state = answer.getState();
+                } else {
+                    s_logger.info("Agent response doesn't seem to be correct ==> " + answer.getResult());
                 }
             }
+            updateRedundantState(router, state);
+        }
+    }
+
+    private void updateRedundantState(final DomainRouterVO router, final RedundantState currState) {
+        final RedundantState prevState = router.getRedundantState();
+        router.setRedundantState(currState);
+        _routerDao.update(router.getId(), router);
+        if (prevState != currState) {
+            final String title = "Redundant virtual router " + router.getInstanceName() + " just switch from " + prevState + " to " + currState;
+            final String context = "Redundant virtual router (name: " + router.getHostName() + ", id: " + router.getId() + ") " + " just switch from " + prevState + " to "
+                    + currState;
+            s_logger.info(context);
+            if (currState == RedundantState.MASTER) {
+                _alertMgr.sendAlert(AlertManager.AlertType.ALERT_TYPE_DOMAIN_ROUTER, router.getDataCenterId(), router.getPodIdToDeployIn(), title, context);
+            }
         }
     }
 
@@ -959,7 +1087,10 @@ public class VirtualNetworkApplianceManagerImpl extends ManagerBase implements V
         }
     }
 
-    protected class RvRStatusUpdateTask extends ManagedContextRunnable {
+    protected class CheckRouterTask extends ManagedContextRunnable {
+
+        public CheckRouterTask() {
+        }
 
         /*
          * In order to make fail-over works well at any time, we have to ensure:
@@ -1043,72 +1174,6 @@ public class VirtualNetworkApplianceManagerImpl extends ManagerBase implements V
             }
         }
 
-        @Override
-        protected void runInContext() {
-            while (true) {
-                try {
-                    final Long networkId = _vrUpdateQueue.take(); // This is a blocking call so this thread won't run all the time if no work item in queue.
-
-                    final NetworkVO network = _networkDao.findById(networkId);
-                    final Long vpcId = network.getVpcId();
-
-                    final List<DomainRouterVO> routers;
-                    if (vpcId != null) {
-                        routers = _routerDao.listByVpcId(vpcId);
-                    } else {
-                        routers = _routerDao.listByNetworkAndRole(networkId, Role.VIRTUAL_ROUTER);
-                    }
-
-                    if (routers.size() != 2) {
-                        continue;
-                    }
-          /*
-           * We update the router pair which the lower id router owned
-           * by this mgmt server, in order to prevent duplicate update
-           * of router status from cluster mgmt servers
-           */
-                    final DomainRouterVO router0 = routers.get(0);
-                    final DomainRouterVO router1 = routers.get(1);
-
-                    if (router0.getState() != VirtualMachine.State.Running || router1.getState() != VirtualMachine.State.Running) {
-                        updateRoutersRedundantState(routers);
-                        // Wilder Rodrigues (wrodrigues@schubergphilis.com) - One of the routers is not running,
-                        // so we don't have to continue here since the host will be null any way. Also, there is no need
-                        // To check either for sanity of duplicate master. Thus, just update the state and get lost.
-                        continue;
-                    }
-
-                    DomainRouterVO router = router0;
-                    if (router0.getId() < router1.getId()) {
-                        router = router0;
-                    } else {
-                        router = router1;
-                    }
-                    // && router.getState() == VirtualMachine.State.Stopped
-                    if (router.getHostId() == null && router.getState() == VirtualMachine.State.Running) {
-                        s_logger.debug("Skip router pair (" + router0.getInstanceName() + "," + router1.getInstanceName() + ") due to can't find host");
-                        continue;
-                    }
-                    final HostVO host = _hostDao.findById(router.getHostId());
-                    if (host == null || host.getManagementServerId() == null || host.getManagementServerId() != ManagementServerNode.getManagementServerId()) {
-                        s_logger.debug("Skip router pair (" + router0.getInstanceName() + "," + router1.getInstanceName() + ") due to not belong to this mgmt server");
-                        continue;
-                    }
-                    updateRoutersRedundantState(routers);
-                    checkDuplicateMaster(routers);
-                    checkSanity(routers);
-                } catch (final Exception ex) {
-                    s_logger.error("Fail to complete the RvRStatusUpdateTask! ", ex);
-                }
-            }
-        }
-    }
-
-    protected class CheckRouterTask extends ManagedContextRunnable {
-
-        public CheckRouterTask() {
-        }
-
         @Override
         protected void runInContext() {
             try {
@@ -1117,23 +1182,79 @@ public class VirtualNetworkApplianceManagerImpl extends ManagerBase implements V
 
                 updateSite2SiteVpnConnectionState(routers);
 
-                List<NetworkVO> networks = _networkDao.listVpcNetworks();
+                final List<NetworkVO> networks = new ArrayList<>(_networkDao.listVpcNetworks());
                 s_logger.debug("Found " + networks.size() + " VPC networks to update Redundant State. ");
-                pushToUpdateQueue(networks);
+                final List<NetworkVO> redundantNetworks = _networkDao.listRedundantNetworks();
+                s_logger.debug("Found " + redundantNetworks.size() + " networks to update RvR status. ");
+                networks.addAll(redundantNetworks);
 
-                networks = _networkDao.listRedundantNetworks();
-                s_logger.debug("Found " + networks.size() + " networks to update RvR status. ");
-                pushToUpdateQueue(networks);
+                updateRedundantRouters(networks);
             } catch (final Exception ex) {
                 s_logger.error("Fail to complete the CheckRouterTask! ", ex);
             }
         }
 
-        protected void pushToUpdateQueue(final List<NetworkVO> networks) throws InterruptedException {
+        /*
+         * The redundant state of all router pairs is checked in one sweep of the router monitor, so the
+         * CheckRouterCommands of the routers on a host go to its agent in batches instead of one by one.
+         */
+        protected void updateRedundantRouters(final List<NetworkVO> networks) {
+            final Set<String> seen = new HashSet<>();
+            final List<DomainRouterVO> routers = new ArrayList<>();
+            final List<List<DomainRouterVO>> runningPairs = new ArrayList<>();
             for (final NetworkVO network : networks) {
-                if (!_vrUpdateQueue.offer(network.getId(), 500, TimeUnit.MILLISECONDS)) {
-                    s_logger.warn("Cannot insert into virtual router update queue! Adjustment of router.check.interval and router.check.poolsize maybe needed.");
-                    break;
+                final Long vpcId = network.getVpcId();
+                // All tiers of a VPC share the same router pair
+                if (!seen.add(vpcId != null ? "vpc-" + vpcId : "network-" + network.getId())) {
+                    continue;
+                }
+
+                final List<DomainRouterVO> pair;
+                if (vpcId != null) {
+                    pair = _routerDao.listByVpcId(vpcId);
+                } else {
+                    pair = _routerDao.listByNetworkAndRole(network.getId(), Role.VIRTUAL_ROUTER);
+                }
+
+                if (pair.size() != 2) {
+                    continue;
+                }
+                final DomainRouterVO router0 = pair.get(0);
+                final DomainRouterVO router1 = pair.get(1);
+
+                if (router0.getState() != VirtualMachine.State.Running || router1.getState() != VirtualMachine.State.Running) {
+                    // One of the routers is not running, so there is no master to check, just update the state
+                    routers.addAll(pair);
+                    continue;
+                }
+
+          /*
+           * We update the router pair which the lower id router owned
+           * by this mgmt server, in order to prevent duplicate update
+           * of router status from cluster mgmt servers
+           */
+                final DomainRouterVO router = router0.getId() < router1.getId() ? router0 : router1;
+                if (router.getHostId() == null) {
+                    s_logger.debug("Skip router pair (" + router0.getInstanceName() + "," + router1.getInstanceName() + ") due to can't find host");
+                    continue;
+                }
+                final HostVO host = _hostDao.findById(router.getHostId());
+                if (host == null || host.getManagementServerId() == null || host.getManagementServerId() != ManagementServerNode.getManagementServerId()) {
+                    s_logger.debug("Skip router pair (" + router0.getInstanceName() + "," + router1.getInstanceName() + ") due to not belong to this mgmt server");
+                    continue;
+                }
+                routers.addAll(pair);
+                runningPairs.add(pair);
+            }
+
+            updateRoutersRedundantState(routers);
+
+            for (final List<DomainRouterVO> pair : runningPairs) {
+                try {
+                    checkDuplicateMaster(pair);
+                    checkSanity(pair);
+                } catch (final Exception ex) {
+                    s_logger.error("Fail to check router pair (" + pair.get(0).getInstanceName() + "," + pair.get(1).getInstanceName() + ")", ex);
                 }
             }
         }
@@ -1159,6 +1280,7 @@ public class VirtualNetworkApplianceManagerImpl extends ManagerBase implements V
 
             s_logger.debug("Found " + routers.size() + " running routers. ");
 
+            final Map<Long, List<DomainRouterVO>> workByHost = new HashMap<>();
             for (final DomainRouterVO router : routers) {
                 final String serviceMonitoringFlag = SetServiceMonitor.valueIn(router.getDataCenterId());
                 // Skip the routers in VPC network or skip the routers where
@@ -1167,74 +1289,90 @@ public class VirtualNetworkApplianceManagerImpl extends ManagerBase implements V
                     continue;
                 }
 
-                final String privateIP = router.getPrivateIpAddress();
+                if (router.getPrivateIpAddress() != null && router.getHostId() != null) {
+                    workByHost.computeIfAbsent(router.getHostId(), k -> new ArrayList<>()).add(router);
+                }
+            }
 
-                if (privateIP != null) {
-                    OpRouterMonitorServiceVO opRouterMonitorServiceVO = _opRouterMonitorServiceDao.findById(router.getId());
+            sweep("CheckRouterAlertsTask", RouterAlertsCheckInterval.value() * 1000L, workByHost, (hostId, batch) -> collectRouterAlerts(hostId, batch));
+        } catch (final Exception e) {
+            s_logger.warn("Error while collecting alerts from router", e);
+        }
+    }
 
-                    GetRouterAlertsCommand command = null;
-                    if (opRouterMonitorServiceVO == null) {
-                        command = new GetRouterAlertsCommand(new String("1970-01-01 00:00:00")); // To
-                        // avoid
-                        // sending
-                        // null
-                        // value
-                    } else {
-                        command = new GetRouterAlertsCommand(opRouterMonitorServiceVO.getLastAlertTimestamp());
-                    }
+    protected void collectRouterAlerts(final long hostId, final List<DomainRouterVO> batch) {
+        final Commands cmds = new Commands(Command.OnError.Continue);
+        final List<OpRouterMonitorServiceVO> monitorServices = new ArrayList<>(batch.size());
+        for (final DomainRouterVO router : batch) {
+            final OpRouterMonitorServiceVO opRouterMonitorServiceVO = _opRouterMonitorServiceDao.findById(router.getId());
+            monitorServices.add(opRouterMonitorServiceVO);
 
-                    command.setAccessDetail(NetworkElementCommand.ROUTER_IP, router.getPrivateIpAddress());
+            final GetRouterAlertsCommand command;
+            if (opRouterMonitorServiceVO == null) {
+                command = new GetRouterAlertsCommand(new String("1970-01-01 00:00:00")); // To avoid sending null value
+            } else {
+                command = new GetRouterAlertsCommand(opRouterMonitorServiceVO.getLastAlertTimestamp());
+            }
+            command.setAccessDetail(NetworkElementCommand.ROUTER_IP, router.getPrivateIpAddress());
+            cmds.addCommand(command);
+        }
 
-                    try {
-                        final Answer origAnswer = _agentMgr.easySend(router.getHostId(), command);
-                        GetRouterAlertsAnswer answer = null;
+        final Answer[] answers;
+        try {
+            answers = sendBatch(hostId, cmds);
+        } catch (final Exception e) {
+            s_logger.warn("Error while collecting alerts from " + batch.size() + " routers on host " + hostId, e);
+            return;
+        }
 
-                        if (origAnswer == null) {
-                            s_logger.warn("Unable to get alerts from router " + router.getHostName());
-                            continue;
-                        }
-                        if (origAnswer instanceof GetRouterAlertsAnswer) {
-                            answer = (GetRouterAlertsAnswer) origAnswer;
-                        } else {
-                            s_logger.warn("Unable to get alerts from router " + router.getHostName());
-                            continue;
-                        }
-                        if (!answer.getResult()) {
-                            s_logger.warn("Unable to get alerts from router " + router.getHostName() + " " + answer.getDetails());
-                            continue;
-                        }
+        for (int i = 0; i < batch.size(); i++) {
+            final DomainRouterVO router = batch.get(i);
+            OpRouterMonitorServiceVO opRouterMonitorServiceVO = monitorServices.get(i);
+            try {
+                final Answer origAnswer = answers != null && i < answers.length ? answers[i] : null;
+                GetRouterAlertsAnswer answer = null;
 
-                        final String alerts[] = answer.getAlerts();
-                        if (alerts != null) {
-                            final String lastAlertTimeStamp = answer.getTimeStamp();
-                            final SimpleDateFormat sdfrmt = new SimpleDateFormat("yyyy-MM-dd hh:mm:ss");
-                            sdfrmt.setLenient(false);
-                            try {
-                                sdfrmt.parse(lastAlertTimeStamp);
-                            } catch (final ParseException e) {
-                                s_logger.warn("Invalid last alert timestamp received while collecting alerts from router: " + router.getInstanceName());
-                                continue;
-                            }
-                            for (final String alert : alerts) {
-                                _alertMgr.sendAlert(AlertType.ALERT_TYPE_DOMAIN_ROUTER, router.getDataCenterId(), router.getPodIdToDeployIn(), "Monitoring Service on VR "
-                                        + router.getInstanceName(), alert);
-                            }
-                            if (opRouterMonitorServiceVO == null) {
-                                opRouterMonitorServiceVO = new OpRouterMonitorServiceVO(router.getId(), router.getHostName(), lastAlertTimeStamp);
-                                _opRouterMonitorServiceDao.persist(opRouterMonitorServiceVO);
-                            } else {
-                                opRouterMonitorServiceVO.setLastAlertTimestamp(lastAlertTimeStamp);
-                                _opRouterMonitorServiceDao.update(opRouterMonitorServiceVO.getId(), opRouterMonitorServiceVO);
-                            }
-                        }
-                    } catch (final Exception e) {
-                        s_logger.warn("Error while collecting alerts from router: " + router.getInstanceName(), e);
+                if (origAnswer == null) {
+                    s_logger.warn("Unable to get alerts from router " + router.getHostName());
+                    continue;
+                }
+                if (origAnswer instanceof GetRouterAlertsAnswer) {
+                    answer = (GetRouterAlertsAnswer) origAnswer;
+                } else {
+                    s_logger.warn("Unable to get alerts from router " + router.getHostName());
+                    continue;
+                }
+                if (!answer.getResult()) {
+                    s_logger.warn("Unable to get alerts from router " + router.getHostName() + " " + answer.getDetails());
+                    continue;
+                }
+
+                final String alerts[] = answer.getAlerts();
+                if (alerts != null) {
+                    final String lastAlertTimeStamp = answer.getTimeStamp();
+                    final SimpleDateFormat sdfrmt = new SimpleDateFormat("yyyy-MM-dd hh:mm:ss");
+                    sdfrmt.setLenient(false);
+                    try {
+                        sdfrmt.parse(lastAlertTimeStamp);
+                    } catch (final ParseException e) {
+                        s_logger.warn("Invalid last alert timestamp received while collecting alerts from router: " + router.getInstanceName());
                         continue;
                     }
+                    for (final String alert : alerts) {
+                        _alertMgr.sendAlert(AlertType.ALERT_TYPE_DOMAIN_ROUTER, router.getDataCenterId(), router.getPodIdToDeployIn(), "Monitoring Service on VR "
+                                + router.getInstanceName(), alert);
+                    }
+                    if (opRouterMonitorServiceVO == null) {
+                        opRouterMonitorServiceVO = new OpRouterMonitorServiceVO(router.getId(), router.getHostName(), lastAlertTimeStamp);
+                        _opRouterMonitorServiceDao.persist(opRouterMonitorServiceVO);
+                    } else {
+                        opRouterMonitorServiceVO.setLastAlertTimestamp(lastAlertTimeStamp);
+                        _opRouterMonitorServiceDao.update(opRouterMonitorServiceVO.getId(), opRouterMonitorServiceVO);
+                    }
                 }
+            } catch (final Exception e) {
+                s_logger.warn("Error while collecting alerts from router: " + router.getInstanceName(), e);
             }
-        } catch (final Exception e) {
-            s_logger.warn("Error while collecting alerts from router", e);
         }
     }
 
@@ -2442,7 +2580,8 @@ public class VirtualNetworkApplianceManagerImpl extends ManagerBase implements V
 
     @Override
     public ConfigKey<?>[] getConfigKeys() {
-        return new ConfigKey<?>[]{UseExternalDnsServers, routerVersionCheckEnabled, SetServiceMonitor, RouterAlertsCheckInterval};
+        return new ConfigKey<?>[]{UseExternalDnsServers, routerVersionCheckEnabled, SetServiceMonitor, RouterAlertsCheckInterval, RouterMonitorPoolSize,
+                RouterMonitorHostConcurrency, RouterMonitorBatchSize, RouterRulesApplyWindow, RouterRulesApplyBatchSize};
     }
 
     @Override
@@ -18,7 +18,6 @@ package com.cloud.network.security;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.Comparator;
 import java.util.ConcurrentModificationException;
 import java.util.Date;
@@ -31,6 +30,7 @@ import java.util.Random;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -80,7 +80,6 @@ import com.cloud.utils.component.ManagerBase;
 import com.cloud.utils.concurrency.NamedThreadFactory;
 import com.cloud.utils.db.DB;
 import com.cloud.utils.db.Filter;
-import com.cloud.utils.db.GlobalLock;
 import com.cloud.utils.db.Transaction;
 import com.cloud.utils.db.TransactionCallback;
 import com.cloud.utils.db.TransactionCallbackNoReturn;
@@ -178,9 +177,9 @@ public class SecurityGroupManagerImpl extends ManagerBase implements SecurityGro
 
   private int _timeBetweenCleanups = TIME_BETWEEN_CLEANUPS; // seconds
   protected int _numWorkerThreads = WORKER_THREAD_COUNT;
-  private int _globalWorkLockTimeout = 300; // 5 minutes
 
-  private final GlobalLock _workLock = GlobalLock.getInternLock("SecurityGroupWork");
+  SecurityGroupRulesetCache _rulesetCache = new SecurityGroupRulesetCache(0);
+  private final Map<Long, ProgrammedRuleset> _programmedRulesets = new ConcurrentHashMap<Long, ProgrammedRuleset>();
 
   SecurityGroupListener _answerListener;
 
@@ -336,35 +335,148 @@ public class SecurityGroupManagerImpl extends ManagerBase implements SecurityGro
 
     final List<SecurityGroupVMMapVO> groupsForVm = _securityGroupVMMapDao.listByInstanceId(userVmId);
     for (final SecurityGroupVMMapVO mapVO : groupsForVm) {
-      final List<SecurityGroupRuleVO> rules = _securityGroupRuleDao.listBySecurityGroupId(mapVO.getSecurityGroupId(), type);
-      for (final SecurityGroupRuleVO rule : rules) {
-        final PortAndProto portAndProto = new PortAndProto(rule.getProtocol(), rule.getStartPort(), rule.getEndPort());
-        Set<String> cidrs = allowed.get(portAndProto);
+      final Map<PortAndProto, Set<String>> groupRules = _rulesetCache.get(mapVO.getSecurityGroupId(), type, this::getRulesVersion, this::compileRulesForGroup);
+      for (final Map.Entry<PortAndProto, Set<String>> entry : groupRules.entrySet()) {
+        Set<String> cidrs = allowed.get(entry.getKey());
         if (cidrs == null) {
           cidrs = new TreeSet<String>(new CidrComparator());
+          allowed.put(entry.getKey(), cidrs);
         }
-        if (rule.getAllowedNetworkId() != null) {
-          final List<SecurityGroupVMMapVO> allowedInstances = _securityGroupVMMapDao.listBySecurityGroup(rule.getAllowedNetworkId(), State.Running);
-          for (final SecurityGroupVMMapVO ngmapVO : allowedInstances) {
-            final Nic defaultNic = _networkModel.getDefaultNic(ngmapVO.getInstanceId());
-            if (defaultNic != null) {
-              String cidr = defaultNic.getIPv4Address();
-              cidr = cidr + "/32";
-              cidrs.add(cidr);
-            }
-          }
-        } else if (rule.getAllowedSourceIpCidr() != null) {
-          cidrs.add(rule.getAllowedSourceIpCidr());
-        }
-        if (cidrs.size() > 0) {
-          allowed.put(portAndProto, cidrs);
-        }
+        cidrs.addAll(entry.getValue());
       }
     }
 
     return allowed;
   }
 
+  /**
+   * Compiles the rules of one security group, the rulesets of its members are composed from these.
+   */
+  protected Map<PortAndProto, Set<String>> compileRulesForGroup(long groupId, SecurityRuleType type, Set<Long> allowedGroups) {
+
+    final Map<PortAndProto, Set<String>> allowed = new TreeMap<PortAndProto, Set<String>>();
+
+    final List<SecurityGroupRuleVO> rules = _securityGroupRuleDao.listBySecurityGroupId(groupId, type);
+    for (final SecurityGroupRuleVO rule : rules) {
+      final PortAndProto portAndProto = new PortAndProto(rule.getProtocol(), rule.getStartPort(), rule.getEndPort());
+      Set<String> cidrs = allowed.get(portAndProto);
+      if (cidrs == null) {
+        cidrs = new TreeSet<String>(new CidrComparator());
+      }
+      if (rule.getAllowedNetworkId() != null) {
+        allowedGroups.add(rule.getAllowedNetworkId());
+        cidrs.addAll(getRunningMemberCidrs(rule.getAllowedNetworkId()));
+      } else if (rule.getAllowedSourceIpCidr() != null) {
+        cidrs.add(rule.getAllowedSourceIpCidr());
+      }
+      if (cidrs.size() > 0) {
+        allowed.put(portAndProto, cidrs);
+      }
+    }
+
+    return allowed;
+  }
+
+  /**
+   * Reads the ids of the rules of a group and of the running members of the groups they allow. These
+   * change whenever the compiled rules of the group change, also when that happens on another
+   * management server, while they take one query per allowed group instead of one per member.
+   */
+  protected String getRulesVersion(long groupId, SecurityRuleType type) {
+    final StringBuilder version = new StringBuilder();
+    final Set<Long> allowedGroups = new TreeSet<Long>();
+    for (final SecurityGroupRuleVO rule : _securityGroupRuleDao.listBySecurityGroupId(groupId, type)) {
+      version.append(rule.getId()).append(',');
+      if (rule.getAllowedNetworkId() != null) {
+        allowedGroups.add(rule.getAllowedNetworkId());
+      }
+    }
+    for (final Long allowedGroup : allowedGroups) {
+      version.append(';').append(allowedGroup).append(':');
+      for (final SecurityGroupVMMapVO member : _securityGroupVMMapDao.listBySecurityGroup(allowedGroup, State.Running)) {
+        version.append(member.getInstanceId()).append(',');
+      }
+    }
+    return version.toString();
+  }
+
+  protected List<String> getRunningMemberCidrs(long groupId) {
+    final List<String> cidrs = new ArrayList<String>();
+    final List<SecurityGroupVMMapVO> allowedInstances = _securityGroupVMMapDao.listBySecurityGroup(groupId, State.Running);
+    for (final SecurityGroupVMMapVO ngmapVO : allowedInstances) {
+      final Nic defaultNic = _networkModel.getDefaultNic(ngmapVO.getInstanceId());
+      if (defaultNic != null) {
+        cidrs.add(defaultNic.getIPv4Address() + "/32");
+      }
+    }
+    return cidrs;
+  }
+
+  /**
+   * Drops the compiled rules that allow the groups of a vm, as the vm was started or stopped.
+   */
+  protected void invalidateRulesAllowingVm(long vmId) {
+    for (final SecurityGroupVMMapVO mapVO : _securityGroupVMMapDao.listByInstanceId(vmId)) {
+      _rulesetCache.invalidateMembers(mapVO.getSecurityGroupId());
+    }
+  }
+
+  /**
+   * Decides if a ruleset has to be sent to the host of a vm. It is not sent when the host got the same
+   * ruleset before, which is remembered so a full sync does not send it either.
+   *
+   * Any management server can work on the vm, and the host may have been sent another ruleset by one of
+   * them. The ruleset log gets a new sequence number for every change, so the ruleset is only skipped
+   * when this management server worked on the sequence number right before this one as well.
+   *
+   * @return true if the ruleset differs from the one last sent to the host, or if it may have changed
+   * on another management server since
+   */
+  protected boolean shouldSendRuleset(long vmId, long hostId, SecurityGroupRulesCmd cmd) {
+    final String ruleset = cmd.getGuestIp() + ":" + cmd.getSecIpsString() + ":" + cmd.getSignature();
+    final ProgrammedRuleset sent = _programmedRulesets.get(vmId);
+    if (sent != null && sent.hostId == hostId && sent.ruleset.equals(ruleset)) {
+      if (cmd.getSeqNum() == sent.currentSeqno) {
+        return false;
+      }
+      if (cmd.getSeqNum() == sent.currentSeqno + 1) {
+        sent.currentSeqno = cmd.getSeqNum();
+        return false;
+      }
+    }
+    _programmedRulesets.put(vmId, new ProgrammedRuleset(hostId, ruleset, cmd.getSeqNum()));
+    return true;
+  }
+
+  /**
+   * @return true if the host has the ruleset of the vm, although it reports an older sequence number
+   */
+  protected boolean isRulesetCurrent(long vmId, long hostId, long hostSeqno, long logSeqno) {
+    final ProgrammedRuleset sent = _programmedRulesets.get(vmId);
+    return sent != null && sent.hostId == hostId && sent.sentSeqno == hostSeqno && sent.currentSeqno == logSeqno;
+  }
+
+  /**
+   * Makes the next ruleset of the vm be sent, also when it did not change.
+   */
+  public void forgetRulesetSent(long vmId) {
+    _programmedRulesets.remove(vmId);
+  }
+
+  private static class ProgrammedRuleset {
+    private final long hostId;
+    private final String ruleset;
+    private final long sentSeqno;
+    private volatile long currentSeqno;
+
+    ProgrammedRuleset(long hostId, String ruleset, long sentSeqno) {
+      this.hostId = hostId;
+      this.ruleset = ruleset;
+      this.sentSeqno = sentSeqno;
+      this.currentSeqno = sentSeqno;
+    }
+  }
+
   protected String generateRulesetSignature(Map<PortAndProto, Set<String>> ingress, Map<PortAndProto, Set<String>> egress) {
     String ruleset = ingress.toString();
     ruleset = ruleset.concat(egress.toString());
@@ -375,6 +487,8 @@ public class SecurityGroupManagerImpl extends ManagerBase implements SecurityGro
     if (vm.getType() != VirtualMachine.Type.User || !isVmSecurityGroupEnabled(vm.getId())) {
       return;
     }
+    invalidateRulesAllowingVm(vm.getId());
+    forgetRulesetSent(vm.getId());
     final List<Long> affectedVms = getAffectedVmsForVmStart(vm);
     scheduleRulesetUpdateToHosts(affectedVms, true, null);
   }
@@ -389,64 +503,56 @@ public class SecurityGroupManagerImpl extends ManagerBase implements SecurityGro
       delayMs = new Long(100l);
     }
 
-    Collections.sort(affectedVms);
+    final Set<Long> vmIds = new TreeSet<Long>(affectedVms);
     if (s_logger.isTraceEnabled()) {
-      s_logger.trace("Security Group Mgr: scheduling ruleset updates for " + affectedVms.size() + " vms");
-    }
-    final boolean locked = _workLock.lock(_globalWorkLockTimeout);
-    if (!locked) {
-      s_logger.warn("Security Group Mgr: failed to acquire global work lock");
-      return;
+      s_logger.trace("Security Group Mgr: scheduling ruleset updates for " + vmIds.size() + " vms");
     }
 
-    if (s_logger.isTraceEnabled()) {
-      s_logger.trace("Security Group Mgr: acquired global work lock");
-    }
+    // the ruleset logs of all vms are written with multi row inserts and their work items are
+    // looked up with one query, instead of one vm at a time under a global lock
+    Transaction.execute(new TransactionCallbackNoReturn() {
+      @Override
+      public void doInTransactionWithoutResult(TransactionStatus status) {
+        if (updateSeqno) {
+          _rulesetLogDao.createOrUpdate(vmIds);
+        }
+        final Map<Long, Long> logSequences = new HashMap<Long, Long>();
+        for (final VmRulesetLogVO log : _rulesetLogDao.listByVmIds(vmIds)) {
+          logSequences.put(log.getInstanceId(), log.getLogsequence());
+        }
+        if (logSequences.size() < vmIds.size()) {
+          final Set<Long> missing = new TreeSet<Long>(vmIds);
+          missing.removeAll(logSequences.keySet());
+          _rulesetLogDao.createOrUpdate(missing);
+          for (final VmRulesetLogVO log : _rulesetLogDao.listByVmIds(missing)) {
+            logSequences.put(log.getInstanceId(), log.getLogsequence());
+          }
+        }
 
-    try {
-      Transaction.execute(new TransactionCallbackNoReturn() {
-        @Override
-        public void doInTransactionWithoutResult(TransactionStatus status) {
-          for (final Long vmId : affectedVms) {
+        final Map<Long, SecurityGroupWorkVO> scheduledWork = new HashMap<Long, SecurityGroupWorkVO>();
+        for (final SecurityGroupWorkVO work : _workDao.listByVmIdsStep(vmIds, Step.Scheduled)) {
+          scheduledWork.put(work.getInstanceId(), work);
+        }
+        for (final Long vmId : vmIds) {
+          final Long logSequence = logSequences.get(vmId);
+          SecurityGroupWorkVO work = scheduledWork.get(vmId);
+          if (work == null) {
+            work = new SecurityGroupWorkVO(vmId, null, null, SecurityGroupWork.Step.Scheduled, null);
+            work.setLogsequenceNumber(logSequence);
+            work = _workDao.persist(work);
             if (s_logger.isTraceEnabled()) {
-              s_logger.trace("Security Group Mgr: scheduling ruleset update for " + vmId);
+              s_logger.trace("Security Group Mgr: created new work item for " + vmId + "; id = " + work.getId());
             }
-            VmRulesetLogVO log = null;
-            SecurityGroupWorkVO work = null;
-
-            log = _rulesetLogDao.findByVmId(vmId);
-            if (log == null) {
-              log = new VmRulesetLogVO(vmId);
-              log = _rulesetLogDao.persist(log);
-            }
-
-            if (log != null && updateSeqno) {
-              log.incrLogsequence();
-              _rulesetLogDao.update(log.getId(), log);
-            }
-            work = _workDao.findByVmIdStep(vmId, Step.Scheduled);
-            if (work == null) {
-              work = new SecurityGroupWorkVO(vmId, null, null, SecurityGroupWork.Step.Scheduled, null);
-              work = _workDao.persist(work);
-              if (s_logger.isTraceEnabled()) {
-                s_logger.trace("Security Group Mgr: created new work item for " + vmId + "; id = " + work.getId());
-              }
-            }
-
-            work.setLogsequenceNumber(log.getLogsequence());
+          } else if (logSequence != null && !logSequence.equals(work.getLogsequenceNumber())) {
+            work.setLogsequenceNumber(logSequence);
             _workDao.update(work.getId(), work);
           }
         }
-      });
-
-      for (final Long vmId : affectedVms) {
-        _executorPool.schedule(new WorkerThread(), delayMs, TimeUnit.MILLISECONDS);
-      }
-    } finally {
-      _workLock.unlock();
-      if (s_logger.isTraceEnabled()) {
-        s_logger.trace("Security Group Mgr: released global work lock");
       }
+    });
+
+    for (int i = 0; i < vmIds.size(); i++) {
+      _executorPool.schedule(new WorkerThread(), delayMs, TimeUnit.MILLISECONDS);
     }
   }
 
@@ -525,6 +631,8 @@ public class SecurityGroupManagerImpl extends ManagerBase implements SecurityGro
     if (vm.getType() != VirtualMachine.Type.User || !isVmSecurityGroupEnabled(vm.getId())) {
       return;
     }
+    invalidateRulesAllowingVm(vm.getId());
+    forgetRulesetSent(vm.getId());
     final List<Long> affectedVms = getAffectedVmsForVmStop(vm);
     scheduleRulesetUpdateToHosts(affectedVms, true, null);
   }
@@ -548,6 +656,7 @@ public class SecurityGroupManagerImpl extends ManagerBase implements SecurityGro
     } else {
       final List<Long> affectedVms = new ArrayList<Long>();
       affectedVms.add(vm.getId());
+      forgetRulesetSent(vm.getId());
       scheduleRulesetUpdateToHosts(affectedVms, true, null);
     }
   }
@@ -768,6 +877,7 @@ public class SecurityGroupManagerImpl extends ManagerBase implements SecurityGro
       }
     });
 
+    _rulesetCache.invalidateGroup(securityGroup.getId());
     try {
       final ArrayList<Long> affectedVms = new ArrayList<Long>();
       affectedVms.addAll(_securityGroupVMMapDao.listVmIdsBySecurityGroup(securityGroup.getId()));
@@ -845,6 +955,7 @@ public class SecurityGroupManagerImpl extends ManagerBase implements SecurityGro
       }
     });
 
+    _rulesetCache.invalidateGroup(securityGroupId);
     try {
       final ArrayList<Long> affectedVms = new ArrayList<Long>();
       affectedVms.addAll(_securityGroupVMMapDao.listVmIdsBySecurityGroup(securityGroupId));
@@ -890,7 +1001,8 @@ public class SecurityGroupManagerImpl extends ManagerBase implements SecurityGro
     final Map<String, String> configs = _configDao.getConfiguration("Network", params);
     _numWorkerThreads = NumbersUtil.parseInt(configs.get(Config.SecurityGroupWorkerThreads.key()), WORKER_THREAD_COUNT);
     _timeBetweenCleanups = NumbersUtil.parseInt(configs.get(Config.SecurityGroupWorkCleanupInterval.key()), TIME_BETWEEN_CLEANUPS);
-    _globalWorkLockTimeout = NumbersUtil.parseInt(configs.get(Config.SecurityGroupWorkGlobalLockTimeout.key()), 300);
+    final int rulesetCacheTime = NumbersUtil.parseInt(configs.get(Config.SecurityGroupRulesetCacheTime.key()), 30);
+    _rulesetCache = new SecurityGroupRulesetCache(rulesetCacheTime * 1000l);
     /* register state listener, no matter security group is enabled or not */
     VirtualMachine.State.getStateMachine().registerListener(this);
 
@@ -899,8 +1011,8 @@ public class SecurityGroupManagerImpl extends ManagerBase implements SecurityGro
 
     _serverId = ManagementServerNode.getManagementServerId();
 
-    s_logger.info("SecurityGroupManager: num worker threads=" + _numWorkerThreads + ", time between cleanups=" + _timeBetweenCleanups + " global lock timeout="
-        + _globalWorkLockTimeout);
+    s_logger.info("SecurityGroupManager: num worker threads=" + _numWorkerThreads + ", time between cleanups=" + _timeBetweenCleanups + " ruleset cache time="
+        + rulesetCacheTime);
     createThreadPools();
 
     return true;
@@ -1009,11 +1121,18 @@ public class SecurityGroupManagerImpl extends ManagerBase implements SecurityGro
               }
               final SecurityGroupRulesCmd cmd = generateRulesetCmd(vm.getInstanceName(), vm.getPrivateIpAddress(), vm.getPrivateMacAddress(), vm.getId(),
                   generateRulesetSignature(ingressRules, egressRules), seqnum, ingressRules, egressRules, nicSecIps);
+              if (!shouldSendRuleset(userVmId, agentId, cmd)) {
+                if (s_logger.isDebugEnabled()) {
+                  s_logger.debug("Security Group work: ruleset of vm " + userVmId + " did not change, not sending it to host " + agentId);
+                }
+                return;
+              }
               final Commands cmds = new Commands(cmd);
               try {
                 _agentMgr.send(agentId, cmds, _answerListener);
               } catch (final AgentUnavailableException e) {
                 s_logger.debug("Unable to send ingress rules updates for vm: " + userVmId + "(agentid=" + agentId + ")");
+                forgetRulesetSent(userVmId);
                 _workDao.updateStep(work.getInstanceId(), seqnum, Step.Done);
               }
 
@@ -1063,6 +1182,7 @@ public class SecurityGroupManagerImpl extends ManagerBase implements SecurityGro
               if (_securityGroupVMMapDao.findByVmIdGroupId(userVmId, securityGroup.getId()) == null) {
                 final SecurityGroupVMMapVO groupVmMapVO = new SecurityGroupVMMapVO(securityGroup.getId(), userVmId);
                 _securityGroupVMMapDao.persist(groupVmMapVO);
+                _rulesetCache.invalidateMembers(securityGroup.getId());
               }
             }
             return true;
@@ -1093,6 +1213,7 @@ public class SecurityGroupManagerImpl extends ManagerBase implements SecurityGro
         if (userVm == null) {
           s_logger.warn("Failed to acquire lock on user vm id=" + userVmId);
         }
+        invalidateRulesAllowingVm(userVmId);
         final int n = _securityGroupVMMapDao.deleteVM(userVmId);
         s_logger.info("Disassociated " + n + " network groups " + " from uservm " + userVmId);
         _userVMDao.releaseFromLockTable(userVmId);
@@ -1137,6 +1258,7 @@ public class SecurityGroupManagerImpl extends ManagerBase implements SecurityGro
         }
 
         _securityGroupDao.expunge(groupId);
+        _rulesetCache.invalidateGroup(groupId);
 
         s_logger.debug("Deleted security group id=" + groupId);
 
@@ -1172,7 +1294,8 @@ public class SecurityGroupManagerImpl extends ManagerBase implements SecurityGro
       final Long seqno = newGroupStates.get(vmName).second();
 
       final VmRulesetLogVO log = _rulesetLogDao.findByVmId(vmId);
-      if (log != null && log.getLogsequence() != seqno) {
+      if (log != null && log.getLogsequence() != seqno && !isRulesetCurrent(vmId, agentId, seqno, log.getLogsequence())) {
+        forgetRulesetSent(vmId);
         affectedVms.add(vmId);
       }
     }
@@ -1199,6 +1322,7 @@ public class SecurityGroupManagerImpl extends ManagerBase implements SecurityGro
       s_logger.info("Network Group Work cleanup found " + unfinished.size() + " unfinished work items older than " + before.toString());
       final ArrayList<Long> affectedVms = new ArrayList<Long>();
       for (final SecurityGroupWorkVO work : unfinished) {
+        forgetRulesetSent(work.getInstanceId());
         affectedVms.add(work.getInstanceId());
         work.setStep(Step.Error);
         _workDao.update(work.getId(), work);
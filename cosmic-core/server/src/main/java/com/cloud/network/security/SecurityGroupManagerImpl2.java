@@ -16,11 +16,11 @@
 // under the License.
 package com.cloud.network.security;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -191,6 +191,12 @@ public class SecurityGroupManagerImpl2 extends SecurityGroupManagerImpl {
                     generateRulesetCmd(vm.getInstanceName(), vm.getPrivateIpAddress(), vm.getPrivateMacAddress(), vm.getId(), null, work.getLogsequenceNumber(),
                         ingressRules, egressRules, nicSecIps);
                 cmd.setMsId(_serverId);
+                if (!shouldSendRuleset(userVmId, agentId, cmd)) {
+                    if (s_logger.isDebugEnabled()) {
+                        s_logger.debug("SecurityGroupManager v2: ruleset of vm " + vm.getInstanceName() + " did not change, not sending it");
+                    }
+                    return;
+                }
                 if (s_logger.isDebugEnabled()) {
                     s_logger.debug("SecurityGroupManager v2: sending ruleset update for vm " + vm.getInstanceName() + ":ingress num rules=" +
                         cmd.getIngressRuleSet().length + ":egress num rules=" + cmd.getEgressRuleSet().length + " num cidrs=" + cmd.getTotalNumCidrs() + " sig=" +
@@ -204,6 +210,7 @@ public class SecurityGroupManagerImpl2 extends SecurityGroupManagerImpl {
                     }
                 } catch (AgentUnavailableException e) {
                     s_logger.debug("Unable to send updates for vm: " + userVmId + "(agentid=" + agentId + ")");
+                    forgetRulesetSent(userVmId);
                     _workTracker.handleException(agentId);
                 }
             }
@@ -229,38 +236,16 @@ public class SecurityGroupManagerImpl2 extends SecurityGroupManagerImpl {
      * then we get all ips, including the default nic ip. This is also probably the correct behavior.
      */
     @Override
-    protected Map<PortAndProto, Set<String>> generateRulesForVM(Long userVmId, SecurityRuleType type) {
-
-        Map<PortAndProto, Set<String>> allowed = new TreeMap<PortAndProto, Set<String>>();
-
-        List<SecurityGroupVMMapVO> groupsForVm = _securityGroupVMMapDao.listByInstanceId(userVmId);
-        for (SecurityGroupVMMapVO mapVO : groupsForVm) {
-            List<SecurityGroupRuleVO> rules = _securityGroupRuleDao.listBySecurityGroupId(mapVO.getSecurityGroupId(), type);
-            for (SecurityGroupRuleVO rule : rules) {
-                PortAndProto portAndProto = new PortAndProto(rule.getProtocol(), rule.getStartPort(), rule.getEndPort());
-                Set<String> cidrs = allowed.get(portAndProto);
-                if (cidrs == null) {
-                    cidrs = new TreeSet<String>(new CidrComparator());
-                }
-                if (rule.getAllowedNetworkId() != null) {
-                    List<SecurityGroupVMMapVO> allowedInstances = _securityGroupVMMapDao.listBySecurityGroup(rule.getAllowedNetworkId(), State.Running);
-                    for (SecurityGroupVMMapVO ngmapVO : allowedInstances) {
-                        //here, we differ from the superclass: instead of creating N more queries to the
-                        //nics table, we use what's already there in the VO since the listBySecurityGroup already
-                        //did a join with the nics table
-                        String cidr = ngmapVO.getGuestIpAddress() + "/32";
-                        cidrs.add(cidr);
-                    }
-                } else if (rule.getAllowedSourceIpCidr() != null) {
-                    cidrs.add(rule.getAllowedSourceIpCidr());
-                }
-                if (cidrs.size() > 0) {
-                    allowed.put(portAndProto, cidrs);
-                }
-            }
+    protected List<String> getRunningMemberCidrs(long groupId) {
+        List<String> cidrs = new ArrayList<String>();
+        List<SecurityGroupVMMapVO> allowedInstances = _securityGroupVMMapDao.listBySecurityGroup(groupId, State.Running);
+        for (SecurityGroupVMMapVO ngmapVO : allowedInstances) {
+            //here, we differ from the superclass: instead of creating N more queries to the
+            //nics table, we use what's already there in the VO since the listBySecurityGroup already
+            //did a join with the nics table
+            cidrs.add(ngmapVO.getGuestIpAddress() + "/32");
         }
-
-        return allowed;
+        return cidrs;
     }
 
     public int getQueueSize() {
@@ -0,0 +1,163 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.network.security;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.cloud.network.security.SecurityGroupManagerImpl.PortAndProto;
+import com.cloud.network.security.SecurityRule.SecurityRuleType;
+import com.cloud.utils.Pair;
+
+/**
+ * Compiled rules of security groups. The ruleset of a vm is composed from the compiled rules of its
+ * groups, so a change in a group with many members compiles the rules of that group once instead
+ * of generating them from the database for every member.
+ *
+ * The compiled rules of a group depend on the rules of the group and on the running members of
+ * the groups its rules allow. An entry is dropped when either changes on this management server.
+ * Changes can also be made on other management servers, so every lookup compares the version of
+ * the entry, read from the database, with the current one and compiles the rules again when it
+ * differs. Entries are compiled again after maxAgeMs regardless.
+ */
+public class SecurityGroupRulesetCache {
+
+    /**
+     * Compiles the rules of one group into the cidrs allowed per port and protocol, and adds the
+     * groups whose members the rules allow to allowedGroups.
+     */
+    public interface RulesCompiler {
+        Map<PortAndProto, Set<String>> compile(long groupId, SecurityRuleType type, Set<Long> allowedGroups);
+    }
+
+    /**
+     * Reads the version of the rules of one group from the database. It is cheaper than compiling the
+     * rules, and changes whenever the compiled rules would change.
+     */
+    public interface RulesVersion {
+        Object version(long groupId, SecurityRuleType type);
+    }
+
+    private final Map<Pair<Long, String>, CompiledRules> _rules = new ConcurrentHashMap<Pair<Long, String>, CompiledRules>();
+    // changed by every invalidation, so rules compiled while something changed are not kept
+    private final AtomicLong _generation = new AtomicLong();
+    private final AtomicLong _hits = new AtomicLong();
+    private final AtomicLong _misses = new AtomicLong();
+    private final AtomicLong _stale = new AtomicLong();
+    private final long _maxAgeMs;
+
+    public SecurityGroupRulesetCache(final long maxAgeMs) {
+        _maxAgeMs = maxAgeMs;
+    }
+
+    /**
+     * @return the compiled rules of the group, these must not be modified
+     */
+    public Map<PortAndProto, Set<String>> get(final long groupId, final SecurityRuleType type, final RulesVersion versions, final RulesCompiler compiler) {
+        final Pair<Long, String> key = new Pair<Long, String>(groupId, type.getType());
+        final long now = System.currentTimeMillis();
+        final long generation = _generation.get();
+        if (_maxAgeMs <= 0) {
+            _misses.incrementAndGet();
+            return Collections.unmodifiableMap(compiler.compile(groupId, type, new HashSet<Long>()));
+        }
+
+        // the version is read before the rules are compiled, so a change in between makes the entry stale
+        final Object version = versions.version(groupId, type);
+        final CompiledRules cached = _rules.get(key);
+        if (cached != null && now - cached.compiledAt <= _maxAgeMs) {
+            if (cached.version.equals(version)) {
+                _hits.incrementAndGet();
+                return cached.rules;
+            }
+            _stale.incrementAndGet();
+        }
+
+        _misses.incrementAndGet();
+        final Set<Long> allowedGroups = new HashSet<Long>();
+        final Map<PortAndProto, Set<String>> rules = Collections.unmodifiableMap(compiler.compile(groupId, type, allowedGroups));
+        if (generation == _generation.get()) {
+            _rules.put(key, new CompiledRules(rules, allowedGroups, version, now));
+        }
+        return rules;
+    }
+
+    /**
+     * Drops the compiled rules of a group whose rules changed.
+     */
+    public void invalidateGroup(final long groupId) {
+        _generation.incrementAndGet();
+        _rules.remove(new Pair<Long, String>(groupId, SecurityRuleType.IngressRule.getType()));
+        _rules.remove(new Pair<Long, String>(groupId, SecurityRuleType.EgressRule.getType()));
+    }
+
+    /**
+     * Drops the compiled rules of the groups whose rules allow a group whose running members changed.
+     */
+    public void invalidateMembers(final long groupId) {
+        _generation.incrementAndGet();
+        final Iterator<CompiledRules> it = _rules.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().allowedGroups.contains(groupId)) {
+                it.remove();
+            }
+        }
+    }
+
+    public void invalidateAll() {
+        _generation.incrementAndGet();
+        _rules.clear();
+    }
+
+    public int size() {
+        return _rules.size();
+    }
+
+    public long getHits() {
+        return _hits.get();
+    }
+
+    public long getMisses() {
+        return _misses.get();
+    }
+
+    /**
+     * @return the number of entries that were compiled again because the rules changed elsewhere
+     */
+    public long getStale() {
+        return _stale.get();
+    }
+
+    private static class CompiledRules {
+        private final Map<PortAndProto, Set<String>> rules;
+        private final Set<Long> allowedGroups;
+        private final Object version;
+        private final long compiledAt;
+
+        CompiledRules(final Map<PortAndProto, Set<String>> rules, final Set<Long> allowedGroups, final Object version, final long compiledAt) {
+            this.rules = rules;
+            this.allowedGroups = allowedGroups;
+            this.version = version;
+            this.compiledAt = compiledAt;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.resourcelimit;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import com.cloud.configuration.Resource.ResourceType;
+import com.cloud.utils.Pair;
+
+/**
+ * Headroom this management server has leased on the resource counts of domains.
+ *
+ * A lease is a part of the headroom (limit - count) of one domain and resource type, taken while
+ * the resource_count row of the domain is locked. Until it expires or runs out, limit checks
+ * against the domain are made against the lease in memory, so they no longer lock the rows of
+ * the parent domains. A lease is only good for the limit it was granted under, so a limit that is
+ * changed on any management server stops the leases of the domain as soon as the change is read.
+ * Changes to the counts of a domain are kept here as pending deltas and are written to the database
+ * by a reconciler, one row per transaction.
+ */
+public class DomainResourceLeases {
+
+    private final Map<Pair<Long, ResourceType>, Lease> _leases = new ConcurrentHashMap<Pair<Long, ResourceType>, Lease>();
+    private final Map<Pair<Long, ResourceType>, AtomicLong> _pending = new ConcurrentHashMap<Pair<Long, ResourceType>, AtomicLong>();
+    private final long _leaseTimeMs;
+    private final LongSupplier _clock;
+
+    public DomainResourceLeases(final long leaseTimeMs) {
+        this(leaseTimeMs, System::currentTimeMillis);
+    }
+
+    /**
+     * @param clock the time in milliseconds the leases expire against
+     */
+    public DomainResourceLeases(final long leaseTimeMs, final LongSupplier clock) {
+        _leaseTimeMs = leaseTimeMs;
+        _clock = clock;
+    }
+
+    /**
+     * @param limit the current limit of the domain, a lease granted under another limit is dropped
+     * @return true if there is a lease for the domain that has room for the amount
+     */
+    public boolean covers(final long domainId, final ResourceType type, final long amount, final long limit) {
+        final Pair<Long, ResourceType> key = new Pair<Long, ResourceType>(domainId, type);
+        final Lease lease = _leases.get(key);
+        if (lease == null) {
+            return false;
+        }
+        if (_clock.getAsLong() > lease.expiresAt || lease.limit != limit) {
+            _leases.remove(key, lease);
+            return false;
+        }
+        return lease.remaining.get() >= amount;
+    }
+
+    /**
+     * Replaces the lease of a domain.
+     *
+     * @param headroom the headroom that is leased, Long.MAX_VALUE for a domain without a limit
+     * @param limit    the limit of the domain the headroom was computed against
+     */
+    public void grant(final long domainId, final ResourceType type, final long headroom, final long limit) {
+        _leases.put(new Pair<Long, ResourceType>(domainId, type), new Lease(headroom, limit, _clock.getAsLong() + _leaseTimeMs));
+    }
+
+    public void revoke(final long domainId, final ResourceType type) {
+        _leases.remove(new Pair<Long, ResourceType>(domainId, type));
+    }
+
+    /**
+     * Records a change of the count of a domain. An increment is taken from the lease of the domain,
+     * a decrement gives the headroom back to it.
+     */
+    public void consume(final long domainId, final ResourceType type, final long delta) {
+        final Pair<Long, ResourceType> key = new Pair<Long, ResourceType>(domainId, type);
+        final Lease lease = _leases.get(key);
+        if (lease != null && lease.remaining.get() != Long.MAX_VALUE) {
+            lease.remaining.addAndGet(-delta);
+        }
+        addPending(key, delta);
+    }
+
+    public long getPending(final long domainId, final ResourceType type) {
+        final AtomicLong pending = _pending.get(new Pair<Long, ResourceType>(domainId, type));
+        return pending == null ? 0 : pending.get();
+    }
+
+    /**
+     * Takes the pending delta of one domain, to be written to its count.
+     */
+    public long drainPending(final long domainId, final ResourceType type) {
+        final AtomicLong pending = _pending.get(new Pair<Long, ResourceType>(domainId, type));
+        return pending == null ? 0 : pending.getAndSet(0);
+    }
+
+    /**
+     * Takes the pending deltas of all domains. Deltas that could not be written are given back with
+     * restorePending().
+     */
+    public Map<Pair<Long, ResourceType>, Long> drainAllPending() {
+        final Map<Pair<Long, ResourceType>, Long> drained = new HashMap<Pair<Long, ResourceType>, Long>();
+        for (final Map.Entry<Pair<Long, ResourceType>, AtomicLong> entry : _pending.entrySet()) {
+            final long delta = entry.getValue().getAndSet(0);
+            if (delta != 0) {
+                drained.put(entry.getKey(), delta);
+            }
+        }
+        return drained;
+    }
+
+    public void restorePending(final long domainId, final ResourceType type, final long delta) {
+        addPending(new Pair<Long, ResourceType>(domainId, type), delta);
+    }
+
+    private void addPending(final Pair<Long, ResourceType> key, final long delta) {
+        _pending.computeIfAbsent(key, k -> new AtomicLong()).addAndGet(delta);
+    }
+
+    private static class Lease {
+        private final AtomicLong remaining;
+        private final long limit;
+        private final long expiresAt;
+
+        Lease(final long remaining, final long limit, final long expiresAt) {
+            this.remaining = new AtomicLong(remaining);
+            this.limit = limit;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
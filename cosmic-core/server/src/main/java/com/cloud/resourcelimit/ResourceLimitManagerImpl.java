@@ -18,7 +18,9 @@ package com.cloud.resourcelimit;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -30,6 +32,8 @@ import javax.inject.Inject;
 import javax.naming.ConfigurationException;
 
 import com.cloud.alert.AlertManager;
+import com.cloud.cluster.ManagementServerHost;
+import com.cloud.cluster.dao.ManagementServerHostDao;
 import com.cloud.configuration.Config;
 import com.cloud.configuration.Resource;
 import com.cloud.configuration.Resource.ResourceOwnerType;
@@ -71,6 +75,7 @@ import com.cloud.user.AccountVO;
 import com.cloud.user.ResourceLimitService;
 import com.cloud.user.dao.AccountDao;
 import com.cloud.utils.NumbersUtil;
+import com.cloud.utils.Pair;
 import com.cloud.utils.component.ManagerBase;
 import com.cloud.utils.concurrency.NamedThreadFactory;
 import com.cloud.utils.db.DB;
@@ -84,7 +89,9 @@ import com.cloud.utils.db.SearchCriteria.Func;
 import com.cloud.utils.db.SearchCriteria.Op;
 import com.cloud.utils.db.Transaction;
 import com.cloud.utils.db.TransactionCallback;
+import com.cloud.utils.db.TransactionCallbackNoReturn;
 import com.cloud.utils.db.TransactionCallbackWithExceptionNoReturn;
+import com.cloud.utils.db.TransactionLegacy;
 import com.cloud.utils.db.TransactionStatus;
 import com.cloud.utils.exception.CloudRuntimeException;
 import com.cloud.vm.UserVmVO;
@@ -154,13 +161,25 @@ public class ResourceLimitManagerImpl extends ManagerBase implements ResourceLim
     private VlanDao _vlanDao;
     @Inject
     private SnapshotDataStoreDao _snapshotDataStoreDao;
+    @Inject
+    private ManagementServerHostDao _msHostDao;
 
     protected GenericSearchBuilder<TemplateDataStoreVO, SumCount> templateSizeSearch;
     protected GenericSearchBuilder<SnapshotDataStoreVO, SumCount> snapshotSizeSearch;
 
     protected SearchBuilder<ResourceCountVO> ResourceCountSearch;
+    protected SearchBuilder<AccountVO> AccountIdSearch;
+    protected SearchBuilder<DomainVO> DomainIdSearch;
     ScheduledExecutorService _rcExecutor;
     long _resourceCountCheckInterval = 0;
+    int _resourceCountCheckBatchSize = 100;
+
+    // leases on the free resources of domains, null when every check locks the domain counts
+    DomainResourceLeases _domainLeases;
+    int _leasePercent = 0;
+    int _reconcileInterval = 1000;
+    volatile int _activeManagementServers = 1;
+    ScheduledExecutorService _reconcileExecutor;
     Map<ResourceType, Long> accountResourceLimitMap = new EnumMap<ResourceType, Long>(ResourceType.class);
     Map<ResourceType, Long> domainResourceLimitMap = new EnumMap<ResourceType, Long>(ResourceType.class);
     Map<ResourceType, Long> projectResourceLimitMap = new EnumMap<ResourceType, Long>(ResourceType.class);
@@ -170,11 +189,18 @@ public class ResourceLimitManagerImpl extends ManagerBase implements ResourceLim
         if (_resourceCountCheckInterval > 0) {
             _rcExecutor.scheduleAtFixedRate(new ResourceCountCheckTask(), _resourceCountCheckInterval, _resourceCountCheckInterval, TimeUnit.SECONDS);
         }
+        if (_domainLeases != null) {
+            _reconcileExecutor.scheduleWithFixedDelay(new ResourceCountReconcileTask(), _reconcileInterval, _reconcileInterval, TimeUnit.MILLISECONDS);
+        }
         return true;
     }
 
     @Override
     public boolean stop() {
+        if (_reconcileExecutor != null) {
+            _reconcileExecutor.shutdown();
+            reconcileDomainResourceCounts();
+        }
         return true;
     }
 
@@ -205,10 +231,28 @@ public class ResourceLimitManagerImpl extends ManagerBase implements ResourceLim
         snapshotSizeSearch.join("snapshots", join2, snapshotSizeSearch.entity().getSnapshotId(), join2.entity().getId(), JoinBuilder.JoinType.INNER);
         snapshotSizeSearch.done();
 
+        AccountIdSearch = _accountDao.createSearchBuilder();
+        AccountIdSearch.and("id", AccountIdSearch.entity().getId(), Op.GT);
+        AccountIdSearch.done();
+
+        DomainIdSearch = _domainDao.createSearchBuilder();
+        DomainIdSearch.and("id", DomainIdSearch.entity().getId(), Op.GT);
+        DomainIdSearch.done();
+
         _resourceCountCheckInterval = NumbersUtil.parseInt(_configDao.getValue(Config.ResourceCountCheckInterval.key()), 0);
         if (_resourceCountCheckInterval > 0) {
             _rcExecutor = Executors.newScheduledThreadPool(1, new NamedThreadFactory("ResourceCountChecker"));
         }
+        _resourceCountCheckBatchSize = NumbersUtil.parseInt(_configDao.getValue(Config.ResourceCountCheckBatchSize.key()), 100);
+
+        _leasePercent = NumbersUtil.parseInt(_configDao.getValue(Config.ResourceCountLeasePercent.key()), 0);
+        if (_leasePercent > 0) {
+            _leasePercent = Math.min(_leasePercent, 100);
+            final int leaseTime = NumbersUtil.parseInt(_configDao.getValue(Config.ResourceCountLeaseTime.key()), 30);
+            _reconcileInterval = NumbersUtil.parseInt(_configDao.getValue(Config.ResourceCountReconcileInterval.key()), 1000);
+            _domainLeases = new DomainResourceLeases(leaseTime * 1000L);
+            _reconcileExecutor = Executors.newScheduledThreadPool(1, new NamedThreadFactory("ResourceCountReconciler"));
+        }
 
         try {
             projectResourceLimitMap.put(Resource.ResourceType.public_ip, Long.parseLong(_configDao.getValue(Config.DefaultMaxProjectPublicIPs.key())));
@@ -429,11 +473,18 @@ public class ResourceLimitManagerImpl extends ManagerBase implements ResourceLim
         Transaction.execute(new TransactionCallbackWithExceptionNoReturn<ResourceAllocationException>() {
             @Override
             public void doInTransactionWithoutResult(TransactionStatus status) throws ResourceAllocationException {
-            // Lock all rows first so nobody else can read it
-            Set<Long> rowIdsToLock = _resourceCountDao.listAllRowsToUpdate(account.getId(), ResourceOwnerType.Account, type);
-            SearchCriteria<ResourceCountVO> sc = ResourceCountSearch.create();
-            sc.setParameters("id", rowIdsToLock.toArray());
-            _resourceCountDao.lockRows(sc, null, true);
+            // Lock all rows first so nobody else can read it, with leases the domain rows are not locked
+            Set<Long> rowIdsToLock;
+            if (_domainLeases != null) {
+                rowIdsToLock = listAccountRowToUpdate(account.getId(), type);
+            } else {
+                rowIdsToLock = _resourceCountDao.listAllRowsToUpdate(account.getId(), ResourceOwnerType.Account, type);
+            }
+            if (!rowIdsToLock.isEmpty()) {
+                SearchCriteria<ResourceCountVO> sc = ResourceCountSearch.create();
+                sc.setParameters("id", rowIdsToLock.toArray());
+                _resourceCountDao.lockRows(sc, null, true);
+            }
 
             // Check account limits
             long accountLimit = findCorrectResourceLimitForAccount(account, type);
@@ -460,6 +511,11 @@ public class ResourceLimitManagerImpl extends ManagerBase implements ResourceLim
                 domainId = account.getDomainId();
             }
 
+            if (_domainLeases != null) {
+                checkDomainResourceLimitsWithLeases(domainId, type, numResources);
+                return;
+            }
+
             while (domainId != null) {
                 DomainVO domain = _domainDao.findById(domainId);
                 // no limit check if it is ROOT domain
@@ -476,6 +532,72 @@ public class ResourceLimitManagerImpl extends ManagerBase implements ResourceLim
         });
     }
 
+    /**
+     * Checks the limits of a domain and its parent domains against the leases of this management
+     * server. The limits are read from the database on every check, so a lease granted under a limit
+     * that has since been changed, on this or another management server, is not used. A domain without
+     * a lease that has room for the resources is checked against its locked count, and gets a new lease.
+     */
+    void checkDomainResourceLimitsWithLeases(Long domainId, final ResourceType type, final long numResources) throws ResourceAllocationException {
+        while (domainId != null) {
+            DomainVO domain = _domainDao.findById(domainId);
+            // no limit check if it is ROOT domain
+            if (domainId != Domain.ROOT_DOMAIN) {
+                final long domainLimit = findCorrectResourceLimitForDomain(domain, type);
+                if (!_domainLeases.covers(domainId, type, numResources, domainLimit)) {
+                    leaseDomainResources(domain, type, numResources, domainLimit);
+                }
+            }
+            domainId = domain.getParent();
+        }
+    }
+
+    @DB
+    protected void leaseDomainResources(final DomainVO domain, final ResourceType type, final long numResources, final long domainLimit)
+        throws ResourceAllocationException {
+        if (domainLimit == Resource.RESOURCE_UNLIMITED) {
+            _domainLeases.grant(domain.getId(), type, Long.MAX_VALUE, domainLimit);
+            return;
+        }
+
+        Transaction.execute(new TransactionCallbackWithExceptionNoReturn<ResourceAllocationException>() {
+            @Override
+            public void doInTransactionWithoutResult(TransactionStatus status) throws ResourceAllocationException {
+                leaseDomainHeadroom(domain, type, numResources, domainLimit);
+            }
+        });
+    }
+
+    /**
+     * Leases a share of the headroom of a domain, must be called in a transaction.
+     */
+    protected void leaseDomainHeadroom(final DomainVO domain, final ResourceType type, final long numResources, final long domainLimit) throws ResourceAllocationException {
+        ResourceCountVO domainRC = _resourceCountDao.findByOwnerAndType(domain.getId(), ResourceOwnerType.Domain, type);
+        if (domainRC == null) {
+            return;
+        }
+        domainRC = _resourceCountDao.lockRow(domainRC.getId(), true);
+
+        // changes of this management server that are not reconciled yet are part of the count
+        long domainCount = domainRC.getCount() + _domainLeases.getPending(domain.getId(), type);
+        long headroom = domainLimit - domainCount;
+        if (headroom < numResources) {
+            _domainLeases.revoke(domain.getId(), type);
+            throw new ResourceAllocationException("Maximum number of resources of type '" + type + "' for domain id=" + domain.getId() + " has been exceeded.", type);
+        }
+
+        // the other management servers that are up can lease the same share of the headroom
+        _domainLeases.grant(domain.getId(), type, headroom * _leasePercent / 100 / _activeManagementServers, domainLimit);
+    }
+
+    private Set<Long> listAccountRowToUpdate(long accountId, ResourceType type) {
+        ResourceCountVO accountRC = _resourceCountDao.findByOwnerAndType(accountId, ResourceOwnerType.Account, type);
+        if (accountRC == null) {
+            return Collections.emptySet();
+        }
+        return Collections.singleton(accountRC.getId());
+    }
+
     @Override
     public List<ResourceLimitVO> searchForLimits(Long id, Long accountId, Long domainId, Integer type, Long startIndex, Long pageSizeVal) {
         Account caller = CallContext.current().getCallingAccount();
@@ -784,20 +906,38 @@ public class ResourceLimitManagerImpl extends ManagerBase implements ResourceLim
                 @Override
                 public Boolean doInTransaction(TransactionStatus status) {
                     boolean result = true;
-            Set<Long> rowsToLock = _resourceCountDao.listAllRowsToUpdate(accountId, ResourceOwnerType.Account, type);
+            Set<Long> rowsToLock;
+            if (_domainLeases != null) {
+                rowsToLock = listAccountRowToUpdate(accountId, type);
+            } else {
+                rowsToLock = _resourceCountDao.listAllRowsToUpdate(accountId, ResourceOwnerType.Account, type);
+            }
 
             // Lock rows first
-            SearchCriteria<ResourceCountVO> sc = ResourceCountSearch.create();
-            sc.setParameters("id", rowsToLock.toArray());
-            List<ResourceCountVO> rowsToUpdate = _resourceCountDao.lockRows(sc, null, true);
-
-            for (ResourceCountVO rowToUpdate : rowsToUpdate) {
-                if (!_resourceCountDao.updateById(rowToUpdate.getId(), increment, delta)) {
-                    s_logger.trace("Unable to update resource count for the row " + rowToUpdate);
-                    result = false;
+            if (!rowsToLock.isEmpty()) {
+                SearchCriteria<ResourceCountVO> sc = ResourceCountSearch.create();
+                sc.setParameters("id", rowsToLock.toArray());
+                List<ResourceCountVO> rowsToUpdate = _resourceCountDao.lockRows(sc, null, true);
+
+                for (ResourceCountVO rowToUpdate : rowsToUpdate) {
+                    if (!_resourceCountDao.updateById(rowToUpdate.getId(), increment, delta)) {
+                        s_logger.trace("Unable to update resource count for the row " + rowToUpdate);
+                        result = false;
+                    }
                 }
             }
 
+            if (_domainLeases != null && result) {
+                // the counts of the domains are written by the reconciler once the change is committed
+                final long change = increment ? delta : -delta;
+                final Set<Long> domainIds = _domainDao.getDomainParentIds(_accountDao.findByIdIncludingRemoved(accountId).getDomainId());
+                TransactionLegacy.currentTxn().runAfterCommit(() -> {
+                    for (Long domainId : domainIds) {
+                        _domainLeases.consume(domainId, type, change);
+                    }
+                });
+            }
+
                     return result;
                 }
             });
@@ -820,6 +960,12 @@ public class ResourceLimitManagerImpl extends ManagerBase implements ResourceLim
             sc.setParameters("id", rowIdsToLock.toArray());
             _resourceCountDao.lockRows(sc, null, true);
 
+            if (_domainLeases != null) {
+                // changes that are not reconciled yet are part of the recalculated count
+                _domainLeases.drainPending(domainId, type);
+                _domainLeases.revoke(domainId, type);
+            }
+
             ResourceCountVO domainRC = _resourceCountDao.findByOwnerAndType(domainId, ResourceOwnerType.Domain, type);
             long oldCount = domainRC.getCount();
 
@@ -1061,7 +1207,110 @@ public class ResourceLimitManagerImpl extends ManagerBase implements ResourceLim
         }
     }
 
+    protected void verifyDomainResourceCount(final long domainId, final ResourceType type, final Map<Pair<Long, ResourceType>, Long> discrepancies) {
+        long expectedCount = 0;
+        if (type == ResourceType.project) {
+            expectedCount = expectedCount + _projectDao.countProjectsForDomain(domainId);
+        }
+        for (DomainVO domainChild : _domainDao.findImmediateChildrenForParent(domainId)) {
+            expectedCount = expectedCount + getDomainResourceCount(domainChild.getId(), type);
+        }
+        if (type.supportsOwner(ResourceOwnerType.Account)) {
+            for (AccountVO account : _accountDao.findActiveAccountsForDomain(domainId)) {
+                expectedCount = expectedCount + _resourceCountDao.getResourceCount(account.getId(), ResourceOwnerType.Account, type);
+            }
+        }
+
+        final long count = getDomainResourceCount(domainId, type);
+        final Pair<Long, ResourceType> key = new Pair<Long, ResourceType>(domainId, type);
+        if (count == expectedCount) {
+            discrepancies.remove(key);
+            return;
+        }
+
+        // a difference seen once can be a change that is not written yet, it is fixed when it is seen again
+        final Long previous = discrepancies.put(key, expectedCount - count);
+        if (previous == null || previous.longValue() != expectedCount - count) {
+            return;
+        }
+        discrepancies.remove(key);
+
+        final long newCount = expectedCount;
+        Transaction.execute(new TransactionCallbackNoReturn() {
+            @Override
+            public void doInTransactionWithoutResult(TransactionStatus status) {
+                ResourceCountVO domainRC = _resourceCountDao.findByOwnerAndType(domainId, ResourceOwnerType.Domain, type);
+                if (domainRC == null) {
+                    return;
+                }
+                _resourceCountDao.lockRow(domainRC.getId(), true);
+                if (_domainLeases != null) {
+                    _domainLeases.drainPending(domainId, type);
+                    _domainLeases.revoke(domainId, type);
+                }
+                _resourceCountDao.setResourceCount(domainId, ResourceOwnerType.Domain, type, newCount);
+            }
+        });
+        s_logger.info("Discrepency in the resource count " + "(original count=" + count + " correct count = " + newCount + ") for type " + type +
+            " for domain ID " + domainId + " is fixed during resource count check.");
+    }
+
+    private long getDomainResourceCount(long domainId, ResourceType type) {
+        long count = _resourceCountDao.getResourceCount(domainId, ResourceOwnerType.Domain, type);
+        if (_domainLeases != null) {
+            count = count + _domainLeases.getPending(domainId, type);
+        }
+        return count;
+    }
+
+    /**
+     * Writes the changes of the domain resource counts kept with the leases, one row per transaction.
+     */
+    protected void reconcileDomainResourceCounts() {
+        for (final Map.Entry<Pair<Long, ResourceType>, Long> entry : _domainLeases.drainAllPending().entrySet()) {
+            final long domainId = entry.getKey().first();
+            final ResourceType type = entry.getKey().second();
+            final long delta = entry.getValue();
+            try {
+                Transaction.execute(new TransactionCallbackNoReturn() {
+                    @Override
+                    public void doInTransactionWithoutResult(TransactionStatus status) {
+                        ResourceCountVO domainRC = _resourceCountDao.findByOwnerAndType(domainId, ResourceOwnerType.Domain, type);
+                        if (domainRC != null) {
+                            _resourceCountDao.lockRow(domainRC.getId(), true);
+                            _resourceCountDao.updateById(domainRC.getId(), delta > 0, Math.abs(delta));
+                        }
+                    }
+                });
+            } catch (Exception e) {
+                s_logger.warn("Failed to update resource count of type " + type + " for domain id=" + domainId + ", will retry", e);
+                _domainLeases.restorePending(domainId, type, delta);
+            }
+        }
+    }
+
+    protected class ResourceCountReconcileTask extends ManagedContextRunnable {
+        @Override
+        protected void runInContext() {
+            try {
+                _activeManagementServers = Math.max(1, _msHostDao.listBy(ManagementServerHost.State.Up).size());
+                reconcileDomainResourceCounts();
+            } catch (Exception e) {
+                s_logger.warn("Caught exception while reconciling domain resource counts", e);
+            }
+        }
+    }
+
+    /**
+     * Verifies the resource counts of the next batch of accounts and of domains on every run, instead
+     * of recalculating all counts at once. The counts of an account are recalculated from its
+     * resources, the counts of a domain are compared with the counts of its accounts and sub domains.
+     */
     protected class ResourceCountCheckTask extends ManagedContextRunnable {
+        private long _lastAccountId = 0;
+        private long _lastDomainId = 0;
+        private final Map<Pair<Long, ResourceType>, Long> _domainDiscrepancies = new HashMap<Pair<Long, ResourceType>, Long>();
+
         public ResourceCountCheckTask() {
 
         }
@@ -1069,26 +1318,38 @@ public class ResourceLimitManagerImpl extends ManagerBase implements ResourceLim
         @Override
         protected void runInContext() {
             s_logger.info("Running resource count check periodic task");
-            List<DomainVO> domains = _domainDao.findImmediateChildrenForParent(Domain.ROOT_DOMAIN);
+            if (_domainLeases != null) {
+                reconcileDomainResourceCounts();
+            }
 
-            // recalculateDomainResourceCount will take care of re-calculation of resource counts for sub-domains
-            // and accounts of the sub-domains also. so just loop through immediate children of root domain
-            for (Domain domain : domains) {
+            SearchCriteria<AccountVO> accountSc = AccountIdSearch.create();
+            accountSc.setParameters("id", _lastAccountId);
+            List<AccountVO> accounts = _accountDao.search(accountSc, new Filter(AccountVO.class, "id", true, 0L, (long)_resourceCountCheckBatchSize));
+            for (AccountVO account : accounts) {
                 for (ResourceType type : ResourceCount.ResourceType.values()) {
-                    if (type.supportsOwner(ResourceOwnerType.Domain)) {
-                        recalculateDomainResourceCount(domain.getId(), type);
+                    if (type.supportsOwner(ResourceOwnerType.Account)) {
+                        recalculateAccountResourceCount(account.getId(), type);
                     }
                 }
+                _lastAccountId = account.getId();
+            }
+            if (accounts.size() < _resourceCountCheckBatchSize) {
+                _lastAccountId = 0;
             }
 
-            // run through the accounts in the root domain
-            List<AccountVO> accounts = _accountDao.findActiveAccountsForDomain(Domain.ROOT_DOMAIN);
-            for (AccountVO account : accounts) {
+            SearchCriteria<DomainVO> domainSc = DomainIdSearch.create();
+            domainSc.setParameters("id", _lastDomainId);
+            List<DomainVO> domains = _domainDao.search(domainSc, new Filter(DomainVO.class, "id", true, 0L, (long)_resourceCountCheckBatchSize));
+            for (DomainVO domain : domains) {
                 for (ResourceType type : ResourceCount.ResourceType.values()) {
-                    if (type.supportsOwner(ResourceOwnerType.Account)) {
-                        recalculateAccountResourceCount(account.getId(), type);
+                    if (type.supportsOwner(ResourceOwnerType.Domain)) {
+                        verifyDomainResourceCount(domain.getId(), type, _domainDiscrepancies);
                     }
                 }
+                _lastDomainId = domain.getId();
+            }
+            if (domains.size() < _resourceCountCheckBatchSize) {
+                _lastDomainId = 0;
             }
         }
     }
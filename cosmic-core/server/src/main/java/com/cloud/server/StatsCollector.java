@@ -61,9 +61,8 @@ import org.apache.cloudstack.framework.config.dao.ConfigurationDao;
 import org.apache.cloudstack.managed.context.ManagedContextRunnable;
 import org.apache.cloudstack.storage.datastore.db.ImageStoreDao;
 import org.apache.cloudstack.storage.datastore.db.PrimaryDataStoreDao;
-import org.apache.cloudstack.storage.datastore.db.StoragePoolVO;
-import org.apache.cloudstack.utils.graphite.GraphiteClient;
-import org.apache.cloudstack.utils.graphite.GraphiteException;
+import org.apache.cloudstack.utils.graphite.GraphiteExporter;
+import org.apache.cloudstack.utils.graphite.MetricsExporter;
 import org.apache.cloudstack.utils.usage.UsageUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -178,6 +177,7 @@ public class StatsCollector extends ManagerBase implements ComponentMethodInterc
     int externalStatsPort = -1;
     boolean externalStatsEnabled = false;
     ExternalStatsProtocol externalStatsType = ExternalStatsProtocol.NONE;
+    MetricsExporter externalStatsExporter = null;
 
     private ScheduledExecutorService _diskStatsUpdateExecutor;
     private int _usageAggregationRange = 1440;
@@ -242,6 +242,16 @@ public class StatsCollector extends ManagerBase implements ComponentMethodInterc
                 }
 
                 externalStatsEnabled = true;
+
+                if (externalStatsType == ExternalStatsProtocol.GRAPHITE) {
+                    if (externalStatsPort == -1) {
+                        externalStatsPort = GraphiteExporter.DEFAULT_PORT;
+                    }
+                    if (externalStatsExporter != null) {
+                        externalStatsExporter.close();
+                    }
+                    externalStatsExporter = createGraphiteExporter(uri.getQuery());
+                }
             } catch (final URISyntaxException e) {
                 s_logger.debug("Failed to parse external statistics URI: " + e.getMessage());
             }
@@ -313,6 +323,48 @@ public class StatsCollector extends ManagerBase implements ComponentMethodInterc
 
     }
 
+    /**
+     * The query of stats.output.uri tunes the exporter, as in graphite://host:2003/prefix?protocol=tcp&buffer=100000&packet=1400&drop=oldest
+     */
+    private GraphiteExporter createGraphiteExporter(final String query) {
+        final Map<String, String> options = new HashMap<>();
+        if (query != null) {
+            for (final String option : query.split("&")) {
+                final String[] keyValue = option.split("=", 2);
+                if (keyValue.length == 2) {
+                    options.put(keyValue[0].toLowerCase(), keyValue[1]);
+                }
+            }
+        }
+
+        GraphiteExporter.Protocol protocol = GraphiteExporter.Protocol.UDP;
+        GraphiteExporter.DropPolicy dropPolicy = GraphiteExporter.DropPolicy.NEWEST;
+        try {
+            if (options.containsKey("protocol")) {
+                protocol = GraphiteExporter.Protocol.valueOf(options.get("protocol").toUpperCase());
+            }
+            if (options.containsKey("drop")) {
+                dropPolicy = GraphiteExporter.DropPolicy.valueOf(options.get("drop").toUpperCase());
+            }
+        } catch (final IllegalArgumentException e) {
+            s_logger.warn("Ignoring invalid Graphite options " + query + ": " + e.getMessage());
+        }
+        final int bufferSize = Math.max(1, NumbersUtil.parseInt(options.get("buffer"), GraphiteExporter.DEFAULT_BUFFER_SIZE));
+        final int packetSize = Math.max(512, NumbersUtil.parseInt(options.get("packet"), GraphiteExporter.DEFAULT_PACKET_SIZE));
+
+        final GraphiteExporter exporter = new GraphiteExporter(externalStatsHost, externalStatsPort, protocol, bufferSize, packetSize, dropPolicy);
+        exporter.start();
+        return exporter;
+    }
+
+    @Override
+    public boolean stop() {
+        if (externalStatsExporter != null) {
+            externalStatsExporter.close();
+        }
+        return true;
+    }
+
     class HostCollector extends ManagedContextRunnable {
         @Override
         protected void runInContext() {
@@ -445,23 +497,15 @@ public class StatsCollector extends ManagerBase implements ComponentMethodInterc
 
                             /**
                              * Send the metrics to a external stats collector
-                             * We send it on a per-host basis to prevent that we flood the host
+                             * We queue it on a per-host basis, the exporter batches the lines of all hosts
                              * Currently only Graphite is supported
                              */
                             if (!metrics.isEmpty()) {
-                                if (externalStatsType != null && externalStatsType == ExternalStatsProtocol.GRAPHITE) {
-
-                                    if (externalStatsPort == -1) {
-                                        externalStatsPort = 2003;
-                                    }
-
-                                    s_logger.debug("Sending VmStats of host " + host.getId() + " to Graphite host " + externalStatsHost + ":" + externalStatsPort);
-
-                                    try {
-                                        final GraphiteClient g = new GraphiteClient(externalStatsHost, externalStatsPort);
-                                        g.sendMetrics(metrics);
-                                    } catch (final GraphiteException e) {
-                                        s_logger.debug("Failed sending VmStats to Graphite host " + externalStatsHost + ":" + externalStatsPort + ": " + e.getMessage());
+                                if (externalStatsExporter != null) {
+                                    // this never waits for Graphite
+                                    final int dropped = externalStatsExporter.export(metrics, System.currentTimeMillis() / 1000);
+                                    if (dropped > 0) {
+                                        s_logger.debug("Dropped " + dropped + " VmStats of host " + host.getId() + " because the Graphite exporter is full");
                                     }
 
                                     metrics.clear();
@@ -485,6 +529,25 @@ public class StatsCollector extends ManagerBase implements ComponentMethodInterc
         return _VmStats.get(id);
     }
 
+    /**
+     * Sends metrics of other components to the external stats collector, if one is configured.
+     * The keys are prefixed with the configured prefix and "cloudstack.stats.".
+     */
+    public void exportMetrics(final Map<String, ?> metrics) {
+        final MetricsExporter exporter = externalStatsExporter;
+        if (exporter == null || metrics.isEmpty()) {
+            return;
+        }
+        final Map<String, Object> prefixed = new HashMap<>();
+        for (final Map.Entry<String, ?> metric : metrics.entrySet()) {
+            prefixed.put(externalStatsPrefix + "cloudstack.stats." + metric.getKey(), metric.getValue());
+        }
+        final int dropped = exporter.export(prefixed, System.currentTimeMillis() / 1000);
+        if (dropped > 0) {
+            s_logger.debug("Dropped " + dropped + " metrics because the Graphite exporter is full");
+        }
+    }
+
     class VmDiskStatsUpdaterTask extends ManagedContextRunnable {
         @Override
         protected void runInContext() {
@@ -689,12 +752,11 @@ public class StatsCollector extends ManagerBase implements ComponentMethodInterc
                 _storageStats = storageStats;
                 final ConcurrentHashMap<Long, StorageStats> storagePoolStats = new ConcurrentHashMap<>();
 
-                final List<StoragePoolVO> storagePools = _storagePoolDao.listAll();
-                for (final StoragePoolVO pool : storagePools) {
+                _storagePoolDao.stream(null, pool -> {
                     // check if the pool has enabled hosts
                     final List<Long> hostIds = _storageManager.getUpHostsInPool(pool.getId());
                     if (hostIds == null || hostIds.isEmpty())
-                        continue;
+                        return;
                     final GetStorageStatsCommand command = new GetStorageStatsCommand(pool.getUuid(), pool.getPoolType(), pool.getPath());
                     final long poolId = pool.getId();
                     try {
@@ -713,7 +775,7 @@ public class StatsCollector extends ManagerBase implements ComponentMethodInterc
                     } catch (final Exception e) {
                         s_logger.warn("Unable to get stats for " + pool, e);
                     }
-                }
+                });
                 _storagePoolStats = storagePoolStats;
             } catch (final Throwable t) {
                 s_logger.error("Error trying to retrieve storage stats", t);
@@ -0,0 +1,205 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.vm;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the expunge of destroyed vms in parallel, with a limit on the number of expunges that work on
+ * the same host or on the same primary storage pool at a time.
+ *
+ * A vm waits in the backlog until a worker is free and every host and pool it uses has room. Vms that
+ * do not fit are passed over, so a busy pool does not hold up the vms on other pools.
+ */
+public class UserVmExpungeScheduler {
+    private static final Logger s_logger = LoggerFactory.getLogger(UserVmExpungeScheduler.class);
+
+    private final Executor _executor;
+    private final int _workers;
+    private final int _perHost;
+    private final int _perPool;
+
+    private final Map<Long, Expunge> _backlog = new LinkedHashMap<Long, Expunge>();
+    private final Map<Long, Expunge> _running = new HashMap<Long, Expunge>();
+    private final Map<String, Integer> _inUse = new HashMap<String, Integer>();
+
+    private final AtomicLong _expunged = new AtomicLong();
+    private final AtomicLong _failed = new AtomicLong();
+
+    /**
+     * @param workers number of expunges at a time in total
+     * @param perHost number of expunges at a time of vms that last ran on the same host, 0 for no limit
+     * @param perPool number of expunges at a time of vms with volumes on the same primary storage pool, 0 for no limit
+     */
+    public UserVmExpungeScheduler(final Executor executor, final int workers, final int perHost, final int perPool) {
+        _executor = executor;
+        _workers = Math.max(1, workers);
+        _perHost = perHost;
+        _perPool = perPool;
+    }
+
+    /**
+     * Adds a vm to the backlog.
+     *
+     * @param hostId host the vm last ran on, or null
+     * @param poolIds primary storage pools of the volumes of the vm
+     * @param work the expunge, which fails by throwing
+     * @return false if the vm is already waiting or being expunged
+     */
+    public synchronized boolean submit(final long vmId, final Long hostId, final Collection<Long> poolIds, final Runnable work) {
+        if (_backlog.containsKey(vmId) || _running.containsKey(vmId)) {
+            return false;
+        }
+
+        final List<String> resources = new ArrayList<String>();
+        if (hostId != null && _perHost > 0) {
+            resources.add("host-" + hostId);
+        }
+        if (_perPool > 0) {
+            for (final Long poolId : poolIds) {
+                if (poolId != null && !resources.contains("pool-" + poolId)) {
+                    resources.add("pool-" + poolId);
+                }
+            }
+        }
+        _backlog.put(vmId, new Expunge(vmId, resources, work));
+        dispatch();
+        return true;
+    }
+
+    private synchronized void dispatch() {
+        final Iterator<Expunge> it = _backlog.values().iterator();
+        while (_running.size() < _workers && it.hasNext()) {
+            final Expunge expunge = it.next();
+            if (!fits(expunge)) {
+                continue;
+            }
+
+            it.remove();
+            for (final String resource : expunge._resources) {
+                final Integer count = _inUse.get(resource);
+                _inUse.put(resource, count == null ? 1 : count + 1);
+            }
+            _running.put(expunge._vmId, expunge);
+            try {
+                _executor.execute(expunge);
+            } catch (final RejectedExecutionException e) {
+                s_logger.warn("Unable to start the expunge of vm " + expunge._vmId + ", the workers are shut down");
+                release(expunge);
+                return;
+            }
+        }
+    }
+
+    private boolean fits(final Expunge expunge) {
+        for (final String resource : expunge._resources) {
+            final Integer count = _inUse.get(resource);
+            final int limit = resource.startsWith("host-") ? _perHost : _perPool;
+            if (count != null && count >= limit) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private synchronized void done(final Expunge expunge) {
+        release(expunge);
+        dispatch();
+    }
+
+    private void release(final Expunge expunge) {
+        _running.remove(expunge._vmId);
+        for (final String resource : expunge._resources) {
+            final int count = _inUse.get(resource) - 1;
+            if (count == 0) {
+                _inUse.remove(resource);
+            } else {
+                _inUse.put(resource, count);
+            }
+        }
+    }
+
+    /**
+     * @return the number of vms waiting to be expunged
+     */
+    public synchronized int getBacklog() {
+        return _backlog.size();
+    }
+
+    /**
+     * @return the number of vms being expunged
+     */
+    public synchronized int getRunning() {
+        return _running.size();
+    }
+
+    /**
+     * @return the number of vms expunged since the start
+     */
+    public long getExpunged() {
+        return _expunged.get();
+    }
+
+    /**
+     * @return the number of expunges that failed since the start
+     */
+    public long getFailed() {
+        return _failed.get();
+    }
+
+    @Override
+    public String toString() {
+        return "backlog=" + getBacklog() + ", running=" + getRunning() + ", expunged=" + getExpunged() + ", failed=" + getFailed();
+    }
+
+    private class Expunge implements Runnable {
+        private final long _vmId;
+        private final List<String> _resources;
+        private final Runnable _work;
+
+        public Expunge(final long vmId, final List<String> resources, final Runnable work) {
+            _vmId = vmId;
+            _resources = resources;
+            _work = work;
+        }
+
+        @Override
+        public void run() {
+            try {
+                _work.run();
+                _expunged.incrementAndGet();
+            } catch (final RuntimeException e) {
+                _failed.incrementAndGet();
+                s_logger.warn("Unable to expunge vm " + _vmId, e);
+            } finally {
+                done(this);
+            }
+        }
+    }
+}
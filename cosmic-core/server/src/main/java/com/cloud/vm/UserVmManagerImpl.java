@@ -18,6 +18,7 @@ package com.cloud.vm;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -57,6 +58,9 @@ import com.cloud.api.ApiDBUtils;
 import com.cloud.api.query.dao.UserVmJoinDao;
 import com.cloud.capacity.Capacity;
 import com.cloud.capacity.CapacityManager;
+import com.cloud.cluster.ManagementServerHost;
+import com.cloud.cluster.ManagementServerHostVO;
+import com.cloud.cluster.dao.ManagementServerHostDao;
 import com.cloud.configuration.Config;
 import com.cloud.configuration.ConfigurationManager;
 import com.cloud.configuration.Resource.ResourceType;
@@ -279,6 +283,7 @@ import org.apache.cloudstack.storage.datastore.db.PrimaryDataStoreDao;
 import org.apache.cloudstack.storage.datastore.db.StoragePoolVO;
 import org.apache.cloudstack.storage.datastore.db.TemplateDataStoreDao;
 import org.apache.cloudstack.storage.datastore.db.TemplateDataStoreVO;
+import org.apache.cloudstack.utils.identity.ManagementServerNode;
 import org.apache.commons.codec.binary.Base64;
 import org.apache.log4j.Logger;
 
@@ -320,6 +325,8 @@ public class UserVmManagerImpl extends ManagerBase implements UserVmManager, Vir
     @Inject
     protected VolumeDao _volsDao = null;
     @Inject
+    protected ManagementServerHostDao _msHostDao = null;
+    @Inject
     protected DataCenterDao _dcDao = null;
     @Inject
     protected FirewallRulesDao _rulesDao = null;
@@ -475,6 +482,8 @@ public class UserVmManagerImpl extends ManagerBase implements UserVmManager, Vir
     protected IpAddressManager _ipAddrMgr;
 
     protected ScheduledExecutorService _executor = null;
+    protected ExecutorService _expungeExecutor = null;
+    protected UserVmExpungeScheduler _expungeScheduler = null;
     protected int _expungeInterval;
     protected int _expungeDelay;
     protected boolean _dailyOrHourly = false;
@@ -512,6 +521,12 @@ public class UserVmManagerImpl extends ManagerBase implements UserVmManager, Vir
     static final ConfigKey<Integer> VmIpFetchThreadPoolMax = new ConfigKey<>("Advanced", Integer.class, "externaldhcp.vmipFetch.threadPool.max", "10",
             "number of threads for fetching vms ip address", true);
 
+    static final ConfigKey<Integer> ExpungeWorkersPerHost = new ConfigKey<>("Advanced", Integer.class, "expunge.workers.per.host", "2",
+            "Number of vms that last ran on the same host a management server expunges at a time, 0 for no limit", false);
+
+    static final ConfigKey<Integer> ExpungeWorkersPerPool = new ConfigKey<>("Advanced", Integer.class, "expunge.workers.per.pool", "2",
+            "Number of vms with volumes on the same primary storage pool a management server expunges at a time, 0 for no limit", false);
+
 
     @Override
     public UserVmVO getVirtualMachine(final long vmId) {
@@ -1950,7 +1965,9 @@ public class UserVmManagerImpl extends ManagerBase implements UserVmManager, Vir
         time = configs.get("expunge.delay");
         _expungeDelay = NumbersUtil.parseInt(time, _expungeInterval);
 
-        _executor = Executors.newScheduledThreadPool(wrks, new NamedThreadFactory("UserVm-Scavenger"));
+        _executor = Executors.newScheduledThreadPool(2, new NamedThreadFactory("UserVm-Scavenger"));
+        _expungeExecutor = Executors.newFixedThreadPool(Math.max(1, wrks), new NamedThreadFactory("UserVm-Expunge"));
+        _expungeScheduler = new UserVmExpungeScheduler(_expungeExecutor, wrks, ExpungeWorkersPerHost.value(), ExpungeWorkersPerPool.value());
 
         final String aggregationRange = configs.get("usage.stats.job.aggregation.range");
         final int _usageAggregationRange = NumbersUtil.parseInt(aggregationRange, 1440);
@@ -2020,6 +2037,7 @@ public class UserVmManagerImpl extends ManagerBase implements UserVmManager, Vir
     @Override
     public boolean stop() {
         _executor.shutdown();
+        _expungeExecutor.shutdown();
         return true;
     }
 
@@ -2229,44 +2247,70 @@ public class UserVmManagerImpl extends ManagerBase implements UserVmManager, Vir
     }
 
 
+    /**
+     * Hands the destroyed vms of this management server to the expunge scheduler. Every management
+     * server that is up takes the vms whose id falls in its share, so the backlog is worked off by all
+     * of them. A vm that is already waiting or being expunged is left alone.
+     */
     protected class ExpungeTask extends ManagedContextRunnable {
         public ExpungeTask() {
         }
 
         @Override
         protected void runInContext() {
-            final GlobalLock scanLock = GlobalLock.getInternLock("UserVMExpunge");
             try {
-                if (scanLock.lock(ACQUIRE_GLOBAL_LOCK_TIMEOUT_FOR_COOPERATION)) {
-                    try {
-                        final List<UserVmVO> vms = _vmDao.findDestroyedVms(new Date(System.currentTimeMillis() - ((long) _expungeDelay << 10)));
-                        if (s_logger.isInfoEnabled()) {
-                            if (vms.size() == 0) {
-                                s_logger.trace("Found " + vms.size() + " vms to expunge.");
-                            } else {
-                                s_logger.info("Found " + vms.size() + " vms to expunge.");
-                            }
-                        }
-                        for (final UserVmVO vm : vms) {
-                            try {
-                                expungeVm(vm.getId());
-                            } catch (final Exception e) {
-                                s_logger.warn("Unable to expunge " + vm, e);
-                            }
-                        }
-                    } catch (final Exception e) {
-                        s_logger.error("Caught the following Exception", e);
-                    } finally {
-                        scanLock.unlock();
+                final List<UserVmVO> vms = _vmDao.findDestroyedVms(new Date(System.currentTimeMillis() - ((long) _expungeDelay << 10)));
+                final List<Long> msids = new ArrayList<>();
+                for (final ManagementServerHostVO msHost : _msHostDao.listBy(ManagementServerHost.State.Up)) {
+                    msids.add(msHost.getMsid());
+                }
+                Collections.sort(msids);
+                final int share = msids.indexOf(ManagementServerNode.getManagementServerId());
+
+                int submitted = 0;
+                for (final UserVmVO vm : vms) {
+                    // a management server that is not up yet takes all of them, as the others may be gone
+                    if (share >= 0 && vm.getId() % msids.size() != share) {
+                        continue;
+                    }
+                    final List<Long> poolIds = new ArrayList<>();
+                    for (final VolumeVO volume : _volsDao.findByInstance(vm.getId())) {
+                        poolIds.add(volume.getPoolId());
+                    }
+                    if (_expungeScheduler.submit(vm.getId(), vm.getLastHostId(), poolIds, new ExpungeVmTask(vm.getId()))) {
+                        submitted++;
                     }
                 }
-            } finally {
-                scanLock.releaseRef();
+
+                if (vms.size() == 0) {
+                    s_logger.trace("Found " + vms.size() + " vms to expunge.");
+                } else {
+                    s_logger.info("Found " + vms.size() + " vms to expunge, " + submitted + " added to the expunge backlog of this management server: " + _expungeScheduler);
+                }
+            } catch (final Exception e) {
+                s_logger.error("Caught the following Exception", e);
             }
         }
 
     }
 
+    protected class ExpungeVmTask extends ManagedContextRunnable {
+        private final long _vmId;
+
+        public ExpungeVmTask(final long vmId) {
+            _vmId = vmId;
+        }
+
+        @Override
+        protected void runInContext() {
+            try {
+                expungeVm(_vmId);
+            } catch (final ResourceUnavailableException | ConcurrentOperationException e) {
+                throw new CloudRuntimeException("Unable to expunge vm " + _vmId, e);
+            }
+        }
+    }
+
     @Override
     @ActionEvent(eventType = EventTypes.EVENT_VM_UPDATE, eventDescription = "updating Vm")
     public UserVm updateVirtualMachine(final UpdateVMCmd cmd) throws ResourceUnavailableException, InsufficientCapacityException {
@@ -5345,7 +5389,8 @@ public class UserVmManagerImpl extends ManagerBase implements UserVmManager, Vir
 
     @Override
     public ConfigKey<?>[] getConfigKeys() {
-        return new ConfigKey<?>[]{EnableDynamicallyScaleVm, AllowUserExpungeRecoverVm, VmIpFetchWaitInterval, VmIpFetchTrialMax, VmIpFetchThreadPoolMax};
+        return new ConfigKey<?>[]{EnableDynamicallyScaleVm, AllowUserExpungeRecoverVm, VmIpFetchWaitInterval, VmIpFetchTrialMax, VmIpFetchThreadPoolMax, ExpungeWorkersPerHost,
+                ExpungeWorkersPerPool};
     }
 
     @Override
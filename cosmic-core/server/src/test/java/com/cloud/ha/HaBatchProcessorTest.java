@@ -0,0 +1,178 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.ha;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.cloud.ha.HighAvailabilityManager.Step;
+import com.cloud.ha.HighAvailabilityManager.WorkType;
+import com.cloud.vm.VirtualMachine;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class HaBatchProcessorTest {
+
+    private HaBatchProcessor processor;
+
+    @After
+    public void tearDown() {
+        if (processor != null) {
+            processor.shutdown();
+        }
+    }
+
+    @Test
+    public void testClusterConcurrencyIsCapped() {
+        final Map<Long, AtomicInteger> running = new ConcurrentHashMap<>();
+        final Map<Long, AtomicInteger> maxRunning = new ConcurrentHashMap<>();
+        final AtomicInteger processed = new AtomicInteger();
+
+        // host id doubles as cluster id, two clusters with ten failed VMs each
+        processor = new HaBatchProcessor(8, 2, work -> work.getHostId(), work -> {
+            final AtomicInteger current = running.computeIfAbsent(work.getHostId(), k -> new AtomicInteger());
+            final int now = current.incrementAndGet();
+            maxRunning.computeIfAbsent(work.getHostId(), k -> new AtomicInteger()).accumulateAndGet(now, Math::max);
+            sleep(20);
+            current.decrementAndGet();
+            processed.incrementAndGet();
+        });
+
+        final List<HaWorkVO> batch = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            batch.add(createWork(i, VirtualMachine.Type.User, 1L));
+            batch.add(createWork(100 + i, VirtualMachine.Type.User, 2L));
+        }
+        processor.process(batch, Comparator.comparingLong(HaWorkVO::getInstanceId));
+
+        assertEquals(20, processed.get());
+        assertTrue(maxRunning.get(1L).get() <= 2);
+        assertTrue(maxRunning.get(2L).get() <= 2);
+    }
+
+    @Test
+    public void testCapsAreSharedByConcurrentBatches() throws Exception {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final Map<Long, AtomicInteger> clusterRunning = new ConcurrentHashMap<>();
+        final Map<Long, AtomicInteger> maxClusterRunning = new ConcurrentHashMap<>();
+        final AtomicInteger processed = new AtomicInteger();
+
+        processor = new HaBatchProcessor(4, 2, work -> work.getHostId(), work -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            final AtomicInteger current = clusterRunning.computeIfAbsent(work.getHostId(), k -> new AtomicInteger());
+            maxClusterRunning.computeIfAbsent(work.getHostId(), k -> new AtomicInteger()).accumulateAndGet(current.incrementAndGet(), Math::max);
+            sleep(10);
+            current.decrementAndGet();
+            running.decrementAndGet();
+            processed.incrementAndGet();
+        });
+
+        // as many callers as HA workers, each with a batch spread over the same three clusters
+        final int callers = 5;
+        final CountDownLatch go = new CountDownLatch(1);
+        final List<Thread> threads = new ArrayList<>();
+        final AtomicInteger failures = new AtomicInteger();
+        for (int c = 0; c < callers; c++) {
+            final List<HaWorkVO> batch = new ArrayList<>();
+            for (int i = 0; i < 12; i++) {
+                batch.add(createWork(c * 100 + i, VirtualMachine.Type.User, i % 3));
+            }
+            final Thread thread = new Thread(() -> {
+                try {
+                    go.await();
+                    processor.process(batch, Comparator.comparingLong(HaWorkVO::getInstanceId));
+                } catch (final Throwable th) {
+                    failures.incrementAndGet();
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        go.countDown();
+        for (final Thread thread : threads) {
+            thread.join(30000);
+        }
+
+        assertEquals(0, failures.get());
+        assertEquals(callers * 12, processed.get());
+        assertTrue("at most 4 items run at the same time, not " + maxRunning.get(), maxRunning.get() <= 4);
+        for (final AtomicInteger max : maxClusterRunning.values()) {
+            assertTrue("at most 2 items of a cluster run at the same time, not " + max.get(), max.get() <= 2);
+        }
+    }
+
+    @Test
+    public void testSaturatedClusterDoesNotBlockOthers() {
+        final List<Long> order = Collections.synchronizedList(new ArrayList<>());
+        processor = new HaBatchProcessor(2, 1, work -> work.getHostId(), work -> {
+            order.add(work.getInstanceId());
+            sleep(work.getHostId() == 1L ? 50 : 1);
+        });
+
+        final List<HaWorkVO> batch = new ArrayList<>();
+        batch.add(createWork(1, VirtualMachine.Type.User, 1L));
+        batch.add(createWork(2, VirtualMachine.Type.User, 1L));
+        batch.add(createWork(3, VirtualMachine.Type.User, 2L));
+        processor.process(batch, Comparator.comparingLong(HaWorkVO::getInstanceId));
+
+        assertEquals(3, order.size());
+        // the item of cluster 2 overtakes the second item of the busy cluster 1
+        assertTrue(order.indexOf(3L) < order.indexOf(2L));
+    }
+
+    @Test
+    public void testFailingItemDoesNotAbortBatch() {
+        final AtomicInteger processed = new AtomicInteger();
+        processor = new HaBatchProcessor(4, 4, work -> null, work -> {
+            if (work.getInstanceId() == 2) {
+                throw new RuntimeException("host stand-in failed");
+            }
+            processed.incrementAndGet();
+        });
+
+        final List<HaWorkVO> batch = new ArrayList<>();
+        for (int i = 1; i <= 4; i++) {
+            batch.add(createWork(i, VirtualMachine.Type.User, 1L));
+        }
+        processor.process(batch, Comparator.comparingLong(HaWorkVO::getInstanceId));
+
+        assertEquals(3, processed.get());
+    }
+
+    private static HaWorkVO createWork(final long vmId, final VirtualMachine.Type type, final long hostId) {
+        return new HaWorkVO(vmId, type, WorkType.HA, Step.Scheduled, hostId, VirtualMachine.State.Running, 0, 0L);
+    }
+
+    private static void sleep(final long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
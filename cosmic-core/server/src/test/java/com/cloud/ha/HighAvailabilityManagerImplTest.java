@@ -16,6 +16,7 @@
 // under the License.
 package com.cloud.ha;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
@@ -27,6 +28,12 @@ import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.inject.Inject;
 
@@ -47,6 +54,7 @@ import com.cloud.host.dao.HostDao;
 import com.cloud.hypervisor.Hypervisor.HypervisorType;
 import com.cloud.resource.ResourceManager;
 import com.cloud.server.ManagementServer;
+import com.cloud.service.ServiceOfferingVO;
 import com.cloud.service.dao.ServiceOfferingDao;
 import com.cloud.storage.StorageManager;
 import com.cloud.storage.dao.GuestOSCategoryDao;
@@ -219,6 +227,39 @@ public class HighAvailabilityManagerImplTest {
     assertNull(highAvailabilityManager.investigate(1l));
   }
 
+  @Test
+  public void concurrentWorkForSameHostSharesOneVerdict() throws Exception {
+    final int workers = 8;
+    Mockito.when(hostVO.getId()).thenReturn(1l);
+    highAvailabilityManagerSpy._investigateRetryInterval = 60;
+    final CountDownLatch asking = new CountDownLatch(workers);
+    final AtomicInteger investigations = new AtomicInteger();
+    Mockito.doAnswer(invocation -> {
+      investigations.incrementAndGet();
+      // hold the investigation until every worker asked for the verdict
+      asking.await(10, TimeUnit.SECONDS);
+      Thread.sleep(100);
+      return Status.Down;
+    }).when(highAvailabilityManagerSpy).investigate(1l);
+
+    final ExecutorService executor = Executors.newFixedThreadPool(workers);
+    try {
+      final List<Future<Status>> verdicts = new ArrayList<Future<Status>>();
+      for (int i = 0; i < workers; i++) {
+        verdicts.add(executor.submit(() -> {
+          asking.countDown();
+          return highAvailabilityManagerSpy.getHostVerdict(hostVO);
+        }));
+      }
+      for (final Future<Status> verdict : verdicts) {
+        assertTrue(verdict.get(10, TimeUnit.SECONDS) == Status.Down);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    assertEquals(1, investigations.get());
+  }
+
   private void processWorkWithRetryCount(int count, Step expectedStep) {
     assertNotNull(processWorkMethod);
     final HaWorkVO work = new HaWorkVO(1l, VirtualMachine.Type.User, WorkType.Migration, Step.Scheduled, 1l, VirtualMachine.State.Running, count, 12345678l);
@@ -235,6 +276,44 @@ public class HighAvailabilityManagerImplTest {
     assertTrue(work.getStep() == expectedStep);
   }
 
+  @Test
+  public void haPriorityOrdersSystemVmsAndHaOfferingsFirst() {
+    final HaWorkVO userVm = Mockito.mock(HaWorkVO.class);
+    Mockito.when(userVm.getId()).thenReturn(1l);
+    Mockito.when(userVm.getInstanceId()).thenReturn(11l);
+    Mockito.when(userVm.getType()).thenReturn(VirtualMachine.Type.User);
+    final HaWorkVO haUserVm = Mockito.mock(HaWorkVO.class);
+    Mockito.when(haUserVm.getId()).thenReturn(2l);
+    Mockito.when(haUserVm.getInstanceId()).thenReturn(12l);
+    Mockito.when(haUserVm.getType()).thenReturn(VirtualMachine.Type.User);
+    final HaWorkVO router = Mockito.mock(HaWorkVO.class);
+    Mockito.when(router.getId()).thenReturn(3l);
+    Mockito.when(router.getInstanceId()).thenReturn(13l);
+    Mockito.when(router.getType()).thenReturn(VirtualMachine.Type.DomainRouter);
+
+    mockOffering(11l, 101l, false);
+    mockOffering(12l, 102l, true);
+    mockOffering(13l, 103l, false);
+
+    final List<HaWorkVO> batch = new ArrayList<HaWorkVO>(Arrays.asList(userVm, haUserVm, router));
+    batch.sort(highAvailabilityManager.getHaPriority(batch));
+
+    assertTrue(batch.get(0) == router);
+    assertTrue(batch.get(1) == haUserVm);
+    assertTrue(batch.get(2) == userVm);
+  }
+
+  private void mockOffering(final long vmId, final long offeringId, final boolean offerHa) {
+    final VMInstanceVO vm = Mockito.mock(VMInstanceVO.class);
+    Mockito.when(vm.getId()).thenReturn(vmId);
+    Mockito.when(vm.getServiceOfferingId()).thenReturn(offeringId);
+    Mockito.when(_instanceDao.findByIdIncludingRemoved(vmId)).thenReturn(vm);
+    final ServiceOfferingVO offering = Mockito.mock(ServiceOfferingVO.class);
+    Mockito.when(offering.getOfferHA()).thenReturn(offerHa);
+    Mockito.when(offering.getRamSize()).thenReturn(512);
+    Mockito.when(_serviceOfferingDao.findByIdIncludingRemoved(vmId, offeringId)).thenReturn(offering);
+  }
+
   @Test
   public void processWorkWithRetryCountExceeded() {
     processWorkWithRetryCount(5, Step.Done); // max retry count is 5
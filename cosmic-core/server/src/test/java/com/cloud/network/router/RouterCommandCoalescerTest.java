@@ -0,0 +1,145 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.network.router;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.cloud.agent.api.Answer;
+import com.cloud.agent.api.Command;
+import com.cloud.agent.api.Command.OnError;
+import com.cloud.agent.api.routing.AggregationControlCommand;
+import com.cloud.agent.api.routing.AggregationControlCommand.Action;
+import com.cloud.agent.api.routing.NetworkElementCommand;
+import com.cloud.agent.manager.Commands;
+import com.cloud.network.router.RouterCommandCoalescer.Sender;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class RouterCommandCoalescerTest {
+
+    private static final long ROUTER_ID = 4L;
+
+    private final RouterCommandCoalescer _coalescer = new RouterCommandCoalescer();
+    private final ExecutorService _executor = Executors.newFixedThreadPool(4);
+    private final List<Command[]> _requests = Collections.synchronizedList(new ArrayList<Command[]>());
+    private volatile boolean _finishResult = true;
+
+    private final Sender _sender = cmds -> {
+        final Command[] sent = cmds.toCommands();
+        _requests.add(sent);
+        final Answer[] answers = new Answer[sent.length];
+        for (int i = 0; i < sent.length; i++) {
+            final boolean finish = sent[i] instanceof AggregationControlCommand && ((AggregationControlCommand)sent[i]).getAction() == Action.Finish;
+            answers[i] = new Answer(sent[i], !finish || _finishResult, null);
+        }
+        cmds.setAnswers(answers);
+        return answers;
+    };
+
+    @After
+    public void tearDown() {
+        _executor.shutdownNow();
+    }
+
+    private static Commands rules(final int count, final OnError onError) {
+        final Commands cmds = new Commands(onError);
+        for (int i = 0; i < count; i++) {
+            final NetworkElementCommand cmd = new NetworkElementCommand() {
+            };
+            cmd.setAccessDetail(NetworkElementCommand.ROUTER_NAME, "r-4-VM");
+            cmd.setAccessDetail(NetworkElementCommand.ROUTER_IP, "169.254.3.4");
+            cmds.addCommand(cmd);
+        }
+        return cmds;
+    }
+
+    private Future<Answer[]> submit(final Commands cmds, final long windowMs) {
+        return _executor.submit(() -> _coalescer.submit(ROUTER_ID, cmds, _sender, windowMs, 100));
+    }
+
+    @Test
+    public void testConcurrentRulesAreSentInOneAggregation() throws Exception {
+        final Commands first = rules(2, OnError.Continue);
+        final Commands second = rules(3, OnError.Continue);
+        final Future<Answer[]> firstAnswers = submit(first, 1000);
+        Thread.sleep(200);
+        final Future<Answer[]> secondAnswers = submit(second, 1000);
+
+        assertEquals(2, firstAnswers.get().length);
+        assertEquals(3, secondAnswers.get().length);
+        assertEquals(1, _requests.size());
+
+        final Command[] sent = _requests.get(0);
+        assertEquals(7, sent.length);
+        assertEquals(Action.Start, ((AggregationControlCommand)sent[0]).getAction());
+        assertEquals(Action.Finish, ((AggregationControlCommand)sent[6]).getAction());
+        assertSame(second.toCommands()[0], sent[3]);
+        assertSame(secondAnswers.get(), second.getAnswers());
+    }
+
+    @Test
+    public void testFailedAggregationFailsEveryCaller() throws Exception {
+        _finishResult = false;
+        final Future<Answer[]> firstAnswers = submit(rules(1, OnError.Continue), 1000);
+        Thread.sleep(200);
+        final Future<Answer[]> secondAnswers = submit(rules(1, OnError.Continue), 1000);
+
+        assertFalse(firstAnswers.get()[0].getResult());
+        assertFalse(secondAnswers.get()[0].getResult());
+    }
+
+    @Test
+    public void testDependentCommandsAreSentOnTheirOwnInOrder() throws Exception {
+        final Commands rules = rules(1, OnError.Continue);
+        final Commands dependent = rules(2, OnError.Stop);
+        final Commands more = rules(1, OnError.Continue);
+        final Future<Answer[]> rulesAnswers = submit(rules, 1000);
+        Thread.sleep(200);
+        final Future<Answer[]> dependentAnswers = submit(dependent, 1000);
+        Thread.sleep(100);
+        final Future<Answer[]> moreAnswers = submit(more, 1000);
+
+        assertNotNull(rulesAnswers.get());
+        assertNotNull(dependentAnswers.get());
+        assertNotNull(moreAnswers.get());
+        assertEquals(3, _requests.size());
+        assertSame(rules.toCommands()[0], _requests.get(0)[0]);
+        assertSame(dependent.toCommands()[0], _requests.get(1)[0]);
+        assertSame(more.toCommands()[0], _requests.get(2)[0]);
+    }
+
+    @Test
+    public void testSingleCallerIsSentAsIs() throws Exception {
+        final Commands cmds = rules(2, OnError.Continue);
+        final Answer[] answers = _coalescer.submit(ROUTER_ID, cmds, _sender, 0, 100);
+        assertEquals(1, _requests.size());
+        assertEquals(2, _requests.get(0).length);
+        assertTrue(answers[0].getResult());
+    }
+}
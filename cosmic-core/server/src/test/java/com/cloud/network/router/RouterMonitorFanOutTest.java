@@ -0,0 +1,123 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.network.router;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RouterMonitorFanOutTest {
+
+    private RouterMonitorFanOut fanOut;
+
+    @Before
+    public void setUp() {
+        fanOut = new RouterMonitorFanOut("RouterMonitorFanOutTest", 8, 2, 3);
+    }
+
+    @After
+    public void tearDown() {
+        fanOut.shutdown();
+    }
+
+    @Test
+    public void testSweepCoalescesWorkPerHost() {
+        final Map<Long, List<Integer>> work = new HashMap<>();
+        work.put(1L, range(7));
+        work.put(2L, range(2));
+
+        final Map<Long, List<Integer>> batchSizes = new HashMap<>();
+        final RouterMonitorFanOut.SweepStats stats = fanOut.sweep("test", 0, work, (hostId, batch) -> {
+            synchronized (batchSizes) {
+                batchSizes.computeIfAbsent(hostId, k -> new ArrayList<>()).add(batch.size());
+            }
+        });
+
+        assertEquals(3, batchSizes.get(1L).size());
+        assertEquals(7, batchSizes.get(1L).stream().mapToInt(Integer::intValue).sum());
+        assertEquals(1, batchSizes.get(2L).size());
+        assertEquals(4, stats.getLastBatches());
+        assertEquals(2, stats.getLastHosts());
+        assertEquals(1, stats.getSweeps());
+    }
+
+    @Test
+    public void testSweepBoundsConcurrencyPerHost() {
+        final Map<Long, List<Integer>> work = new HashMap<>();
+        work.put(1L, range(30));
+
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        fanOut.sweep("test", 0, work, (hostId, batch) -> {
+            final int current = inFlight.incrementAndGet();
+            maxInFlight.accumulateAndGet(current, Math::max);
+            Thread.sleep(10);
+            inFlight.decrementAndGet();
+        });
+
+        assertTrue(maxInFlight.get() <= 2);
+    }
+
+    @Test
+    public void testSweepCountsFailedBatches() {
+        final Map<Long, List<Integer>> work = new HashMap<>();
+        work.put(1L, range(6));
+
+        final RouterMonitorFanOut.SweepStats stats = fanOut.sweep("test", 0, work, (hostId, batch) -> {
+            throw new RuntimeException("agent unavailable");
+        });
+
+        assertEquals(2, stats.getFailedBatches());
+    }
+
+    @Test
+    public void testSweepStatsAsMetrics() {
+        final Map<Long, List<Integer>> work = new HashMap<>();
+        work.put(1L, range(4));
+        work.put(2L, range(1));
+
+        final Map<String, Number> metrics = fanOut.sweep("test", 0, work, (hostId, batch) -> {
+            if (hostId == 2L) {
+                throw new RuntimeException("agent unavailable");
+            }
+        }).getMetrics("routers.monitor.test");
+
+        assertEquals(8, metrics.size());
+        assertEquals(1L, metrics.get("routers.monitor.test.sweeps"));
+        assertEquals(1L, metrics.get("routers.monitor.test.failed_batches"));
+        assertEquals(2, metrics.get("routers.monitor.test.hosts"));
+        assertEquals(3, metrics.get("routers.monitor.test.batches"));
+        assertTrue(metrics.containsKey("routers.monitor.test.duration_ms"));
+    }
+
+    private static List<Integer> range(final int size) {
+        final List<Integer> items = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            items.add(i);
+        }
+        return items;
+    }
+}
@@ -16,12 +16,31 @@
 // under the License.
 package com.cloud.network.router;
 
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.cloud.agent.AgentManager;
+import com.cloud.agent.api.Answer;
+import com.cloud.agent.api.CheckRouterAnswer;
+import com.cloud.agent.api.CheckRouterCommand;
+import com.cloud.agent.api.Command;
+import com.cloud.agent.manager.Commands;
+import com.cloud.alert.AlertManager;
 import com.cloud.cluster.dao.ManagementServerHostDao;
 import com.cloud.dc.dao.ClusterDao;
 import com.cloud.dc.dao.DataCenterDao;
 import com.cloud.dc.dao.HostPodDao;
 import com.cloud.dc.dao.VlanDao;
+import com.cloud.exception.OperationTimedoutException;
 import com.cloud.host.dao.HostDao;
+import com.cloud.hypervisor.Hypervisor.HypervisorType;
 import com.cloud.network.dao.FirewallRulesDao;
 import com.cloud.network.dao.IPAddressDao;
 import com.cloud.network.dao.LoadBalancerDao;
@@ -37,6 +56,8 @@ import com.cloud.network.dao.Site2SiteVpnGatewayDao;
 import com.cloud.network.dao.UserIpv6AddressDao;
 import com.cloud.network.dao.VirtualRouterProviderDao;
 import com.cloud.network.dao.VpnUserDao;
+import com.cloud.network.router.VirtualNetworkApplianceManagerImpl.RedundantStateCheckItem;
+import com.cloud.network.router.VirtualRouter.RedundantState;
 import com.cloud.network.rules.dao.PortForwardingRulesDao;
 import com.cloud.offerings.dao.NetworkOfferingDao;
 import com.cloud.service.dao.ServiceOfferingDao;
@@ -46,6 +67,7 @@ import com.cloud.storage.dao.VolumeDao;
 import com.cloud.user.dao.UserDao;
 import com.cloud.user.dao.UserStatisticsDao;
 import com.cloud.user.dao.UserStatsLogDao;
+import com.cloud.vm.DomainRouterVO;
 import com.cloud.vm.VirtualMachineManager;
 import com.cloud.vm.dao.DomainRouterDao;
 import com.cloud.vm.dao.NicDao;
@@ -55,6 +77,7 @@ import com.cloud.vm.dao.UserVmDetailsDao;
 import com.cloud.vm.dao.VMInstanceDao;
 
 import org.apache.cloudstack.framework.config.dao.ConfigurationDao;
+import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
@@ -177,6 +200,10 @@ public class VirtualNetworkApplianceManagerImplTest {
 
     @Mock private VirtualMachineManager _itMgr;
 
+    @Mock private AgentManager _agentMgr;
+
+    @Mock private AlertManager _alertMgr;
+
     //    @InjectMocks
     //    private VirtualNetworkApplianceManagerImpl virtualNetworkApplianceManagerImpl;
 
@@ -202,4 +229,50 @@ public class VirtualNetworkApplianceManagerImplTest {
         //        // TODO: more elaborate mocking needed to have a vr returned
         //assertEquals(vr, null);
     }
+
+    @Test
+    public void testFailedRedundantStateBatchKeepsState() throws Exception {
+        final VirtualNetworkApplianceManagerImpl mgr = createManager();
+        final List<RedundantStateCheckItem> batch = Arrays.asList(createCheckItem(1L, RedundantState.MASTER), createCheckItem(2L, RedundantState.BACKUP));
+        when(_agentMgr.send(eq(7L), any(Commands.class), eq(60))).thenThrow(new OperationTimedoutException(new Command[0], 7L, 1L, 60, false));
+
+        mgr.checkRedundantState(7L, batch);
+
+        // the agent runs the commands one after the other, so the batch gets the wait of both
+        verify(_agentMgr).send(eq(7L), any(Commands.class), eq(60));
+        Assert.assertEquals(RedundantState.MASTER, batch.get(0).router.getRedundantState());
+        Assert.assertEquals(RedundantState.BACKUP, batch.get(1).router.getRedundantState());
+        verify(_routerDao, never()).update(anyLong(), any(DomainRouterVO.class));
+    }
+
+    @Test
+    public void testRedundantStateBatchUpdatesCheckedRoutersOnly() throws Exception {
+        final VirtualNetworkApplianceManagerImpl mgr = createManager();
+        final List<RedundantStateCheckItem> batch = Arrays.asList(createCheckItem(1L, RedundantState.BACKUP), createCheckItem(2L, RedundantState.BACKUP));
+        final CheckRouterAnswer answer = new CheckRouterAnswer(batch.get(0).command, "Status: MASTER", true);
+        when(_agentMgr.send(eq(7L), any(Commands.class), eq(60))).thenReturn(new Answer[] {answer});
+
+        mgr.checkRedundantState(7L, batch);
+
+        Assert.assertEquals(RedundantState.MASTER, batch.get(0).router.getRedundantState());
+        Assert.assertEquals(RedundantState.BACKUP, batch.get(1).router.getRedundantState());
+        verify(_routerDao).update(1L, batch.get(0).router);
+        verify(_routerDao, never()).update(eq(2L), any(DomainRouterVO.class));
+    }
+
+    private VirtualNetworkApplianceManagerImpl createManager() {
+        final VirtualNetworkApplianceManagerImpl mgr = new VirtualNetworkApplianceManagerImpl();
+        mgr._agentMgr = _agentMgr;
+        mgr._alertMgr = _alertMgr;
+        mgr._routerDao = _routerDao;
+        return mgr;
+    }
+
+    private static RedundantStateCheckItem createCheckItem(final long routerId, final RedundantState state) {
+        final DomainRouterVO router = new DomainRouterVO(routerId, 1L, 1L, "r-" + routerId + "-VM", 1L, HypervisorType.XenServer, 1L, 1L, 1L, 1L, true, state, false, false,
+                null);
+        final CheckRouterCommand command = new CheckRouterCommand();
+        command.setWait(30);
+        return new RedundantStateCheckItem(router, command);
+    }
 }
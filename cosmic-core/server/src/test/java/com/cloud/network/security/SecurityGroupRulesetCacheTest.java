@@ -0,0 +1,120 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.network.security;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.cloud.network.security.SecurityGroupManagerImpl.PortAndProto;
+import com.cloud.network.security.SecurityGroupRulesetCache.RulesCompiler;
+import com.cloud.network.security.SecurityGroupRulesetCache.RulesVersion;
+import com.cloud.network.security.SecurityRule.SecurityRuleType;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SecurityGroupRulesetCacheTest {
+
+    private final AtomicInteger _compilations = new AtomicInteger();
+    private final Map<Long, String> _versionsInDb = new HashMap<Long, String>();
+    private final RulesVersion _versions = (groupId, type) -> _versionsInDb.getOrDefault(groupId, "1,");
+
+    // group 1 allows the members of group 2, group 3 allows a cidr
+    private final RulesCompiler _compiler = (groupId, type, allowedGroups) -> {
+        _compilations.incrementAndGet();
+        final Map<PortAndProto, Set<String>> rules = new TreeMap<PortAndProto, Set<String>>();
+        final Set<String> cidrs = new TreeSet<String>();
+        if (groupId == 1) {
+            allowedGroups.add(2L);
+            cidrs.add("10.1.1.2/32");
+        } else {
+            cidrs.add("192.168.0.0/16");
+        }
+        rules.put(new PortAndProto("tcp", 22, 22), cidrs);
+        return rules;
+    };
+
+    @Test
+    public void testRulesAreCompiledOncePerGroup() {
+        final SecurityGroupRulesetCache cache = new SecurityGroupRulesetCache(60000);
+        for (int i = 0; i < 100; i++) {
+            cache.get(1L, SecurityRuleType.IngressRule, _versions, _compiler);
+        }
+        Assert.assertEquals(1, _compilations.get());
+        Assert.assertEquals(99, cache.getHits());
+
+        cache.get(1L, SecurityRuleType.EgressRule, _versions, _compiler);
+        Assert.assertEquals(2, _compilations.get());
+    }
+
+    @Test
+    public void testMemberChangeDropsAllowingGroups() {
+        final SecurityGroupRulesetCache cache = new SecurityGroupRulesetCache(60000);
+        cache.get(1L, SecurityRuleType.IngressRule, _versions, _compiler);
+        cache.get(3L, SecurityRuleType.IngressRule, _versions, _compiler);
+
+        cache.invalidateMembers(2L);
+        Assert.assertEquals(1, cache.size());
+        cache.get(3L, SecurityRuleType.IngressRule, _versions, _compiler);
+        Assert.assertEquals(2, _compilations.get());
+        cache.get(1L, SecurityRuleType.IngressRule, _versions, _compiler);
+        Assert.assertEquals(3, _compilations.get());
+
+        cache.invalidateGroup(3L);
+        cache.get(3L, SecurityRuleType.IngressRule, _versions, _compiler);
+        Assert.assertEquals(4, _compilations.get());
+    }
+
+    @Test
+    public void testRulesCompiledDuringChangeAreNotKept() {
+        final SecurityGroupRulesetCache cache = new SecurityGroupRulesetCache(60000);
+        cache.get(1L, SecurityRuleType.IngressRule, _versions, (groupId, type, allowedGroups) -> {
+            cache.invalidateGroup(1L);
+            return _compiler.compile(groupId, type, allowedGroups);
+        });
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testChangeOnOtherServerIsSeen() {
+        final SecurityGroupRulesetCache cache = new SecurityGroupRulesetCache(60000);
+        cache.get(1L, SecurityRuleType.IngressRule, _versions, _compiler);
+        cache.get(3L, SecurityRuleType.IngressRule, _versions, _compiler);
+
+        // a rule of group 1 is revoked elsewhere, nothing is invalidated here
+        _versionsInDb.put(1L, "2,");
+        cache.get(1L, SecurityRuleType.IngressRule, _versions, _compiler);
+        cache.get(3L, SecurityRuleType.IngressRule, _versions, _compiler);
+        Assert.assertEquals(3, _compilations.get());
+        Assert.assertEquals(1, cache.getStale());
+
+        cache.get(1L, SecurityRuleType.IngressRule, _versions, _compiler);
+        Assert.assertEquals(3, _compilations.get());
+    }
+
+    @Test
+    public void testNoCachingWithoutMaxAge() {
+        final SecurityGroupRulesetCache cache = new SecurityGroupRulesetCache(0);
+        cache.get(1L, SecurityRuleType.IngressRule, _versions, _compiler);
+        cache.get(1L, SecurityRuleType.IngressRule, _versions, _compiler);
+        Assert.assertEquals(2, _compilations.get());
+    }
+}
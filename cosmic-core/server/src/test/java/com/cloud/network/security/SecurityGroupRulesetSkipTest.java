@@ -0,0 +1,128 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.network.security;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.cloud.agent.api.SecurityGroupRulesCmd;
+import com.cloud.network.security.SecurityGroupManagerImpl.PortAndProto;
+import com.cloud.network.security.SecurityRule.SecurityRuleType;
+import com.cloud.network.security.dao.SecurityGroupRuleDao;
+import com.cloud.network.security.dao.SecurityGroupVMMapDao;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Two management servers work on the rulesets of the same vm, sharing the rules in the database.
+ */
+public class SecurityGroupRulesetSkipTest {
+
+    private static final long VM_ID = 10L;
+    private static final long HOST_ID = 5L;
+
+    private final List<SecurityGroupRuleVO> _rules = new ArrayList<SecurityGroupRuleVO>();
+    private SecurityGroupManagerImpl _ms1;
+    private SecurityGroupManagerImpl _ms2;
+
+    @Before
+    public void setUp() {
+        final SecurityGroupRuleDao ruleDao = mock(SecurityGroupRuleDao.class);
+        when(ruleDao.listBySecurityGroupId(1L, SecurityRuleType.IngressRule)).thenAnswer(invocation -> new ArrayList<SecurityGroupRuleVO>(_rules));
+        when(ruleDao.listBySecurityGroupId(1L, SecurityRuleType.EgressRule)).thenReturn(Collections.<SecurityGroupRuleVO>emptyList());
+        final SecurityGroupVMMapDao vmMapDao = mock(SecurityGroupVMMapDao.class);
+        when(vmMapDao.listByInstanceId(VM_ID)).thenReturn(Collections.singletonList(new SecurityGroupVMMapVO(1L, VM_ID)));
+
+        _rules.add(createRule(1L, 22));
+        _rules.add(createRule(2L, 80));
+        _ms1 = createManager(ruleDao, vmMapDao);
+        _ms2 = createManager(ruleDao, vmMapDao);
+    }
+
+    @Test
+    public void testUnchangedRulesetIsSkipped() {
+        Assert.assertTrue(_ms2.shouldSendRuleset(VM_ID, HOST_ID, generateCmd(_ms2, 1)));
+        Assert.assertFalse(_ms2.shouldSendRuleset(VM_ID, HOST_ID, generateCmd(_ms2, 2)));
+        // a full sync finds the host at the sequence number that was sent, which is current
+        Assert.assertTrue(_ms2.isRulesetCurrent(VM_ID, HOST_ID, 1, 2));
+    }
+
+    @Test
+    public void testRevokeOnOtherServerIsNotSkipped() {
+        Assert.assertTrue(_ms2.shouldSendRuleset(VM_ID, HOST_ID, generateCmd(_ms2, 1)));
+
+        // the rule is revoked on the other management server, which only drops its own compiled rules
+        _rules.remove(1);
+        _ms1._rulesetCache.invalidateGroup(1L);
+
+        final SecurityGroupRulesCmd cmd = generateCmd(_ms2, 2);
+        Assert.assertEquals(1, cmd.getIngressRuleSet().length);
+        Assert.assertEquals(22, cmd.getIngressRuleSet()[0].getStartPort());
+        Assert.assertTrue(_ms2.shouldSendRuleset(VM_ID, HOST_ID, cmd));
+        Assert.assertEquals(1, _ms2._rulesetCache.getStale());
+        Assert.assertFalse(_ms2.isRulesetCurrent(VM_ID, HOST_ID, 1, 2));
+    }
+
+    @Test
+    public void testRulesetSentByOtherServerIsNotSkipped() {
+        Assert.assertTrue(_ms2.shouldSendRuleset(VM_ID, HOST_ID, generateCmd(_ms2, 1)));
+
+        // the other management server sends the host a ruleset without port 80 ...
+        _rules.remove(1);
+        Assert.assertTrue(_ms1.shouldSendRuleset(VM_ID, HOST_ID, generateCmd(_ms1, 2)));
+
+        // ... and when port 80 is allowed again, the ruleset equals the one this server sent last
+        _rules.add(createRule(3L, 80));
+        Assert.assertTrue(_ms2.shouldSendRuleset(VM_ID, HOST_ID, generateCmd(_ms2, 3)));
+        // the host reports the sequence number the other server sent, so it is out of sync
+        Assert.assertFalse(_ms2.isRulesetCurrent(VM_ID, HOST_ID, 2, 3));
+    }
+
+    private SecurityGroupRulesCmd generateCmd(final SecurityGroupManagerImpl mgr, final long seqno) {
+        final Map<PortAndProto, Set<String>> ingress = mgr.generateRulesForVM(VM_ID, SecurityRuleType.IngressRule);
+        final Map<PortAndProto, Set<String>> egress = mgr.generateRulesForVM(VM_ID, SecurityRuleType.EgressRule);
+        return mgr.generateRulesetCmd("i-2-10-VM", "10.1.1.10", "02:00:00:00:00:01", VM_ID, mgr.generateRulesetSignature(ingress, egress), seqno, ingress, egress,
+                null);
+    }
+
+    private static SecurityGroupManagerImpl createManager(final SecurityGroupRuleDao ruleDao, final SecurityGroupVMMapDao vmMapDao) {
+        final SecurityGroupManagerImpl mgr = new SecurityGroupManagerImpl();
+        mgr._securityGroupRuleDao = ruleDao;
+        mgr._securityGroupVMMapDao = vmMapDao;
+        mgr._rulesetCache = new SecurityGroupRulesetCache(60000);
+        return mgr;
+    }
+
+    private static SecurityGroupRuleVO createRule(final long id, final int port) {
+        final SecurityGroupRuleVO rule = mock(SecurityGroupRuleVO.class);
+        when(rule.getId()).thenReturn(id);
+        when(rule.getProtocol()).thenReturn("tcp");
+        when(rule.getStartPort()).thenReturn(port);
+        when(rule.getEndPort()).thenReturn(port);
+        when(rule.getAllowedNetworkId()).thenReturn(null);
+        when(rule.getAllowedSourceIpCidr()).thenReturn("0.0.0.0/0");
+        return rule;
+    }
+}
@@ -0,0 +1,99 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.resourcelimit;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.cloud.configuration.Resource.ResourceType;
+import com.cloud.utils.Pair;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DomainResourceLeasesTest {
+
+    @Test
+    public void testConsumeTakesFromLease() {
+        final DomainResourceLeases leases = new DomainResourceLeases(60000);
+        Assert.assertFalse(leases.covers(2L, ResourceType.user_vm, 1, 10));
+
+        leases.grant(2L, ResourceType.user_vm, 3, 10);
+        Assert.assertTrue(leases.covers(2L, ResourceType.user_vm, 3, 10));
+        Assert.assertFalse(leases.covers(2L, ResourceType.volume, 1, 10));
+
+        leases.consume(2L, ResourceType.user_vm, 2);
+        Assert.assertTrue(leases.covers(2L, ResourceType.user_vm, 1, 10));
+        Assert.assertFalse(leases.covers(2L, ResourceType.user_vm, 2, 10));
+
+        // a decrement gives the headroom back
+        leases.consume(2L, ResourceType.user_vm, -1);
+        Assert.assertTrue(leases.covers(2L, ResourceType.user_vm, 2, 10));
+        Assert.assertEquals(1L, leases.getPending(2L, ResourceType.user_vm));
+
+        leases.revoke(2L, ResourceType.user_vm);
+        Assert.assertFalse(leases.covers(2L, ResourceType.user_vm, 1, 10));
+    }
+
+    @Test
+    public void testUnlimitedLeaseIsNotConsumed() {
+        final DomainResourceLeases leases = new DomainResourceLeases(60000);
+        leases.grant(2L, ResourceType.cpu, Long.MAX_VALUE, -1);
+        leases.consume(2L, ResourceType.cpu, 16);
+        Assert.assertTrue(leases.covers(2L, ResourceType.cpu, Long.MAX_VALUE, -1));
+    }
+
+    @Test
+    public void testExpiredLeaseDoesNotCover() {
+        final AtomicLong now = new AtomicLong(1000);
+        final DomainResourceLeases leases = new DomainResourceLeases(30000, now::get);
+        leases.grant(2L, ResourceType.user_vm, 10, 20);
+
+        now.addAndGet(30000);
+        Assert.assertTrue(leases.covers(2L, ResourceType.user_vm, 1, 20));
+        now.incrementAndGet();
+        Assert.assertFalse(leases.covers(2L, ResourceType.user_vm, 1, 20));
+    }
+
+    @Test
+    public void testLeaseOfChangedLimitDoesNotCover() {
+        final DomainResourceLeases leases = new DomainResourceLeases(60000);
+        leases.grant(2L, ResourceType.user_vm, 10, 20);
+
+        Assert.assertFalse(leases.covers(2L, ResourceType.user_vm, 1, 15));
+        // the lease is gone, also for the old limit
+        Assert.assertFalse(leases.covers(2L, ResourceType.user_vm, 1, 20));
+    }
+
+    @Test
+    public void testPendingIsDrainedAndRestored() {
+        final DomainResourceLeases leases = new DomainResourceLeases(60000);
+        leases.consume(1L, ResourceType.volume, 2);
+        leases.consume(2L, ResourceType.volume, 2);
+        leases.consume(2L, ResourceType.volume, -2);
+
+        final Map<Pair<Long, ResourceType>, Long> drained = leases.drainAllPending();
+        Assert.assertEquals(1, drained.size());
+        Assert.assertEquals(Long.valueOf(2L), drained.get(new Pair<Long, ResourceType>(1L, ResourceType.volume)));
+        Assert.assertEquals(0L, leases.getPending(1L, ResourceType.volume));
+
+        leases.restorePending(1L, ResourceType.volume, 2);
+        leases.consume(1L, ResourceType.volume, 1);
+        Assert.assertEquals(3L, leases.drainPending(1L, ResourceType.volume));
+        Assert.assertTrue(leases.drainAllPending().isEmpty());
+    }
+}
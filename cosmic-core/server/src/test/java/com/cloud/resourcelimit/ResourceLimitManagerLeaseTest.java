@@ -0,0 +1,127 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.resourcelimit;
+
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.cloud.configuration.Resource.ResourceOwnerType;
+import com.cloud.configuration.Resource.ResourceType;
+import com.cloud.configuration.ResourceCountVO;
+import com.cloud.configuration.ResourceLimitVO;
+import com.cloud.configuration.dao.ResourceCountDao;
+import com.cloud.configuration.dao.ResourceLimitDao;
+import com.cloud.domain.Domain;
+import com.cloud.domain.DomainVO;
+import com.cloud.domain.dao.DomainDao;
+import com.cloud.exception.ResourceAllocationException;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+/**
+ * Limit checks of a management server that leases the headroom of a domain, while the limit of the
+ * domain is changed on another management server.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class ResourceLimitManagerLeaseTest {
+
+    private static final long DOMAIN_ID = 2L;
+    private static final long COUNT_ID = 7L;
+
+    /**
+     * Leases without the transaction, which needs a database.
+     */
+    static class LeasingResourceLimitManager extends ResourceLimitManagerImpl {
+        @Override
+        protected void leaseDomainResources(final DomainVO domain, final ResourceType type, final long numResources, final long domainLimit)
+            throws ResourceAllocationException {
+            leaseDomainHeadroom(domain, type, numResources, domainLimit);
+        }
+    }
+
+    @Mock
+    DomainDao _domainDao;
+    @Mock
+    ResourceCountDao _resourceCountDao;
+    @Mock
+    ResourceLimitDao _resourceLimitDao;
+
+    @InjectMocks
+    LeasingResourceLimitManager _manager = new LeasingResourceLimitManager();
+
+    private ResourceLimitVO _limit;
+
+    @Before
+    public void setUp() {
+        final DomainVO root = mock(DomainVO.class);
+        when(root.getId()).thenReturn(Domain.ROOT_DOMAIN);
+        when(root.getParent()).thenReturn(null);
+        final DomainVO domain = mock(DomainVO.class);
+        when(domain.getId()).thenReturn(DOMAIN_ID);
+        when(domain.getParent()).thenReturn(Domain.ROOT_DOMAIN);
+        when(_domainDao.findById(Domain.ROOT_DOMAIN)).thenReturn(root);
+        when(_domainDao.findById(DOMAIN_ID)).thenReturn(domain);
+
+        _limit = new ResourceLimitVO(ResourceType.user_vm, 10L, DOMAIN_ID, ResourceOwnerType.Domain);
+        when(_resourceLimitDao.findByOwnerIdAndType(DOMAIN_ID, ResourceOwnerType.Domain, ResourceType.user_vm)).thenAnswer(invocation -> _limit);
+
+        final ResourceCountVO count = mock(ResourceCountVO.class);
+        when(count.getId()).thenReturn(COUNT_ID);
+        when(count.getCount()).thenReturn(5L);
+        when(_resourceCountDao.findByOwnerAndType(DOMAIN_ID, ResourceOwnerType.Domain, ResourceType.user_vm)).thenReturn(count);
+        when(_resourceCountDao.lockRow(COUNT_ID, true)).thenReturn(count);
+
+        _manager._leasePercent = 100;
+        _manager._domainLeases = new DomainResourceLeases(60000);
+    }
+
+    @Test
+    public void testLeaseCoversChecksWithoutLocking() throws ResourceAllocationException {
+        _manager.checkDomainResourceLimitsWithLeases(DOMAIN_ID, ResourceType.user_vm, 1);
+        _manager._domainLeases.consume(DOMAIN_ID, ResourceType.user_vm, 1);
+        _manager.checkDomainResourceLimitsWithLeases(DOMAIN_ID, ResourceType.user_vm, 1);
+
+        verify(_resourceCountDao, times(1)).lockRow(anyLong(), eq(true));
+    }
+
+    @Test
+    public void testLimitLoweredOnOtherServerIsEnforced() throws ResourceAllocationException {
+        _manager.checkDomainResourceLimitsWithLeases(DOMAIN_ID, ResourceType.user_vm, 1);
+        Assert.assertTrue(_manager._domainLeases.covers(DOMAIN_ID, ResourceType.user_vm, 5, 10));
+
+        // another management server lowers the limit to the count, this one is not told
+        _limit = new ResourceLimitVO(ResourceType.user_vm, 5L, DOMAIN_ID, ResourceOwnerType.Domain);
+
+        try {
+            _manager.checkDomainResourceLimitsWithLeases(DOMAIN_ID, ResourceType.user_vm, 1);
+            Assert.fail("The lease of the old limit should not be used");
+        } catch (final ResourceAllocationException e) {
+            // expected
+        }
+        verify(_resourceCountDao, times(2)).lockRow(COUNT_ID, true);
+    }
+}
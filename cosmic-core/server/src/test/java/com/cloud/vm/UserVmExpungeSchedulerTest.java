@@ -0,0 +1,121 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.vm;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.cloud.utils.exception.CloudRuntimeException;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class UserVmExpungeSchedulerTest {
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testLimitPerPool() throws Exception {
+        final UserVmExpungeScheduler scheduler = new UserVmExpungeScheduler(executor, 4, 0, 1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch otherPool = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(4);
+        final AtomicInteger onPool = new AtomicInteger();
+        final AtomicInteger maxOnPool = new AtomicInteger();
+
+        final Runnable samePool = () -> {
+            maxOnPool.accumulateAndGet(onPool.incrementAndGet(), Math::max);
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            onPool.decrementAndGet();
+            done.countDown();
+        };
+        for (long vmId = 1; vmId <= 3; vmId++) {
+            Assert.assertTrue(scheduler.submit(vmId, 1L, Collections.singletonList(1L), samePool));
+        }
+        Assert.assertFalse(scheduler.submit(2, 1L, Collections.singletonList(1L), samePool));
+        Assert.assertTrue(scheduler.submit(4, 1L, Arrays.asList(2L, null), () -> {
+            otherPool.countDown();
+            done.countDown();
+        }));
+
+        // the busy pool does not hold up the vm on the other pool
+        Assert.assertTrue(otherPool.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(2, scheduler.getBacklog());
+
+        release.countDown();
+        Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(1, maxOnPool.get());
+        Assert.assertEquals(4, waitForExpunged(scheduler, 4));
+        Assert.assertEquals(0, scheduler.getBacklog());
+    }
+
+    @Test
+    public void testLimitPerHostAndFailures() throws Exception {
+        final UserVmExpungeScheduler scheduler = new UserVmExpungeScheduler(executor, 4, 1, 0);
+        final AtomicInteger onHost = new AtomicInteger();
+        final AtomicInteger maxOnHost = new AtomicInteger();
+
+        for (long vmId = 1; vmId <= 5; vmId++) {
+            final long id = vmId;
+            scheduler.submit(vmId, 7L, Collections.<Long> emptyList(), () -> {
+                maxOnHost.accumulateAndGet(onHost.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(20);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                onHost.decrementAndGet();
+                if (id == 3) {
+                    throw new CloudRuntimeException("Unable to expunge vm " + id);
+                }
+            });
+        }
+
+        Assert.assertEquals(4, waitForExpunged(scheduler, 4));
+        Assert.assertEquals(1, scheduler.getFailed());
+        Assert.assertEquals(1, maxOnHost.get());
+        Assert.assertEquals(0, scheduler.getRunning());
+    }
+
+    private static long waitForExpunged(final UserVmExpungeScheduler scheduler, final long expected) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 10000;
+        while ((scheduler.getExpunged() < expected || scheduler.getRunning() > 0) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        return scheduler.getExpunged();
+    }
+}
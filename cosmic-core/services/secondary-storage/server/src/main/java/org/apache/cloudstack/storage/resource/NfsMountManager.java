@@ -0,0 +1,209 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package org.apache.cloudstack.storage.resource;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.cloud.utils.concurrency.NamedThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the image stores mounted while commands use them, so a command does not have to check the
+ * mount table, or take a lock shared with every other command, each time it resolves a path.
+ *
+ * A command holds a reference on every store it resolves until {@link #releaseAll()} is called at its
+ * end. The mount is verified when a command first resolves the store and mounted again if it is gone;
+ * later resolves in the same command use the folder without checking. Threads that resolve stores outside
+ * of a command keep their reference, which keeps the store mounted. A periodic check finds stores that are
+ * no longer mounted and unmounts stores that nobody has used for the idle timeout.
+ */
+public class NfsMountManager {
+  private static final Logger s_logger = LoggerFactory.getLogger(NfsMountManager.class);
+
+  /**
+   * Mounts and unmounts the stores for the mount manager.
+   */
+  public interface Mounter {
+    /**
+     * @return the name of the folder the store is mounted on
+     */
+    String mount(URI uri) throws UnknownHostException;
+
+    void umount(String dir, URI uri);
+
+    boolean isMounted(String dir, URI uri);
+  }
+
+  private final Mounter _mounter;
+  private final long _idleTimeout;
+  private final ConcurrentHashMap<String, MountPoint> _mounts = new ConcurrentHashMap<String, MountPoint>();
+  private final ThreadLocal<List<MountPoint>> _leases = new ThreadLocal<List<MountPoint>>() {
+    @Override
+    protected List<MountPoint> initialValue() {
+      return new ArrayList<MountPoint>();
+    }
+  };
+  private ScheduledExecutorService _checker;
+
+  /**
+   * @param idleTimeout milliseconds a store stays mounted once nobody uses it, 0 to keep it mounted
+   */
+  public NfsMountManager(Mounter mounter, long idleTimeout) {
+    _mounter = mounter;
+    _idleTimeout = idleTimeout;
+  }
+
+  /**
+   * Mounts the store if it is not mounted and holds a reference on it for the current thread. The first
+   * time the thread resolves the store, the mount is verified and the store is mounted again if it is gone.
+   *
+   * @return the name of the folder the store is mounted on
+   */
+  public String acquire(String secUrl) throws URISyntaxException, UnknownHostException {
+    MountPoint mountPoint = _mounts.get(secUrl);
+    if (mountPoint == null) {
+      final MountPoint created = new MountPoint(new URI(secUrl));
+      mountPoint = _mounts.putIfAbsent(secUrl, created);
+      if (mountPoint == null) {
+        mountPoint = created;
+      }
+    }
+
+    final List<MountPoint> leases = _leases.get();
+    synchronized (mountPoint) {
+      // a thread holds one reference on a store however often it resolves it
+      final boolean leased = leases.contains(mountPoint);
+      if (mountPoint._dir != null && !leased && !_mounter.isMounted(mountPoint._dir, mountPoint._uri)) {
+        s_logger.warn(mountPoint._uri + " is no longer mounted on " + mountPoint._dir + ", mounting it again");
+        mountPoint._dir = null;
+      }
+      if (mountPoint._dir == null) {
+        mountPoint._dir = _mounter.mount(mountPoint._uri);
+      }
+      if (!leased) {
+        mountPoint._references++;
+        leases.add(mountPoint);
+      }
+      mountPoint._lastUsed = System.currentTimeMillis();
+      return mountPoint._dir;
+    }
+  }
+
+  /**
+   * Releases the references the current thread holds.
+   */
+  public void releaseAll() {
+    final List<MountPoint> leases = _leases.get();
+    for (final MountPoint mountPoint : leases) {
+      synchronized (mountPoint) {
+        mountPoint._references--;
+        mountPoint._lastUsed = System.currentTimeMillis();
+      }
+    }
+    leases.clear();
+  }
+
+  /**
+   * @return the number of references held on the store
+   */
+  public int getReferences(String secUrl) {
+    final MountPoint mountPoint = _mounts.get(secUrl);
+    if (mountPoint == null) {
+      return 0;
+    }
+    synchronized (mountPoint) {
+      return mountPoint._references;
+    }
+  }
+
+  /**
+   * @return whether the manager has the store mounted
+   */
+  public boolean isMounted(String secUrl) {
+    final MountPoint mountPoint = _mounts.get(secUrl);
+    if (mountPoint == null) {
+      return false;
+    }
+    synchronized (mountPoint) {
+      return mountPoint._dir != null;
+    }
+  }
+
+  /**
+   * Forgets stores that are no longer mounted and unmounts the stores that have been idle for too long.
+   */
+  public void checkMounts() {
+    final long now = System.currentTimeMillis();
+    for (final MountPoint mountPoint : _mounts.values()) {
+      synchronized (mountPoint) {
+        if (mountPoint._dir == null) {
+          continue;
+        }
+        try {
+          if (mountPoint._references == 0 && _idleTimeout > 0 && now - mountPoint._lastUsed > _idleTimeout) {
+            s_logger.info("Unmounting " + mountPoint._uri + " from " + mountPoint._dir + ", it has not been used for " + (now - mountPoint._lastUsed) / 1000 + " seconds");
+            _mounter.umount(mountPoint._dir, mountPoint._uri);
+            mountPoint._dir = null;
+          } else if (!_mounter.isMounted(mountPoint._dir, mountPoint._uri)) {
+            s_logger.warn(mountPoint._uri + " is no longer mounted on " + mountPoint._dir + ", it will be mounted again when it is used");
+            mountPoint._dir = null;
+          }
+        } catch (final RuntimeException e) {
+          s_logger.warn("Unable to check the mount of " + mountPoint._uri + " on " + mountPoint._dir, e);
+        }
+      }
+    }
+  }
+
+  public void start(long checkInterval) {
+    _checker = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("NfsMountManager"));
+    _checker.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        checkMounts();
+      }
+    }, checkInterval, checkInterval, TimeUnit.MILLISECONDS);
+  }
+
+  public void stop() {
+    if (_checker != null) {
+      _checker.shutdown();
+      _checker = null;
+    }
+  }
+
+  private static class MountPoint {
+    private final URI _uri;
+    private String _dir;
+    private int _references;
+    private long _lastUsed;
+
+    public MountPoint(URI uri) {
+      _uri = uri;
+    }
+  }
+}
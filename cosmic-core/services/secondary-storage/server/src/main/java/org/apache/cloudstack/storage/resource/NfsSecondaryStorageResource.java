@@ -38,6 +38,8 @@ import java.math.BigInteger;
 import java.net.InetAddress;
 import java.net.URI;
 import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
@@ -103,6 +105,7 @@ import com.cloud.storage.template.TemplateLocation;
 import com.cloud.storage.template.TemplateProp;
 import com.cloud.storage.template.VhdProcessor;
 import com.cloud.utils.EncryptionUtil;
+import com.cloud.utils.FileUtil;
 import com.cloud.utils.NumbersUtil;
 import com.cloud.utils.SwiftUtil;
 import com.cloud.utils.exception.CloudRuntimeException;
@@ -211,6 +214,8 @@ public class NfsSecondaryStorageResource extends ServerResourceBase implements S
   protected String createTemplateFromSnapshotXenScript;
   private final HashMap<String,UploadEntity> uploadEntityStateMap = new HashMap<String,UploadEntity>();
   private String _ssvmPSK = null;
+  protected NfsMountManager _mountManager = new NfsMountManager(new StoreMounter(), 0);
+  private long _mountCheckInterval = 60000;
 
   public void setParentPath(String path) {
     _parent = path;
@@ -230,44 +235,49 @@ public class NfsSecondaryStorageResource extends ServerResourceBase implements S
 
   @Override
   public Answer executeRequest(Command cmd) {
-    if (cmd instanceof DownloadProgressCommand) {
-      return _dlMgr.handleDownloadCommand(this, (DownloadProgressCommand)cmd);
-    } else if (cmd instanceof DownloadCommand) {
-      return execute((DownloadCommand)cmd);
-    } else if (cmd instanceof UploadCommand) {
-      return _upldMgr.handleUploadCommand(this, (UploadCommand)cmd);
-    } else if (cmd instanceof CreateEntityDownloadURLCommand) {
-      return _upldMgr.handleCreateEntityURLCommand((CreateEntityDownloadURLCommand)cmd);
-    } else if (cmd instanceof DeleteEntityDownloadURLCommand) {
-      return _upldMgr.handleDeleteEntityDownloadURLCommand((DeleteEntityDownloadURLCommand)cmd);
-    } else if (cmd instanceof GetStorageStatsCommand) {
-      return execute((GetStorageStatsCommand)cmd);
-    } else if (cmd instanceof CheckHealthCommand) {
-      return new CheckHealthAnswer((CheckHealthCommand)cmd, true);
-    } else if (cmd instanceof ReadyCommand) {
-      return new ReadyAnswer((ReadyCommand)cmd);
-    } else if (cmd instanceof SecStorageFirewallCfgCommand) {
-      return execute((SecStorageFirewallCfgCommand)cmd);
-    } else if (cmd instanceof SecStorageVMSetupCommand) {
-      return execute((SecStorageVMSetupCommand)cmd);
-    } else if (cmd instanceof SecStorageSetupCommand) {
-      return execute((SecStorageSetupCommand)cmd);
-    } else if (cmd instanceof ComputeChecksumCommand) {
-      return execute((ComputeChecksumCommand)cmd);
-    } else if (cmd instanceof ListTemplateCommand) {
-      return execute((ListTemplateCommand)cmd);
-    } else if (cmd instanceof ListVolumeCommand) {
-      return execute((ListVolumeCommand)cmd);
-    } else if (cmd instanceof DeleteSnapshotsDirCommand) {
-      return execute((DeleteSnapshotsDirCommand)cmd);
-    } else if (cmd instanceof CopyCommand) {
-      return execute((CopyCommand)cmd);
-    } else if (cmd instanceof DeleteCommand) {
-      return execute((DeleteCommand)cmd);
-    } else if (cmd instanceof UploadStatusCommand) {
-      return execute((UploadStatusCommand)cmd);
-    } else {
-      return Answer.createUnsupportedCommandAnswer(cmd);
+    try {
+      if (cmd instanceof DownloadProgressCommand) {
+        return _dlMgr.handleDownloadCommand(this, (DownloadProgressCommand)cmd);
+      } else if (cmd instanceof DownloadCommand) {
+        return execute((DownloadCommand)cmd);
+      } else if (cmd instanceof UploadCommand) {
+        return _upldMgr.handleUploadCommand(this, (UploadCommand)cmd);
+      } else if (cmd instanceof CreateEntityDownloadURLCommand) {
+        return _upldMgr.handleCreateEntityURLCommand((CreateEntityDownloadURLCommand)cmd);
+      } else if (cmd instanceof DeleteEntityDownloadURLCommand) {
+        return _upldMgr.handleDeleteEntityDownloadURLCommand((DeleteEntityDownloadURLCommand)cmd);
+      } else if (cmd instanceof GetStorageStatsCommand) {
+        return execute((GetStorageStatsCommand)cmd);
+      } else if (cmd instanceof CheckHealthCommand) {
+        return new CheckHealthAnswer((CheckHealthCommand)cmd, true);
+      } else if (cmd instanceof ReadyCommand) {
+        return new ReadyAnswer((ReadyCommand)cmd);
+      } else if (cmd instanceof SecStorageFirewallCfgCommand) {
+        return execute((SecStorageFirewallCfgCommand)cmd);
+      } else if (cmd instanceof SecStorageVMSetupCommand) {
+        return execute((SecStorageVMSetupCommand)cmd);
+      } else if (cmd instanceof SecStorageSetupCommand) {
+        return execute((SecStorageSetupCommand)cmd);
+      } else if (cmd instanceof ComputeChecksumCommand) {
+        return execute((ComputeChecksumCommand)cmd);
+      } else if (cmd instanceof ListTemplateCommand) {
+        return execute((ListTemplateCommand)cmd);
+      } else if (cmd instanceof ListVolumeCommand) {
+        return execute((ListVolumeCommand)cmd);
+      } else if (cmd instanceof DeleteSnapshotsDirCommand) {
+        return execute((DeleteSnapshotsDirCommand)cmd);
+      } else if (cmd instanceof CopyCommand) {
+        return execute((CopyCommand)cmd);
+      } else if (cmd instanceof DeleteCommand) {
+        return execute((DeleteCommand)cmd);
+      } else if (cmd instanceof UploadStatusCommand) {
+        return execute((UploadStatusCommand)cmd);
+      } else {
+        return Answer.createUnsupportedCommandAnswer(cmd);
+      }
+    } finally {
+      // the stores the command used may be unmounted once they are idle
+      _mountManager.releaseAll();
     }
   }
 
@@ -498,7 +508,12 @@ public class NfsSecondaryStorageResource extends ServerResourceBase implements S
       final String fileName = templateName + "." + srcFormat.getFileExtension();
       final String destFileFullPath = destFile.getAbsolutePath() + File.separator + fileName;
       s_logger.debug("copy snapshot " + srcFile.getAbsolutePath() + " to template " + destFileFullPath);
-      Script.runSimpleBashScript("cp " + srcFile.getAbsolutePath() + " " + destFileFullPath);
+      try {
+        copyFile(srcFile, new File(destFileFullPath));
+      } catch (final IOException e) {
+        s_logger.debug("Failed to copy snapshot " + srcFile.getAbsolutePath() + " to template " + destFileFullPath + ": " + e.toString());
+        return new CopyCmdAnswer(e.toString());
+      }
       final String metaFileName = destFile.getAbsolutePath() + File.separator + "template.properties";
       final File metaFile = new File(metaFileName);
       try {
@@ -1944,13 +1959,12 @@ public class NfsSecondaryStorageResource extends ServerResourceBase implements S
   }
 
   @Override
-  synchronized public String getRootDir(String secUrl) {
+  public String getRootDir(String secUrl) {
     if (!_inSystemVM) {
       return _parent;
     }
     try {
-      final URI uri = new URI(secUrl);
-      final String dir = mountUri(uri);
+      final String dir = _mountManager.acquire(secUrl);
       return _parent + "/" + dir;
     } catch (final Exception e) {
       final String msg = "GetRootDir for " + secUrl + " failed due to " + e.toString();
@@ -1959,6 +1973,25 @@ public class NfsSecondaryStorageResource extends ServerResourceBase implements S
     }
   }
 
+  /**
+   * Copies a file within the agent, logging the progress of large copies.
+   */
+  protected void copyFile(final File srcFile, final File destFile) throws IOException {
+    final long start = System.currentTimeMillis();
+    FileUtil.copyFile(srcFile, destFile, new FileUtil.CopyProgress() {
+      private long _reported = 0;
+
+      @Override
+      public void copied(long bytes, long total) {
+        if (bytes - _reported >= 1024L * 1024 * 1024 && s_logger.isDebugEnabled()) {
+          s_logger.debug("Copied " + bytes + " of " + total + " bytes of " + srcFile.getAbsolutePath() + " to " + destFile.getAbsolutePath());
+          _reported = bytes;
+        }
+      }
+    });
+    s_logger.debug("Copied " + srcFile.getAbsolutePath() + " to " + destFile.getAbsolutePath() + " in " + (System.currentTimeMillis() - start) + " ms");
+  }
+
   protected long getUsedSize(String rootDir) {
     return _storage.getUsedSpace(rootDir);
   }
@@ -2034,6 +2067,9 @@ public class NfsSecondaryStorageResource extends ServerResourceBase implements S
     final String value = (String)params.get("scripts.timeout");
     _timeout = NumbersUtil.parseInt(value, 1440) * 1000;
 
+    _mountCheckInterval = NumbersUtil.parseLong((String)params.get("mount.check.interval"), 60) * 1000;
+    _mountManager = new NfsMountManager(new StoreMounter(), NumbersUtil.parseLong((String)params.get("mount.idle.timeout"), 0) * 1000);
+
     _storage = (StorageLayer)params.get(StorageLayer.InstanceConfigKey);
     configureStorageLayerClass(params);
 
@@ -2314,7 +2350,7 @@ public class NfsSecondaryStorageResource extends ServerResourceBase implements S
       return;
     }
 
-    final Script command = new Script(!_inSystemVM, "mount", _timeout, s_logger);
+    final Script command = new Script(!_inSystemVM, "umount", _timeout, s_logger);
     command.add(localRootPath);
     final String result = command.execute();
     if (result != null) {
@@ -2425,6 +2461,22 @@ public class NfsSecondaryStorageResource extends ServerResourceBase implements S
   }
 
   protected boolean mountExists(String localRootPath, URI uri) {
+    final File mounts = new File("/proc/mounts");
+    if (mounts.canRead()) {
+      // reading the mount table saves forking mount
+      try {
+        for (final String line : Files.readAllLines(mounts.toPath(), StandardCharsets.UTF_8)) {
+          if (line.contains(localRootPath)) {
+            s_logger.debug("Some device already mounted at " + localRootPath + ", no need to mount " + uri.toString());
+            return true;
+          }
+        }
+        return false;
+      } catch (final IOException e) {
+        s_logger.debug("Unable to read " + mounts + ", asking mount: " + e.toString());
+      }
+    }
+
     Script script = null;
     script = new Script(!_inSystemVM, "mount", _timeout, s_logger);
 
@@ -2468,11 +2520,15 @@ public class NfsSecondaryStorageResource extends ServerResourceBase implements S
 
   @Override
   public boolean start() {
+    if (_inSystemVM) {
+      _mountManager.start(_mountCheckInterval);
+    }
     return true;
   }
 
   @Override
   public boolean stop() {
+    _mountManager.stop();
     return true;
   }
 
@@ -2903,4 +2959,21 @@ public class NfsSecondaryStorageResource extends ServerResourceBase implements S
     }
     return cmd;
   }
+
+  private class StoreMounter implements NfsMountManager.Mounter {
+    @Override
+    public String mount(URI uri) throws UnknownHostException {
+      return mountUri(uri);
+    }
+
+    @Override
+    public void umount(String dir, URI uri) {
+      NfsSecondaryStorageResource.this.umount(_parent + "/" + dir, uri);
+    }
+
+    @Override
+    public boolean isMounted(String dir, URI uri) {
+      return mountExists(_parent + "/" + dir, uri);
+    }
+  }
 }
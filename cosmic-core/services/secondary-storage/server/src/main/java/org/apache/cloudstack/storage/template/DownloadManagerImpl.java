@@ -49,6 +49,7 @@ import com.cloud.storage.Storage.ImageFormat;
 import com.cloud.storage.StorageLayer;
 import com.cloud.storage.VMTemplateHostVO;
 import com.cloud.storage.VMTemplateStorageResourceAssoc;
+import com.cloud.storage.template.DownloadDigest;
 import com.cloud.storage.template.HttpTemplateDownloader;
 import com.cloud.storage.template.IsoProcessor;
 import com.cloud.storage.template.LocalTemplateDownloader;
@@ -394,8 +395,34 @@ public class DownloadManagerImpl extends ManagerBase implements DownloadManager
     // storage
     final ResourceType resourceType = dnld.getResourceType();
 
+    final String registeredCheckSum = dnld.getChecksum() != null && dnld.getChecksum().trim().length() > 1 ? dnld.getChecksum().trim() : null;
+    if (registeredCheckSum != null && DownloadDigest.getAlgorithm(registeredCheckSum) == null) {
+      // installing the file without verifying it would defeat the checksum
+      return "Unsupported checksum " + registeredCheckSum + ", expected the hex encoded MD5, SHA-1, SHA-224, SHA-256, SHA-384 or SHA-512 of the file";
+    }
+
     final File originalTemplate = new File(td.getDownloadLocalPath());
-    final String checkSum = computeCheckSum(originalTemplate);
+    String checkSum = null;
+    boolean verified = false;
+    if (td instanceof HttpTemplateDownloader) {
+      // the downloader digested the file while writing it, unless it was changed behind its back
+      final DownloadDigest digest = ((HttpTemplateDownloader)td).getDigest();
+      if (digest.getLength() == originalTemplate.length()) {
+        checkSum = digest.getHexDigest(DownloadDigest.MD5);
+        final String downloadedCheckSum = digest.getHexDigest(DownloadDigest.getAlgorithm(registeredCheckSum));
+        if (registeredCheckSum != null && downloadedCheckSum != null) {
+          if (!downloadedCheckSum.equalsIgnoreCase(registeredCheckSum)) {
+            return "Checksum of the downloaded file is " + downloadedCheckSum + ", expected " + registeredCheckSum;
+          }
+          verified = true;
+        }
+      } else {
+        s_logger.warn("Downloaded file " + originalTemplate + " has " + originalTemplate.length() + " bytes, but " + digest.getLength() + " were digested");
+      }
+    }
+    if (checkSum == null) {
+      checkSum = computeCheckSum(originalTemplate);
+    }
     if (checkSum == null) {
       s_logger.warn("Something wrong happened when try to calculate the checksum of downloaded template!");
     }
@@ -434,8 +461,12 @@ public class DownloadManagerImpl extends ManagerBase implements DownloadManager
     scr.add("-t", resourcePath);
     scr.add("-f", td.getDownloadLocalPath()); // this is the temporary
     // template file downloaded
-    if (dnld.getChecksum() != null && dnld.getChecksum().length() > 1) {
-      scr.add("-c", dnld.getChecksum());
+    if (registeredCheckSum != null && !verified) {
+      // let the script verify what could not be verified during the download
+      scr.add("-c", registeredCheckSum);
+    } else if (checkSum != null) {
+      scr.add("-c", checkSum);
+      scr.add("-k");
     }
     scr.add("-u"); // cleanup
     String result;
@@ -577,7 +608,7 @@ public class DownloadManagerImpl extends ManagerBase implements DownloadManager
           TemplateDownloader td;
           if (uri != null && uri.getScheme() != null) {
             if (uri.getScheme().equalsIgnoreCase("http") || uri.getScheme().equalsIgnoreCase("https")) {
-              td = new HttpTemplateDownloader(_storage, url, tmpDir, new Completion(jobId), maxTemplateSizeInBytes, user, password, proxy, resourceType);
+              td = new HttpTemplateDownloader(_storage, url, tmpDir, new Completion(jobId), maxTemplateSizeInBytes, user, password, proxy, resourceType, cksum);
             } else if (uri.getScheme().equalsIgnoreCase("file")) {
               td = new LocalTemplateDownloader(_storage, url, tmpDir, maxTemplateSizeInBytes, new Completion(jobId));
             } else if (uri.getScheme().equalsIgnoreCase("scp")) {
@@ -0,0 +1,145 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package org.apache.cloudstack.storage.resource;
+
+import java.net.URI;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class NfsMountManagerTest {
+  private static final String STORE = "nfs://10.1.1.1/export/secondary";
+
+  private static class FakeMounter implements NfsMountManager.Mounter {
+    final AtomicInteger mounts = new AtomicInteger();
+    final AtomicInteger umounts = new AtomicInteger();
+    final Set<String> mounted = new HashSet<String>();
+
+    @Override
+    public String mount(URI uri) {
+      mounts.incrementAndGet();
+      mounted.add("dir");
+      return "dir";
+    }
+
+    @Override
+    public void umount(String dir, URI uri) {
+      umounts.incrementAndGet();
+      mounted.remove(dir);
+    }
+
+    @Override
+    public boolean isMounted(String dir, URI uri) {
+      return mounted.contains(dir);
+    }
+  }
+
+  @Test
+  public void testReferencesAndIdleUnmount() throws Exception {
+    final FakeMounter mounter = new FakeMounter();
+    final NfsMountManager manager = new NfsMountManager(mounter, 1);
+
+    Assert.assertEquals("dir", manager.acquire(STORE));
+    Assert.assertEquals("dir", manager.acquire(STORE));
+    Assert.assertEquals(1, mounter.mounts.get());
+    Assert.assertEquals(1, manager.getReferences(STORE));
+
+    // another command uses the store at the same time
+    final Thread other = new Thread(() -> {
+      try {
+        manager.acquire(STORE);
+      } catch (final Exception e) {
+        throw new RuntimeException(e);
+      }
+    });
+    other.start();
+    other.join();
+    Assert.assertEquals(2, manager.getReferences(STORE));
+
+    Thread.sleep(5);
+    manager.checkMounts();
+    Assert.assertEquals(0, mounter.umounts.get());
+
+    manager.releaseAll();
+    Assert.assertEquals(1, manager.getReferences(STORE));
+    Thread.sleep(5);
+    manager.checkMounts();
+    Assert.assertEquals(0, mounter.umounts.get());
+    Assert.assertTrue(manager.isMounted(STORE));
+  }
+
+  @Test
+  public void testIdleStoreIsUnmounted() throws Exception {
+    final FakeMounter mounter = new FakeMounter();
+    final NfsMountManager manager = new NfsMountManager(mounter, 1);
+
+    manager.acquire(STORE);
+    manager.releaseAll();
+    Thread.sleep(5);
+    manager.checkMounts();
+    Assert.assertEquals(1, mounter.umounts.get());
+    Assert.assertFalse(manager.isMounted(STORE));
+
+    manager.acquire(STORE);
+    Assert.assertEquals(2, mounter.mounts.get());
+    manager.releaseAll();
+  }
+
+  @Test
+  public void testLostMountIsMountedAgain() throws Exception {
+    final FakeMounter mounter = new FakeMounter();
+    final NfsMountManager manager = new NfsMountManager(mounter, 0);
+
+    manager.acquire(STORE);
+    manager.releaseAll();
+    manager.checkMounts();
+    Assert.assertTrue(manager.isMounted(STORE));
+
+    mounter.mounted.clear();
+    manager.checkMounts();
+    Assert.assertFalse(manager.isMounted(STORE));
+    Assert.assertEquals(0, mounter.umounts.get());
+
+    manager.acquire(STORE);
+    Assert.assertEquals(2, mounter.mounts.get());
+    manager.releaseAll();
+  }
+
+  @Test
+  public void testLostMountIsMountedAgainOnAcquire() throws Exception {
+    final FakeMounter mounter = new FakeMounter();
+    final NfsMountManager manager = new NfsMountManager(mounter, 0);
+
+    manager.acquire(STORE);
+    manager.releaseAll();
+
+    // the mount is lost before the periodic check notices
+    mounter.mounted.clear();
+    Assert.assertEquals("dir", manager.acquire(STORE));
+    Assert.assertEquals(2, mounter.mounts.get());
+    Assert.assertTrue(mounter.mounted.contains("dir"));
+
+    // the command resolving the store again does not check the mount again
+    mounter.mounted.clear();
+    manager.acquire(STORE);
+    Assert.assertEquals(2, mounter.mounts.get());
+    manager.releaseAll();
+  }
+}
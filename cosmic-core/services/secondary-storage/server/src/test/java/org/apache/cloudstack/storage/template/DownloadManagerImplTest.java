@@ -0,0 +1,72 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package org.apache.cloudstack.storage.template;
+
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.util.concurrent.ExecutorService;
+
+import com.cloud.storage.Storage.ImageFormat;
+import com.cloud.storage.StorageLayer;
+import com.cloud.storage.template.TemplateDownloader.Status;
+
+import org.apache.cloudstack.storage.command.DownloadCommand.ResourceType;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DownloadManagerImplTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private DownloadManagerImpl _manager;
+
+  @Before
+  public void setUp() {
+    final StorageLayer storage = mock(StorageLayer.class);
+    when(storage.mkdirs(anyString())).thenReturn(true);
+    when(storage.getFile(anyString())).thenAnswer(invocation -> new File((String)invocation.getArguments()[0]));
+
+    _manager = new DownloadManagerImpl();
+    _manager.setStorageLayer(storage);
+    // the downloads are not run, the test completes them
+    _manager.setThreadPool(mock(ExecutorService.class));
+  }
+
+  @Test
+  public void testUnsupportedChecksumFailsDownload() {
+    assertDownloadFails("not-a-checksum");
+    // hex, but not the length of a digest that can be verified
+    assertDownloadFails("0123456789abcdef");
+  }
+
+  private void assertDownloadFails(final String checksum) {
+    final String jobId = _manager.downloadPublicTemplate(1L, "file:///export/templates/tmpl.qcow2", "tmpl", ImageFormat.QCOW2, false, 2L, "template", checksum,
+        folder.getRoot().getAbsolutePath(), "template/tmpl/2/1", null, null, 1024L, null, ResourceType.TEMPLATE);
+
+    _manager.setDownloadStatus(jobId, Status.DOWNLOAD_FINISHED);
+
+    Assert.assertEquals(Status.UNRECOVERABLE_ERROR, _manager.getDownloadStatus(jobId));
+    Assert.assertTrue(_manager.getDownloadError(jobId), _manager.getDownloadError(jobId).contains("Unsupported checksum " + checksum));
+  }
+}
@@ -487,48 +487,21 @@ public class UsageManagerImpl extends ManagerBase implements UsageManager, Runna
                     offset = new Long(offset.longValue() + limit.longValue());
                 } while ((accounts != null) && !accounts.isEmpty());
 
-                // reset offset
-                offset = Long.valueOf(0);
-
                 // get all the user stats to create usage records for the network usage
                 Long lastUserStatsId = _usageDao.getLastUserStatsId();
                 if (lastUserStatsId == null) {
                     lastUserStatsId = Long.valueOf(0);
                 }
 
+                // the stats tables are walked by id in batches, so they are never loaded at once
                 SearchCriteria<UserStatisticsVO> sc2 = _userStatsDao.createSearchCriteria();
                 sc2.addAnd("id", SearchCriteria.Op.LTEQ, lastUserStatsId);
-                do {
-                    Filter filter = new Filter(UserStatisticsVO.class, "id", true, offset, limit);
-
-                    userStats = _userStatsDao.search(sc2, filter);
-
-                    if ((userStats != null) && !userStats.isEmpty()) {
-                        // now copy the accounts to cloud_usage db
-                        _usageDao.updateUserStats(userStats);
-                    }
-                    offset = new Long(offset.longValue() + limit.longValue());
-                } while ((userStats != null) && !userStats.isEmpty());
-
-                // reset offset
-                offset = Long.valueOf(0);
+                // now copy the accounts to cloud_usage db
+                _userStatsDao.streamBatches(sc2, limit.intValue(), _usageDao::updateUserStats);
 
                 sc2 = _userStatsDao.createSearchCriteria();
                 sc2.addAnd("id", SearchCriteria.Op.GT, lastUserStatsId);
-                do {
-                    Filter filter = new Filter(UserStatisticsVO.class, "id", true, offset, limit);
-
-                    userStats = _userStatsDao.search(sc2, filter);
-
-                    if ((userStats != null) && !userStats.isEmpty()) {
-                        // now copy the accounts to cloud_usage db
-                        _usageDao.saveUserStats(userStats);
-                    }
-                    offset = new Long(offset.longValue() + limit.longValue());
-                } while ((userStats != null) && !userStats.isEmpty());
-
-                // reset offset
-                offset = Long.valueOf(0);
+                _userStatsDao.streamBatches(sc2, limit.intValue(), _usageDao::saveUserStats);
 
                 // get all the vm network stats to create usage_VM_network records for the vm network usage
                 Long lastVmDiskStatsId = _usageDao.getLastVmDiskStatsId();
@@ -537,34 +510,12 @@ public class UsageManagerImpl extends ManagerBase implements UsageManager, Runna
                 }
                 SearchCriteria<VmDiskStatisticsVO> sc4 = _vmDiskStatsDao.createSearchCriteria();
                 sc4.addAnd("id", SearchCriteria.Op.LTEQ, lastVmDiskStatsId);
-                do {
-                    Filter filter = new Filter(VmDiskStatisticsVO.class, "id", true, offset, limit);
-
-                    vmDiskStats = _vmDiskStatsDao.search(sc4, filter);
-
-                    if ((vmDiskStats != null) && !vmDiskStats.isEmpty()) {
-                        // now copy the accounts to cloud_usage db
-                        _usageDao.updateVmDiskStats(vmDiskStats);
-                    }
-                    offset = new Long(offset.longValue() + limit.longValue());
-                } while ((vmDiskStats != null) && !vmDiskStats.isEmpty());
-
-                // reset offset
-                offset = Long.valueOf(0);
+                // now copy the accounts to cloud_usage db
+                _vmDiskStatsDao.streamBatches(sc4, limit.intValue(), _usageDao::updateVmDiskStats);
 
                 sc4 = _vmDiskStatsDao.createSearchCriteria();
                 sc4.addAnd("id", SearchCriteria.Op.GT, lastVmDiskStatsId);
-                do {
-                    Filter filter = new Filter(VmDiskStatisticsVO.class, "id", true, offset, limit);
-
-                    vmDiskStats = _vmDiskStatsDao.search(sc4, filter);
-
-                    if ((vmDiskStats != null) && !vmDiskStats.isEmpty()) {
-                        // now copy the accounts to cloud_usage db
-                        _usageDao.saveVmDiskStats(vmDiskStats);
-                    }
-                    offset = new Long(offset.longValue() + limit.longValue());
-                } while ((vmDiskStats != null) && !vmDiskStats.isEmpty());
+                _vmDiskStatsDao.streamBatches(sc4, limit.intValue(), _usageDao::saveVmDiskStats);
 
             } finally {
                 userTxn.close();
@@ -20,13 +20,48 @@
 package com.cloud.utils;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
 
 import org.apache.commons.io.FileUtils;
 
 public class FileUtil {
 
+    private static final long TRANSFER_SIZE = 64L * 1024 * 1024;
+
+    public interface CopyProgress {
+        void copied(long bytes, long total);
+    }
+
     public static void copyfile(File source, File destination) throws IOException {
         FileUtils.copyFile(source, destination);
     }
+
+    /**
+     * Copies a file within the JVM, letting the kernel move the data where it can, and reports the
+     * progress after every block.
+     *
+     * @param progress told about the progress, or null
+     * @return the number of bytes copied
+     */
+    public static long copyFile(File source, File destination, CopyProgress progress) throws IOException {
+        try (FileChannel in = new FileInputStream(source).getChannel();
+             FileChannel out = new FileOutputStream(destination).getChannel()) {
+            final long total = in.size();
+            long copied = 0;
+            while (copied < total) {
+                final long transferred = in.transferTo(copied, Math.min(TRANSFER_SIZE, total - copied), out);
+                if (transferred <= 0) {
+                    throw new IOException("Copy of " + source + " to " + destination + " stopped at " + copied + " of " + total + " bytes");
+                }
+                copied += transferred;
+                if (progress != null) {
+                    progress.copied(copied, total);
+                }
+            }
+            return copied;
+        }
+    }
 }
@@ -0,0 +1,177 @@
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package com.cloud.utils.profiler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.cloud.utils.profiler.CommandProfiler.Phase;
+
+/**
+ * The profile of the sampled executions of one command: how long they took and how many SQL
+ * statements they executed, in total and per phase, and the statements that were executed
+ * repeatedly within one execution. Times are in microseconds.
+ */
+public class CommandProfile {
+    static final int MAX_REPEATED_STATEMENTS = 32;
+
+    private final String command;
+    private final PhaseProfile total = new PhaseProfile();
+    private final Map<Phase, PhaseProfile> phases = new EnumMap<Phase, PhaseProfile>(Phase.class);
+    private final Map<String, RepeatedStatement> repeatedStatements = new ConcurrentHashMap<String, RepeatedStatement>();
+
+    CommandProfile(final String command) {
+        this.command = command;
+        for (final Phase phase : Phase.values()) {
+            phases.put(phase, new PhaseProfile());
+        }
+    }
+
+    public String getCommand() {
+        return command;
+    }
+
+    /**
+     * @return the profile of whole executions
+     */
+    public PhaseProfile getTotal() {
+        return total;
+    }
+
+    /**
+     * @return the profile of the executions that went through the phase, with the time of the phases
+     * nested in it left out
+     */
+    public PhaseProfile getPhase(final Phase phase) {
+        return phases.get(phase);
+    }
+
+    /**
+     * @return the statements executed repeatedly within one execution, most repeated first
+     */
+    public List<RepeatedStatement> getRepeatedStatements() {
+        final List<RepeatedStatement> statements = new ArrayList<RepeatedStatement>(repeatedStatements.values());
+        Collections.sort(statements, new Comparator<RepeatedStatement>() {
+            @Override
+            public int compare(final RepeatedStatement a, final RepeatedStatement b) {
+                return Long.compare(b.getMaxExecutions(), a.getMaxExecutions());
+            }
+        });
+        return statements;
+    }
+
+    void record(final CommandTrace trace) {
+        total.record(trace.getElapsedMicros(), trace.getStatements(), trace.getStatementMicros());
+        for (final Phase phase : Phase.values()) {
+            if (trace.entered(phase)) {
+                phases.get(phase).record(trace.getElapsedMicros(phase), trace.getStatements(phase), trace.getStatementMicros(phase));
+            }
+        }
+        for (final Map.Entry<String, Integer> statement : trace.getRepeatedStatements().entrySet()) {
+            RepeatedStatement repeated = repeatedStatements.get(statement.getKey());
+            if (repeated == null) {
+                if (repeatedStatements.size() >= MAX_REPEATED_STATEMENTS) {
+                    continue;
+                }
+                final RepeatedStatement created = new RepeatedStatement(statement.getKey());
+                repeated = repeatedStatements.putIfAbsent(statement.getKey(), created);
+                if (repeated == null) {
+                    repeated = created;
+                }
+            }
+            repeated.record(statement.getValue());
+        }
+    }
+
+    public static class PhaseProfile {
+        private final Histogram time = new Histogram();
+        private final Histogram statements = new Histogram();
+        private final Histogram statementTime = new Histogram();
+
+        void record(final long micros, final long statementCount, final long statementMicros) {
+            time.record(micros);
+            statements.record(statementCount);
+            statementTime.record(statementMicros);
+        }
+
+        /**
+         * @return the wall time in microseconds
+         */
+        public Histogram getTime() {
+            return time;
+        }
+
+        /**
+         * @return the number of SQL statements executed
+         */
+        public Histogram getStatements() {
+            return statements;
+        }
+
+        /**
+         * @return the time in microseconds the SQL statements took to execute
+         */
+        public Histogram getStatementTime() {
+            return statementTime;
+        }
+    }
+
+    public static class RepeatedStatement {
+        private final String sql;
+        private final AtomicLong executions = new AtomicLong();
+        private final AtomicLong maxExecutions = new AtomicLong();
+
+        RepeatedStatement(final String sql) {
+            this.sql = sql;
+        }
+
+        void record(final long count) {
+            executions.incrementAndGet();
+            long current = maxExecutions.get();
+            while (count > current && !maxExecutions.compareAndSet(current, count)) {
+                current = maxExecutions.get();
+            }
+        }
+
+        public String getSql() {
+            return sql;
+        }
+
+        /**
+         * @return the number of executions of the command that repeated the statement
+         */
+        public long getExecutions() {
+            return executions.get();
+        }
+
+        /**
+         * @return the most times the statement was executed within one execution of the command
+         */
+        public long getMaxExecutions() {
+            return maxExecutions.get();
+        }
+    }
+}
@@ -0,0 +1,201 @@
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package com.cloud.utils.profiler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Profiles a sample of the executions of API commands. The thread that executes a command starts
+ * a trace with {@link #start(String)}, marks the phases of the command with {@link #enter(Phase)}
+ * and ends it with {@link #finish()}, which adds the trace to the {@link CommandProfile} of the
+ * command. The database layer reports the statements it executes with {@link #statementExecuted}.
+ *
+ * When the thread is not tracing, which is the case for every execution that is not sampled, the
+ * hooks only look up the trace of the thread.
+ */
+public final class CommandProfiler {
+    private static final Logger s_logger = LoggerFactory.getLogger(CommandProfiler.class);
+
+    public enum Phase {
+        PARAMETERS, ACCESS_CHECK, EXECUTE, JOB_SUBMIT, SERIALIZE, OTHER
+    }
+
+    /**
+     * Statements executed this many times within one execution are kept as repeated statements of the
+     * command, as they are likely to be executed once per row of another query.
+     */
+    public static final int REPEATED_STATEMENT_THRESHOLD = 10;
+
+    // profiles are created for commands that exist only, but don't trust the callers with that
+    static final int MAX_COMMANDS = 2048;
+
+    private static final ThreadLocal<CommandTrace> s_trace = new ThreadLocal<CommandTrace>();
+    private static final ConcurrentHashMap<String, CommandProfile> s_profiles = new ConcurrentHashMap<String, CommandProfile>();
+    private static final Span NOT_PROFILED = new Span(null, -1);
+
+    private static volatile double s_sampleRate = 0;
+    private static volatile Map<String, Double> s_sampleRates = Collections.emptyMap();
+
+    private CommandProfiler() {
+    }
+
+    /**
+     * @param sampleRate share of the executions of any command to profile, from 0 to 1
+     * @param sampleRates share of the executions of specific commands to profile, as a comma separated
+     *                    list of command=rate, may be null
+     */
+    public static void setSampleRates(final double sampleRate, final String sampleRates) {
+        final Map<String, Double> rates = new HashMap<String, Double>();
+        if (sampleRates != null) {
+            for (final String entry : sampleRates.split(",")) {
+                if (entry.trim().isEmpty()) {
+                    continue;
+                }
+                final String[] rate = entry.split("=");
+                try {
+                    if (rate.length != 2) {
+                        throw new NumberFormatException("no rate");
+                    }
+                    rates.put(rate[0].trim(), clamp(Double.parseDouble(rate[1].trim())));
+                } catch (final NumberFormatException e) {
+                    s_logger.warn("Ignoring sample rate " + entry + " of the API profiler, it is not of the form command=rate");
+                }
+            }
+        }
+        s_sampleRate = clamp(sampleRate);
+        s_sampleRates = rates;
+    }
+
+    private static double clamp(final double rate) {
+        return Double.isNaN(rate) ? 0 : Math.max(0, Math.min(1, rate));
+    }
+
+    public static double getSampleRate(final String command) {
+        final Double rate = s_sampleRates.get(command);
+        return rate != null ? rate : s_sampleRate;
+    }
+
+    /**
+     * Starts a trace of the command on this thread if the execution is sampled. Does nothing if the
+     * thread already traces a command.
+     *
+     * @return whether a trace was started, which has to be ended with {@link #finish()}
+     */
+    public static boolean start(final String command) {
+        final double rate = getSampleRate(command);
+        if (rate <= 0 || s_trace.get() != null) {
+            return false;
+        }
+        if (rate < 1 && ThreadLocalRandom.current().nextDouble() >= rate) {
+            return false;
+        }
+        s_trace.set(new CommandTrace(command, System.nanoTime()));
+        return true;
+    }
+
+    public static boolean isProfiling() {
+        return s_trace.get() != null;
+    }
+
+    /**
+     * Enters a phase of the command that is traced on this thread, until the span is closed.
+     */
+    public static Span enter(final Phase phase) {
+        final CommandTrace trace = s_trace.get();
+        if (trace == null) {
+            return NOT_PROFILED;
+        }
+        final int level = trace.enter(phase, System.nanoTime());
+        return level < 0 ? NOT_PROFILED : new Span(trace, level);
+    }
+
+    /**
+     * Counts a SQL statement for the phase the command that is traced on this thread is in.
+     */
+    public static void statementExecuted(final String sql, final long nanos) {
+        final CommandTrace trace = s_trace.get();
+        if (trace != null) {
+            trace.statementExecuted(sql, nanos);
+        }
+    }
+
+    /**
+     * Ends the trace of this thread and adds it to the profile of its command.
+     */
+    public static void finish() {
+        final CommandTrace trace = s_trace.get();
+        if (trace == null) {
+            return;
+        }
+        s_trace.remove();
+        trace.finish(System.nanoTime());
+
+        CommandProfile profile = s_profiles.get(trace.getCommand());
+        if (profile == null) {
+            if (s_profiles.size() >= MAX_COMMANDS) {
+                return;
+            }
+            profile = s_profiles.computeIfAbsent(trace.getCommand(), CommandProfile::new);
+        }
+        profile.record(trace);
+    }
+
+    public static CommandProfile getProfile(final String command) {
+        return s_profiles.get(command);
+    }
+
+    public static List<CommandProfile> getProfiles() {
+        return new ArrayList<CommandProfile>(s_profiles.values());
+    }
+
+    public static void reset() {
+        s_profiles.clear();
+    }
+
+    /**
+     * A phase a traced command is in, ended by closing it. Closing it also ends the phases that were
+     * entered in it and not closed.
+     */
+    public static final class Span implements AutoCloseable {
+        private final CommandTrace trace;
+        private final int level;
+
+        private Span(final CommandTrace trace, final int level) {
+            this.trace = trace;
+            this.level = level;
+        }
+
+        @Override
+        public void close() {
+            if (trace != null && s_trace.get() == trace) {
+                trace.exit(level, System.nanoTime());
+            }
+        }
+    }
+}
@@ -0,0 +1,164 @@
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package com.cloud.utils.profiler;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.cloud.utils.profiler.CommandProfiler.Phase;
+
+/**
+ * What one sampled execution of a command spent its time on. It is only used by the thread that
+ * executes the command. Time spent in a phase that is nested in another one counts for the nested
+ * phase only, and time outside of any phase counts for {@link Phase#OTHER}.
+ */
+class CommandTrace {
+    static final int MAX_DEPTH = 16;
+    static final int MAX_STATEMENTS = 1024;
+
+    private static final int PHASES = Phase.values().length;
+
+    private final String command;
+    private final long start;
+    private long end;
+
+    private final long[] phaseNanos = new long[PHASES];
+    private final long[] phaseStatements = new long[PHASES];
+    private final long[] phaseStatementNanos = new long[PHASES];
+    private final boolean[] entered = new boolean[PHASES];
+
+    private final Phase[] stack = new Phase[MAX_DEPTH];
+    private final long[] stackStart = new long[MAX_DEPTH];
+    private final long[] stackNested = new long[MAX_DEPTH];
+    private int depth;
+
+    // executions of the statements by their SQL text
+    private final Map<String, Integer> executions = new HashMap<String, Integer>();
+
+    CommandTrace(final String command, final long start) {
+        this.command = command;
+        this.start = start;
+    }
+
+    String getCommand() {
+        return command;
+    }
+
+    /**
+     * @return the depth of the phase, or -1 if it was not entered because phases are nested too deep
+     */
+    int enter(final Phase phase, final long now) {
+        if (depth == MAX_DEPTH) {
+            return -1;
+        }
+        stack[depth] = phase;
+        stackStart[depth] = now;
+        stackNested[depth] = 0;
+        entered[phase.ordinal()] = true;
+        return depth++;
+    }
+
+    void exit(final int level, final long now) {
+        // phases that were not exited end with the phase they are nested in
+        while (depth > level) {
+            depth--;
+            final long elapsed = now - stackStart[depth];
+            phaseNanos[stack[depth].ordinal()] += elapsed - stackNested[depth];
+            if (depth > 0) {
+                stackNested[depth - 1] += elapsed;
+            }
+        }
+    }
+
+    void statementExecuted(final String sql, final long nanos) {
+        final int phase = depth > 0 ? stack[depth - 1].ordinal() : Phase.OTHER.ordinal();
+        phaseStatements[phase]++;
+        phaseStatementNanos[phase] += nanos;
+        final Integer count = executions.get(sql);
+        if (count != null) {
+            executions.put(sql, count + 1);
+        } else if (executions.size() < MAX_STATEMENTS) {
+            executions.put(sql, 1);
+        }
+    }
+
+    void finish(final long now) {
+        exit(0, now);
+        end = now;
+        long inPhases = 0;
+        for (final Phase phase : Phase.values()) {
+            if (phase != Phase.OTHER) {
+                inPhases += phaseNanos[phase.ordinal()];
+            }
+        }
+        phaseNanos[Phase.OTHER.ordinal()] = Math.max(0, end - start - inPhases);
+        entered[Phase.OTHER.ordinal()] = true;
+    }
+
+    boolean entered(final Phase phase) {
+        return entered[phase.ordinal()];
+    }
+
+    long getElapsedMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(end - start);
+    }
+
+    long getElapsedMicros(final Phase phase) {
+        return TimeUnit.NANOSECONDS.toMicros(phaseNanos[phase.ordinal()]);
+    }
+
+    long getStatements() {
+        long statements = 0;
+        for (final long count : phaseStatements) {
+            statements += count;
+        }
+        return statements;
+    }
+
+    long getStatements(final Phase phase) {
+        return phaseStatements[phase.ordinal()];
+    }
+
+    long getStatementMicros() {
+        long nanos = 0;
+        for (final long n : phaseStatementNanos) {
+            nanos += n;
+        }
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    long getStatementMicros(final Phase phase) {
+        return TimeUnit.NANOSECONDS.toMicros(phaseStatementNanos[phase.ordinal()]);
+    }
+
+    /**
+     * @return the statements that were executed at least {@link CommandProfiler#REPEATED_STATEMENT_THRESHOLD} times
+     */
+    Map<String, Integer> getRepeatedStatements() {
+        final Map<String, Integer> repeated = new HashMap<String, Integer>();
+        for (final Map.Entry<String, Integer> statement : executions.entrySet()) {
+            if (statement.getValue() >= CommandProfiler.REPEATED_STATEMENT_THRESHOLD) {
+                repeated.put(statement.getKey(), statement.getValue());
+            }
+        }
+        return repeated;
+    }
+}
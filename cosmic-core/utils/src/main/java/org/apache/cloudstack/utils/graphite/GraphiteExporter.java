@@ -0,0 +1,284 @@
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package org.apache.cloudstack.utils.graphite;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.cloud.utils.concurrency.NamedThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Exports metrics to Graphite from a thread of its own.
+ *
+ * Metrics are queued as plaintext lines in a bounded buffer, so the caller never waits for the
+ * network. When the buffer is full the newest or the oldest line is dropped. The sender packs as many
+ * lines as fit in one datagram over UDP, or writes them to a connection it keeps open over TCP. The
+ * lines of a batch that cannot be sent are counted as failed, and a broken connection is retried
+ * after a delay while the buffer absorbs the metrics.
+ */
+public class GraphiteExporter implements MetricsExporter {
+    private static final Logger s_logger = LoggerFactory.getLogger(GraphiteExporter.class);
+
+    public enum Protocol {
+        UDP, TCP
+    }
+
+    /**
+     * The line that is dropped when the buffer is full.
+     */
+    public enum DropPolicy {
+        NEWEST, OLDEST
+    }
+
+    public static final int DEFAULT_PORT = 2003;
+    public static final int DEFAULT_BUFFER_SIZE = 100000;
+    public static final int DEFAULT_PACKET_SIZE = 1400;
+
+    private static final int MAX_BATCH = 1000;
+    private static final int CONNECT_TIMEOUT = 5000;
+    private static final long RETRY_DELAY = 5000L;
+
+    private final String host;
+    private final int port;
+    private final Protocol protocol;
+    private final DropPolicy dropPolicy;
+    private final BlockingQueue<String> buffer;
+
+    private final AtomicLong exported = new AtomicLong();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    private final ExecutorService sender = Executors.newSingleThreadExecutor(new NamedThreadFactory("GraphiteExporter"));
+    private volatile boolean running = false;
+
+    // only used by the sender
+    private final List<String> batch = new ArrayList<String>(MAX_BATCH);
+    private final byte[] packet;
+    private DatagramSocket datagramSocket;
+    private InetAddress address;
+    private Socket socket;
+    private OutputStream out;
+    private long retryAt = 0;
+
+    public GraphiteExporter(final String host, final int port, final Protocol protocol, final int bufferSize, final int packetSize, final DropPolicy dropPolicy) {
+        this.host = host;
+        this.port = port;
+        this.protocol = protocol;
+        this.dropPolicy = dropPolicy;
+        buffer = new ArrayBlockingQueue<String>(bufferSize);
+        packet = new byte[packetSize];
+    }
+
+    public GraphiteExporter(final String host, final int port) {
+        this(host, port, Protocol.UDP, DEFAULT_BUFFER_SIZE, DEFAULT_PACKET_SIZE, DropPolicy.NEWEST);
+    }
+
+    public void start() {
+        running = true;
+        sender.execute(new Runnable() {
+            @Override
+            public void run() {
+                sendLoop();
+            }
+        });
+        s_logger.info("Exporting metrics to Graphite at " + host + ":" + port + " over " + protocol + ", buffering up to " + (buffer.size() + buffer.remainingCapacity())
+                + " lines and dropping the " + dropPolicy.name().toLowerCase() + " when full");
+    }
+
+    @Override
+    public int export(final Map<String, ?> metrics, final long timeStamp) {
+        int droppedNow = 0;
+        for (final Map.Entry<String, ?> metric : metrics.entrySet()) {
+            final String line = metric.getKey() + " " + metric.getValue() + " " + timeStamp + "\n";
+            exported.incrementAndGet();
+            if (buffer.offer(line)) {
+                continue;
+            }
+            droppedNow++;
+            if (dropPolicy == DropPolicy.OLDEST) {
+                buffer.poll();
+                if (!buffer.offer(line)) {
+                    droppedNow++;
+                }
+            }
+        }
+        if (droppedNow > 0) {
+            dropped.addAndGet(droppedNow);
+        }
+        return droppedNow;
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        sender.shutdownNow();
+    }
+
+    public long getExported() {
+        return exported.get();
+    }
+
+    public long getSent() {
+        return sent.get();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    public int getQueued() {
+        return buffer.size();
+    }
+
+    private void sendLoop() {
+        try {
+            while (running) {
+                final long delay = retryAt - System.currentTimeMillis();
+                if (delay > 0) {
+                    // let the buffer absorb the metrics until Graphite can be reached again
+                    Thread.sleep(delay);
+                    continue;
+                }
+                final String line = buffer.poll(1, TimeUnit.SECONDS);
+                if (line == null) {
+                    continue;
+                }
+                batch.add(line);
+                buffer.drainTo(batch, MAX_BATCH - 1);
+                try {
+                    send(batch);
+                    sent.addAndGet(batch.size());
+                } catch (final IOException e) {
+                    failed.addAndGet(batch.size());
+                    s_logger.warn("Failed to send " + batch.size() + " metrics to Graphite at " + host + ":" + port + ", retrying in " + RETRY_DELAY + " ms: " + e.getMessage());
+                    disconnect();
+                    retryAt = System.currentTimeMillis() + RETRY_DELAY;
+                } finally {
+                    batch.clear();
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            disconnect();
+        }
+    }
+
+    private void send(final List<String> lines) throws IOException {
+        connect();
+        int length = 0;
+        for (final String line : lines) {
+            if (length + line.length() > packet.length && length > 0) {
+                write(packet, length);
+                length = 0;
+            }
+            if (line.length() > packet.length) {
+                final byte[] large = new byte[line.length()];
+                encode(line, large, 0);
+                write(large, large.length);
+                continue;
+            }
+            length = encode(line, packet, length);
+        }
+        if (length > 0) {
+            write(packet, length);
+        }
+        if (out != null) {
+            out.flush();
+        }
+    }
+
+    private void connect() throws IOException {
+        if (protocol == Protocol.UDP) {
+            if (datagramSocket == null) {
+                datagramSocket = new DatagramSocket();
+            }
+            address = InetAddress.getByName(host);
+        } else if (socket == null) {
+            final Socket newSocket = new Socket();
+            try {
+                newSocket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT);
+                out = new BufferedOutputStream(newSocket.getOutputStream(), packet.length);
+            } catch (final IOException e) {
+                newSocket.close();
+                throw e;
+            }
+            socket = newSocket;
+        }
+    }
+
+    private void write(final byte[] data, final int length) throws IOException {
+        if (protocol == Protocol.UDP) {
+            datagramSocket.send(new DatagramPacket(data, length, address, port));
+        } else {
+            out.write(data, 0, length);
+        }
+    }
+
+    private void disconnect() {
+        if (datagramSocket != null) {
+            datagramSocket.close();
+            datagramSocket = null;
+        }
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (final IOException e) {
+                s_logger.debug("Failed to close the connection to Graphite: " + e.getMessage());
+            }
+            socket = null;
+            out = null;
+        }
+    }
+
+    /**
+     * Graphite lines are plain ASCII, anything else is replaced.
+     */
+    private static int encode(final String line, final byte[] target, int offset) {
+        for (int i = 0; i < line.length(); i++) {
+            final char c = line.charAt(i);
+            target[offset++] = c < 0x80 ? (byte)c : (byte)'?';
+        }
+        return offset;
+    }
+}
@@ -0,0 +1,42 @@
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package org.apache.cloudstack.utils.graphite;
+
+import java.util.Map;
+
+/**
+ * Hands metrics to an external statistics collector without making the caller wait for it.
+ */
+public interface MetricsExporter {
+
+    /**
+     * Queues the metrics for export.
+     *
+     * @param metrics the metrics as key-value-pairs
+     * @param timeStamp seconds since epoch
+     * @return the number of metrics that were dropped because the exporter is full
+     */
+    int export(Map<String, ?> metrics, long timeStamp);
+
+    /**
+     * Stops exporting, the queued metrics are lost.
+     */
+    void close();
+}
@@ -0,0 +1,63 @@
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package com.cloud.utils;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FileUtilTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testCopyFile() throws Exception {
+        final byte[] content = new byte[3 * 1024 * 1024 + 17];
+        new Random(42).nextBytes(content);
+        final File source = folder.newFile("source");
+        Files.write(source.toPath(), content);
+        final File destination = new File(folder.getRoot(), "destination");
+
+        final List<Long> progress = new ArrayList<Long>();
+        final long copied = FileUtil.copyFile(source, destination, (bytes, total) -> {
+            Assert.assertEquals(content.length, total);
+            progress.add(bytes);
+        });
+
+        Assert.assertEquals(content.length, copied);
+        Assert.assertArrayEquals(content, Files.readAllBytes(destination.toPath()));
+        Assert.assertEquals(Long.valueOf(content.length), progress.get(progress.size() - 1));
+    }
+
+    @Test
+    public void testCopyEmptyFile() throws Exception {
+        final File source = folder.newFile("empty");
+        final File destination = new File(folder.getRoot(), "copy");
+        Assert.assertEquals(0, FileUtil.copyFile(source, destination, null));
+        Assert.assertTrue(destination.exists());
+    }
+}
@@ -0,0 +1,121 @@
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package com.cloud.utils.profiler;
+
+import com.cloud.utils.profiler.CommandProfile.RepeatedStatement;
+import com.cloud.utils.profiler.CommandProfiler.Phase;
+import com.cloud.utils.profiler.CommandProfiler.Span;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CommandProfilerTest {
+
+    @After
+    public void tearDown() {
+        CommandProfiler.finish();
+        CommandProfiler.reset();
+        CommandProfiler.setSampleRates(0, null);
+    }
+
+    @Test
+    public void sampleRates() {
+        CommandProfiler.setSampleRates(0.5, "listHosts=1, deployVirtualMachine = 0,broken,listZones=2");
+        Assert.assertEquals(0.5, CommandProfiler.getSampleRate("listVolumes"), 0);
+        Assert.assertEquals(1, CommandProfiler.getSampleRate("listHosts"), 0);
+        Assert.assertEquals(0, CommandProfiler.getSampleRate("deployVirtualMachine"), 0);
+        Assert.assertEquals(1, CommandProfiler.getSampleRate("listZones"), 0);
+
+        Assert.assertFalse(CommandProfiler.start("deployVirtualMachine"));
+        Assert.assertFalse(CommandProfiler.isProfiling());
+        Assert.assertTrue(CommandProfiler.start("listHosts"));
+        Assert.assertFalse("A thread traces one command at a time", CommandProfiler.start("listHosts"));
+        CommandProfiler.finish();
+        Assert.assertEquals(1, CommandProfiler.getProfile("listHosts").getTotal().getTime().getCount());
+    }
+
+    @Test
+    public void attributesTimeAndStatementsToPhases() throws Exception {
+        CommandProfiler.setSampleRates(1, null);
+        for (int i = 0; i < 2; i++) {
+            Assert.assertTrue(CommandProfiler.start("listVirtualMachines"));
+            CommandProfiler.statementExecuted("SELECT account", 1000);
+            try (Span parameters = CommandProfiler.enter(Phase.PARAMETERS)) {
+                CommandProfiler.statementExecuted("SELECT vm", 1000);
+                try (Span access = CommandProfiler.enter(Phase.ACCESS_CHECK)) {
+                    Thread.sleep(20);
+                    CommandProfiler.statementExecuted("SELECT domain", 1000);
+                }
+            }
+            try (Span execute = CommandProfiler.enter(Phase.EXECUTE)) {
+                for (int n = 0; n < CommandProfiler.REPEATED_STATEMENT_THRESHOLD + i; n++) {
+                    CommandProfiler.statementExecuted("SELECT nic WHERE vm_id = ?", 2000);
+                }
+            }
+            CommandProfiler.finish();
+        }
+        Assert.assertFalse(CommandProfiler.isProfiling());
+
+        final CommandProfile profile = CommandProfiler.getProfile("listVirtualMachines");
+        Assert.assertEquals(2, profile.getTotal().getTime().getCount());
+        Assert.assertEquals(2 * 3 + 2 * CommandProfiler.REPEATED_STATEMENT_THRESHOLD + 1, profile.getTotal().getStatements().getSum());
+        Assert.assertEquals(2, profile.getPhase(Phase.OTHER).getStatements().getSum());
+        Assert.assertEquals(2, profile.getPhase(Phase.PARAMETERS).getStatements().getSum());
+        Assert.assertEquals(2, profile.getPhase(Phase.ACCESS_CHECK).getStatements().getSum());
+        Assert.assertEquals(0, profile.getPhase(Phase.SERIALIZE).getTime().getCount());
+
+        // the sleep counts for the access check only, not for the parameter processing around it
+        Assert.assertTrue(profile.getPhase(Phase.ACCESS_CHECK).getTime().getMax() >= 20000);
+        Assert.assertTrue(profile.getPhase(Phase.PARAMETERS).getTime().getMax() < 20000);
+        Assert.assertTrue(profile.getTotal().getTime().getMax() >= 20000);
+
+        Assert.assertEquals(1, profile.getRepeatedStatements().size());
+        final RepeatedStatement repeated = profile.getRepeatedStatements().get(0);
+        Assert.assertEquals("SELECT nic WHERE vm_id = ?", repeated.getSql());
+        Assert.assertEquals(2, repeated.getExecutions());
+        Assert.assertEquals(CommandProfiler.REPEATED_STATEMENT_THRESHOLD + 1, repeated.getMaxExecutions());
+    }
+
+    @Test
+    public void hooksDoNothingWithoutTrace() {
+        try (Span span = CommandProfiler.enter(Phase.EXECUTE)) {
+            CommandProfiler.statementExecuted("SELECT 1", 1);
+        }
+        CommandProfiler.finish();
+        Assert.assertTrue(CommandProfiler.getProfiles().isEmpty());
+    }
+
+    @Test
+    public void histogram() {
+        final Histogram histogram = new Histogram();
+        Assert.assertEquals(0, histogram.getPercentile(99));
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i);
+        }
+        Assert.assertEquals(100, histogram.getCount());
+        Assert.assertEquals(5050, histogram.getSum());
+        Assert.assertEquals(100, histogram.getMax());
+        Assert.assertEquals(63, histogram.getPercentile(50));
+        Assert.assertEquals(100, histogram.getPercentile(99));
+        Assert.assertEquals(Long.valueOf(1), histogram.getBuckets().get(1L));
+        Assert.assertEquals(Long.valueOf(37), histogram.getBuckets().get(127L));
+    }
+}
@@ -0,0 +1,123 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package org.apache.cloudstack.utils.graphite;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.cloudstack.utils.graphite.GraphiteExporter.DropPolicy;
+import org.apache.cloudstack.utils.graphite.GraphiteExporter.Protocol;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class GraphiteExporterTest {
+
+    private static Map<String, Object> metrics(final int count) {
+        final Map<String, Object> metrics = new LinkedHashMap<String, Object>();
+        for (int i = 0; i < count; i++) {
+            metrics.put("cloudstack.stats.instances.vm" + i + ".cpu.utilization", i * 1.5);
+        }
+        return metrics;
+    }
+
+    private static void assertSent(final GraphiteExporter exporter, final long expected) throws InterruptedException {
+        // the sender counts a batch right after writing it
+        for (int i = 0; i < 100 && exporter.getSent() < expected; i++) {
+            Thread.sleep(100);
+        }
+        Assert.assertEquals(expected, exporter.getSent());
+    }
+
+    @Test
+    public void testUdpPacksLinesInDatagrams() throws Exception {
+        try (DatagramSocket graphite = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+            graphite.setSoTimeout(10000);
+            final GraphiteExporter exporter = new GraphiteExporter("127.0.0.1", graphite.getLocalPort(), Protocol.UDP, 1000, 512, DropPolicy.NEWEST);
+            Assert.assertEquals(0, exporter.export(metrics(100), 1000L));
+            exporter.start();
+
+            final List<String> lines = new ArrayList<String>();
+            int datagrams = 0;
+            final byte[] buffer = new byte[65536];
+            while (lines.size() < 100) {
+                final DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+                graphite.receive(packet);
+                Assert.assertTrue(packet.getLength() <= 512);
+                for (final String line : new String(packet.getData(), 0, packet.getLength(), StandardCharsets.US_ASCII).split("\n")) {
+                    lines.add(line);
+                }
+                datagrams++;
+            }
+            assertSent(exporter, 100);
+            exporter.close();
+
+            Assert.assertEquals("cloudstack.stats.instances.vm0.cpu.utilization 0.0 1000", lines.get(0));
+            Assert.assertEquals("cloudstack.stats.instances.vm99.cpu.utilization 148.5 1000", lines.get(99));
+            Assert.assertTrue("expected fewer datagrams than lines, got " + datagrams, datagrams < 20);
+        }
+    }
+
+    @Test
+    public void testTcpKeepsItsConnection() throws Exception {
+        try (ServerSocket graphite = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            graphite.setSoTimeout(10000);
+            final GraphiteExporter exporter = new GraphiteExporter("127.0.0.1", graphite.getLocalPort(), Protocol.TCP, 1000, 1400, DropPolicy.NEWEST);
+            exporter.start();
+            exporter.export(metrics(10), 1000L);
+
+            try (Socket connection = graphite.accept()) {
+                connection.setSoTimeout(10000);
+                final BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.US_ASCII));
+                for (int i = 0; i < 10; i++) {
+                    Assert.assertNotNull(reader.readLine());
+                }
+                exporter.export(metrics(10), 1060L);
+                for (int i = 0; i < 10; i++) {
+                    Assert.assertTrue(reader.readLine().endsWith(" 1060"));
+                }
+                assertSent(exporter, 20);
+            } finally {
+                exporter.close();
+            }
+            Assert.assertEquals(0, exporter.getFailed());
+        }
+    }
+
+    @Test
+    public void testFullBufferDropsWithoutBlocking() {
+        final GraphiteExporter newest = new GraphiteExporter("127.0.0.1", 2003, Protocol.UDP, 10, 1400, DropPolicy.NEWEST);
+        Assert.assertEquals(5, newest.export(metrics(15), 1000L));
+        Assert.assertEquals(10, newest.getQueued());
+        Assert.assertEquals(5, newest.getDropped());
+        Assert.assertEquals(15, newest.getExported());
+
+        final GraphiteExporter oldest = new GraphiteExporter("127.0.0.1", 2003, Protocol.UDP, 10, 1400, DropPolicy.OLDEST);
+        Assert.assertEquals(5, oldest.export(metrics(15), 1000L));
+        Assert.assertEquals(10, oldest.getQueued());
+        Assert.assertEquals(5, oldest.getDropped());
+    }
+}
@@ -161,6 +161,7 @@ public class LibvirtComputingResource extends ServerResourceBase implements Serv
   protected static final String DEFAULT_BRIDGE_VIF_DRIVER_CLASS = "com.cloud.hypervisor.kvm.resource.BridgeVifDriver";
 
   private static final Logger LOGGER = LoggerFactory.getLogger(LibvirtComputingResource.class);
+  private static final long DOMAIN_DEVICES_MAX_AGE_MS = 10 * 60 * 1000L;
 
   protected static final HashMap<DomainState, PowerState> s_powerStatesTable;
 
@@ -211,6 +212,7 @@ public class LibvirtComputingResource extends ServerResourceBase implements Serv
 
   private final Map<String, String> pifs = new HashMap<String, String>();
   private final Map<String, VmStats> vmStats = new ConcurrentHashMap<String, VmStats>();
+  private final LibvirtDomainDeviceCache domainDevices = new LibvirtDomainDeviceCache(DOMAIN_DEVICES_MAX_AGE_MS);
   private final LibvirtUtilitiesHelper libvirtUtilitiesHelper = new LibvirtUtilitiesHelper();
 
   protected HypervisorType hypervisorType;
@@ -846,7 +848,8 @@ public class LibvirtComputingResource extends ServerResourceBase implements Serv
     final Thread ha = new Thread(monitor);
     ha.start();
 
-    storagePoolMgr = new KvmStoragePoolManager(storage, monitor);
+    storagePoolMgr = new KvmStoragePoolManager(storage, monitor,
+        NumbersUtil.parseLong((String) params.get("libvirt.storage.pool.refresh.staleness_ms"), 10000L));
 
     sysvmIsoPath = (String) params.get("systemvm.iso.path");
     if (sysvmIsoPath == null) {
@@ -1494,6 +1497,7 @@ public class LibvirtComputingResource extends ServerResourceBase implements Serv
 
     final Domain vm = getDomain(conn, vmName);
     vm.attachDevice(getVifDriver(nicTo.getType()).plug(nicTo, "Other PV", "").toString());
+    invalidateDomainDevices(vmName);
   }
 
   private void vifHotUnPlug(final Connect conn, final String vmName, final String macAddr)
@@ -1505,6 +1509,7 @@ public class LibvirtComputingResource extends ServerResourceBase implements Serv
     for (final InterfaceDef pluggedNic : pluggedNics) {
       if (pluggedNic.getMacAddress().equalsIgnoreCase(macAddr)) {
         vm.detachDevice(pluggedNic.toString());
+        invalidateDomainDevices(vmName);
         // We don't know which "traffic type" is associated with
         // each interface at this point, so inform all vif drivers
         for (final VifDriver vifDriver : getAllVifDrivers()) {
@@ -2341,6 +2346,7 @@ public class LibvirtComputingResource extends ServerResourceBase implements Serv
       }
       throw e;
     } finally {
+      invalidateDomainDevices(vmName);
       if (dm != null) {
         try {
           dm.free();
@@ -2709,6 +2715,7 @@ public class LibvirtComputingResource extends ServerResourceBase implements Serv
     Domain dm = null;
 
     LOGGER.debug("Try to stop the vm at first");
+    invalidateDomainDevices(vmName);
     String ret = stopVm(conn, vmName, false);
     if (ret == Script.ERR_TIMEOUT) {
       ret = stopVm(conn, vmName, true);
@@ -2989,7 +2996,7 @@ public class LibvirtComputingResource extends ServerResourceBase implements Serv
 
       final List<VmDiskStatsEntry> stats = new ArrayList<VmDiskStatsEntry>();
 
-      final List<DiskDef> disks = getDisks(conn, vmName);
+      final List<DiskDef> disks = getDomainDevices(conn, dm, vmName).getDisks();
 
       for (final DiskDef disk : disks) {
         if (disk.getDeviceType() != DeviceType.DISK) {
@@ -3017,11 +3024,41 @@ public class LibvirtComputingResource extends ServerResourceBase implements Serv
     }
   }
 
+  /**
+   * Collects the statistics of the given VMs in one pass. The node information is looked up once, and
+   * the device lists of the domains come from the domain device cache.
+   */
+  public Map<String, VmStatsEntry> getVmStats(final Connect conn, final List<String> vmNames) {
+    NodeInfo node = null;
+    try {
+      node = conn.nodeInfo();
+    } catch (final LibvirtException e) {
+      LOGGER.debug("Can't get node info, looking it up per vm: " + e.toString());
+    }
+    final Map<String, VmStatsEntry> stats = new HashMap<String, VmStatsEntry>();
+    for (final String vmName : vmNames) {
+      try {
+        final VmStatsEntry statEntry = getVmStat(conn, vmName, node);
+        if (statEntry != null) {
+          stats.put(vmName, statEntry);
+        }
+      } catch (final LibvirtException e) {
+        LOGGER.warn("Can't get vm stats: " + e.toString() + ", continue");
+      }
+    }
+    return stats;
+  }
+
   public VmStatsEntry getVmStat(final Connect conn, final String vmName) throws LibvirtException {
+    return getVmStat(conn, vmName, null);
+  }
+
+  private VmStatsEntry getVmStat(final Connect conn, final String vmName, NodeInfo node) throws LibvirtException {
     Domain dm = null;
     try {
       dm = getDomain(conn, vmName);
       final DomainInfo info = dm.getInfo();
+      final LibvirtDomainDeviceCache.DomainDevices devices = getDomainDevices(conn, dm, vmName);
 
       final VmStatsEntry stats = new VmStatsEntry();
       stats.setNumCPUs(info.nrVirtCpu);
@@ -3039,7 +3076,9 @@ public class LibvirtComputingResource extends ServerResourceBase implements Serv
         elapsedTime = now.getTimeInMillis() - oldStats.timestamp.getTimeInMillis();
         double utilization = (info.cpuTime - oldStats.usedTime) / ((double) elapsedTime * 1000000);
 
-        final NodeInfo node = conn.nodeInfo();
+        if (node == null) {
+          node = conn.nodeInfo();
+        }
         utilization = utilization / node.cpus;
         if (utilization > 0) {
           stats.setCPUUtilization(utilization * 100);
@@ -3048,11 +3087,10 @@ public class LibvirtComputingResource extends ServerResourceBase implements Serv
 
       /* get network stats */
 
-      final List<InterfaceDef> vifs = getInterfaces(conn, vmName);
       long rx = 0;
       long tx = 0;
-      for (final InterfaceDef vif : vifs) {
-        final DomainInterfaceStats ifStats = dm.interfaceStats(vif.getDevName());
+      for (final InterfaceDef vif : devices.getInterfaces()) {
+        final DomainInterfaceStats ifStats = interfaceStats(dm, vmName, vif);
         rx += ifStats.rx_bytes;
         tx += ifStats.tx_bytes;
       }
@@ -3069,13 +3107,12 @@ public class LibvirtComputingResource extends ServerResourceBase implements Serv
       }
 
       /* get disk stats */
-      final List<DiskDef> disks = getDisks(conn, vmName);
       long ioRd = 0;
       long ioWr = 0;
       long bytesRd = 0;
       long bytesWr = 0;
-      for (final DiskDef disk : disks) {
-        final DomainBlockStats blockStats = dm.blockStats(disk.getDiskLabel());
+      for (final DiskDef disk : devices.getDisks()) {
+        final DomainBlockStats blockStats = blockStats(dm, vmName, disk);
         ioRd += blockStats.rd_req;
         ioWr += blockStats.wr_req;
         bytesRd += blockStats.rd_bytes;
@@ -3120,6 +3157,35 @@ public class LibvirtComputingResource extends ServerResourceBase implements Serv
     }
   }
 
+  public LibvirtDomainDeviceCache.DomainDevices getDomainDevices(final Connect conn, final Domain dm, final String vmName)
+      throws LibvirtException {
+    return domainDevices.get(vmName, dm.getID(), () -> getInterfaces(conn, vmName), () -> getDisks(conn, vmName));
+  }
+
+  public void invalidateDomainDevices(final String vmName) {
+    domainDevices.invalidate(vmName);
+  }
+
+  private DomainInterfaceStats interfaceStats(final Domain dm, final String vmName, final InterfaceDef vif)
+      throws LibvirtException {
+    try {
+      return dm.interfaceStats(vif.getDevName());
+    } catch (final LibvirtException e) {
+      invalidateDomainDevices(vmName);
+      throw e;
+    }
+  }
+
+  private DomainBlockStats blockStats(final Domain dm, final String vmName, final DiskDef disk)
+      throws LibvirtException {
+    try {
+      return dm.blockStats(disk.getDiskLabel());
+    } catch (final LibvirtException e) {
+      invalidateDomainDevices(vmName);
+      throw e;
+    }
+  }
+
   private boolean canBridgeFirewall(final String prvNic) {
     final Script cmd = new Script(securityGroupPath, timeout, LOGGER);
     cmd.add("can_bridge_firewall");
@@ -0,0 +1,65 @@
+package com.cloud.hypervisor.kvm.resource;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import com.cloud.hypervisor.kvm.resource.LibvirtVmDef.DiskDef;
+import com.cloud.hypervisor.kvm.resource.LibvirtVmDef.InterfaceDef;
+
+/**
+ * Keeps the parsed interface and disk lists of running domains, so collecting statistics does not
+ * have to fetch and parse the domain XML on every poll.
+ *
+ * An entry is used as long as the domain keeps its id, which changes whenever the domain is
+ * started again. Code that hot plugs devices invalidates the entry of the domain, and entries are
+ * reloaded after maxAgeMs as a safety net for changes made outside of the agent.
+ */
+public class LibvirtDomainDeviceCache {
+
+  private final long maxAgeMs;
+  private final Map<String, DomainDevices> devices = new ConcurrentHashMap<String, DomainDevices>();
+
+  public LibvirtDomainDeviceCache(final long maxAgeMs) {
+    this.maxAgeMs = maxAgeMs;
+  }
+
+  public DomainDevices get(final String vmName, final int domainId, final Supplier<List<InterfaceDef>> interfaces,
+      final Supplier<List<DiskDef>> disks) {
+    final long now = System.currentTimeMillis();
+    DomainDevices cached = devices.get(vmName);
+    if (cached == null || cached.domainId != domainId || now - cached.loadedAt > maxAgeMs) {
+      cached = new DomainDevices(domainId, now, interfaces.get(), disks.get());
+      devices.put(vmName, cached);
+    }
+    return cached;
+  }
+
+  public void invalidate(final String vmName) {
+    devices.remove(vmName);
+  }
+
+  public static class DomainDevices {
+    private final int domainId;
+    private final long loadedAt;
+    private final List<InterfaceDef> interfaces;
+    private final List<DiskDef> disks;
+
+    DomainDevices(final int domainId, final long loadedAt, final List<InterfaceDef> interfaces,
+        final List<DiskDef> disks) {
+      this.domainId = domainId;
+      this.loadedAt = loadedAt;
+      this.interfaces = interfaces;
+      this.disks = disks;
+    }
+
+    public List<InterfaceDef> getInterfaces() {
+      return interfaces;
+    }
+
+    public List<DiskDef> getDisks() {
+      return disks;
+    }
+  }
+}
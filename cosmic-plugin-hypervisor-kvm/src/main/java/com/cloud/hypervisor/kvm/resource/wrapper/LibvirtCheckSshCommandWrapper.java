@@ -29,6 +29,8 @@ public final class LibvirtCheckSshCommandWrapper
     }
 
     final VirtualRoutingResource virtRouterResource = libvirtComputingResource.getVirtRouterResource();
+    // the system vm has just been started, what was applied to it before may be gone
+    virtRouterResource.forgetRouterConfig(vmName);
     if (!virtRouterResource.connect(privateIp, cmdPort)) {
       return new CheckSshAnswer(command, "Can not ping System vm " + vmName + " because of a connection failure");
     }
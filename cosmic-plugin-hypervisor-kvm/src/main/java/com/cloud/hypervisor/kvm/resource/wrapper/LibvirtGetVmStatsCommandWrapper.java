@@ -4,8 +4,10 @@
 
 package com.cloud.hypervisor.kvm.resource.wrapper;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import com.cloud.agent.api.Answer;
 import com.cloud.agent.api.GetVmStatsAnswer;
@@ -31,20 +33,24 @@ public final class LibvirtGetVmStatsCommandWrapper
     final List<String> vmNames = command.getVmNames();
     try {
       final HashMap<String, VmStatsEntry> vmStatsNameMap = new HashMap<String, VmStatsEntry>();
-      for (final String vmName : vmNames) {
-
-        final LibvirtUtilitiesHelper libvirtUtilitiesHelper = libvirtComputingResource.getLibvirtUtilitiesHelper();
+      final LibvirtUtilitiesHelper libvirtUtilitiesHelper = libvirtComputingResource.getLibvirtUtilitiesHelper();
 
+      // group the vms by connection, so the stats of all vms behind one connection are collected in one pass
+      final Map<Connect, List<String>> vmNamesByConnection = new HashMap<Connect, List<String>>();
+      for (final String vmName : vmNames) {
         final Connect conn = libvirtUtilitiesHelper.getConnectionByVmName(vmName);
-        try {
-          final VmStatsEntry statEntry = libvirtComputingResource.getVmStat(conn, vmName);
-          if (statEntry == null) {
-            continue;
-          }
-
-          vmStatsNameMap.put(vmName, statEntry);
-        } catch (LibvirtException e) {
-          s_logger.warn("Can't get vm stats: " + e.toString() + ", continue");
+        List<String> names = vmNamesByConnection.get(conn);
+        if (names == null) {
+          names = new ArrayList<String>();
+          vmNamesByConnection.put(conn, names);
+        }
+        names.add(vmName);
+      }
+
+      for (final Map.Entry<Connect, List<String>> entry : vmNamesByConnection.entrySet()) {
+        final Map<String, VmStatsEntry> stats = libvirtComputingResource.getVmStats(entry.getKey(), entry.getValue());
+        if (stats != null) {
+          vmStatsNameMap.putAll(stats);
         }
       }
       return new GetVmStatsAnswer(command, vmStatsNameMap);
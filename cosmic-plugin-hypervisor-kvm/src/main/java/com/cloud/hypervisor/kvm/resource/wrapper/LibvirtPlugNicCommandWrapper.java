@@ -51,6 +51,7 @@ public final class LibvirtPlugNicCommandWrapper
       final VifDriver vifDriver = libvirtComputingResource.getVifDriver(nic.getType());
       final InterfaceDef interfaceDef = vifDriver.plug(nic, "Other PV", "");
       vm.attachDevice(interfaceDef.toString());
+      libvirtComputingResource.invalidateDomainDevices(vmName);
 
       return new PlugNicAnswer(command, true, "success");
     } catch (final LibvirtException e) {
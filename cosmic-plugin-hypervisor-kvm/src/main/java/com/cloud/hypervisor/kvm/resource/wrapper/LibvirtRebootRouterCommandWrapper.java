@@ -24,6 +24,7 @@ public final class LibvirtRebootRouterCommandWrapper
     final Answer answer = wrapper.execute(rebootCommand, libvirtComputingResource);
 
     final VirtualRoutingResource virtualRouterResource = libvirtComputingResource.getVirtRouterResource();
+    virtualRouterResource.forgetRouterConfig(command.getVmName());
     if (virtualRouterResource.connect(command.getPrivateIpAddress())) {
       libvirtComputingResource.networkUsage(command.getPrivateIpAddress(), "create", null);
 
@@ -8,10 +8,9 @@ import com.cloud.agent.api.Command;
 import com.cloud.hypervisor.kvm.resource.LibvirtComputingResource;
 import com.cloud.resource.CommandWrapper;
 import com.cloud.resource.RequestWrapper;
+import com.cloud.resource.ResourceWrapperIndex;
 import com.cloud.resource.ServerResource;
 
-import org.reflections.Reflections;
-
 public class LibvirtRequestWrapper extends RequestWrapper {
 
   private static LibvirtRequestWrapper instance;
@@ -20,9 +19,8 @@ public class LibvirtRequestWrapper extends RequestWrapper {
     instance = new LibvirtRequestWrapper();
   }
 
-  Reflections baseWrappers = new Reflections("com.cloud.hypervisor.kvm.resource.wrapper");
   @SuppressWarnings("rawtypes")
-  Set<Class<? extends CommandWrapper>> baseSet = baseWrappers.getSubTypesOf(CommandWrapper.class);
+  Set<Class<? extends CommandWrapper>> baseSet = ResourceWrapperIndex.load("com.cloud.hypervisor.kvm.resource.wrapper");
 
   private LibvirtRequestWrapper() {
     init();
@@ -43,6 +43,7 @@ public final class LibvirtUnPlugNicCommandWrapper
       for (final InterfaceDef pluggedNic : pluggedNics) {
         if (pluggedNic.getMacAddress().equalsIgnoreCase(nic.getMac())) {
           vm.detachDevice(pluggedNic.toString());
+          libvirtComputingResource.invalidateDomainDevices(vmName);
           // We don't know which "traffic type" is associated with
           // each interface at this point, so inform all vif drivers
           for (final VifDriver vifDriver : libvirtComputingResource.getAllVifDrivers()) {
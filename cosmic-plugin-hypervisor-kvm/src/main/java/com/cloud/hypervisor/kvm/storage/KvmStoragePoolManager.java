@@ -81,8 +81,14 @@ public class KvmStoragePoolManager {
   }
 
   public KvmStoragePoolManager(StorageLayer storagelayer, KvmHaMonitor monitor) {
+    this(storagelayer, monitor, 10000);
+  }
+
+  public KvmStoragePoolManager(StorageLayer storagelayer, KvmHaMonitor monitor, long poolRefreshStaleness) {
     haMonitor = monitor;
-    storageMapper.put("libvirt", new LibvirtStorageAdaptor(storagelayer));
+    final LibvirtStorageAdaptor libvirtStorageAdaptor = new LibvirtStorageAdaptor(storagelayer);
+    libvirtStorageAdaptor.setPoolRefreshStaleness(poolRefreshStaleness);
+    storageMapper.put("libvirt", libvirtStorageAdaptor);
     // add other storage adaptors here
     // this._storageMapper.put("newadaptor", new NewStorageAdaptor(storagelayer));
     storageMapper.put(StoragePoolType.ManagedNFS.toString(), new ManagedNfsStorageAdaptor(storagelayer));
@@ -914,6 +914,7 @@ public class KvmStorageProcessor implements StorageProcessor {
         logger.debug("Detaching device: " + xml);
         dm.detachDevice(xml);
       }
+      resource.invalidateDomainDevices(vmName);
     } catch (final LibvirtException e) {
       if (attach) {
         logger.warn("Failed to attach device to " + vmName + ": " + e.getMessage());
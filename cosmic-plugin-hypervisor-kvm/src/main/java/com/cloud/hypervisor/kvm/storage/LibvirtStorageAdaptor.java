@@ -42,6 +42,7 @@ import org.libvirt.Connect;
 import org.libvirt.LibvirtException;
 import org.libvirt.Secret;
 import org.libvirt.StoragePool;
+import org.libvirt.StoragePoolInfo;
 import org.libvirt.StoragePoolInfo.StoragePoolState;
 import org.libvirt.StorageVol;
 import org.slf4j.Logger;
@@ -59,11 +60,25 @@ public class LibvirtStorageAdaptor implements StorageAdaptor {
   private final int rbdFeatures = 1 << 0; /* Feature 1<<0 means layering in RBD format 2 */
   private final int rbdOrder = 0; /* Order 0 means 4MB blocks (the default) */
 
+  private final LibvirtStoragePoolRefresher poolRefresher = new LibvirtStoragePoolRefresher();
+  private long poolRefreshStaleness = 10000;
+
   public LibvirtStorageAdaptor(StorageLayer storage) {
     storageLayer = storage;
     manageSnapshotPath = Script.findScript("scripts/storage/qcow2/", "managesnapshot.sh");
   }
 
+  /**
+   * @param poolRefreshStaleness milliseconds a refresh of a pool is good for when its capacity is asked for
+   */
+  public void setPoolRefreshStaleness(long poolRefreshStaleness) {
+    this.poolRefreshStaleness = poolRefreshStaleness;
+  }
+
+  public LibvirtStoragePoolRefresher getPoolRefresher() {
+    return poolRefresher;
+  }
+
   @Override
   public boolean createFolder(String uuid, String path) {
     final String mountPoint = this.mountPoint + File.separator + uuid;
@@ -90,7 +105,7 @@ public class LibvirtStorageAdaptor implements StorageAdaptor {
     if (vol == null) {
       try {
         logger.debug("Refreshing storage pool " + pool.getName());
-        refreshPool(pool);
+        refreshPool(pool, 0);
       } catch (final LibvirtException e) {
         logger.debug("Failed to refresh storage pool: " + e.getMessage());
       }
@@ -117,9 +132,7 @@ public class LibvirtStorageAdaptor implements StorageAdaptor {
 
   public void storagePoolRefresh(StoragePool pool) {
     try {
-      synchronized (getStoragePool(pool.getUUIDString())) {
-        refreshPool(pool);
-      }
+      refreshPool(pool, 0);
     } catch (final LibvirtException e) {
       logger.debug("refresh storage pool failed: " + e.toString());
     }
@@ -398,16 +411,17 @@ public class LibvirtStorageAdaptor implements StorageAdaptor {
 
       if (refreshInfo) {
         logger.info("Asking libvirt to refresh storage pool " + uuid);
-        pool.refresh();
+        refreshPool(storage, poolRefreshStaleness);
       }
-      pool.setCapacity(storage.getInfo().capacity);
-      pool.setUsed(storage.getInfo().allocation);
-      pool.setAvailable(storage.getInfo().available);
+      final StoragePoolInfo info = storage.getInfo();
+      pool.setCapacity(info.capacity);
+      pool.setUsed(info.allocation);
+      pool.setAvailable(info.available);
 
       logger.debug("Succesfully refreshed pool " + uuid
-          + " Capacity: " + storage.getInfo().capacity
-          + " Used: " + storage.getInfo().allocation
-          + " Available: " + storage.getInfo().available);
+          + " Capacity: " + info.capacity
+          + " Used: " + info.allocation
+          + " Available: " + info.available);
 
       return pool;
     } catch (final LibvirtException e) {
@@ -575,6 +589,7 @@ public class LibvirtStorageAdaptor implements StorageAdaptor {
   @Override
   public boolean deleteStoragePool(String uuid) {
     logger.info("Attempting to remove storage pool " + uuid + " from libvirt");
+    poolRefresher.forget(uuid);
     Connect conn = null;
     try {
       conn = LibvirtConnection.getConnection();
@@ -1303,16 +1318,19 @@ public class LibvirtStorageAdaptor implements StorageAdaptor {
     final LibvirtStoragePool libvirtPool = (LibvirtStoragePool) pool;
     final StoragePool virtPool = libvirtPool.getPool();
     try {
-      refreshPool(virtPool);
+      return refreshPool(virtPool, 0);
     } catch (final LibvirtException e) {
       return false;
     }
-    return true;
   }
 
-  private void refreshPool(StoragePool pool) throws LibvirtException {
-    pool.refresh(0);
-    return;
+  /**
+   * Refreshes the pool, sharing the refresh with concurrent callers.
+   *
+   * @param maxAge milliseconds a completed refresh is good for, 0 for one that starts after this call
+   */
+  private boolean refreshPool(final StoragePool pool, long maxAge) throws LibvirtException {
+    return poolRefresher.refresh(pool.getUUIDString(), maxAge, () -> pool.refresh(0));
   }
 
   private void deleteVol(LibvirtStoragePool pool, StorageVol vol) throws LibvirtException {
@@ -0,0 +1,156 @@
+package com.cloud.hypervisor.kvm.storage;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.libvirt.LibvirtException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Refreshes libvirt storage pools at most once at a time per pool. A refresh makes libvirt rescan the
+ * whole directory or image list of the pool, so callers that ask for a refresh while one is running
+ * wait for the next one to finish instead of starting their own, and callers that accept a pool that
+ * was refreshed a moment ago do not refresh at all.
+ */
+public class LibvirtStoragePoolRefresher {
+
+  private final Logger logger = LoggerFactory.getLogger(LibvirtStoragePoolRefresher.class);
+
+  public interface Refresh {
+    void refresh() throws LibvirtException;
+  }
+
+  private final Map<String, PoolRefreshes> pools = new ConcurrentHashMap<>();
+
+  /**
+   * Refreshes the pool unless a refresh that started within maxAge milliseconds has completed. A
+   * refresh that is running and started late enough is waited for instead of starting another.
+   *
+   * @param maxAge milliseconds, 0 when the refresh has to start after this call
+   * @return whether the refresh the caller relies on succeeded
+   */
+  public boolean refresh(String uuid, long maxAge, Refresh refresh) {
+    final PoolRefreshes state = pools.computeIfAbsent(uuid, key -> new PoolRefreshes());
+    final long wanted = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(maxAge);
+
+    synchronized (state) {
+      while (true) {
+        if (state.completedStart - wanted >= 0 && state.hasCompleted) {
+          state.skipped++;
+          return state.lastSucceeded;
+        }
+        if (!state.running) {
+          break;
+        }
+        if (state.runningStart - wanted >= 0) {
+          // the running refresh is recent enough, share it
+          state.coalesced++;
+          final long generation = state.generation;
+          while (state.generation == generation) {
+            if (!waitFor(state)) {
+              return false;
+            }
+          }
+          return state.lastSucceeded;
+        }
+        if (!waitFor(state)) {
+          return false;
+        }
+      }
+      state.running = true;
+      state.runningStart = System.nanoTime();
+    }
+
+    boolean succeeded = false;
+    try {
+      refresh.refresh();
+      succeeded = true;
+    } catch (final LibvirtException e) {
+      logger.debug("Failed to refresh storage pool " + uuid + ": " + e.getMessage());
+    } finally {
+      synchronized (state) {
+        final long took = System.nanoTime() - state.runningStart;
+        state.refreshes++;
+        if (!succeeded) {
+          state.failures++;
+        }
+        state.totalTime += took;
+        state.maxTime = Math.max(state.maxTime, took);
+        state.running = false;
+        state.hasCompleted = true;
+        state.completedStart = state.runningStart;
+        state.lastSucceeded = succeeded;
+        state.generation++;
+        state.notifyAll();
+        logger.debug("Refreshed storage pool " + uuid + " in " + TimeUnit.NANOSECONDS.toMillis(took) + " ms, " + state);
+      }
+    }
+    return succeeded;
+  }
+
+  private boolean waitFor(PoolRefreshes state) {
+    try {
+      state.wait();
+      return true;
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  /**
+   * Forgets the pool, for when it is removed from libvirt.
+   */
+  public void forget(String uuid) {
+    pools.remove(uuid);
+  }
+
+  /**
+   * @return the refresh statistics of every pool, by pool uuid
+   */
+  public Map<String, String> getStatistics() {
+    final Map<String, String> statistics = new ConcurrentHashMap<>();
+    for (final Map.Entry<String, PoolRefreshes> entry : pools.entrySet()) {
+      synchronized (entry.getValue()) {
+        statistics.put(entry.getKey(), entry.getValue().toString());
+      }
+    }
+    return Collections.unmodifiableMap(statistics);
+  }
+
+  long getRefreshes(String uuid) {
+    final PoolRefreshes state = pools.get(uuid);
+    if (state == null) {
+      return 0;
+    }
+    synchronized (state) {
+      return state.refreshes;
+    }
+  }
+
+  private static class PoolRefreshes {
+    private boolean running;
+    private long runningStart;
+    private boolean hasCompleted;
+    private long completedStart;
+    private boolean lastSucceeded;
+    private long generation;
+
+    private long refreshes;
+    private long failures;
+    private long coalesced;
+    private long skipped;
+    private long totalTime;
+    private long maxTime;
+
+    @Override
+    public String toString() {
+      return "refreshes=" + refreshes + ", failures=" + failures + ", coalesced=" + coalesced + ", skipped=" + skipped
+          + ", averageMs=" + (refreshes == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalTime / refreshes))
+          + ", maxMs=" + TimeUnit.NANOSECONDS.toMillis(maxTime);
+    }
+  }
+}
@@ -19,8 +19,10 @@ import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.naming.ConfigurationException;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -459,6 +461,49 @@ public class LibvirtComputingResourceTest {
     Assert.assertTrue(vmStat.getDiskWriteKBs() > 0);
   }
 
+  @Test
+  public void testGetVmStatsParsesDevicesOncePerDomain() throws LibvirtException {
+    final Connect connect = Mockito.mock(Connect.class);
+    final Domain domain = Mockito.mock(Domain.class);
+    Mockito.when(domain.getInfo()).thenReturn(new DomainInfo());
+    Mockito.when(domain.getID()).thenReturn(1);
+    Mockito.when(domain.interfaceStats(Matchers.anyString())).thenReturn(new DomainInterfaceStats());
+    Mockito.when(domain.blockStats(Matchers.anyString())).thenReturn(new DomainBlockStats());
+    Mockito.when(connect.domainLookupByName(VMNAME)).thenReturn(domain);
+    final NodeInfo nodeInfo = new NodeInfo();
+    nodeInfo.cpus = 8;
+    Mockito.when(connect.nodeInfo()).thenReturn(nodeInfo);
+
+    final AtomicInteger parsed = new AtomicInteger();
+    final LibvirtComputingResource libvirtComputingResource = new LibvirtComputingResource() {
+      @Override
+      public List<InterfaceDef> getInterfaces(final Connect conn, final String vmName) {
+        parsed.incrementAndGet();
+        return Arrays.asList(new InterfaceDef());
+      }
+
+      @Override
+      public List<DiskDef> getDisks(final Connect conn, final String vmName) {
+        return Arrays.asList(new DiskDef());
+      }
+    };
+
+    libvirtComputingResource.getVmStats(connect, Arrays.asList(VMNAME));
+    final Map<String, VmStatsEntry> stats = libvirtComputingResource.getVmStats(connect, Arrays.asList(VMNAME));
+    Assert.assertTrue(stats.containsKey(VMNAME));
+    Assert.assertEquals(1, parsed.get());
+    Mockito.verify(connect, Mockito.times(2)).nodeInfo();
+
+    // a restart gives the domain a new id, which invalidates the cached devices
+    Mockito.when(domain.getID()).thenReturn(2);
+    libvirtComputingResource.getVmStats(connect, Arrays.asList(VMNAME));
+    Assert.assertEquals(2, parsed.get());
+
+    libvirtComputingResource.invalidateDomainDevices(VMNAME);
+    libvirtComputingResource.getVmStats(connect, Arrays.asList(VMNAME));
+    Assert.assertEquals(3, parsed.get());
+  }
+
   @Test
   public void getCpuSpeed() {
     Assume.assumeTrue(SystemUtils.IS_OS_LINUX);
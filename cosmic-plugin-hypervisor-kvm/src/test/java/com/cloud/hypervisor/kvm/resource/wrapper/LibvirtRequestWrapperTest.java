@@ -0,0 +1,18 @@
+package com.cloud.hypervisor.kvm.resource.wrapper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import com.cloud.resource.ResourceWrapperIndex;
+
+import org.junit.Test;
+
+public class LibvirtRequestWrapperTest {
+
+  @Test
+  public void testEveryWrapperIsIndexed() {
+    final String packagePrefix = "com.cloud.hypervisor.kvm.resource.wrapper";
+    assertFalse(ResourceWrapperIndex.loadIndex(packagePrefix).isEmpty());
+    assertEquals(ResourceWrapperIndex.scan(packagePrefix), ResourceWrapperIndex.loadIndex(packagePrefix));
+  }
+}
@@ -0,0 +1,81 @@
+package com.cloud.hypervisor.kvm.storage;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.libvirt.LibvirtException;
+import org.mockito.Mockito;
+
+public class LibvirtStoragePoolRefresherTest {
+  private static final String POOL = "4c4fb08b-373e-4f30-a120-3aa3a43f31da";
+
+  @Test
+  public void testConcurrentCallersShareOneRefresh() throws Exception {
+    final LibvirtStoragePoolRefresher refresher = new LibvirtStoragePoolRefresher();
+    final AtomicInteger refreshes = new AtomicInteger();
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final LibvirtStoragePoolRefresher.Refresh slow = () -> {
+      refreshes.incrementAndGet();
+      started.countDown();
+      try {
+        release.await(10, TimeUnit.SECONDS);
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    };
+
+    final ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      // the first refresh is running, everybody who asks later shares the one after it
+      final Future<Boolean> first = executor.submit(() -> refresher.refresh(POOL, 0, slow));
+      Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+      final Future<?>[] waiting = new Future<?>[6];
+      for (int i = 0; i < waiting.length; i++) {
+        waiting[i] = executor.submit(() -> refresher.refresh(POOL, 0, slow));
+      }
+      Thread.sleep(100);
+      release.countDown();
+
+      Assert.assertTrue(first.get(10, TimeUnit.SECONDS));
+      for (final Future<?> future : waiting) {
+        Assert.assertEquals(Boolean.TRUE, future.get(10, TimeUnit.SECONDS));
+      }
+      Assert.assertEquals(2, refreshes.get());
+      Assert.assertEquals(2, refresher.getRefreshes(POOL));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testRecentRefreshIsReused() {
+    final LibvirtStoragePoolRefresher refresher = new LibvirtStoragePoolRefresher();
+    final AtomicInteger refreshes = new AtomicInteger();
+    final LibvirtStoragePoolRefresher.Refresh count = () -> refreshes.incrementAndGet();
+
+    Assert.assertTrue(refresher.refresh(POOL, 60000, count));
+    Assert.assertTrue(refresher.refresh(POOL, 60000, count));
+    Assert.assertEquals(1, refreshes.get());
+
+    // a caller that needs to see a change forces a new refresh
+    Assert.assertTrue(refresher.refresh(POOL, 0, count));
+    Assert.assertEquals(2, refreshes.get());
+    Assert.assertTrue(refresher.getStatistics().get(POOL).contains("skipped=1"));
+  }
+
+  @Test
+  public void testFailedRefresh() {
+    final LibvirtStoragePoolRefresher refresher = new LibvirtStoragePoolRefresher();
+    Assert.assertFalse(refresher.refresh(POOL, 0, () -> {
+      throw Mockito.mock(LibvirtException.class);
+    }));
+    Assert.assertTrue(refresher.getStatistics().get(POOL).contains("failures=1"));
+  }
+}
@@ -0,0 +1,168 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.hypervisor.simulator;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.naming.ConfigurationException;
+
+import com.cloud.agent.Agent;
+import com.cloud.hypervisor.simulator.resource.SimulatorResource;
+import com.cloud.utils.NumbersUtil;
+import com.cloud.utils.concurrency.NamedThreadFactory;
+import com.cloud.utils.net.NetUtils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Connects a number of simulated hosts to a management server.
+ *
+ * Every host is a real {@link Agent}, with its own NioClient connection, around a
+ * {@link SimulatorResource}, so the management server sees the same traffic as from as many
+ * hypervisors. The fleet is configured with key=value arguments, optionally on top of a properties
+ * file given as the first argument:
+ *
+ * <pre>
+ * host=10.0.0.1 zone=1 pod=1 cluster=1 count=1000 simulator.host.vms=20 simulator.latency=5-20
+ * </pre>
+ *
+ * All simulator.* properties are passed on to the resources, see {@link SimulatorBehaviour} and
+ * {@link SimulatorResource}.
+ */
+public class SimulatedAgentFleet {
+    private static final Logger s_logger = LoggerFactory.getLogger(SimulatedAgentFleet.class);
+
+    private final Properties _properties;
+    private final List<Agent> _agents = new CopyOnWriteArrayList<Agent>();
+    private final AtomicInteger _connected = new AtomicInteger();
+    private ExecutorService _executor;
+
+    public SimulatedAgentFleet(final Properties properties) {
+        _properties = properties;
+    }
+
+    /**
+     * Starts the agents, connecting at most connect.concurrency of them at the same time.
+     */
+    public void start() {
+        final int count = NumbersUtil.parseInt(_properties.getProperty("count"), 1);
+        final int offset = NumbersUtil.parseInt(_properties.getProperty("offset"), 0);
+        final int concurrency = NumbersUtil.parseInt(_properties.getProperty("connect.concurrency"), 50);
+
+        s_logger.info("Starting " + count + " simulated agents against " + _properties.getProperty("host", "localhost"));
+        _executor = Executors.newFixedThreadPool(Math.max(1, concurrency), new NamedThreadFactory("SimulatorFleet"));
+        for (int i = offset; i < offset + count; i++) {
+            final int index = i;
+            _executor.submit(() -> startAgent(index, count));
+        }
+        _executor.shutdown();
+    }
+
+    private void startAgent(final int index, final int count) {
+        final Properties properties = getAgentProperties(index);
+        try {
+            final Agent agent = new Agent(new SimulatorAgentShell(properties), index, new SimulatorResource());
+            _agents.add(agent);
+            agent.start();
+            final int connected = _connected.incrementAndGet();
+            if (connected % 100 == 0 || connected == count) {
+                s_logger.info("Connected " + connected + " of " + count + " simulated agents");
+            }
+        } catch (final ConfigurationException | RuntimeException e) {
+            s_logger.error("Unable to start simulated agent " + properties.getProperty("simulator.host.name"), e);
+        }
+    }
+
+    Properties getAgentProperties(final int index) {
+        final Properties properties = new Properties();
+        properties.putAll(_properties);
+
+        final String name = _properties.getProperty("name.prefix", "sim") + "-" + String.format("%05d", index);
+        final long ipBase = NetUtils.ip2Long(_properties.getProperty("ip.base", "10.128.0.0"));
+        properties.setProperty("simulator.host.name", name);
+        properties.setProperty("simulator.private.ip", NetUtils.long2Ip(ipBase + index + 1));
+        properties.setProperty("guid", getHostGuid(name, _properties.getProperty("zone"), _properties.getProperty("cluster")));
+        if (properties.getProperty("version") == null) {
+            final String version = Agent.class.getPackage().getImplementationVersion();
+            properties.setProperty("version", version != null ? version : "simulator");
+        }
+        return properties;
+    }
+
+    /**
+     * @return the guid a simulated host is given, which its agent extends with the resource name
+     */
+    public static String getHostGuid(final String hostName, final String zone, final String cluster) {
+        return UUID.nameUUIDFromBytes((hostName + "@" + zone + "/" + cluster).getBytes()).toString();
+    }
+
+    public int getConnectedCount() {
+        return _connected.get();
+    }
+
+    public void stop() {
+        if (_executor != null) {
+            _executor.shutdownNow();
+        }
+        // agents say goodbye to the management server one second at a time, so do it in parallel
+        final ExecutorService stopper = Executors.newFixedThreadPool(50, new NamedThreadFactory("SimulatorFleetStop"));
+        for (final Agent agent : _agents) {
+            stopper.submit(() -> agent.stop("Simulated agent fleet stopped", null));
+        }
+        stopper.shutdown();
+        try {
+            stopper.awaitTermination(5, TimeUnit.MINUTES);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        _agents.clear();
+    }
+
+    public static void main(final String[] args) throws IOException {
+        final Properties properties = new Properties();
+        for (int i = 0; i < args.length; i++) {
+            final int eq = args[i].indexOf('=');
+            if (eq > 0) {
+                properties.setProperty(args[i].substring(0, eq), args[i].substring(eq + 1));
+            } else if (i == 0) {
+                try (InputStream in = new FileInputStream(args[i])) {
+                    properties.load(in);
+                }
+            } else {
+                System.err.println("Ignoring argument " + args[i] + ", expected key=value");
+            }
+        }
+        if (properties.getProperty("zone") == null || properties.getProperty("pod") == null || properties.getProperty("cluster") == null) {
+            System.err.println("Usage: SimulatedAgentFleet [file.properties] zone=<id> pod=<id> cluster=<id> [host=<management server>] [count=<hosts>] [key=value...]");
+            System.exit(1);
+        }
+
+        // every agent registers a shutdown hook that disconnects it
+        new SimulatedAgentFleet(properties).start();
+    }
+}
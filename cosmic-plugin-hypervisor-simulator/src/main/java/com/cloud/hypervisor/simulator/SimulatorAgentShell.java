@@ -0,0 +1,123 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.hypervisor.simulator;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.cloud.agent.IAgentShell;
+import com.cloud.utils.NumbersUtil;
+import com.cloud.utils.backoff.BackoffAlgorithm;
+import com.cloud.utils.backoff.impl.ConstantTimeBackoff;
+
+/**
+ * The shell of one simulated agent. Unlike AgentShell it reads nothing from disk: its properties
+ * are handed to it by the fleet and its persistent properties, such as the host id, only live as
+ * long as the process.
+ */
+public class SimulatorAgentShell implements IAgentShell {
+    private final Properties _properties;
+    private final Map<String, String> _persistentProperties = new ConcurrentHashMap<String, String>();
+    private final BackoffAlgorithm _backoff;
+
+    public SimulatorAgentShell(final Properties properties) {
+        _properties = properties;
+
+        final ConstantTimeBackoff backoff = new ConstantTimeBackoff();
+        final Map<String, Object> params = new HashMap<String, Object>();
+        params.put("seconds", _properties.getProperty("backoff.seconds", "5"));
+        backoff.configure("ConstantTimeBackoff", params);
+        _backoff = backoff;
+    }
+
+    @Override
+    public Map<String, Object> getCmdLineProperties() {
+        return new HashMap<String, Object>();
+    }
+
+    @Override
+    public Properties getProperties() {
+        return _properties;
+    }
+
+    @Override
+    public String getPersistentProperty(final String prefix, final String name) {
+        return _persistentProperties.get(prefix != null ? prefix + "." + name : name);
+    }
+
+    @Override
+    public void setPersistentProperty(final String prefix, final String name, final String value) {
+        _persistentProperties.put(prefix != null ? prefix + "." + name : name, value);
+    }
+
+    @Override
+    public String getHost() {
+        return _properties.getProperty("host", "localhost");
+    }
+
+    @Override
+    public String getPrivateIp() {
+        return _properties.getProperty("simulator.private.ip");
+    }
+
+    @Override
+    public int getPort() {
+        return NumbersUtil.parseInt(_properties.getProperty("port"), 8250);
+    }
+
+    @Override
+    public int getWorkers() {
+        return Math.max(1, NumbersUtil.parseInt(_properties.getProperty("workers"), 1));
+    }
+
+    @Override
+    public int getProxyPort() {
+        return 443;
+    }
+
+    @Override
+    public String getGuid() {
+        return _properties.getProperty("guid");
+    }
+
+    @Override
+    public String getZone() {
+        return _properties.getProperty("zone");
+    }
+
+    @Override
+    public String getPod() {
+        return _properties.getProperty("pod");
+    }
+
+    @Override
+    public BackoffAlgorithm getBackoffAlgorithm() {
+        return _backoff;
+    }
+
+    @Override
+    public int getPingRetries() {
+        return NumbersUtil.parseInt(_properties.getProperty("ping.retries"), 5);
+    }
+
+    @Override
+    public String getVersion() {
+        return _properties.getProperty("version");
+    }
+}
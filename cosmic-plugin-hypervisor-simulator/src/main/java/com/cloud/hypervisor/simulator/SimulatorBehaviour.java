@@ -0,0 +1,107 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.hypervisor.simulator;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.cloud.agent.api.Command;
+import com.cloud.utils.NumbersUtil;
+
+/**
+ * How long a simulated host takes to answer a command and how often it fails to.
+ *
+ * Latencies are given in milliseconds as a fixed value or as a min-max range, failure rates as a
+ * fraction between 0 and 1. Both can be set for all commands and overridden per command class:
+ *
+ * <pre>
+ * simulator.latency=5-20
+ * simulator.latency.StartCommand=2000-5000
+ * simulator.failure.rate=0
+ * simulator.failure.rate.StartCommand=0.05
+ * </pre>
+ */
+public class SimulatorBehaviour {
+    public static final String LATENCY = "simulator.latency";
+    public static final String FAILURE_RATE = "simulator.failure.rate";
+
+    private final long[] _defaultLatency;
+    private final double _defaultFailureRate;
+    private final Map<String, long[]> _latencies = new HashMap<String, long[]>();
+    private final Map<String, Double> _failureRates = new HashMap<String, Double>();
+
+    public SimulatorBehaviour(final Map<String, Object> params) {
+        _defaultLatency = parseLatency((String)params.get(LATENCY));
+        _defaultFailureRate = parseFailureRate((String)params.get(FAILURE_RATE));
+
+        for (final Map.Entry<String, Object> param : params.entrySet()) {
+            if (!(param.getValue() instanceof String)) {
+                continue;
+            }
+            final String key = param.getKey();
+            final String value = (String)param.getValue();
+            if (key.startsWith(LATENCY + ".")) {
+                _latencies.put(key.substring(LATENCY.length() + 1), parseLatency(value));
+            } else if (key.startsWith(FAILURE_RATE + ".")) {
+                _failureRates.put(key.substring(FAILURE_RATE.length() + 1), parseFailureRate(value));
+            }
+        }
+    }
+
+    /**
+     * @return how long to wait before answering the command
+     */
+    public long getLatency(final Command cmd) {
+        final long[] latency = _latencies.getOrDefault(cmd.getClass().getSimpleName(), _defaultLatency);
+        if (latency[1] <= latency[0]) {
+            return latency[0];
+        }
+        return ThreadLocalRandom.current().nextLong(latency[0], latency[1] + 1);
+    }
+
+    /**
+     * @return true if the command should fail this time
+     */
+    public boolean shouldFail(final Command cmd) {
+        final double rate = _failureRates.getOrDefault(cmd.getClass().getSimpleName(), _defaultFailureRate);
+        return rate > 0 && ThreadLocalRandom.current().nextDouble() < rate;
+    }
+
+    private static long[] parseLatency(final String value) {
+        if (value == null || value.isEmpty()) {
+            return new long[] {0, 0};
+        }
+        final int dash = value.indexOf('-');
+        if (dash < 0) {
+            final long latency = NumbersUtil.parseLong(value.trim(), 0);
+            return new long[] {latency, latency};
+        }
+        return new long[] {NumbersUtil.parseLong(value.substring(0, dash).trim(), 0), NumbersUtil.parseLong(value.substring(dash + 1).trim(), 0)};
+    }
+
+    private static double parseFailureRate(final String value) {
+        if (value == null || value.isEmpty()) {
+            return 0;
+        }
+        try {
+            return Math.min(1, Math.max(0, Double.parseDouble(value.trim())));
+        } catch (final NumberFormatException e) {
+            return 0;
+        }
+    }
+}
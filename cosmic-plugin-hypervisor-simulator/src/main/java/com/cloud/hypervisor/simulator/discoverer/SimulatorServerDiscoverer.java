@@ -0,0 +1,106 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.hypervisor.simulator.discoverer;
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.naming.ConfigurationException;
+
+import com.cloud.agent.api.StartupCommand;
+import com.cloud.agent.api.StartupRoutingCommand;
+import com.cloud.dc.ClusterVO;
+import com.cloud.exception.DiscoveryException;
+import com.cloud.host.HostInfo;
+import com.cloud.host.HostVO;
+import com.cloud.hypervisor.kvm.discoverer.KvmDummyResourceBase;
+import com.cloud.hypervisor.kvm.discoverer.KvmServerDiscoverer;
+import com.cloud.hypervisor.simulator.SimulatedAgentFleet;
+import com.cloud.hypervisor.simulator.resource.SimulatorResource;
+import com.cloud.resource.ServerResource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Adds the hosts of a {@link SimulatedAgentFleet} to a KVM cluster.
+ *
+ * Simulated hosts connect on their own, like KVM agents that were set up before, so adding one
+ * with a simulator://&lt;host name&gt; url only waits for its agent to have connected. Real KVM
+ * hosts are left to the KVM discoverer.
+ */
+public class SimulatorServerDiscoverer extends KvmServerDiscoverer {
+    private static final Logger s_logger = LoggerFactory.getLogger(SimulatorServerDiscoverer.class);
+
+    public static final String SCHEME = "simulator";
+
+    @Override
+    public Map<? extends ServerResource, Map<String, String>> find(final long dcId, final Long podId, final Long clusterId, final URI uri, final String username,
+                                                                   final String password, final List<String> hostTags) throws DiscoveryException {
+        if (!SCHEME.equals(uri.getScheme())) {
+            return null;
+        }
+
+        final ClusterVO cluster = _clusterDao.findById(clusterId);
+        if (cluster == null || cluster.getHypervisorType() != getHypervisorType()) {
+            s_logger.info("Invalid cluster id or cluster is not for " + getHypervisorType() + " hypervisors");
+            return null;
+        }
+
+        final String hostName = uri.getHost();
+        final String guid = SimulatedAgentFleet.getHostGuid(hostName, Long.toString(dcId), Long.toString(clusterId));
+        final HostVO connectedHost = waitForHostConnect(dcId, podId, clusterId, guid);
+        if (connectedHost == null) {
+            s_logger.info("Simulated host " + hostName + " has not connected to cluster " + clusterId);
+            return null;
+        }
+
+        final KvmDummyResourceBase resource = new KvmDummyResourceBase();
+        final Map<String, Object> params = new HashMap<>();
+        params.put("zone", Long.toString(dcId));
+        params.put("pod", Long.toString(podId));
+        params.put("cluster", Long.toString(clusterId));
+        params.put("guid", guid);
+        params.put("agentIp", connectedHost.getPrivateIpAddress());
+        try {
+            resource.configure("simulator agent", params);
+        } catch (final ConfigurationException e) {
+            s_logger.error("Unable to configure the resource of simulated host " + hostName, e);
+            return null;
+        }
+
+        final Map<String, String> details = new HashMap<>();
+        details.put("guid", connectedHost.getGuid());
+        final Map<KvmDummyResourceBase, Map<String, String>> resources = new HashMap<>();
+        resources.put(resource, details);
+        return resources;
+    }
+
+    @Override
+    public HostVO createHostVOForConnectedAgent(final HostVO host, final StartupCommand[] cmd) {
+        if (!(cmd[0] instanceof StartupRoutingCommand)) {
+            return null;
+        }
+        final StartupRoutingCommand ssCmd = (StartupRoutingCommand) cmd[0];
+        if (!SimulatorResource.HOST_OS.equals(ssCmd.getHostDetails().get(HostInfo.HOST_OS))) {
+            return null;
+        }
+        return super.createHostVOForConnectedAgent(host, cmd);
+    }
+}
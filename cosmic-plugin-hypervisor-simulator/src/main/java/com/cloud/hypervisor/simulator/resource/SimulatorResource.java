@@ -0,0 +1,329 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.hypervisor.simulator.resource;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.naming.ConfigurationException;
+
+import com.cloud.agent.api.Answer;
+import com.cloud.agent.api.CheckHealthAnswer;
+import com.cloud.agent.api.CheckHealthCommand;
+import com.cloud.agent.api.CheckVirtualMachineAnswer;
+import com.cloud.agent.api.CheckVirtualMachineCommand;
+import com.cloud.agent.api.Command;
+import com.cloud.agent.api.GetHostStatsAnswer;
+import com.cloud.agent.api.GetHostStatsCommand;
+import com.cloud.agent.api.GetVmStatsAnswer;
+import com.cloud.agent.api.GetVmStatsCommand;
+import com.cloud.agent.api.HostStatsEntry;
+import com.cloud.agent.api.HostVmStateReportEntry;
+import com.cloud.agent.api.MaintainAnswer;
+import com.cloud.agent.api.MaintainCommand;
+import com.cloud.agent.api.ModifyStoragePoolAnswer;
+import com.cloud.agent.api.ModifyStoragePoolCommand;
+import com.cloud.agent.api.PingCommand;
+import com.cloud.agent.api.PingRoutingCommand;
+import com.cloud.agent.api.ReadyAnswer;
+import com.cloud.agent.api.ReadyCommand;
+import com.cloud.agent.api.RebootAnswer;
+import com.cloud.agent.api.RebootCommand;
+import com.cloud.agent.api.StartAnswer;
+import com.cloud.agent.api.StartCommand;
+import com.cloud.agent.api.StartupCommand;
+import com.cloud.agent.api.StartupRoutingCommand;
+import com.cloud.agent.api.StopAnswer;
+import com.cloud.agent.api.StopCommand;
+import com.cloud.agent.api.VmStatsEntry;
+import com.cloud.agent.api.to.VirtualMachineTO;
+import com.cloud.host.Host.Type;
+import com.cloud.host.HostInfo;
+import com.cloud.hypervisor.Hypervisor.HypervisorType;
+import com.cloud.hypervisor.simulator.SimulatorBehaviour;
+import com.cloud.network.Networks.RouterPrivateIpStrategy;
+import com.cloud.resource.ServerResource;
+import com.cloud.resource.ServerResourceBase;
+import com.cloud.storage.template.TemplateProp;
+import com.cloud.utils.NumbersUtil;
+import com.cloud.vm.VirtualMachine.PowerState;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A routing host that only exists in memory.
+ *
+ * The host reports itself as a KVM host with Host.OS set to {@link #HOST_OS}, so the management
+ * server runs its usual KVM code paths for it while keeping it out of clusters of real KVM hosts.
+ * Virtual machines are entries in a map: starting one adds it, stopping one removes it, and the
+ * ping reports all of them. Every command is delayed and failed as configured in
+ * {@link SimulatorBehaviour}.
+ */
+public class SimulatorResource extends ServerResourceBase implements ServerResource {
+    private static final Logger s_logger = LoggerFactory.getLogger(SimulatorResource.class);
+
+    public static final String HOST_OS = "Simulator";
+
+    private final Map<String, SimulatedVm> _vms = new ConcurrentHashMap<String, SimulatedVm>();
+
+    private SimulatorBehaviour _behaviour;
+    private String _hostName;
+    private String _privateIp;
+    private String _clusterId;
+    private String _pool;
+    private int _cpus;
+    private long _cpuSpeed;
+    private long _memory;
+
+    @Override
+    public boolean configure(final String name, final Map<String, Object> params) throws ConfigurationException {
+        _name = name;
+        _behaviour = new SimulatorBehaviour(params);
+
+        _hostName = (String)params.get("simulator.host.name");
+        _privateIp = (String)params.get("simulator.private.ip");
+        if (_hostName == null || _privateIp == null) {
+            throw new ConfigurationException("Unable to find the name and ip address of the simulated host");
+        }
+        _clusterId = (String)params.get("cluster");
+        _pool = (String)params.get("pool");
+        _cpus = NumbersUtil.parseInt((String)params.get("simulator.host.cpus"), 32);
+        _cpuSpeed = NumbersUtil.parseLong((String)params.get("simulator.host.cpu.speed"), 2400);
+        _memory = NumbersUtil.parseLong((String)params.get("simulator.host.memory"), 256L * 1024) * 1024 * 1024;
+
+        // virtual machines the host is already running when it connects
+        final int vms = NumbersUtil.parseInt((String)params.get("simulator.host.vms"), 0);
+        for (int i = 0; i < vms; i++) {
+            final String vmName = _hostName + "-vm-" + i;
+            _vms.put(vmName, new SimulatedVm(1, 0));
+        }
+        return true;
+    }
+
+    @Override
+    public Type getType() {
+        return Type.Routing;
+    }
+
+    @Override
+    public StartupCommand[] initialize() {
+        final StartupRoutingCommand cmd = new StartupRoutingCommand(_cpus, _cpuSpeed, _memory, 0, "hvm", HypervisorType.KVM, RouterPrivateIpStrategy.HostLocal);
+        cmd.getHostDetails().put(HostInfo.HOST_OS, HOST_OS);
+        cmd.getHostDetails().put(HostInfo.HOST_OS_VERSION, "1.0");
+        cmd.getHostDetails().put(HostInfo.HOST_OS_KERNEL_VERSION, "1.0");
+        cmd.setCpuSockets(1);
+        cmd.setName(_hostName);
+        cmd.setPrivateIpAddress(_privateIp);
+        cmd.setPrivateNetmask("255.0.0.0");
+        cmd.setPrivateMacAddress(macAddress(_privateIp));
+        cmd.setStorageIpAddress(_privateIp);
+        cmd.setStorageNetmask("255.0.0.0");
+        cmd.setStorageMacAddress(macAddress(_privateIp));
+        cmd.setCluster(_clusterId);
+        cmd.setPool(_pool);
+        return new StartupCommand[] {cmd};
+    }
+
+    @Override
+    public PingCommand getCurrentStatus(final long id) {
+        return new PingRoutingCommand(Type.Routing, id, getHostVmStateReport());
+    }
+
+    @Override
+    public Answer executeRequest(final Command cmd) {
+        final long latency = _behaviour.getLatency(cmd);
+        if (latency > 0) {
+            try {
+                Thread.sleep(latency);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (_behaviour.shouldFail(cmd)) {
+            if (s_logger.isDebugEnabled()) {
+                s_logger.debug("Failing " + cmd.getClass().getSimpleName() + " on simulated host " + _hostName);
+            }
+            return createFailureAnswer(cmd, "Simulated failure of " + cmd.getClass().getSimpleName() + " on " + _hostName);
+        }
+
+        if (cmd instanceof StartCommand) {
+            return execute((StartCommand)cmd);
+        } else if (cmd instanceof StopCommand) {
+            return execute((StopCommand)cmd);
+        } else if (cmd instanceof RebootCommand) {
+            return execute((RebootCommand)cmd);
+        } else if (cmd instanceof CheckVirtualMachineCommand) {
+            return execute((CheckVirtualMachineCommand)cmd);
+        } else if (cmd instanceof GetHostStatsCommand) {
+            return execute((GetHostStatsCommand)cmd);
+        } else if (cmd instanceof GetVmStatsCommand) {
+            return execute((GetVmStatsCommand)cmd);
+        } else if (cmd instanceof ModifyStoragePoolCommand) {
+            return execute((ModifyStoragePoolCommand)cmd);
+        } else if (cmd instanceof ReadyCommand) {
+            return new ReadyAnswer((ReadyCommand)cmd);
+        } else if (cmd instanceof MaintainCommand) {
+            return new MaintainAnswer((MaintainCommand)cmd);
+        } else if (cmd instanceof CheckHealthCommand) {
+            return new CheckHealthAnswer((CheckHealthCommand)cmd, true);
+        }
+        return new Answer(cmd);
+    }
+
+    /**
+     * @return a failed answer of the type the management server expects for the command
+     */
+    private Answer createFailureAnswer(final Command cmd, final String details) {
+        if (cmd instanceof StartCommand) {
+            return new StartAnswer((StartCommand)cmd, details);
+        } else if (cmd instanceof StopCommand) {
+            return new StopAnswer((StopCommand)cmd, details, false);
+        } else if (cmd instanceof RebootCommand) {
+            return new RebootAnswer((RebootCommand)cmd, details, false);
+        } else if (cmd instanceof CheckVirtualMachineCommand) {
+            return new CheckVirtualMachineAnswer((CheckVirtualMachineCommand)cmd, details);
+        } else if (cmd instanceof ReadyCommand) {
+            return new ReadyAnswer((ReadyCommand)cmd, details);
+        } else if (cmd instanceof MaintainCommand) {
+            return new MaintainAnswer((MaintainCommand)cmd, false, details);
+        }
+        return new Answer(cmd, false, details);
+    }
+
+    private Answer execute(final StartCommand cmd) {
+        final VirtualMachineTO vm = cmd.getVirtualMachine();
+        synchronized (_vms) {
+            final SimulatedVm existing = _vms.get(vm.getName());
+            final long used = getAllocatedMemory() - (existing != null ? existing.memory : 0);
+            if (used + vm.getMaxRam() > _memory) {
+                return new StartAnswer(cmd, "Not enough memory on simulated host " + _hostName + " to start " + vm.getName());
+            }
+            _vms.put(vm.getName(), new SimulatedVm(vm.getCpus(), vm.getMaxRam()));
+        }
+        return new StartAnswer(cmd);
+    }
+
+    private Answer execute(final StopCommand cmd) {
+        _vms.remove(cmd.getVmName());
+        return new StopAnswer(cmd, null, true);
+    }
+
+    private Answer execute(final RebootCommand cmd) {
+        if (!_vms.containsKey(cmd.getVmName())) {
+            return new RebootAnswer(cmd, "Virtual machine " + cmd.getVmName() + " is not running on " + _hostName, false);
+        }
+        return new RebootAnswer(cmd, null, true);
+    }
+
+    private Answer execute(final CheckVirtualMachineCommand cmd) {
+        final PowerState state = _vms.containsKey(cmd.getVmName()) ? PowerState.PowerOn : PowerState.PowerOff;
+        return new CheckVirtualMachineAnswer(cmd, state, null);
+    }
+
+    private Answer execute(final GetHostStatsCommand cmd) {
+        int usedCpus = 0;
+        for (final SimulatedVm vm : _vms.values()) {
+            usedCpus += vm.cpus;
+        }
+        final double cpuUtilization = Math.min(100, 100.0 * usedCpus / (_cpus * 4));
+        final double totalMemoryKBs = _memory / 1024;
+        final double freeMemoryKBs = Math.max(0, _memory - getAllocatedMemory()) / 1024;
+        return new GetHostStatsAnswer(cmd, new HostStatsEntry(cmd.getHostId(), cpuUtilization, 0, 0, "host", totalMemoryKBs, freeMemoryKBs, 0, cpuUtilization / 100 * _cpus));
+    }
+
+    private Answer execute(final GetVmStatsCommand cmd) {
+        final HashMap<String, VmStatsEntry> stats = new HashMap<String, VmStatsEntry>();
+        for (final String vmName : cmd.getVmNames()) {
+            final SimulatedVm vm = _vms.get(vmName);
+            if (vm != null) {
+                stats.put(vmName, new VmStatsEntry(10, 1, 1, vm.cpus, "vm"));
+            }
+        }
+        return new GetVmStatsAnswer(cmd, stats);
+    }
+
+    private Answer execute(final ModifyStoragePoolCommand cmd) {
+        final long capacity = 100L * 1024 * 1024 * 1024 * 1024;
+        return new ModifyStoragePoolAnswer(cmd, capacity, capacity, new HashMap<String, TemplateProp>());
+    }
+
+    private long getAllocatedMemory() {
+        long used = 0;
+        for (final SimulatedVm vm : _vms.values()) {
+            used += vm.memory;
+        }
+        return used;
+    }
+
+    protected Map<String, HostVmStateReportEntry> getHostVmStateReport() {
+        final Map<String, HostVmStateReportEntry> report = new HashMap<String, HostVmStateReportEntry>();
+        for (final String vmName : _vms.keySet()) {
+            report.put(vmName, new HostVmStateReportEntry(PowerState.PowerOn, _hostName));
+        }
+        return report;
+    }
+
+    public int getVmCount() {
+        return _vms.size();
+    }
+
+    private static String macAddress(final String ip) {
+        final String[] octets = ip.split("\\.");
+        return String.format("06:00:%02x:%02x:%02x:%02x", Integer.parseInt(octets[0]), Integer.parseInt(octets[1]), Integer.parseInt(octets[2]),
+                Integer.parseInt(octets[3]));
+    }
+
+    @Override
+    protected String getDefaultScriptsDir() {
+        return null;
+    }
+
+    @Override
+    public void setName(final String name) {
+        _name = name;
+    }
+
+    @Override
+    public void setConfigParams(final Map<String, Object> params) {
+    }
+
+    @Override
+    public Map<String, Object> getConfigParams() {
+        return new HashMap<String, Object>();
+    }
+
+    @Override
+    public int getRunLevel() {
+        return 0;
+    }
+
+    @Override
+    public void setRunLevel(final int level) {
+    }
+
+    private static class SimulatedVm {
+        private final int cpus;
+        private final long memory;
+
+        SimulatedVm(final int cpus, final long memory) {
+            this.cpus = cpus;
+            this.memory = memory;
+        }
+    }
+}
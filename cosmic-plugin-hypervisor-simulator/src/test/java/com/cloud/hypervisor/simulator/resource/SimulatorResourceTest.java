@@ -0,0 +1,125 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.hypervisor.simulator.resource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.cloud.agent.api.Answer;
+import com.cloud.agent.api.CheckVirtualMachineAnswer;
+import com.cloud.agent.api.CheckVirtualMachineCommand;
+import com.cloud.agent.api.PingRoutingCommand;
+import com.cloud.agent.api.StartAnswer;
+import com.cloud.agent.api.StartCommand;
+import com.cloud.agent.api.StartupCommand;
+import com.cloud.agent.api.StartupRoutingCommand;
+import com.cloud.agent.api.StopAnswer;
+import com.cloud.agent.api.StopCommand;
+import com.cloud.agent.api.to.VirtualMachineTO;
+import com.cloud.host.HostInfo;
+import com.cloud.hypervisor.Hypervisor.HypervisorType;
+import com.cloud.vm.VirtualMachine.PowerState;
+
+import org.junit.Test;
+
+public class SimulatorResourceTest {
+
+    private SimulatorResource createResource(final Map<String, Object> extra) throws Exception {
+        final Map<String, Object> params = new HashMap<String, Object>();
+        params.put("simulator.host.name", "sim-00001");
+        params.put("simulator.private.ip", "10.128.0.2");
+        params.put("cluster", "3");
+        params.put("simulator.host.memory", "4096");
+        params.put("simulator.host.vms", "100");
+        params.putAll(extra);
+
+        final SimulatorResource resource = new SimulatorResource();
+        assertTrue(resource.configure("SimulatorResource", params));
+        return resource;
+    }
+
+    private static StartCommand startCommand(final String vmName, final long ram) {
+        final VirtualMachineTO vm = mock(VirtualMachineTO.class);
+        when(vm.getName()).thenReturn(vmName);
+        when(vm.getCpus()).thenReturn(2);
+        when(vm.getMaxRam()).thenReturn(ram);
+        final StartCommand cmd = mock(StartCommand.class);
+        when(cmd.getVirtualMachine()).thenReturn(vm);
+        return cmd;
+    }
+
+    @Test
+    public void testStartupReportsSimulatedKvmHost() throws Exception {
+        final StartupCommand[] startup = createResource(new HashMap<String, Object>()).initialize();
+
+        assertEquals(1, startup.length);
+        final StartupRoutingCommand cmd = (StartupRoutingCommand)startup[0];
+        assertEquals(HypervisorType.KVM, cmd.getHypervisorType());
+        assertEquals(SimulatorResource.HOST_OS, cmd.getHostDetails().get(HostInfo.HOST_OS));
+        assertEquals("10.128.0.2", cmd.getPrivateIpAddress());
+        assertEquals("3", cmd.getCluster());
+        assertEquals(4096L * 1024 * 1024, cmd.getMemory());
+    }
+
+    @Test
+    public void testStartedVmsAreReportedUntilStopped() throws Exception {
+        final SimulatorResource resource = createResource(new HashMap<String, Object>());
+        assertEquals(100, ((PingRoutingCommand)resource.getCurrentStatus(1)).getHostVmStateReport().size());
+
+        final Answer start = resource.executeRequest(startCommand("i-2-10-VM", 1024L * 1024 * 1024));
+        assertTrue(start instanceof StartAnswer);
+        assertTrue(start.getResult());
+        assertEquals(PowerState.PowerOn, ((PingRoutingCommand)resource.getCurrentStatus(1)).getHostVmStateReport().get("i-2-10-VM").getState());
+        assertEquals(PowerState.PowerOn, ((CheckVirtualMachineAnswer)resource.executeRequest(new CheckVirtualMachineCommand("i-2-10-VM"))).getState());
+
+        final Answer stop = resource.executeRequest(new StopCommand("i-2-10-VM", false, false));
+        assertTrue(stop instanceof StopAnswer);
+        assertTrue(stop.getResult());
+        assertEquals(100, resource.getVmCount());
+        assertEquals(PowerState.PowerOff, ((CheckVirtualMachineAnswer)resource.executeRequest(new CheckVirtualMachineCommand("i-2-10-VM"))).getState());
+    }
+
+    @Test
+    public void testStartFailsWhenHostIsFull() throws Exception {
+        final SimulatorResource resource = createResource(new HashMap<String, Object>());
+        assertTrue(resource.executeRequest(startCommand("i-2-10-VM", 3072L * 1024 * 1024)).getResult());
+        assertFalse(resource.executeRequest(startCommand("i-2-11-VM", 2048L * 1024 * 1024)).getResult());
+    }
+
+    @Test
+    public void testConfiguredFailuresAndLatency() throws Exception {
+        final Map<String, Object> params = new HashMap<String, Object>();
+        params.put("simulator.failure.rate.StopCommand", "1");
+        params.put("simulator.latency.CheckVirtualMachineCommand", "200");
+        final SimulatorResource resource = createResource(params);
+
+        final Answer stop = resource.executeRequest(new StopCommand("sim-00001-vm-0", false, false));
+        assertTrue(stop instanceof StopAnswer);
+        assertFalse(stop.getResult());
+        assertEquals(100, resource.getVmCount());
+
+        final long before = System.currentTimeMillis();
+        assertTrue(resource.executeRequest(new CheckVirtualMachineCommand("sim-00001-vm-0")).getResult());
+        assertTrue(System.currentTimeMillis() - before >= 200);
+    }
+}
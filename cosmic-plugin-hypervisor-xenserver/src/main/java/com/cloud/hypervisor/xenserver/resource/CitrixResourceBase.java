@@ -21,13 +21,14 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
+import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
-import java.net.URLConnection;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Date;
@@ -46,8 +47,7 @@ import java.util.concurrent.TimeoutException;
 
 import javax.ejb.Local;
 import javax.naming.ConfigurationException;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
 
 import com.cloud.agent.IAgentControl;
 import com.cloud.agent.api.Answer;
@@ -147,11 +147,6 @@ import org.apache.commons.io.FileUtils;
 import org.apache.xmlrpc.XmlRpcException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.InputSource;
-import org.xml.sax.SAXException;
 
 /**
  * CitrixResourceBase encapsulates the calls to the XenServer Xapi process to perform the required functionalities for
@@ -230,6 +225,7 @@ public abstract class CitrixResourceBase implements ServerResource, HypervisorRe
   protected String _instance; // instance name (default is usually "VM")
   protected String _linkLocalPrivateNetworkName;
   protected int _maxNics = 7;
+  protected XsObjectCache _objectCache;
 
   final int _maxWeight = 256;
   protected int _migratewait;
@@ -821,6 +817,11 @@ public abstract class CitrixResourceBase implements ServerResource, HypervisorRe
 
     _maxNics = NumbersUtil.parseInt((String) params.get("xenserver.nics.max"), 7);
 
+    final String objectCache = (String) params.get("xenserver.object.cache");
+    if (objectCache == null || Boolean.parseBoolean(objectCache)) {
+      _objectCache = new XsObjectCache(this);
+    }
+
     if (_pod == null) {
       throw new ConfigurationException("Unable to get the pod");
     }
@@ -1552,6 +1553,9 @@ public abstract class CitrixResourceBase implements ServerResource, HypervisorRe
 
   @Override
   public void disconnected() {
+    if (_objectCache != null) {
+      _objectCache.stop();
+    }
   }
 
   public boolean doPingTest(final Connection conn, final String computingHostIp) {
@@ -2032,37 +2036,6 @@ public abstract class CitrixResourceBase implements ServerResource, HypervisorRe
     }
   }
 
-  protected double getDataAverage(final Node dataNode, final int col, final int numRows) {
-    double value = 0;
-    final double dummy = 0;
-    int numRowsUsed = 0;
-    for (int row = 0; row < numRows; row++) {
-      final Node data = dataNode.getChildNodes().item(numRows - 1 - row).getChildNodes().item(col + 1);
-      final Double currentDataAsDouble = Double.valueOf(getXMLNodeValue(data));
-      if (!currentDataAsDouble.equals(Double.NaN)) {
-        numRowsUsed += 1;
-        value += currentDataAsDouble;
-      }
-    }
-
-    if (numRowsUsed == 0) {
-      if (!Double.isInfinite(value) && !Double.isNaN(value)) {
-        return value;
-      } else {
-        s_logger.warn("Found an invalid value (infinity/NaN) in getDataAverage(), numRows=0");
-        return dummy;
-      }
-    } else {
-      if (!Double.isInfinite(value / numRowsUsed) && !Double.isNaN(value / numRowsUsed)) {
-        return value / numRowsUsed;
-      } else {
-        s_logger.warn("Found an invalid value (infinity/NaN) in getDataAverage(), numRows>0");
-        return dummy;
-      }
-    }
-
-  }
-
   public HashMap<String, HashMap<String, VgpuTypesInfo>> getGPUGroupDetails(final Connection conn)
       throws XenAPIException, XmlRpcException {
     return null;
@@ -2194,26 +2167,15 @@ public abstract class CitrixResourceBase implements ServerResource, HypervisorRe
       final long hostId) {
 
     final HostStatsEntry hostStats = new HostStatsEntry(hostId, 0, 0, 0, "host", 0, 0, 0, 0);
-    final Object[] rrdData = getRRDData(conn, 1); // call rrd method with 1
-    // for host
+    final XsRrdUpdates rrdUpdates = getRrdUpdates(conn, true);
 
-    if (rrdData == null) {
+    if (rrdUpdates == null) {
       return null;
     }
 
-    final Integer numRows = (Integer) rrdData[0];
-    final Integer numColumns = (Integer) rrdData[1];
-    final Node legend = (Node) rrdData[2];
-    final Node dataNode = (Node) rrdData[3];
+    for (int col = 0; col < rrdUpdates.getColumns(); col++) {
 
-    final NodeList legendChildren = legend.getChildNodes();
-    for (int col = 0; col < numColumns; col++) {
-
-      if (legendChildren == null || legendChildren.item(col) == null) {
-        continue;
-      }
-
-      final String columnMetadata = getXMLNodeValue(legendChildren.item(col));
+      final String columnMetadata = rrdUpdates.getLegend(col);
 
       if (columnMetadata == null) {
         continue;
@@ -2231,21 +2193,21 @@ public abstract class CitrixResourceBase implements ServerResource, HypervisorRe
       if (type.equalsIgnoreCase("host")) {
 
         if (param.matches("pif_eth0_rx")) {
-          hostStats.setNetworkReadKBs(getDataAverage(dataNode, col, numRows) / 1000);
+          hostStats.setNetworkReadKBs(rrdUpdates.getAverage(col) / 1000);
         } else if (param.matches("pif_eth0_tx")) {
-          hostStats.setNetworkWriteKBs(getDataAverage(dataNode, col, numRows) / 1000);
+          hostStats.setNetworkWriteKBs(rrdUpdates.getAverage(col) / 1000);
         } else if (param.contains("memory_total_kib")) {
-          hostStats.setTotalMemoryKBs(getDataAverage(dataNode, col, numRows));
+          hostStats.setTotalMemoryKBs(rrdUpdates.getAverage(col));
         } else if (param.contains("memory_free_kib")) {
-          hostStats.setFreeMemoryKBs(getDataAverage(dataNode, col, numRows));
+          hostStats.setFreeMemoryKBs(rrdUpdates.getAverage(col));
         } else if (param.matches("cpu_avg")) {
           // hostStats.setNumCpus(hostStats.getNumCpus() + 1);
-          hostStats.setCpuUtilization(hostStats.getCpuUtilization() + getDataAverage(dataNode, col, numRows));
+          hostStats.setCpuUtilization(hostStats.getCpuUtilization() + rrdUpdates.getAverage(col));
         }
 
         /*
          * if (param.contains("loadavg")) { hostStats.setAverageLoad((hostStats.getAverageLoad() +
-         * getDataAverage(dataNode, col, numRows))); }
+         * rrdUpdates.getAverage(col))); }
          */
       }
     }
@@ -2265,8 +2227,8 @@ public abstract class CitrixResourceBase implements ServerResource, HypervisorRe
     // need to optimize
     // the report accordingly
     final HashMap<String, HostVmStateReportEntry> vmStates = new HashMap<String, HostVmStateReportEntry>();
-    Map<VM, VM.Record> vm_map = null;
-    for (int i = 0; i < 2; i++) {
+    Map<VM, VM.Record> vm_map = _objectCache != null ? _objectCache.getAllVmRecords() : null;
+    for (int i = 0; vm_map == null && i < 2; i++) {
       try {
         vm_map = VM.getAllRecords(conn); // USE THIS TO GET ALL VMS FROM
         // A CLUSTER
@@ -2294,7 +2256,10 @@ public abstract class CitrixResourceBase implements ServerResource, HypervisorRe
       String host_uuid = null;
       if (!isRefNull(host)) {
         try {
-          host_uuid = host.getUuid(conn);
+          host_uuid = _objectCache != null ? _objectCache.getHostUuid(host) : null;
+          if (host_uuid == null) {
+            host_uuid = host.getUuid(conn);
+          }
         } catch (final BadServerResponse e) {
           s_logger.error("Failed to get host uuid for host " + host.toWireString(), e);
         } catch (final XenAPIException e) {
@@ -2793,7 +2758,7 @@ public abstract class CitrixResourceBase implements ServerResource, HypervisorRe
    */
   public XsLocalNetwork getNetworkByName(final Connection conn, final String name)
       throws XenAPIException, XmlRpcException {
-    final Set<Network> networks = Network.getByNameLabel(conn, name);
+    final Set<Network> networks = getNetworksByNameLabel(conn, name);
     if (networks.size() == 1) {
       return new XsLocalNetwork(this, networks.iterator().next(), null, null, null);
     }
@@ -2936,46 +2901,59 @@ public abstract class CitrixResourceBase implements ServerResource, HypervisorRe
     return null;
   }
 
-  protected Object[] getRRDData(final Connection conn, final int flag) {
-
-    /*
-     * Note: 1 => called from host, hence host stats 2 => called from vm, hence vm stats
-     */
-    Document doc = null;
+  /**
+   * Fetches and parses the rrd_updates of the host or of its VMs. The connection is left open
+   * after the response has been read completely, so the next poll can reuse it.
+   */
+  protected XsRrdUpdates getRrdUpdates(final Connection conn, final boolean host) {
+    final Date currentDate = new Date();
+    String urlStr = "http://" + _host.getIp() + "/rrd_updates?";
+    urlStr += "session_id=" + conn.getSessionReference();
+    urlStr += "&host=" + (host ? "true" : "false");
+    urlStr += "&cf=" + _consolidationFunction;
+    urlStr += "&interval=" + _pollingIntervalInSeconds;
+    urlStr += "&start=" + (currentDate.getTime() / 1000 - 1000 - 100);
 
+    HttpURLConnection uc = null;
     try {
-      doc = getStatsRawXML(conn, flag == 1 ? true : false);
-    } catch (final Exception e1) {
-      s_logger.warn("Error whilst collecting raw stats from plugin: ", e1);
+      uc = (HttpURLConnection) new URL(urlStr).openConnection();
+      uc.setRequestProperty("Connection", "keep-alive");
+      try (InputStream in = uc.getInputStream()) {
+        final XsRrdUpdates rrdUpdates = XsRrdUpdates.parse(in);
+        drain(in);
+        return rrdUpdates;
+      }
+    } catch (final MalformedURLException e) {
+      s_logger.warn("Malformed URL?  come on...." + urlStr);
       return null;
-    }
-
-    if (doc == null) { // stats are null when the host plugin call fails
-      // (host down state)
+    } catch (final IOException e) {
+      s_logger.warn("Problems getting stats using " + urlStr, e);
+      drainErrorStream(uc);
+      return null;
+    } catch (final XMLStreamException e) {
+      s_logger.warn("Problems getting stats using " + urlStr, e);
       return null;
     }
+  }
 
-    final NodeList firstLevelChildren = doc.getChildNodes();
-    final NodeList secondLevelChildren = firstLevelChildren.item(0).getChildNodes();
-    final Node metaNode = secondLevelChildren.item(0);
-    final Node dataNode = secondLevelChildren.item(1);
+  private void drain(final InputStream in) throws IOException {
+    final byte[] buffer = new byte[4096];
+    while (in.read(buffer) != -1) {
+      // read the remainder so the connection can be reused
+    }
+  }
 
-    Integer numRows = 0;
-    Integer numColumns = 0;
-    Node legend = null;
-    final NodeList metaNodeChildren = metaNode.getChildNodes();
-    for (int i = 0; i < metaNodeChildren.getLength(); i++) {
-      final Node n = metaNodeChildren.item(i);
-      if (n.getNodeName().equals("rows")) {
-        numRows = Integer.valueOf(getXMLNodeValue(n));
-      } else if (n.getNodeName().equals("columns")) {
-        numColumns = Integer.valueOf(getXMLNodeValue(n));
-      } else if (n.getNodeName().equals("legend")) {
-        legend = n;
+  private void drainErrorStream(final HttpURLConnection uc) {
+    if (uc == null) {
+      return;
+    }
+    try (InputStream err = uc.getErrorStream()) {
+      if (err != null) {
+        drain(err);
       }
+    } catch (final IOException e) {
+      s_logger.debug("Unable to read the error response of " + uc.getURL(), e);
     }
-
-    return new Object[] { numRows, numColumns, legend, dataNode };
   }
 
   @Override
@@ -3038,51 +3016,10 @@ public abstract class CitrixResourceBase implements ServerResource, HypervisorRe
     return dynamicMinRam;
   }
 
-  protected Document getStatsRawXML(final Connection conn, final boolean host) {
-    final Date currentDate = new Date();
-    String urlStr = "http://" + _host.getIp() + "/rrd_updates?";
-    urlStr += "session_id=" + conn.getSessionReference();
-    urlStr += "&host=" + (host ? "true" : "false");
-    urlStr += "&cf=" + _consolidationFunction;
-    urlStr += "&interval=" + _pollingIntervalInSeconds;
-    urlStr += "&start=" + (currentDate.getTime() / 1000 - 1000 - 100);
-
-    URL url;
-    BufferedReader in = null;
-    try {
-      url = new URL(urlStr);
-      url.openConnection();
-      final URLConnection uc = url.openConnection();
-      in = new BufferedReader(new InputStreamReader(uc.getInputStream()));
-      final InputSource statsSource = new InputSource(in);
-      return DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(statsSource);
-    } catch (final MalformedURLException e) {
-      s_logger.warn("Malformed URL?  come on...." + urlStr);
-      return null;
-    } catch (final IOException e) {
-      s_logger.warn("Problems getting stats using " + urlStr, e);
-      return null;
-    } catch (final SAXException e) {
-      s_logger.warn("Problems getting stats using " + urlStr, e);
-      return null;
-    } catch (final ParserConfigurationException e) {
-      s_logger.warn("Problems getting stats using " + urlStr, e);
-      return null;
-    } finally {
-      if (in != null) {
-        try {
-          in.close();
-        } catch (final IOException e) {
-          s_logger.warn("Unable to close the buffer ", e);
-        }
-      }
-    }
-  }
-
   public SR getStorageRepository(final Connection conn, final String srNameLabel) {
     Set<SR> srs;
     try {
-      srs = SR.getByNameLabel(conn, srNameLabel);
+      srs = getSrsByNameLabel(conn, srNameLabel);
     } catch (final XenAPIException e) {
       throw new CloudRuntimeException("Unable to get SR " + srNameLabel + " due to " + e.toString(), e);
     } catch (final Exception e) {
@@ -3191,11 +3128,31 @@ public abstract class CitrixResourceBase implements ServerResource, HypervisorRe
     return _vrResource;
   }
 
+  /**
+   * Looks up the VMs with the given name label in the object cache, asking XAPI when the cache
+   * does not know the name or has a stale object for it.
+   */
+  public Set<VM> getVmsByNameLabel(final Connection conn, final String nameLabel) throws XenAPIException, XmlRpcException {
+    return _objectCache != null ? _objectCache.getVmsByNameLabel(conn, nameLabel) : VM.getByNameLabel(conn, nameLabel);
+  }
+
+  public Set<SR> getSrsByNameLabel(final Connection conn, final String nameLabel) throws XenAPIException, XmlRpcException {
+    return _objectCache != null ? _objectCache.getSrsByNameLabel(conn, nameLabel) : SR.getByNameLabel(conn, nameLabel);
+  }
+
+  public Set<VDI> getVdisByNameLabel(final Connection conn, final String nameLabel) throws XenAPIException, XmlRpcException {
+    return _objectCache != null ? _objectCache.getVdisByNameLabel(conn, nameLabel) : VDI.getByNameLabel(conn, nameLabel);
+  }
+
+  public Set<Network> getNetworksByNameLabel(final Connection conn, final String nameLabel) throws XenAPIException, XmlRpcException {
+    return _objectCache != null ? _objectCache.getNetworksByNameLabel(conn, nameLabel) : Network.getByNameLabel(conn, nameLabel);
+  }
+
   public VM getVM(final Connection conn, final String vmName) {
     // Look up VMs with the specified name
     Set<VM> vms;
     try {
-      vms = VM.getByNameLabel(conn, vmName);
+      vms = getVmsByNameLabel(conn, vmName);
     } catch (final XenAPIException e) {
       throw new CloudRuntimeException("Unable to get " + vmName + ": " + e.toString(), e);
     } catch (final Exception e) {
@@ -3231,7 +3188,7 @@ public abstract class CitrixResourceBase implements ServerResource, HypervisorRe
         }
       }
     }
-    final Set<VDI> allvolumeVDIs = VDI.getByNameLabel(conn, volumeTo.getName());
+    final Set<VDI> allvolumeVDIs = getVdisByNameLabel(conn, volumeTo.getName());
     long size = 0;
     for (final VDI vdi : allvolumeVDIs) {
       try {
@@ -3328,26 +3285,15 @@ public abstract class CitrixResourceBase implements ServerResource, HypervisorRe
       vmResponseMap.put(vmUUID, new VmStatsEntry(0, 0, 0, 0, "vm"));
     }
 
-    final Object[] rrdData = getRRDData(conn, 2); // call rrddata with 2 for
-    // vm
+    final XsRrdUpdates rrdUpdates = getRrdUpdates(conn, false);
 
-    if (rrdData == null) {
+    if (rrdUpdates == null) {
       return null;
     }
 
-    final Integer numRows = (Integer) rrdData[0];
-    final Integer numColumns = (Integer) rrdData[1];
-    final Node legend = (Node) rrdData[2];
-    final Node dataNode = (Node) rrdData[3];
+    for (int col = 0; col < rrdUpdates.getColumns(); col++) {
 
-    final NodeList legendChildren = legend.getChildNodes();
-    for (int col = 0; col < numColumns; col++) {
-
-      if (legendChildren == null || legendChildren.item(col) == null) {
-        continue;
-      }
-
-      final String columnMetadata = getXMLNodeValue(legendChildren.item(col));
+      final String columnMetadata = rrdUpdates.getLegend(col);
 
       if (columnMetadata == null) {
         continue;
@@ -3370,18 +3316,18 @@ public abstract class CitrixResourceBase implements ServerResource, HypervisorRe
 
         if (param.contains("cpu")) {
           vmStatsAnswer.setNumCPUs(vmStatsAnswer.getNumCPUs() + 1);
-          vmStatsAnswer.setCPUUtilization(vmStatsAnswer.getCPUUtilization() + getDataAverage(dataNode, col, numRows));
+          vmStatsAnswer.setCPUUtilization(vmStatsAnswer.getCPUUtilization() + rrdUpdates.getAverage(col));
         } else if (param.matches("vif_\\d*_rx")) {
           vmStatsAnswer.setNetworkReadKBs(
-              vmStatsAnswer.getNetworkReadKBs() + getDataAverage(dataNode, col, numRows) / 1000);
+              vmStatsAnswer.getNetworkReadKBs() + rrdUpdates.getAverage(col) / 1000);
         } else if (param.matches("vif_\\d*_tx")) {
           vmStatsAnswer.setNetworkWriteKBs(
-              vmStatsAnswer.getNetworkWriteKBs() + getDataAverage(dataNode, col, numRows) / 1000);
+              vmStatsAnswer.getNetworkWriteKBs() + rrdUpdates.getAverage(col) / 1000);
         } else if (param.matches("vbd_.*_read")) {
-          vmStatsAnswer.setDiskReadKBs(vmStatsAnswer.getDiskReadKBs() + getDataAverage(dataNode, col, numRows) / 1000);
+          vmStatsAnswer.setDiskReadKBs(vmStatsAnswer.getDiskReadKBs() + rrdUpdates.getAverage(col) / 1000);
         } else if (param.matches("vbd_.*_write")) {
           vmStatsAnswer.setDiskWriteKBs(
-              vmStatsAnswer.getDiskWriteKBs() + getDataAverage(dataNode, col, numRows) / 1000);
+              vmStatsAnswer.getDiskWriteKBs() + rrdUpdates.getAverage(col) / 1000);
         }
       }
     }
@@ -3431,10 +3377,6 @@ public abstract class CitrixResourceBase implements ServerResource, HypervisorRe
     return null;
   }
 
-  protected String getXMLNodeValue(final Node n) {
-    return n.getChildNodes().item(0).getNodeValue();
-  }
-
   public void handleSrAndVdiDetach(final String iqn, final Connection conn) throws Exception {
     final SR sr = getStorageRepository(conn, iqn);
 
@@ -3540,6 +3482,9 @@ public abstract class CitrixResourceBase implements ServerResource, HypervisorRe
       s_logger.warn("Check for master failed, failing the FULL Cluster sync command");
     }
     final StartupStorageCommand sscmd = initializeLocalSR(conn);
+    if (_objectCache != null) {
+      _objectCache.start();
+    }
     if (sscmd != null) {
       return new StartupCommand[] { cmd, sscmd };
     }
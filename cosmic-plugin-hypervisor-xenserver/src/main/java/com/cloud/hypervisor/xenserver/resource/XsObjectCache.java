@@ -0,0 +1,381 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.hypervisor.xenserver.resource;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import com.xensource.xenapi.Connection;
+import com.xensource.xenapi.Event;
+import com.xensource.xenapi.EventBatch;
+import com.xensource.xenapi.Host;
+import com.xensource.xenapi.Network;
+import com.xensource.xenapi.SR;
+import com.xensource.xenapi.Types;
+import com.xensource.xenapi.Types.EventOperation;
+import com.xensource.xenapi.Types.XenAPIException;
+import com.xensource.xenapi.VDI;
+import com.xensource.xenapi.VM;
+
+import org.apache.xmlrpc.XmlRpcException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Resource-local cache of the VM, SR, VDI, network and host records of the pool.
+ *
+ * The cache is filled and kept current by a listener thread that long-polls Event.from with the
+ * token of the previous call. An empty token returns a snapshot of all objects, which is used to
+ * rebuild the cache after start, after a reconnect and after events were lost.
+ *
+ * Name label lookups check that the cached objects still carry the name, because the event of a
+ * rename or a destroy may not have arrived yet. When the cache is not valid, the name is not found
+ * or an object is stale, XAPI is asked directly; objects whose handle is no longer valid are dropped.
+ */
+public class XsObjectCache {
+
+    private static final Logger s_logger = LoggerFactory.getLogger(XsObjectCache.class);
+
+    private static final Set<String> CLASSES = new HashSet<>(Arrays.asList("VM", "SR", "VDI", "network", "host"));
+    private static final double EVENT_TIMEOUT = 30.0;
+    private static final long RETRY_INTERVAL_MS = 5000L;
+
+    private final CitrixResourceBase _citrixResourceBase;
+
+    private final RecordIndex<VM.Record> _vms = new RecordIndex<>(record -> record.nameLabel);
+    private final RecordIndex<SR.Record> _srs = new RecordIndex<>(record -> record.nameLabel);
+    private final RecordIndex<VDI.Record> _vdis = new RecordIndex<>(record -> record.nameLabel);
+    private final RecordIndex<Network.Record> _networks = new RecordIndex<>(record -> record.nameLabel);
+    private final Map<String, String> _hostUuids = new ConcurrentHashMap<>();
+
+    private final AtomicLong _hits = new AtomicLong();
+    private final AtomicLong _misses = new AtomicLong();
+    private final AtomicLong _rebuilds = new AtomicLong();
+
+    private volatile boolean _valid;
+    private volatile String _token = "";
+    private String _session;
+    private Thread _listener;
+    // incremented by start and stop, a listener only updates the cache while its generation is current
+    private long _generation;
+
+    public XsObjectCache(final CitrixResourceBase citrixResourceBase) {
+        _citrixResourceBase = citrixResourceBase;
+    }
+
+    public synchronized void start() {
+        if (_listener != null) {
+            return;
+        }
+        final long generation = ++_generation;
+        _listener = new Thread(() -> listen(generation), "XS-ObjectCache-" + _citrixResourceBase.getHost().getIp());
+        _listener.setDaemon(true);
+        _listener.start();
+    }
+
+    public synchronized void stop() {
+        _generation++;
+        if (_listener != null) {
+            _listener.interrupt();
+            _listener = null;
+        }
+        _session = null;
+        invalidate();
+    }
+
+    /**
+     * Drops all records. The listener rebuilds the cache from a fresh snapshot on its next round.
+     */
+    public synchronized void invalidate() {
+        _valid = false;
+        _token = "";
+        clear();
+    }
+
+    public boolean isValid() {
+        return _valid;
+    }
+
+    public Set<VM> getVmsByNameLabel(final Connection conn, final String nameLabel) throws XenAPIException, XmlRpcException {
+        return lookup(conn, nameLabel, _vms, Types::toVM, (c, vm) -> vm.getNameLabel(c), VM::getByNameLabel);
+    }
+
+    public Set<SR> getSrsByNameLabel(final Connection conn, final String nameLabel) throws XenAPIException, XmlRpcException {
+        return lookup(conn, nameLabel, _srs, Types::toSR, (c, sr) -> sr.getNameLabel(c), SR::getByNameLabel);
+    }
+
+    public Set<VDI> getVdisByNameLabel(final Connection conn, final String nameLabel) throws XenAPIException, XmlRpcException {
+        return lookup(conn, nameLabel, _vdis, Types::toVDI, (c, vdi) -> vdi.getNameLabel(c), VDI::getByNameLabel);
+    }
+
+    public Set<Network> getNetworksByNameLabel(final Connection conn, final String nameLabel) throws XenAPIException, XmlRpcException {
+        return lookup(conn, nameLabel, _networks, Types::toNetwork, (c, network) -> network.getNameLabel(c), Network::getByNameLabel);
+    }
+
+    /**
+     * @return all VM records of the pool, or null if the cache is not valid.
+     */
+    public Map<VM, VM.Record> getAllVmRecords() {
+        if (!_valid) {
+            _misses.incrementAndGet();
+            return null;
+        }
+        final Map<VM, VM.Record> vms = new HashMap<>();
+        for (final Map.Entry<String, VM.Record> entry : _vms.getAll().entrySet()) {
+            vms.put(Types.toVM(entry.getKey()), entry.getValue());
+        }
+        _hits.incrementAndGet();
+        return vms;
+    }
+
+    /**
+     * @return the uuid of the host, or null if it is not known.
+     */
+    public String getHostUuid(final Host host) {
+        if (!_valid || host == null) {
+            return null;
+        }
+        return _hostUuids.get(host.toWireString());
+    }
+
+    public long getHits() {
+        return _hits.get();
+    }
+
+    public long getMisses() {
+        return _misses.get();
+    }
+
+    public long getRebuilds() {
+        return _rebuilds.get();
+    }
+
+    private void listen(final long generation) {
+        while (isCurrent(generation)) {
+            try {
+                final Connection conn = _citrixResourceBase.getConnection();
+                final String session = conn.getSessionReference();
+                synchronized (this) {
+                    if (generation != _generation) {
+                        break;
+                    }
+                    if (_session != null && !_session.equals(session)) {
+                        s_logger.info("Connection to " + _citrixResourceBase.getHost().getIp() + " was re-established, rebuilding the object cache");
+                        invalidate();
+                    }
+                    _session = session;
+                }
+
+                final String token = _token;
+                final EventBatch batch = Event.from(conn, CLASSES, token, EVENT_TIMEOUT);
+                synchronized (this) {
+                    if (generation != _generation) {
+                        break;
+                    }
+                    // the cache was invalidated while waiting, the next round rebuilds it
+                    if (!token.equals(_token)) {
+                        continue;
+                    }
+                    if (token.isEmpty()) {
+                        rebuild(batch.events);
+                    } else {
+                        apply(batch.events);
+                    }
+                    _token = batch.token;
+                }
+            } catch (final Types.EventsLost e) {
+                s_logger.warn("Events were lost for " + _citrixResourceBase.getHost().getIp() + ", rebuilding the object cache");
+                invalidate(generation);
+            } catch (final Throwable th) {
+                if (!invalidate(generation)) {
+                    break;
+                }
+                s_logger.warn("Unable to refresh the object cache of " + _citrixResourceBase.getHost().getIp() + ", retrying in " + RETRY_INTERVAL_MS + " ms", th);
+                try {
+                    Thread.sleep(RETRY_INTERVAL_MS);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+    }
+
+    private synchronized boolean isCurrent(final long generation) {
+        return generation == _generation;
+    }
+
+    /**
+     * Invalidates the cache and forgets the session, unless the listener of the generation was stopped.
+     */
+    private synchronized boolean invalidate(final long generation) {
+        if (generation != _generation) {
+            return false;
+        }
+        invalidate();
+        _session = null;
+        return true;
+    }
+
+    void rebuild(final Collection<Event.Record> events) {
+        clear();
+        apply(events);
+        _valid = true;
+        _rebuilds.incrementAndGet();
+        if (s_logger.isDebugEnabled()) {
+            s_logger.debug("Rebuilt the object cache of " + _citrixResourceBase.getHost().getIp() + ": " + _vms.size() + " VMs, " + _srs.size() + " SRs, " + _vdis.size()
+                    + " VDIs, " + _networks.size() + " networks");
+        }
+    }
+
+    void apply(final Collection<Event.Record> events) {
+        if (events == null) {
+            return;
+        }
+        for (final Event.Record event : events) {
+            if (event.clazz == null || event.ref == null) {
+                continue;
+            }
+            final boolean deleted = event.operation == EventOperation.DEL;
+            final String clazz = event.clazz;
+            if ("VM".equalsIgnoreCase(clazz)) {
+                update(_vms, VM.Record.class, event, deleted);
+            } else if ("SR".equalsIgnoreCase(clazz)) {
+                update(_srs, SR.Record.class, event, deleted);
+            } else if ("VDI".equalsIgnoreCase(clazz)) {
+                update(_vdis, VDI.Record.class, event, deleted);
+            } else if ("network".equalsIgnoreCase(clazz)) {
+                update(_networks, Network.Record.class, event, deleted);
+            } else if ("host".equalsIgnoreCase(clazz)) {
+                if (deleted) {
+                    _hostUuids.remove(event.ref);
+                } else if (event.snapshot instanceof Host.Record) {
+                    _hostUuids.put(event.ref, ((Host.Record) event.snapshot).uuid);
+                }
+            }
+        }
+    }
+
+    private <R> void update(final RecordIndex<R> index, final Class<R> recordClass, final Event.Record event, final boolean deleted) {
+        if (deleted) {
+            index.remove(event.ref);
+        } else if (recordClass.isInstance(event.snapshot)) {
+            index.put(event.ref, recordClass.cast(event.snapshot));
+        }
+    }
+
+    private void clear() {
+        _vms.clear();
+        _srs.clear();
+        _vdis.clear();
+        _networks.clear();
+        _hostUuids.clear();
+    }
+
+    private <T> Set<T> lookup(final Connection conn, final String nameLabel, final RecordIndex<?> index, final Function<String, T> converter,
+            final XapiCall<T, String> nameOf, final XapiCall<String, Set<T>> byName) throws XenAPIException, XmlRpcException {
+        final Set<String> refs = _valid ? index.getRefsByName(nameLabel) : null;
+        if (refs != null) {
+            final Set<T> objects = new HashSet<>();
+            boolean stale = false;
+            for (final String ref : refs) {
+                final T object = converter.apply(ref);
+                try {
+                    // renamed, the event of the rename has not arrived yet
+                    stale |= !nameLabel.equals(nameOf.call(conn, object));
+                } catch (final Types.HandleInvalid e) {
+                    // destroyed, the event of the destroy has not arrived yet
+                    index.remove(ref);
+                    stale = true;
+                }
+                objects.add(object);
+            }
+            if (!stale) {
+                _hits.incrementAndGet();
+                return objects;
+            }
+        }
+        _misses.incrementAndGet();
+        return byName.call(conn, nameLabel);
+    }
+
+    /**
+     * A XenAPI call with the connection to the pool.
+     */
+    private interface XapiCall<A, R> {
+        R call(Connection conn, A argument) throws XenAPIException, XmlRpcException;
+    }
+
+    /**
+     * Records of one class by opaque reference, with a secondary index on the name label.
+     */
+    private static class RecordIndex<R> {
+        private final Function<R, String> _nameOf;
+        private final Map<String, R> _byRef = new HashMap<>();
+        private final Map<String, Set<String>> _byName = new HashMap<>();
+
+        RecordIndex(final Function<R, String> nameOf) {
+            _nameOf = nameOf;
+        }
+
+        synchronized void put(final String ref, final R record) {
+            remove(ref);
+            _byRef.put(ref, record);
+            _byName.computeIfAbsent(_nameOf.apply(record), k -> new HashSet<>()).add(ref);
+        }
+
+        synchronized void remove(final String ref) {
+            final R previous = _byRef.remove(ref);
+            if (previous == null) {
+                return;
+            }
+            final String name = _nameOf.apply(previous);
+            final Set<String> refs = _byName.get(name);
+            if (refs != null) {
+                refs.remove(ref);
+                if (refs.isEmpty()) {
+                    _byName.remove(name);
+                }
+            }
+        }
+
+        synchronized Set<String> getRefsByName(final String name) {
+            final Set<String> refs = _byName.get(name);
+            return refs == null ? null : new HashSet<>(refs);
+        }
+
+        synchronized Map<String, R> getAll() {
+            return new HashMap<>(_byRef);
+        }
+
+        synchronized int size() {
+            return _byRef.size();
+        }
+
+        synchronized void clear() {
+            _byRef.clear();
+            _byName.clear();
+        }
+    }
+}
@@ -0,0 +1,156 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.hypervisor.xenserver.resource;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The column averages of an /rrd_updates response.
+ *
+ * The response is parsed with a streaming reader: the values of every row are added to a running
+ * sum per column as they are read, so no tree of the document is built. NaN values are skipped,
+ * and an average that is not a finite number is reported as 0.
+ */
+public class XsRrdUpdates {
+
+    private static final Logger s_logger = LoggerFactory.getLogger(XsRrdUpdates.class);
+
+    private static final XMLInputFactory s_inputFactory = createInputFactory();
+
+    private final List<String> _legend = new ArrayList<>();
+    private double[] _sums = new double[0];
+    private int[] _counts = new int[0];
+    private int _rows;
+
+    private XsRrdUpdates() {
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        final XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return factory;
+    }
+
+    /**
+     * Parses an xport document. The stream is read up to the end of the document but not closed.
+     */
+    public static XsRrdUpdates parse(final InputStream in) throws XMLStreamException {
+        final XsRrdUpdates updates = new XsRrdUpdates();
+        final XMLStreamReader reader = s_inputFactory.createXMLStreamReader(in);
+        try {
+            int column = -1;
+            while (reader.hasNext()) {
+                if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                switch (reader.getLocalName()) {
+                    case "columns":
+                        updates.ensureColumns(parseInt(reader.getElementText()));
+                        break;
+                    case "entry":
+                        updates._legend.add(reader.getElementText().trim());
+                        break;
+                    case "row":
+                        updates._rows++;
+                        updates.ensureColumns(updates._legend.size());
+                        column = -1;
+                        break;
+                    case "v":
+                        column++;
+                        updates.add(column, reader.getElementText());
+                        break;
+                    default:
+                        break;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return updates;
+    }
+
+    public int getRows() {
+        return _rows;
+    }
+
+    public int getColumns() {
+        return _legend.size();
+    }
+
+    /**
+     * @return the legend entry of the column, for example AVERAGE:vm:uuid:cpu0
+     */
+    public String getLegend(final int column) {
+        return _legend.get(column);
+    }
+
+    public double getAverage(final int column) {
+        if (column >= _counts.length || _counts[column] == 0) {
+            return 0;
+        }
+        final double average = _sums[column] / _counts[column];
+        if (Double.isInfinite(average) || Double.isNaN(average)) {
+            s_logger.warn("Found an invalid value (infinity/NaN) in the average of column " + getLegend(column));
+            return 0;
+        }
+        return average;
+    }
+
+    private void ensureColumns(final int columns) {
+        if (columns > _sums.length) {
+            _sums = Arrays.copyOf(_sums, columns);
+            _counts = Arrays.copyOf(_counts, columns);
+        }
+    }
+
+    private void add(final int column, final String text) {
+        if (column >= _sums.length) {
+            return;
+        }
+        final double value;
+        try {
+            value = Double.parseDouble(text.trim());
+        } catch (final NumberFormatException e) {
+            return;
+        }
+        if (!Double.isNaN(value)) {
+            _sums[column] += value;
+            _counts[column]++;
+        }
+    }
+
+    private static int parseInt(final String text) {
+        try {
+            return Integer.parseInt(text.trim());
+        } catch (final NumberFormatException e) {
+            return 0;
+        }
+    }
+}
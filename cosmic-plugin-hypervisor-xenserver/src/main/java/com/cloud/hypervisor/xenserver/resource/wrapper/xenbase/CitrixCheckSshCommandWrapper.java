@@ -46,6 +46,9 @@ public final class CitrixCheckSshCommandWrapper extends CommandWrapper<CheckSshC
             s_logger.debug("Ping command port, " + privateIp + ":" + cmdPort);
         }
 
+        // the system vm has just been started, what was applied to it before may be gone
+        citrixResourceBase.getVirtualRoutingResource().forgetRouterConfig(vmName);
+
         try {
             final String result = citrixResourceBase.connect(conn, command.getName(), privateIp, cmdPort);
             if (result != null) {
@@ -37,6 +37,7 @@ public final class CitrixRebootRouterCommandWrapper extends CommandWrapper<Reboo
         final CitrixRequestWrapper wrapper = CitrixRequestWrapper.getInstance();
 
         final RebootCommand rebootCommand = new RebootCommand(command.getVmName());
+        citrixResourceBase.getVirtualRoutingResource().forgetRouterConfig(command.getVmName());
         final Answer answer = wrapper.execute(rebootCommand, citrixResourceBase);
 
         if (answer.getResult()) {
@@ -32,10 +32,9 @@ import com.cloud.hypervisor.xenserver.resource.XenServer610Resource;
 import com.cloud.hypervisor.xenserver.resource.XenServer620SP1Resource;
 import com.cloud.resource.CommandWrapper;
 import com.cloud.resource.RequestWrapper;
+import com.cloud.resource.ResourceWrapperIndex;
 import com.cloud.resource.ServerResource;
 
-import org.reflections.Reflections;
-
 public class CitrixRequestWrapper extends RequestWrapper {
 
     private static CitrixRequestWrapper instance;
@@ -44,29 +43,23 @@ public class CitrixRequestWrapper extends RequestWrapper {
         instance = new CitrixRequestWrapper();
     }
 
-    Reflections baseWrappers = new Reflections("com.cloud.hypervisor.xenserver.resource.wrapper.xenbase");
     @SuppressWarnings("rawtypes")
-    Set<Class<? extends CommandWrapper>> baseSet = baseWrappers.getSubTypesOf(CommandWrapper.class);
+    Set<Class<? extends CommandWrapper>> baseSet = ResourceWrapperIndex.load("com.cloud.hypervisor.xenserver.resource.wrapper.xenbase");
 
-    Reflections xenServer56Wrappers = new Reflections("com.cloud.hypervisor.xenserver.resource.wrapper.xen56");
     @SuppressWarnings("rawtypes")
-    Set<Class<? extends CommandWrapper>> xenServer56Set = xenServer56Wrappers.getSubTypesOf(CommandWrapper.class);
+    Set<Class<? extends CommandWrapper>> xenServer56Set = ResourceWrapperIndex.load("com.cloud.hypervisor.xenserver.resource.wrapper.xen56");
 
-    Reflections xenServer56P1Wrappers = new Reflections("com.cloud.hypervisor.xenserver.resource.wrapper.xen56p1");
     @SuppressWarnings("rawtypes")
-    Set<Class<? extends CommandWrapper>> xenServer56P1Set = xenServer56P1Wrappers.getSubTypesOf(CommandWrapper.class);
+    Set<Class<? extends CommandWrapper>> xenServer56P1Set = ResourceWrapperIndex.load("com.cloud.hypervisor.xenserver.resource.wrapper.xen56p1");
 
-    Reflections xenServer610Wrappers = new Reflections("com.cloud.hypervisor.xenserver.resource.wrapper.xen610");
     @SuppressWarnings("rawtypes")
-    Set<Class<? extends CommandWrapper>> xenServer610Set = xenServer610Wrappers.getSubTypesOf(CommandWrapper.class);
+    Set<Class<? extends CommandWrapper>> xenServer610Set = ResourceWrapperIndex.load("com.cloud.hypervisor.xenserver.resource.wrapper.xen610");
 
-    Reflections xenServer620SP1Wrappers = new Reflections("com.cloud.hypervisor.xenserver.resource.wrapper.xen620sp1");
     @SuppressWarnings("rawtypes")
-    Set<Class<? extends CommandWrapper>> xenServer620SP1Set = xenServer620SP1Wrappers.getSubTypesOf(CommandWrapper.class);
+    Set<Class<? extends CommandWrapper>> xenServer620SP1Set = ResourceWrapperIndex.load("com.cloud.hypervisor.xenserver.resource.wrapper.xen620sp1");
 
-    Reflections xcpWrappers = new Reflections("com.cloud.hypervisor.xenserver.resource.wrapper.xcp");
     @SuppressWarnings("rawtypes")
-    Set<Class<? extends CommandWrapper>> xcpSet = xcpWrappers.getSubTypesOf(CommandWrapper.class);
+    Set<Class<? extends CommandWrapper>> xcpSet = ResourceWrapperIndex.load("com.cloud.hypervisor.xenserver.resource.wrapper.xcp");
 
     private CitrixRequestWrapper() {
         init();
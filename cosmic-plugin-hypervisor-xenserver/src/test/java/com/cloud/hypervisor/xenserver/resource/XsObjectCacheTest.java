@@ -0,0 +1,225 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.hypervisor.xenserver.resource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import com.xensource.xenapi.Connection;
+import com.xensource.xenapi.Event;
+import com.xensource.xenapi.Host;
+import com.xensource.xenapi.SR;
+import com.xensource.xenapi.Types;
+import com.xensource.xenapi.Types.EventOperation;
+import com.xensource.xenapi.VM;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class XsObjectCacheTest {
+
+    private CitrixResourceBase citrixResourceBase;
+    private XsObjectCache cache;
+    private FakeConnection conn;
+
+    @Before
+    public void setUp() throws Exception {
+        citrixResourceBase = Mockito.mock(CitrixResourceBase.class);
+        Mockito.when(citrixResourceBase.getHost()).thenReturn(new XsHost());
+        cache = new XsObjectCache(citrixResourceBase);
+        conn = new FakeConnection();
+    }
+
+    @Test
+    public void testLookupsMissUntilRebuilt() throws Exception {
+        cache.apply(Collections.singletonList(vmEvent(EventOperation.ADD, "OpaqueRef:vm1", "i-2-3-VM")));
+        conn.byName.put("i-2-3-VM", new Object[]{"OpaqueRef:vm1"});
+
+        assertEquals(1, cache.getVmsByNameLabel(conn, "i-2-3-VM").size());
+        assertEquals(Collections.singletonList("VM.get_by_name_label"), conn.calls);
+        assertNull(cache.getAllVmRecords());
+    }
+
+    @Test
+    public void testRebuildAndIncrementalEvents() throws Exception {
+        cache.rebuild(Arrays.asList(vmEvent(EventOperation.ADD, "OpaqueRef:vm1", "i-2-3-VM"), srEvent("OpaqueRef:sr1", "primary"),
+                hostEvent("OpaqueRef:host1", "host-uuid")));
+        conn.names.put("OpaqueRef:vm1", "i-2-3-VM");
+        conn.names.put("OpaqueRef:sr1", "primary");
+
+        final Set<VM> vms = cache.getVmsByNameLabel(conn, "i-2-3-VM");
+        assertEquals(1, vms.size());
+        assertEquals("OpaqueRef:vm1", vms.iterator().next().toWireString());
+        assertEquals(1, cache.getSrsByNameLabel(conn, "primary").size());
+        assertEquals("host-uuid", cache.getHostUuid(Types.toHost("OpaqueRef:host1")));
+        assertEquals(2, cache.getHits());
+        assertFalse(conn.calls.contains("VM.get_by_name_label"));
+
+        // a rename moves the VM to its new name, a delete drops it
+        cache.apply(Collections.singletonList(vmEvent(EventOperation.MOD, "OpaqueRef:vm1", "i-2-4-VM")));
+        conn.names.put("OpaqueRef:vm1", "i-2-4-VM");
+        assertTrue(cache.getVmsByNameLabel(conn, "i-2-3-VM").isEmpty());
+        assertEquals(1, cache.getVmsByNameLabel(conn, "i-2-4-VM").size());
+
+        cache.apply(Collections.singletonList(vmEvent(EventOperation.DEL, "OpaqueRef:vm1", null)));
+        assertTrue(cache.getVmsByNameLabel(conn, "i-2-4-VM").isEmpty());
+        assertTrue(cache.getAllVmRecords().isEmpty());
+    }
+
+    @Test
+    public void testStaleObjectsFallBackToXapi() throws Exception {
+        cache.rebuild(Arrays.asList(vmEvent(EventOperation.ADD, "OpaqueRef:vm1", "i-2-3-VM"), vmEvent(EventOperation.ADD, "OpaqueRef:vm2", "r-4-VM")));
+
+        // vm1 was destroyed and a VM of the same name was created, neither event has arrived yet
+        conn.byName.put("i-2-3-VM", new Object[]{"OpaqueRef:vm3"});
+        final Set<VM> vms = cache.getVmsByNameLabel(conn, "i-2-3-VM");
+        assertEquals("OpaqueRef:vm3", vms.iterator().next().toWireString());
+        assertEquals(1, cache.getMisses());
+        // the invalid handle is dropped from the cache
+        assertEquals(1, cache.getAllVmRecords().size());
+
+        // vm2 was renamed, the event of that has not arrived yet
+        conn.names.put("OpaqueRef:vm2", "r-5-VM");
+        assertTrue(cache.getVmsByNameLabel(conn, "r-4-VM").isEmpty());
+        assertEquals(2, cache.getMisses());
+        assertEquals(1, cache.getAllVmRecords().size());
+    }
+
+    @Test
+    public void testInvalidateDropsRecords() throws Exception {
+        cache.rebuild(Collections.singletonList(vmEvent(EventOperation.ADD, "OpaqueRef:vm1", "i-2-3-VM")));
+        final Map<VM, VM.Record> vms = cache.getAllVmRecords();
+        assertEquals(1, vms.size());
+
+        cache.invalidate();
+
+        assertTrue(cache.getVmsByNameLabel(conn, "i-2-3-VM").isEmpty());
+        assertNull(cache.getAllVmRecords());
+    }
+
+    @Test
+    public void testStoppedListenerDoesNotUpdateCache() throws Exception {
+        Mockito.when(citrixResourceBase.getConnection()).thenReturn(conn);
+        conn.events = new CountDownLatch(1);
+
+        cache.start();
+        conn.polling.await();
+        cache.stop();
+        // the snapshot the stopped listener was waiting for arrives after the stop
+        conn.events.countDown();
+        for (final Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith("XS-ObjectCache-")) {
+                thread.join(10000);
+            }
+        }
+
+        assertFalse(cache.isValid());
+        assertNull(cache.getAllVmRecords());
+        assertEquals(0, cache.getRebuilds());
+    }
+
+    private static Event.Record vmEvent(final EventOperation operation, final String ref, final String nameLabel) {
+        VM.Record record = null;
+        if (nameLabel != null) {
+            record = new VM.Record();
+            record.nameLabel = nameLabel;
+        }
+        return event("vm", operation, ref, record);
+    }
+
+    private static Event.Record srEvent(final String ref, final String nameLabel) {
+        final SR.Record record = new SR.Record();
+        record.nameLabel = nameLabel;
+        return event("sr", EventOperation.ADD, ref, record);
+    }
+
+    private static Event.Record hostEvent(final String ref, final String uuid) {
+        final Host.Record record = new Host.Record();
+        record.uuid = uuid;
+        return event("host", EventOperation.ADD, ref, record);
+    }
+
+    /**
+     * Answers name label calls from the names and lookups by name from byName; a ref without a name
+     * has an invalid handle. Event.from returns an empty snapshot once events is counted down.
+     */
+    private static class FakeConnection extends Connection {
+        final Map<String, String> names = new HashMap<>();
+        final Map<String, Object[]> byName = new HashMap<>();
+        final List<String> calls = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch polling = new CountDownLatch(1);
+        CountDownLatch events;
+
+        FakeConnection() throws Exception {
+            super(new URL("http://127.0.0.1"));
+        }
+
+        @Override
+        protected Map dispatch(final String method, final Object[] params) throws Types.XenAPIException {
+            calls.add(method);
+            final Object value;
+            if (method.endsWith(".get_name_label")) {
+                value = names.get(params[1]);
+                if (value == null) {
+                    throw new Types.HandleInvalid(method.substring(0, method.indexOf('.')), (String) params[1]);
+                }
+            } else if (method.endsWith(".get_by_name_label")) {
+                value = byName.getOrDefault(params[1], new Object[0]);
+            } else if (method.equals("event.from")) {
+                polling.countDown();
+                try {
+                    events.await();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                final Map<String, Object> batch = new HashMap<>();
+                batch.put("events", new Object[0]);
+                batch.put("token", "1");
+                batch.put("valid_ref_counts", new HashMap<>());
+                value = batch;
+            } else {
+                throw new UnsupportedOperationException(method);
+            }
+            final Map<String, Object> response = new HashMap<>();
+            response.put("Status", "Success");
+            response.put("Value", value);
+            return response;
+        }
+    }
+
+    private static Event.Record event(final String clazz, final EventOperation operation, final String ref, final Object snapshot) {
+        final Event.Record event = new Event.Record();
+        event.clazz = clazz;
+        event.operation = operation;
+        event.ref = ref;
+        event.snapshot = snapshot;
+        return event;
+    }
+}
@@ -0,0 +1,121 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.hypervisor.xenserver.resource;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+public class XsRrdUpdatesTest {
+
+    private static final String RRD_UPDATES = "<xport><meta><start>1000</start><step>60</step><end>1120</end><rows>3</rows><columns>3</columns>"
+            + "<legend><entry>AVERAGE:host:host-uuid:cpu_avg</entry><entry>AVERAGE:host:host-uuid:memory_free_kib</entry>"
+            + "<entry>AVERAGE:host:host-uuid:pif_eth0_rx</entry></legend></meta>"
+            + "<data><row><t>1120</t><v>0.5</v><v>1000</v><v>NaN</v></row>"
+            + "<row><t>1060</t><v>0.25</v><v>2000</v><v>NaN</v></row>"
+            + "<row><t>1000</t><v>NaN</v><v>3000</v><v>Infinity</v></row></data></xport>";
+
+    @Test
+    public void testAveragesSkipNaN() throws Exception {
+        final XsRrdUpdates updates = XsRrdUpdates.parse(new ByteArrayInputStream(RRD_UPDATES.getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(3, updates.getRows());
+        assertEquals(3, updates.getColumns());
+        assertEquals("AVERAGE:host:host-uuid:cpu_avg", updates.getLegend(0));
+        assertEquals(0.375, updates.getAverage(0), 0.0001);
+        assertEquals(2000, updates.getAverage(1), 0.0001);
+        // an infinite average is reported as 0
+        assertEquals(0, updates.getAverage(2), 0.0001);
+    }
+
+    @Test
+    public void testRecordedVmPayload() throws Exception {
+        try (InputStream in = getClass().getResourceAsStream("/rrd_updates_vms.xml")) {
+            final XsRrdUpdates updates = XsRrdUpdates.parse(in);
+
+            assertEquals(19, updates.getRows());
+            assertEquals(160, updates.getColumns());
+            assertEquals(2.1475E9, updates.getAverage(2), 1);
+        }
+    }
+
+    @Test
+    public void testMatchesDomParser() throws Exception {
+        assertSameAsDom(RRD_UPDATES.getBytes(StandardCharsets.UTF_8));
+        try (InputStream in = getClass().getResourceAsStream("/rrd_updates_vms.xml")) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            assertSameAsDom(out.toByteArray());
+        }
+    }
+
+    private static void assertSameAsDom(final byte[] payload) throws Exception {
+        final XsRrdUpdates updates = XsRrdUpdates.parse(new ByteArrayInputStream(payload));
+
+        // the walk over the document that getHostStats and getVmStats did before the streaming parser
+        final Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new ByteArrayInputStream(payload));
+        final NodeList xport = doc.getChildNodes().item(0).getChildNodes();
+        final Node dataNode = xport.item(1);
+        int numRows = 0;
+        int numColumns = 0;
+        Node legend = null;
+        final NodeList metaChildren = xport.item(0).getChildNodes();
+        for (int i = 0; i < metaChildren.getLength(); i++) {
+            final Node n = metaChildren.item(i);
+            if (n.getNodeName().equals("rows")) {
+                numRows = Integer.parseInt(n.getTextContent());
+            } else if (n.getNodeName().equals("columns")) {
+                numColumns = Integer.parseInt(n.getTextContent());
+            } else if (n.getNodeName().equals("legend")) {
+                legend = n;
+            }
+        }
+
+        assertEquals(numRows, updates.getRows());
+        assertEquals(numColumns, updates.getColumns());
+        for (int col = 0; col < numColumns; col++) {
+            assertEquals(legend.getChildNodes().item(col).getTextContent(), updates.getLegend(col));
+            double value = 0;
+            int numRowsUsed = 0;
+            for (int row = 0; row < numRows; row++) {
+                final Double v = Double.valueOf(dataNode.getChildNodes().item(numRows - 1 - row).getChildNodes().item(col + 1).getTextContent());
+                if (!v.equals(Double.NaN)) {
+                    numRowsUsed += 1;
+                    value += v;
+                }
+            }
+            final double average = numRowsUsed == 0 ? value : value / numRowsUsed;
+            final double expected = Double.isInfinite(average) || Double.isNaN(average) ? 0 : average;
+            // the rows are summed in the opposite order, which may round the last bit differently
+            assertEquals(updates.getLegend(col), expected, updates.getAverage(col), Math.abs(expected) * 1E-12);
+        }
+    }
+}
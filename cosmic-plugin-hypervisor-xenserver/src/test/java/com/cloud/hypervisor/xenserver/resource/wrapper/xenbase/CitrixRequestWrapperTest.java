@@ -102,6 +102,7 @@ import com.cloud.hypervisor.xenserver.resource.XsHost;
 import com.cloud.hypervisor.xenserver.resource.XsLocalNetwork;
 import com.cloud.network.Networks.TrafficType;
 import com.cloud.network.PhysicalNetworkSetupInfo;
+import com.cloud.resource.ResourceWrapperIndex;
 import com.cloud.storage.Storage.ImageFormat;
 import com.cloud.storage.VMTemplateStorageResourceAssoc;
 import com.cloud.storage.resource.StorageSubsystemCommandHandler;
@@ -161,13 +162,18 @@ public class CitrixRequestWrapperTest {
 
     @Test
     public void testExecuteRebootRouterCommand() {
+        final VirtualRoutingResource routingResource = Mockito.mock(VirtualRoutingResource.class);
         final RebootRouterCommand rebootRouterCommand = new RebootRouterCommand("Test", "127.0.0.1");
 
         final CitrixRequestWrapper wrapper = CitrixRequestWrapper.getInstance();
         assertNotNull(wrapper);
 
+        when(citrixResourceBase.getVirtualRoutingResource()).thenReturn(routingResource);
+
         final Answer answer = wrapper.execute(rebootRouterCommand, citrixResourceBase);
 
+        verify(routingResource, times(1)).forgetRouterConfig("Test");
+
         verify(citrixResourceBase, times(2)).getConnection();
 
         assertFalse(answer.getResult());
@@ -681,13 +687,18 @@ public class CitrixRequestWrapperTest {
 
     @Test
     public void testCheckSshCommand() {
+        final VirtualRoutingResource routingResource = Mockito.mock(VirtualRoutingResource.class);
         final CheckSshCommand sshCommand = new CheckSshCommand("Test", "127.0.0.1", 22);
 
         final CitrixRequestWrapper wrapper = CitrixRequestWrapper.getInstance();
         assertNotNull(wrapper);
 
+        when(citrixResourceBase.getVirtualRoutingResource()).thenReturn(routingResource);
+
         final Answer answer = wrapper.execute(sshCommand, citrixResourceBase);
 
+        verify(routingResource, times(1)).forgetRouterConfig("Test");
+
         verify(citrixResourceBase, times(1)).getConnection();
 
         assertTrue(answer.getResult());
@@ -1506,6 +1517,15 @@ public class CitrixRequestWrapperTest {
         assertTrue(answer.getResult());
     }
 
+    @Test
+    public void testEveryWrapperIsIndexed() {
+        for (final String packagePrefix : new String[] {"com.cloud.hypervisor.xenserver.resource.wrapper.xenbase", "com.cloud.hypervisor.xenserver.resource.wrapper.xen56",
+                "com.cloud.hypervisor.xenserver.resource.wrapper.xen56p1", "com.cloud.hypervisor.xenserver.resource.wrapper.xen610",
+                "com.cloud.hypervisor.xenserver.resource.wrapper.xen620sp1", "com.cloud.hypervisor.xenserver.resource.wrapper.xcp"}) {
+            assertFalse(packagePrefix, ResourceWrapperIndex.loadIndex(packagePrefix).isEmpty());
+            assertEquals(packagePrefix, ResourceWrapperIndex.scan(packagePrefix), ResourceWrapperIndex.loadIndex(packagePrefix));
+        }
+    }
 }
 
 class NotAValidCommand extends Command {